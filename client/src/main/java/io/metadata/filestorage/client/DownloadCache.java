@@ -0,0 +1,188 @@
+package io.metadata.filestorage.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Downloaded content kept on disk with the entity tag it was served with. Every entry is a single file starting
+ * with a header line, replaced atomically, so an entry opened for reading stays whole while it is replaced. The
+ * least recently used entries are removed once the cache grows over its size.
+ */
+final class DownloadCache {
+
+    private static final int MAX_HEADER = 1024;
+
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    DownloadCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Entry of the version of the file, the latest one when null, or null when it is not cached.
+     */
+    Entry open(String fileName, Integer version) throws IOException {
+        Path path = pathOf(fileName, version);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(MAX_HEADER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read up to the maximum header length
+            }
+            String text = new String(header.array(), 0, header.position(), StandardCharsets.UTF_8);
+            int end = text.indexOf('\n');
+            String[] fields = end > 0 ? text.substring(0, end).split(" ", 2) : new String[0];
+            if (fields.length < 2) {
+                channel.close();
+                Files.deleteIfExists(path);
+                return null;
+            }
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            int headerLength = text.substring(0, end + 1).getBytes(StandardCharsets.UTF_8).length;
+            return new Entry(channel, headerLength, Integer.parseInt(fields[0]), fields[1]);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    void put(String fileName, Integer version, int versionNumber, String entityTag, Path content) throws IOException {
+        Path temp = Files.createTempFile(directory, ".entry", ".tmp");
+        try {
+            try (FileChannel in = FileChannel.open(content, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.wrap((versionNumber + " " + entityTag + "\n").getBytes(StandardCharsets.UTF_8));
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                long size = in.size();
+                for (long position = 0; position < size; ) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            Files.move(temp, pathOf(fileName, version), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        evict();
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths.filter(path -> path.toString().endsWith(ENTRY_SUFFIX))::iterator) {
+                entries.add(path);
+                total += sizeOf(path);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(DownloadCache::lastModified));
+        for (Path path : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            total -= sizeOf(path);
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private Path pathOf(String fileName, Integer version) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((fileName + '\n' + (version != null ? version : "latest")).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return directory.resolve(name.append(ENTRY_SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    static final class Entry implements Closeable {
+
+        private final FileChannel channel;
+
+        private final long headerLength;
+
+        private final int versionNumber;
+
+        private final String entityTag;
+
+        private Entry(FileChannel channel, long headerLength, int versionNumber, String entityTag) {
+            this.channel = channel;
+            this.headerLength = headerLength;
+            this.versionNumber = versionNumber;
+            this.entityTag = entityTag;
+        }
+
+        int getVersionNumber() {
+            return versionNumber;
+        }
+
+        String getEntityTag() {
+            return entityTag;
+        }
+
+        long getSize() throws IOException {
+            return channel.size() - headerLength;
+        }
+
+        void copyTo(FileChannel out) throws IOException {
+            long size = channel.size();
+            for (long position = headerLength; position < size; ) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
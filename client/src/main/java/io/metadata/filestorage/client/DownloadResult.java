@@ -0,0 +1,41 @@
+package io.metadata.filestorage.client;
+
+/**
+ * Version written by a download, and whether its content came from the local cache.
+ */
+public class DownloadResult {
+
+    private final int version;
+
+    private final long size;
+
+    private final String entityTag;
+
+    private final boolean cached;
+
+    DownloadResult(int version, long size, String entityTag, boolean cached) {
+        this.version = version;
+        this.size = size;
+        this.entityTag = entityTag;
+        this.cached = cached;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * True when the service answered that the cached content is still current, so no content was transferred.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+}
@@ -0,0 +1,724 @@
+package io.metadata.filestorage.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client of the file storage service. Connections are pooled by a single HTTP client, which negotiates HTTP/2 when
+ * the service offers it. Large uploads are sent as parts over several connections at once and large downloads are
+ * read as ranges the same way, every range pinned to the version and entity tag of the first one. Requests that can
+ * be repeated are retried with a jittered exponential backoff, single request uploads only when they were not
+ * received. With a cache directory, downloads keep their content there and send its entity tag the next time, so
+ * content that did not change is not transferred again. Large uploads send the checksum of their content first, and
+ * are not transferred when the service already stores the same content. Thread safe, close it to stop its threads.
+ */
+public class FileStorageClient implements AutoCloseable {
+
+    public static final String VERSION_HEADER = "X-Version";
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final String baseUrl;
+
+    private final HttpClient httpClient;
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    private final int partSize;
+
+    private final int maxRetries;
+
+    private final long checksumUploadMinSize;
+
+    private final long retryBackoffMillis;
+
+    private final DownloadCache cache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private FileStorageClient(Builder builder) throws IOException {
+        this.baseUrl = builder.baseUrl.endsWith("/") ? builder.baseUrl.substring(0, builder.baseUrl.length() - 1) : builder.baseUrl;
+        this.parallelism = builder.parallelism;
+        this.partSize = builder.partSize;
+        this.maxRetries = builder.maxRetries;
+        this.checksumUploadMinSize = builder.checksumUploadMinSize;
+        this.retryBackoffMillis = builder.retryBackoff.toMillis();
+        this.cache = builder.cacheDirectory != null ? new DownloadCache(builder.cacheDirectory, builder.cacheSize) : null;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "file-storage-client-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(builder.version)
+                .connectTimeout(builder.connectTimeout)
+                .build();
+    }
+
+    public static Builder builder(String baseUrl) {
+        return new Builder(baseUrl);
+    }
+
+    /**
+     * Uploads the file as a new version, in parts sent at the same time when it is large.
+     */
+    public UploadResult upload(String fileName, Path source) throws IOException {
+        long size = Files.size(source);
+        if (size >= checksumUploadMinSize) {
+            MessageDigest digest = newDigest();
+            try (InputStream in = Files.newInputStream(source)) {
+                byte[] buffer = new byte[64 * 1024];
+                for (int read; (read = in.read(buffer)) >= 0; ) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            UploadResult stored = uploadByChecksum(fileName, digest.digest(), size);
+            if (stored != null) {
+                return stored;
+            }
+        }
+        if (size < 2L * partSize || parallelism == 1) {
+            return uploadWhole(fileName, HttpRequest.BodyPublishers.ofFile(source));
+        }
+        return uploadParts(fileName, size, (offset, length) -> HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> openRange(source, offset, length)), length));
+    }
+
+    /**
+     * Uploads the content as a new version, in parts sent at the same time when it is large.
+     */
+    public UploadResult upload(String fileName, byte[] content) throws IOException {
+        if (content.length >= checksumUploadMinSize) {
+            UploadResult stored = uploadByChecksum(fileName, newDigest().digest(content), content.length);
+            if (stored != null) {
+                return stored;
+            }
+        }
+        if (content.length < 2L * partSize || parallelism == 1) {
+            return uploadWhole(fileName, HttpRequest.BodyPublishers.ofByteArray(content));
+        }
+        return uploadParts(fileName, content.length,
+                (offset, length) -> HttpRequest.BodyPublishers.ofByteArray(content, (int) offset, length));
+    }
+
+    /**
+     * Downloads a version of the file, the latest one when null, replacing the target once it is complete.
+     */
+    public DownloadResult download(String fileName, Integer version, Path target) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return withRetries(true, () -> tryDownload(fileName, version, target.toAbsolutePath()));
+            } catch (ContentChangedException e) {
+                // Written again while its ranges were read, start over with the new content
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public void delete(String fileName) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/files/?fileName=" + encode(fileName))).DELETE().build();
+        HttpResponse<String> response = withRetries(true, () -> checked(send(request, HttpResponse.BodyHandlers.ofString()), true));
+        if (response.statusCode() != 200) {
+            throw new FileStorageException(response.statusCode(), response.body());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Adds the version sharing the content of a stored version with the same checksum and size, or returns null when
+     * the service does not have it.
+     */
+    private UploadResult uploadByChecksum(String fileName, byte[] checksum, long size) throws IOException {
+        StringBuilder hex = new StringBuilder(checksum.length * 2);
+        for (byte b : checksum) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/files/by-checksum/" + encode(fileName)
+                + "?checksum=" + hex + "&size=" + size))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        // Retried like a single request upload, it creates a new version as well
+        HttpResponse<String> response = withRetries(false, () -> checked(send(request, HttpResponse.BodyHandlers.ofString()), false));
+        if (response.statusCode() == 404) {
+            return null;
+        }
+        return uploadResult(response);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private UploadResult uploadWhole(String fileName, HttpRequest.BodyPublisher body) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/files/upload/" + encode(fileName)))
+                .header("Content-Type", "application/octet-stream")
+                .POST(body)
+                .build();
+        // A new version is created every time, so it is only sent again when the service did not take it
+        return uploadResult(withRetries(false, () -> checked(send(request, HttpResponse.BodyHandlers.ofString()), false)));
+    }
+
+    private UploadResult uploadParts(String fileName, long size, PartBody body) throws IOException {
+        String partsUrl = baseUrl + "/files/parts/" + encode(fileName) + "?upload=" + UUID.randomUUID();
+        int parts = (int) ((size + partSize - 1) / partSize);
+
+        List<Callable<Void>> tasks = new ArrayList<>(parts);
+        for (int part = 0; part < parts; part++) {
+            long offset = (long) part * partSize;
+            int length = (int) Math.min(partSize, size - offset);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(partsUrl + "&part=" + part))
+                    .header("Content-Type", "application/octet-stream")
+                    .PUT(body.of(offset, length))
+                    .build();
+            tasks.add(() -> {
+                HttpResponse<String> response = withRetries(true, () -> checked(send(request, HttpResponse.BodyHandlers.ofString()), true));
+                if (response.statusCode() != 204) {
+                    throw new FileStorageException(response.statusCode(), response.body());
+                }
+                return null;
+            });
+        }
+
+        try {
+            runAll(tasks);
+            HttpRequest complete = HttpRequest.newBuilder(URI.create(partsUrl + "&parts=" + parts))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            return uploadResult(withRetries(true, () -> checked(send(complete, HttpResponse.BodyHandlers.ofString()), true)));
+        } catch (IOException | RuntimeException e) {
+            try {
+                send(HttpRequest.newBuilder(URI.create(partsUrl)).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+            } catch (IOException | RuntimeException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    private UploadResult uploadResult(HttpResponse<String> response) throws IOException {
+        if (response.statusCode() != 200 && response.statusCode() != 201) {
+            throw new FileStorageException(response.statusCode(), response.body());
+        }
+        JsonNode result = objectMapper.readTree(response.body());
+        return new UploadResult(result.path("name").asText(), result.path("version").asInt(), result.path("size").asLong());
+    }
+
+    /**
+     * Reads the first range, asking for it only if it changed when the content is cached, then the other ranges of
+     * the same version at the same time. Bodies are written straight to the file at the position of their range.
+     */
+    private DownloadResult tryDownload(String fileName, Integer version, Path target) throws IOException {
+        try (DownloadCache.Entry cached = cache != null ? cache.open(fileName, version) : null) {
+            DownloadResult[] result = new DownloadResult[1];
+            writeAtomically(target, out -> {
+                HttpRequest.Builder first = HttpRequest.newBuilder(downloadUri(fileName, version)).header("Range", range(0, partSize));
+                if (cached != null) {
+                    first.header("If-None-Match", cached.getEntityTag());
+                }
+                HttpResponse<Received> response = checked(send(first.build(), toChannel(out)), true);
+
+                if (response.statusCode() == 304 && cached != null) {
+                    cached.copyTo(out);
+                    result[0] = new DownloadResult(cached.getVersionNumber(), cached.getSize(), cached.getEntityTag(), true);
+                    return;
+                }
+                if (response.statusCode() == 416) {
+                    // Empty content has no ranges to ask for
+                    response = checked(send(HttpRequest.newBuilder(downloadUri(fileName, version)).build(), toChannel(out)), true);
+                }
+                if (response.statusCode() != 200 && response.statusCode() != 206) {
+                    throw failure(response);
+                }
+
+                String entityTag = response.headers().firstValue("ETag").orElse(null);
+                Integer versionNumber = response.headers().firstValue(VERSION_HEADER).map(Integer::valueOf).orElse(version);
+                long size = response.body().bytes;
+                if (response.statusCode() == 206) {
+                    size = Long.parseLong(contentRange(response).group(3));
+                    downloadRanges(fileName, versionNumber, entityTag, size, out);
+                }
+                result[0] = new DownloadResult(versionNumber != null ? versionNumber : 0, size, entityTag, false);
+            }, temp -> {
+                DownloadResult downloaded = result[0];
+                if (cache != null && !downloaded.isCached() && downloaded.getEntityTag() != null && downloaded.getVersion() > 0) {
+                    cache.put(fileName, version, downloaded.getVersion(), downloaded.getEntityTag(), temp);
+                }
+            });
+            return result[0];
+        }
+    }
+
+    private void downloadRanges(String fileName, Integer version, String entityTag, long size, FileChannel out) throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (long offset = partSize; offset < size; offset += partSize) {
+            long start = offset;
+            long length = Math.min(partSize, size - offset);
+            HttpRequest request = HttpRequest.newBuilder(downloadUri(fileName, version)).header("Range", range(start, length)).build();
+            tasks.add(() -> withRetries(true, () -> {
+                HttpResponse<Received> response = checked(send(request, toChannel(out)), true);
+                if (response.statusCode() != 206) {
+                    throw failure(response);
+                }
+                if (entityTag != null && !entityTag.equals(response.headers().firstValue("ETag").orElse(null))) {
+                    throw new ContentChangedException(fileName);
+                }
+                if (Long.parseLong(contentRange(response).group(1)) != start || response.body().bytes != length) {
+                    throw new IOException("Range at " + start + " of " + fileName + " was not received whole");
+                }
+                return null;
+            }));
+        }
+        runAll(tasks);
+    }
+
+    /**
+     * Writes the body of a whole or ranged download at its position of the file, any other body is kept as text.
+     */
+    private static HttpResponse.BodyHandler<Received> toChannel(FileChannel out) {
+        return info -> {
+            if (info.statusCode() == 200) {
+                return new ChannelSubscriber(out, 0);
+            }
+            Matcher contentRange = CONTENT_RANGE.matcher(info.headers().firstValue("Content-Range").orElse(""));
+            if (info.statusCode() == 206 && contentRange.matches()) {
+                return new ChannelSubscriber(out, Long.parseLong(contentRange.group(1)));
+            }
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                    text -> new Received(-1, text));
+        };
+    }
+
+    private URI downloadUri(String fileName, Integer version) {
+        return URI.create(baseUrl + "/files/download/" + encode(fileName) + (version != null ? "?version=" + version : ""));
+    }
+
+    private static String range(long start, long length) {
+        return "bytes=" + start + "-" + (start + length - 1);
+    }
+
+    private static Matcher contentRange(HttpResponse<?> response) throws IOException {
+        Matcher matcher = CONTENT_RANGE.matcher(response.headers().firstValue("Content-Range").orElse(""));
+        if (!matcher.matches()) {
+            throw new IOException("Unexpected content range in the response: " + response.headers().firstValue("Content-Range"));
+        }
+        return matcher;
+    }
+
+    /**
+     * Writes a temporary file next to the target and moves it over the target once it is complete.
+     */
+    private static void writeAtomically(Path target, ContentWriter writer, CompletedFile completed) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), ".download", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writer.write(out);
+            }
+            completed.accept(temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static InputStream openRange(Path source, long offset, int length) {
+        try {
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+            channel.position(offset);
+            return new FilterInputStream(Channels.newInputStream(channel)) {
+
+                private int remaining = length;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    int read = super.read(b, off, Math.min(len, remaining));
+                    if (read > 0) {
+                        remaining -= read;
+                    }
+                    return read;
+                }
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs the tasks on the pool of the client, failing with the first task that fails and cancelling the rest.
+     */
+    private void runAll(List<Callable<Void>> tasks) throws IOException {
+        List<Future<Void>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        try {
+            return httpClient.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Fails with a retryable error when the service was too busy or could not be reached by a proxy, the latter
+     * only for requests that can be repeated since the service may have received them.
+     */
+    private static <T> HttpResponse<T> checked(HttpResponse<T> response, boolean idempotent) throws IOException {
+        int status = response.statusCode();
+        if (status == 429 || status == 503 || (idempotent && (status == 502 || status == 504))) {
+            long retryAfterMillis = response.headers().firstValue("Retry-After")
+                    .filter(value -> value.matches("\\d+"))
+                    .map(value -> Long.parseLong(value) * 1000)
+                    .orElse(0L);
+            throw new RetryableStatusException(status, bodyOf(response), retryAfterMillis);
+        }
+        return response;
+    }
+
+    private static FileStorageException failure(HttpResponse<?> response) {
+        return new FileStorageException(response.statusCode(), bodyOf(response));
+    }
+
+    private static String bodyOf(HttpResponse<?> response) {
+        return response.body() instanceof Received ? ((Received) response.body()).text : String.valueOf(response.body());
+    }
+
+    private <T> T withRetries(boolean idempotent, Call<T> call) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            long delay = Math.min(MAX_BACKOFF_MILLIS, retryBackoffMillis << Math.min(attempt, 20));
+            try {
+                return call.run();
+            } catch (RetryableStatusException e) {
+                if (attempt >= maxRetries) {
+                    throw new FileStorageException(e.status, e.body);
+                }
+                delay = Math.max(delay, e.retryAfterMillis);
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                // Never reached the service
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+            } catch (InterruptedIOException | ContentChangedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!idempotent || attempt >= maxRetries) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(delay / 2, delay + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+
+        T run() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface PartBody {
+
+        HttpRequest.BodyPublisher of(long offset, int length);
+    }
+
+    @FunctionalInterface
+    private interface ContentWriter {
+
+        void write(FileChannel out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface CompletedFile {
+
+        void accept(Path temp) throws IOException;
+    }
+
+    /**
+     * Bytes of a body written to a file, or the text of a body that was not.
+     */
+    private static final class Received {
+
+        private final long bytes;
+
+        private final String text;
+
+        private Received(long bytes, String text) {
+            this.bytes = bytes;
+            this.text = text;
+        }
+    }
+
+    private static final class ChannelSubscriber implements HttpResponse.BodySubscriber<Received> {
+
+        private final FileChannel out;
+
+        private final long start;
+
+        private final CompletableFuture<Received> result = new CompletableFuture<>();
+
+        private long position;
+
+        private Flow.Subscription subscription;
+
+        private ChannelSubscriber(FileChannel out, long start) {
+            this.out = out;
+            this.start = start;
+            this.position = start;
+        }
+
+        @Override
+        public CompletionStage<Received> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    while (buffer.hasRemaining()) {
+                        position += out.write(buffer, position);
+                    }
+                }
+                subscription.request(1);
+            } catch (IOException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new Received(position - start, null));
+        }
+    }
+
+    private static final class RetryableStatusException extends IOException {
+
+        private final int status;
+
+        private final String body;
+
+        private final long retryAfterMillis;
+
+        private RetryableStatusException(int status, String body, long retryAfterMillis) {
+            super("Service answered " + status);
+            this.status = status;
+            this.body = body;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    private static final class ContentChangedException extends IOException {
+
+        private ContentChangedException(String fileName) {
+            super(fileName + " changed while it was downloaded");
+        }
+    }
+
+    public static final class Builder {
+
+        private final String baseUrl;
+
+        private int parallelism = 4;
+
+        private int partSize = 8 * 1024 * 1024;
+
+        private int maxRetries = 3;
+
+        private Duration retryBackoff = Duration.ofMillis(100);
+
+        private Duration connectTimeout = Duration.ofSeconds(10);
+
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+
+        private Path cacheDirectory;
+
+        private long cacheSize = 1024L * 1024 * 1024;
+
+        private long checksumUploadMinSize = 16L * 1024 * 1024;
+
+        private Builder(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * Parts or ranges of a single file transferred at the same time.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("The parallelism is at least 1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Size of the parts of an upload and of the ranges of a download, files under two parts use a single request.
+         */
+        public Builder partSize(int partSize) {
+            if (partSize < 1) {
+                throw new IllegalArgumentException("The part size is at least 1 byte");
+            }
+            this.partSize = partSize;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Wait before the first retry, doubled on every following one.
+         */
+        public Builder retryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Preferred HTTP version, HTTP/2 falls back to HTTP/1.1 when the service does not offer it.
+         */
+        public Builder version(HttpClient.Version version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Directory keeping downloaded content to download it again only when it changed, none by default.
+         */
+        public Builder cacheDirectory(Path cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        public Builder cacheSize(long cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Uploads of at least this many bytes send the checksum of their content first, so content the service already
+         * stores is not sent again. Long.MAX_VALUE turns it off.
+         */
+        public Builder checksumUploadMinSize(long checksumUploadMinSize) {
+            this.checksumUploadMinSize = checksumUploadMinSize;
+            return this;
+        }
+
+        public FileStorageClient build() throws IOException {
+            return new FileStorageClient(this);
+        }
+    }
+}
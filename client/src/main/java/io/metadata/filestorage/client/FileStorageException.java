@@ -0,0 +1,18 @@
+package io.metadata.filestorage.client;
+
+/**
+ * Error answered by the service, with its HTTP status.
+ */
+public class FileStorageException extends RuntimeException {
+
+    private final int statusCode;
+
+    public FileStorageException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
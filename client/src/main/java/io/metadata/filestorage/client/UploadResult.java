@@ -0,0 +1,31 @@
+package io.metadata.filestorage.client;
+
+/**
+ * Version created by an upload.
+ */
+public class UploadResult {
+
+    private final String name;
+
+    private final int version;
+
+    private final long size;
+
+    UploadResult(String name, int version, long size) {
+        this.name = name;
+        this.version = version;
+        this.size = size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,390 @@
+package io.metadata.filestorage.client;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class FileStorageClientTest {
+
+    private static final int PART_SIZE = 1024;
+
+    private HttpServer server;
+
+    private Path directory;
+
+    // Versions of every file, guarded by the map
+    private final Map<String, List<byte[]>> files = new HashMap<>();
+
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    private final AtomicInteger partRequests = new AtomicInteger();
+
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+
+    private final AtomicInteger busyAnswers = new AtomicInteger();
+
+    private final AtomicInteger transferredBytes = new AtomicInteger();
+
+    private final AtomicInteger uploadedBytes = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("file-storage-client");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        handle("/files/upload/", this::upload);
+        handle("/files/parts/", this::parts);
+        handle("/files/download/", this::download);
+        handle("/files/by-checksum/", this::byChecksum);
+        server.start();
+    }
+
+    /**
+     * Every answer closes its connection, so a retry never goes out on a kept alive connection the server already
+     * dropped, which the client would see as a reset rather than as the answer under test.
+     */
+    private void handle(String path, HttpHandler handler) {
+        server.createContext(path, handler).getFilters().add(new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                exchange.getResponseHeaders().set("Connection", "close");
+                chain.doFilter(exchange);
+            }
+
+            @Override
+            public String description() {
+                return "Closes the connection after every exchange";
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLargeFilesAreTransferredInParts() throws IOException {
+
+        byte[] content = random(10 * PART_SIZE + 100);
+        Path source = directory.resolve("source.bin");
+        Files.write(source, content);
+
+        try (FileStorageClient client = client().build()) {
+            UploadResult result = client.upload("large file.bin", source);
+
+            assertEquals("large file.bin", result.getName());
+            assertEquals(1, result.getVersion());
+            assertEquals(content.length, result.getSize());
+            assertEquals(11, partRequests.get());
+            assertArrayEquals(content, latest("large file.bin"));
+
+            Path target = directory.resolve("target.bin");
+            DownloadResult download = client.download("large file.bin", null, target);
+
+            assertEquals(1, download.getVersion());
+            assertEquals(content.length, download.getSize());
+            assertFalse(download.isCached());
+            assertEquals(11, rangeRequests.get());
+            assertArrayEquals(content, Files.readAllBytes(target));
+        }
+
+    }
+
+    @Test
+    public void testSmallFilesAreTransferredWhole() throws IOException {
+
+        byte[] content = random(PART_SIZE);
+
+        try (FileStorageClient client = client().build()) {
+            client.upload("small.bin", content);
+            assertEquals(0, partRequests.get());
+
+            Path target = directory.resolve("small.bin");
+            client.download("small.bin", 1, target);
+            assertArrayEquals(content, Files.readAllBytes(target));
+
+            client.upload("empty.bin", new byte[0]);
+            client.download("empty.bin", null, target);
+            assertEquals(0, Files.size(target));
+        }
+
+    }
+
+    @Test
+    public void testUnchangedContentIsReadFromTheCache() throws IOException {
+
+        byte[] first = random(4 * PART_SIZE);
+        byte[] second = random(3 * PART_SIZE);
+        Path target = directory.resolve("cached.bin");
+
+        try (FileStorageClient client = client().cacheDirectory(directory.resolve("cache")).build()) {
+            client.upload("cached.bin", first);
+            assertFalse(client.download("cached.bin", null, target).isCached());
+
+            transferredBytes.set(0);
+            DownloadResult cached = client.download("cached.bin", null, target);
+            assertTrue(cached.isCached());
+            assertEquals(first.length, cached.getSize());
+            assertEquals(0, transferredBytes.get());
+            assertArrayEquals(first, Files.readAllBytes(target));
+
+            client.upload("cached.bin", second);
+            DownloadResult changed = client.download("cached.bin", null, target);
+            assertFalse(changed.isCached());
+            assertEquals(2, changed.getVersion());
+            assertArrayEquals(second, Files.readAllBytes(target));
+        }
+
+    }
+
+    @Test
+    public void testBusyAnswersAreRetried() throws IOException {
+
+        byte[] content = random(5 * PART_SIZE);
+        busyAnswers.set(3);
+
+        try (FileStorageClient client = client().build()) {
+            client.upload("retried.bin", content);
+            assertEquals(0, busyAnswers.get());
+            assertArrayEquals(content, latest("retried.bin"));
+        }
+
+        busyAnswers.set(10);
+        try (FileStorageClient client = client().maxRetries(1).build()) {
+            client.upload("failed.bin", content);
+            fail();
+        } catch (FileStorageException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+
+    }
+
+    @Test
+    public void testStoredContentIsNotUploadedAgain() throws IOException {
+
+        byte[] content = random(6 * PART_SIZE);
+        Path source = directory.resolve("artifact.bin");
+        Files.write(source, content);
+
+        try (FileStorageClient client = client().checksumUploadMinSize(PART_SIZE).build()) {
+            client.upload("build-1.bin", source);
+            assertEquals(content.length, uploadedBytes.get());
+
+            UploadResult second = client.upload("build-2.bin", source);
+            assertEquals("build-2.bin", second.getName());
+            assertEquals(1, second.getVersion());
+            assertEquals(content.length, second.getSize());
+            UploadResult third = client.upload("build-3.bin", content);
+            assertEquals(1, third.getVersion());
+            assertEquals(content.length, uploadedBytes.get());
+            assertArrayEquals(content, latest("build-2.bin"));
+            assertArrayEquals(content, latest("build-3.bin"));
+
+            client.upload("small.bin", new byte[PART_SIZE - 1]);
+            assertEquals(content.length + PART_SIZE - 1, uploadedBytes.get());
+        }
+
+    }
+
+    private FileStorageClient.Builder client() {
+        return FileStorageClient.builder("http://localhost:" + server.getAddress().getPort())
+                .partSize(PART_SIZE)
+                .parallelism(4)
+                .version(HttpClient.Version.HTTP_1_1)
+                .retryBackoff(Duration.ofMillis(1));
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private byte[] latest(String fileName) {
+        synchronized (files) {
+            List<byte[]> versions = files.get(fileName);
+            return versions.get(versions.size() - 1);
+        }
+    }
+
+    private int store(String fileName, byte[] content) {
+        synchronized (files) {
+            List<byte[]> versions = files.computeIfAbsent(fileName, name -> new ArrayList<>());
+            versions.add(content);
+            return versions.size();
+        }
+    }
+
+    private void upload(HttpExchange exchange) throws IOException {
+        String fileName = fileNameOf(exchange, "/files/upload/");
+        byte[] content = exchange.getRequestBody().readAllBytes();
+        uploadedBytes.addAndGet(content.length);
+        respondCreated(exchange, fileName, store(fileName, content), content.length);
+    }
+
+    private void parts(HttpExchange exchange) throws IOException {
+        String fileName = fileNameOf(exchange, "/files/parts/");
+        Map<String, String> query = queryOf(exchange);
+        Map<Integer, byte[]> parts = uploads.computeIfAbsent(query.get("upload"), id -> new ConcurrentHashMap<>());
+        switch (exchange.getRequestMethod()) {
+            case "PUT":
+                byte[] part = exchange.getRequestBody().readAllBytes();
+                uploadedBytes.addAndGet(part.length);
+                if (busyAnswers.getAndUpdate(busy -> Math.max(0, busy - 1)) > 0) {
+                    exchange.getResponseHeaders().set("Retry-After", "0");
+                    respond(exchange, 503, new byte[0]);
+                    return;
+                }
+                partRequests.incrementAndGet();
+                parts.put(Integer.valueOf(query.get("part")), part);
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+                return;
+            case "POST":
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                for (byte[] bytes : new TreeMap<>(parts).values()) {
+                    content.write(bytes);
+                }
+                assertEquals(Integer.parseInt(query.get("parts")), parts.size());
+                respondCreated(exchange, fileName, store(fileName, content.toByteArray()), content.size());
+                return;
+            default:
+                uploads.remove(query.get("upload"));
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+        }
+    }
+
+    private void byChecksum(HttpExchange exchange) throws IOException {
+        String fileName = fileNameOf(exchange, "/files/by-checksum/");
+        Map<String, String> query = queryOf(exchange);
+        byte[] found = null;
+        synchronized (files) {
+            for (List<byte[]> versions : files.values()) {
+                for (byte[] content : versions) {
+                    if (content.length == Long.parseLong(query.get("size")) && sha256(content).equals(query.get("checksum"))) {
+                        found = content;
+                    }
+                }
+            }
+        }
+        if (found == null) {
+            respond(exchange, 404, new byte[0]);
+            return;
+        }
+        respondCreated(exchange, fileName, store(fileName, found), found.length);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void download(HttpExchange exchange) throws IOException {
+        String fileName = fileNameOf(exchange, "/files/download/");
+        String version = queryOf(exchange).get("version");
+        byte[] content;
+        int versionNumber;
+        synchronized (files) {
+            List<byte[]> versions = files.get(fileName);
+            versionNumber = version != null ? Integer.parseInt(version) : versions.size();
+            content = versions.get(versionNumber - 1);
+        }
+        String entityTag = "\"" + versionNumber + "-" + content.length + "\"";
+        exchange.getResponseHeaders().set("ETag", entityTag);
+        exchange.getResponseHeaders().set(FileStorageClient.VERSION_HEADER, String.valueOf(versionNumber));
+
+        if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            respond(exchange, 200, content);
+            return;
+        }
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int start = Integer.parseInt(bounds[0]);
+        if (start >= content.length) {
+            respond(exchange, 416, new byte[0]);
+            return;
+        }
+        int end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+        rangeRequests.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        respond(exchange, 206, Arrays.copyOfRange(content, start, end + 1));
+    }
+
+    private void respondCreated(HttpExchange exchange, String fileName, int version, long size) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        respond(exchange, 201, ("{\"name\":\"" + fileName + "\",\"version\":" + version + ",\"size\":" + size + "}")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        transferredBytes.addAndGet(body.length);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String fileNameOf(HttpExchange exchange, String prefix) {
+        return exchange.getRequestURI().getPath().substring(prefix.length());
+    }
+
+    private static Map<String, String> queryOf(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                String[] pair = parameter.split("=", 2);
+                query.put(pair[0], URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+}
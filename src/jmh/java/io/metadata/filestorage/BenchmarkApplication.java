@@ -0,0 +1,81 @@
+package io.metadata.filestorage;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Boots the application against a temporary data directory and, unless told otherwise, an in-memory H2 database,
+ * so benchmarks exercise the real repositories and file system without a MySQL server.
+ */
+public final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    public static ConfigurableApplicationContext start(Path databasePath) {
+        return start(databasePath, "memory");
+    }
+
+    /**
+     * Boots the application keeping the metadata in the given database: "memory" for an in-memory H2 database,
+     * "embedded" for the embedded profile storing it next to the files, or "mysql" for the MySQL server at the
+     * benchmark.mysql.url system property, whose schema is dropped first.
+     */
+    public static ConfigurableApplicationContext start(Path databasePath, String database) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.jpa.hibernate.ddl-auto=none",
+                "--spring.devtools.restart.enabled=false",
+                "--spring.jmx.enabled=false",
+                "--logging.level.root=WARN",
+                "--file.database.path=" + databasePath.resolve("files").toAbsolutePath()));
+        switch (database) {
+            case "memory":
+                args.addAll(Arrays.asList(
+                        "--spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=sa",
+                        "--spring.datasource.driver-class-name=org.h2.Driver"));
+                break;
+            case "embedded":
+                args.addAll(Arrays.asList(
+                        "--spring.profiles.active=embedded",
+                        "--file.metadata.path=" + databasePath.resolve("metadata").toAbsolutePath(),
+                        "--file.metadata.snapshots.enabled=false"));
+                break;
+            case "mysql":
+                args.addAll(Arrays.asList(
+                        "--spring.datasource.url=" + System.getProperty("benchmark.mysql.url",
+                                "jdbc:mysql://localhost:3306/filestorage_bench?createDatabaseIfNotExist=true&useSSL=false"),
+                        "--spring.liquibase.drop-first=true"));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown database " + database);
+        }
+
+        return new SpringApplicationBuilder(FileStorageApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(args.toArray(new String[0]));
+    }
+
+    public static Path createDatabasePath() throws IOException {
+        return Files.createTempDirectory("file-storage-bench");
+    }
+
+    public static void deleteDatabasePath(Path databasePath) throws IOException {
+        try (Stream<Path> paths = Files.walk(databasePath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package io.metadata.filestorage.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.metadata.filestorage.model.dto.FileDTO;
+import io.metadata.filestorage.service.FileService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares per row URI template expansion against links built from a base URI resolved once per listing.
+ * Scores are per row, run with the gc profiler to compare the allocation per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(DownloadLinkBenchmark.ROWS)
+public class DownloadLinkBenchmark {
+
+    static final int ROWS = 10_000;
+
+    private static final String DOWNLOAD_URI_TEMPLATE = "/files/download/{fileName}";
+
+    private List<FileDTO> files;
+
+    private ObjectMapper objectMapper;
+
+    private FileController fileController;
+
+    private DownloadLinkBuilder downloadLinkBuilder;
+
+    private HttpServletResponse response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        files = new ArrayList<>(ROWS);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < ROWS; i++) {
+            // One in ten names needs encoding
+            String fileName = i % 10 == 0 ? "reports/file " + i + ".json" : "reports/file-" + i + ".json";
+            files.add(new FileDTO(fileName, i % 50 + 1, now));
+        }
+
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        FileService fileService = mock(FileService.class);
+        doAnswer(invocation -> {
+            Consumer<FileDTO> consumer = invocation.getArgument(0);
+            files.forEach(consumer);
+            return null;
+        }).when(fileService).forEachFile(any());
+        fileController = new FileController(fileService, objectMapper, "", 1000);
+        downloadLinkBuilder = new DownloadLinkBuilder("");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/");
+        request.setServerName("localhost");
+        request.setServerPort(8080);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        response = new DiscardingResponse();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public void perRowUriTemplate(Blackhole blackhole) {
+        for (FileDTO file : files) {
+            blackhole.consume(ServletUriComponentsBuilder.fromCurrentContextPath().path(DOWNLOAD_URI_TEMPLATE)
+                    .queryParam("version", file.getLatestVersion())
+                    .buildAndExpand(file.getName())
+                    .toUri().toASCIIString());
+        }
+    }
+
+    @Benchmark
+    public void cachedBaseUri(Blackhole blackhole) {
+        String baseUri = downloadLinkBuilder.resolveBaseUri();
+        StringBuilder link = new StringBuilder(128);
+        for (FileDTO file : files) {
+            link.setLength(0);
+            blackhole.consume(downloadLinkBuilder.append(link, baseUri, file.getName(), file.getLatestVersion()));
+        }
+    }
+
+    @Benchmark
+    public void listingWithPerRowUriTemplate() throws IOException {
+        for (FileDTO file : files) {
+            file.setDownloadLink(ServletUriComponentsBuilder.fromCurrentContextPath().path(DOWNLOAD_URI_TEMPLATE)
+                    .queryParam("version", file.getLatestVersion())
+                    .buildAndExpand(file.getName())
+                    .toUri().toASCIIString());
+        }
+        objectMapper.writeValue(OutputStream.nullOutputStream(), files);
+    }
+
+    @Benchmark
+    public void streamingListing() throws IOException {
+        fileController.findAll(response);
+    }
+
+    private static class DiscardingResponse extends HttpServletResponseWrapper {
+
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+
+        DiscardingResponse() {
+            super(new MockHttpServletResponse());
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+    }
+}
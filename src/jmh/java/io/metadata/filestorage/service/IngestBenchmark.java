@@ -0,0 +1,70 @@
+package io.metadata.filestorage.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of writing an upload to disk with its checksum, through the ingest pipeline and through the single
+ * copy it replaced. The bytes counter gives the MB/s and the gc profiler the allocation rate of each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestBenchmark {
+
+    @Param({"65536", "1048576", "67108864"})
+    private int fileSize;
+
+    private Path directory;
+
+    private IngestPipeline pipeline;
+
+    private byte[] content;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Written {
+
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ingest-benchmark");
+        pipeline = new IngestPipeline(128 * 1024, 64, 4, 32);
+
+        content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pipeline.shutdown();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String pipeline(Written written) throws IOException {
+        StoredContent stored = pipeline.write(new ByteArrayInputStream(content), directory.resolve("1pipeline.bin"));
+        written.bytes += stored.getSize();
+        return stored.getChecksum();
+    }
+
+    @Benchmark
+    public String filesCopy(Written written) throws IOException {
+        MessageDigest digest = StoredContent.newDigest();
+        long size = Files.copy(new DigestInputStream(new ByteArrayInputStream(content), digest), directory.resolve("1copy.bin"), StandardCopyOption.REPLACE_EXISTING);
+        written.bytes += size;
+        return StoredContent.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,82 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.BenchmarkApplication;
+import io.metadata.filestorage.model.dto.FileDTO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetadataBenchmark {
+
+    private static final int VERSIONS_PER_FILE = 3;
+
+    @Param({"100", "10000"})
+    private int fileCount;
+
+    // Add mysql with -p database=memory,embedded,mysql when a server is available
+    @Param({"memory", "embedded"})
+    private String database;
+
+    private Path databasePath;
+
+    private ConfigurableApplicationContext context;
+
+    private FileService fileService;
+
+    private String[] fileNames;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        databasePath = BenchmarkApplication.createDatabasePath();
+        context = BenchmarkApplication.start(databasePath, database);
+        fileService = context.getBean(FileService.class);
+
+        fileNames = new String[fileCount];
+        ByteArrayResource data = new ByteArrayResource("{\"key1\": \"value1\"}".getBytes());
+
+        for (int i = 0; i < fileCount; i++) {
+            String fileName = "file-" + i + ".json";
+            fileNames[i] = fileName;
+            for (int version = 0; version < VERSIONS_PER_FILE; version++) {
+                fileService.save(fileName, data);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        BenchmarkApplication.deleteDatabasePath(databasePath);
+    }
+
+    private String nextFileName() {
+        next = (next + 1) % fileNames.length;
+        return fileNames[next];
+    }
+
+    @Benchmark
+    public List<FileDTO> findAllFiles() {
+        return fileService.findAll();
+    }
+
+    @Benchmark
+    public Integer allocateVersionNumber() {
+        return fileService.getNewVersionNumber(nextFileName());
+    }
+
+    @Benchmark
+    public Resource getResourceFile() {
+        return fileService.getResourceFile(nextFileName(), null);
+    }
+}
@@ -0,0 +1,68 @@
+package io.metadata.filestorage.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches of a page of names in the trigram index of the file names, at millions of names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NameIndexBenchmark {
+
+    private static final String[] ENVIRONMENTS = {"prod", "staging", "dev", "test"};
+
+    private static final String[] EXTENSIONS = {".yaml", ".json", ".properties", ".log"};
+
+    @Param({"1000000", "3000000"})
+    private int names;
+
+    private TrigramIndex index;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new TrigramIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < names; i++) {
+            index.add(nameOf(i));
+        }
+        System.out.printf("%nIndexed %d names in %d ms%n", names, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        next = names;
+    }
+
+    private static String nameOf(int i) {
+        return "service-" + (i % 5000) + "-" + ENVIRONMENTS[(i / 5000) % ENVIRONMENTS.length] + "-config-" + i + EXTENSIONS[(i / 7) % EXTENSIONS.length];
+    }
+
+    @Benchmark
+    public List<String> globCommon() {
+        return index.search(FileNameIndex.Type.GLOB, "*prod*.yaml", null, 101);
+    }
+
+    @Benchmark
+    public List<String> globRare() {
+        return index.search(FileNameIndex.Type.GLOB, "service-42-*-config-*7.json", null, 101);
+    }
+
+    @Benchmark
+    public List<String> prefix() {
+        return index.search(FileNameIndex.Type.PREFIX, "service-4999-staging", null, 101);
+    }
+
+    @Benchmark
+    public List<String> substring() {
+        return index.search(FileNameIndex.Type.SUBSTRING, "-config-123456", null, 101);
+    }
+
+    @Benchmark
+    public boolean addAndRemove() {
+        String name = nameOf(next++);
+        index.add(name);
+        return index.remove(name);
+    }
+}
@@ -0,0 +1,70 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.BenchmarkApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistFileBenchmark {
+
+    private static final String FILE_NAME = "benchmark.bin";
+
+    @Param({"1024", "65536", "1048576", "16777216"})
+    private int fileSize;
+
+    private Path databasePath;
+
+    private ConfigurableApplicationContext context;
+
+    private FileService fileService;
+
+    private byte[] content;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        databasePath = BenchmarkApplication.createDatabasePath();
+        context = BenchmarkApplication.start(databasePath);
+        fileService = context.getBean(FileService.class);
+
+        content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+
+        fileService.save(FILE_NAME, new ByteArrayResource(content));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        BenchmarkApplication.deleteDatabasePath(databasePath);
+    }
+
+    @Benchmark
+    public void persistFileOnFileSystem() {
+        fileService.persistFileOnFileSystem(FILE_NAME, 1, new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    public long readPersistedFile() throws IOException {
+        Resource resource = fileService.getResourceFile(FILE_NAME, 1);
+        long read = 0;
+        try (InputStream in = resource.getInputStream()) {
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                read += n;
+            }
+        }
+        return read;
+    }
+}
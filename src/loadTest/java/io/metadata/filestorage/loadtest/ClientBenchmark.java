@@ -0,0 +1,152 @@
+package io.metadata.filestorage.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.metadata.filestorage.client.FileStorageClient;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Boots the service in this JVM and transfers a large file with plain single requests, the way most callers do, and
+ * with the client: parts and ranges at the same time, and downloads again answered from its cache.
+ * Reports the median throughput of every way over a few iterations.
+ */
+public class ClientBenchmark {
+
+    private static final int FILE_SIZE = Integer.getInteger("loadTest.clientFileSize", 256 * 1024 * 1024);
+
+    private static final int ITERATIONS = Integer.getInteger("loadTest.clientIterations", 3);
+
+    private static final int PARALLELISM = Integer.getInteger("loadTest.clientParallelism", 4);
+
+    private static final int PART_SIZE = Integer.getInteger("loadTest.clientPartSize", 8 * 1024 * 1024);
+
+    private static final Path REPORT_DIRECTORY = Paths.get(System.getProperty("loadTest.reportDir", "build/reports/load-test"));
+
+    private interface Transfer {
+        void run(int iteration) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("file-storage-client-benchmark");
+        ConfigurableApplicationContext context = LoadTest.startEmbedded(directory.resolve("files"),
+                "--file.parts.path=" + directory.resolve("parts"));
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+        try (FileStorageClient client = FileStorageClient.builder(baseUrl).parallelism(PARALLELISM).partSize(PART_SIZE).build();
+             FileStorageClient cachingClient = FileStorageClient.builder(baseUrl).parallelism(PARALLELISM).partSize(PART_SIZE)
+                     .cacheDirectory(directory.resolve("cache")).build()) {
+
+            Path source = directory.resolve("source.bin");
+            long checksum = writeRandom(source);
+            Path target = directory.resolve("target.bin");
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("fileSize", FILE_SIZE);
+            report.put("parallelism", PARALLELISM);
+            report.put("partSize", PART_SIZE);
+
+            report.put("plainUploadMBps", measure(i -> plainUpload(baseUrl, "plain-" + i + ".bin", source)));
+            report.put("clientUploadMBps", measure(i -> client.upload("client-" + i + ".bin", source)));
+
+            report.put("plainDownloadMBps", measure(i -> plainDownload(baseUrl, "plain-" + i + ".bin", target)));
+            verify(target, checksum);
+            report.put("clientDownloadMBps", measure(i -> client.download("client-" + i + ".bin", null, target)));
+            verify(target, checksum);
+
+            cachingClient.download("client-0.bin", null, target);
+            report.put("cachedDownloadMBps", measure(i -> {
+                if (!cachingClient.download("client-0.bin", null, target).isCached()) {
+                    throw new IllegalStateException("Download not answered from the cache");
+                }
+            }));
+            verify(target, checksum);
+
+            Files.createDirectories(REPORT_DIRECTORY);
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(REPORT_DIRECTORY.resolve("client-benchmark.json").toFile(), report);
+            report.forEach((key, value) -> System.out.printf("%-24s %s%n", key, value));
+        } finally {
+            context.close();
+            LoadTest.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Median throughput in MB/s over the iterations.
+     */
+    private static double measure(Transfer transfer) throws IOException {
+        double[] throughputs = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            transfer.run(i);
+            throughputs[i] = FILE_SIZE / 1048576.0 / ((System.nanoTime() - start) / 1e9);
+        }
+        Arrays.sort(throughputs);
+        return Math.round(throughputs[ITERATIONS / 2] * 10) / 10.0;
+    }
+
+    private static void plainUpload(String baseUrl, String fileName, Path source) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/files/upload/" + fileName).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(Files.size(source));
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        try (OutputStream out = connection.getOutputStream()) {
+            Files.copy(source, out);
+        }
+        if (connection.getResponseCode() != 201) {
+            throw new IllegalStateException("Upload of " + fileName + " failed: " + connection.getResponseCode());
+        }
+        connection.getInputStream().close();
+    }
+
+    private static void plainDownload(String baseUrl, String fileName, Path target) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/files/download/" + fileName).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static long writeRandom(Path path) throws IOException {
+        Random random = new Random(42);
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[1024 * 1024];
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (int written = 0; written < FILE_SIZE; written += chunk.length) {
+                random.nextBytes(chunk);
+                int length = Math.min(chunk.length, FILE_SIZE - written);
+                crc.update(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void verify(Path path, long checksum) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[1024 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            for (int read; (read = in.read(chunk)) >= 0; ) {
+                crc.update(chunk, 0, read);
+            }
+        }
+        if (crc.getValue() != checksum) {
+            throw new IllegalStateException("Downloaded content does not match the uploaded one");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.metadata.filestorage.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Boots several nodes in this JVM, on their own port and data directory and sharing an in-memory H2 database,
+ * uploads files through all of them, then stops the first node, wipes the disk of the second and downloads every
+ * file from the remaining ones.
+ * Reports the upload throughput with replication and how many files stayed available.
+ */
+public class ClusterTest {
+
+    private static final int NODES = Integer.getInteger("loadTest.nodes", 3);
+
+    private static final int WRITE_QUORUM = Integer.getInteger("loadTest.writeQuorum", 2);
+
+    private static final int FILES = Integer.getInteger("loadTest.clusterFiles", 200);
+
+    private static final int FILE_SIZE = Integer.getInteger("loadTest.clusterFileSize", 65536);
+
+    private static final int CONCURRENCY = Integer.getInteger("loadTest.concurrency", 16);
+
+    private static final Path REPORT_DIRECTORY = Paths.get(System.getProperty("loadTest.reportDir", "build/reports/load-test"));
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    public static void main(String[] args) throws Exception {
+        new ClusterTest().run();
+    }
+
+    private void run() throws Exception {
+        int[] ports = new int[NODES];
+        for (int i = 0; i < NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports[i] = socket.getLocalPort();
+            }
+        }
+        String databaseUrl = "jdbc:h2:mem:cluster-test-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+
+        List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        try {
+            for (int i = 0; i < NODES; i++) {
+                int node = i;
+                String peers = IntStream.range(0, NODES)
+                        .filter(peer -> peer != node)
+                        .mapToObj(peer -> "http://localhost:" + ports[peer])
+                        .collect(Collectors.joining(","));
+                Path directory = Files.createTempDirectory("file-storage-cluster-" + i);
+                directories.add(directory);
+                nodes.add(LoadTest.startEmbedded(ports[i], databaseUrl, directory,
+                        "--file.replication.peers=" + peers,
+                        "--file.replication.write-quorum=" + WRITE_QUORUM,
+                        "--file.replication.token=cluster-test",
+                        "--file.reconciler.on-startup=false"));
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("nodes", NODES);
+            report.put("writeQuorum", WRITE_QUORUM);
+            report.put("files", FILES);
+            report.put("fileSize", FILE_SIZE);
+
+            byte[] payload = new byte[FILE_SIZE];
+            new Random(42).nextBytes(payload);
+
+            long start = System.nanoTime();
+            long uploaded = count(i -> upload(ports[i % NODES], "cluster-test-" + i + ".bin", payload));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report.put("uploaded", uploaded);
+            report.put("uploadsPerSecond", round(uploaded / seconds));
+            report.put("uploadMegabytesPerSecond", round(uploaded * (double) FILE_SIZE / 1_048_576 / seconds));
+
+            // Lose the first node and the disk of the second, every file has to be served by the others
+            nodes.get(0).close();
+            if (NODES > 2) {
+                LoadTest.deleteDirectory(directories.get(1));
+                Files.createDirectories(directories.get(1));
+            }
+
+            start = System.nanoTime();
+            long available = count(i -> download(ports[1 + i % (NODES - 1)], "cluster-test-" + i + ".bin") == FILE_SIZE);
+            seconds = (System.nanoTime() - start) / 1e9;
+            report.put("availableAfterFailover", available);
+            report.put("downloadsPerSecondAfterFailover", round(available / seconds));
+
+            Files.createDirectories(REPORT_DIRECTORY);
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(REPORT_DIRECTORY.resolve("cluster-test.json").toFile(), report);
+            report.forEach((key, value) -> System.out.printf("%-32s %s%n", key, value));
+        } finally {
+            for (ConfigurableApplicationContext node : nodes) {
+                node.close();
+            }
+            for (Path directory : directories) {
+                LoadTest.deleteDirectory(directory);
+            }
+        }
+    }
+
+    private interface FileTask {
+        boolean run(int file) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Runs the task for every file from the concurrent workers and counts the successful ones.
+     */
+    private long count(FileTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < FILES; i++) {
+                int file = i;
+                results.add(executor.submit(() -> task.run(file)));
+            }
+            long successes = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    successes++;
+                }
+            }
+            return successes;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private boolean upload(int port, String fileName, byte[] payload) throws IOException, InterruptedException {
+        HttpResponse<Void> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/files/upload/" + fileName))
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                        .header("Content-Type", "application/octet-stream")
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() == 201;
+    }
+
+    private long download(int port, String fileName) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/files/download/" + fileName)).GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            long bytes = body.transferTo(OutputStream.nullOutputStream());
+            return response.statusCode() == 200 ? bytes : -1;
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
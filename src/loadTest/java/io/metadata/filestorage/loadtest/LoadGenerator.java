@@ -0,0 +1,230 @@
+package io.metadata.filestorage.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a weighted mix of operations against a running file storage service from a fixed number of
+ * concurrent workers, first for a warm up period that is not recorded and then for the measured duration.
+ * The workers are spread over a number of clients, so the share of the bandwidth every client gets can be compared.
+ */
+class LoadGenerator {
+
+    static final String CLIENT_HEADER = "X-Client-Id";
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("\"version\"\\s*:\\s*(\\d+)");
+
+    private final LoadTestConfig config;
+
+    private final String baseUrl;
+
+    private final HttpClient httpClient;
+
+    private final WeightedChoice<Operation> operations;
+
+    private final WeightedChoice<Integer> sizes;
+
+    private final String[] fileNames;
+
+    private final Map<String, Integer> latestVersions = new ConcurrentHashMap<>();
+
+    private final byte[] payload;
+
+    private final AtomicLongArray clientBytes;
+
+    LoadGenerator(LoadTestConfig config, String baseUrl) {
+        this.config = config;
+        this.baseUrl = baseUrl;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.operations = new WeightedChoice<>(config.mix, name -> Operation.valueOf(name.toUpperCase()));
+        this.sizes = new WeightedChoice<>(config.sizes, Integer::valueOf);
+
+        this.fileNames = new String[config.fileNames];
+        for (int i = 0; i < fileNames.length; i++) {
+            fileNames[i] = "load-test-" + i + ".bin";
+        }
+
+        int maxSize = 0;
+        for (String size : config.sizes.split(",")) {
+            maxSize = Math.max(maxSize, Integer.parseInt(size.split("=")[0].trim()));
+        }
+        payload = new byte[maxSize];
+        new Random(42).nextBytes(payload);
+
+        clientBytes = new AtomicLongArray(Math.max(1, config.clients));
+    }
+
+    LoadTestReport run() throws Exception {
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(config.warmupSeconds);
+        long endNanos = measureFromNanos + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.concurrency);
+        List<Future<Map<Operation, OperationStats>>> workers = new ArrayList<>();
+        for (int i = 0; i < config.concurrency; i++) {
+            long seed = i;
+            int client = i % clientBytes.length();
+            workers.add(executor.submit(() -> work(client, new Random(seed), measureFromNanos, endNanos)));
+        }
+
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+        for (Future<Map<Operation, OperationStats>> worker : workers) {
+            worker.get().forEach((operation, workerStats) -> stats.get(operation).merge(workerStats));
+        }
+        executor.shutdown();
+
+        long[] bytesPerClient = new long[clientBytes.length()];
+        for (int i = 0; i < bytesPerClient.length; i++) {
+            bytesPerClient[i] = clientBytes.get(i);
+        }
+
+        return new LoadTestReport(config, baseUrl, config.durationSeconds, stats, bytesPerClient);
+    }
+
+    private Map<Operation, OperationStats> work(int client, Random random, long measureFromNanos, long endNanos) {
+        String clientId = "load-test-client-" + client;
+
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+
+        long now;
+        while ((now = System.nanoTime()) < endNanos) {
+            String fileName = fileNames[random.nextInt(fileNames.length)];
+            Integer version = latestVersions.get(fileName);
+            Operation operation = operations.next(random);
+
+            // Operations on files that do not exist yet become uploads, so the mix stays error free
+            if (version == null && operation != Operation.LIST) {
+                operation = Operation.UPLOAD;
+            }
+
+            boolean error;
+            long bytes = 0;
+            long start = System.nanoTime();
+            try {
+                switch (operation) {
+                    case UPLOAD:
+                        bytes = sizes.next(random);
+                        error = upload(clientId, fileName, (int) bytes);
+                        break;
+                    case UPDATE:
+                        bytes = sizes.next(random);
+                        error = update(clientId, fileName, version, (int) bytes);
+                        break;
+                    case DOWNLOAD:
+                        bytes = download(clientId, fileName);
+                        error = bytes < 0;
+                        break;
+                    case LIST:
+                        bytes = list();
+                        error = bytes < 0;
+                        break;
+                    default:
+                        error = delete(fileName);
+                        break;
+                }
+            } catch (IOException e) {
+                error = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long latency = System.nanoTime() - start;
+
+            if (now >= measureFromNanos) {
+                stats.get(operation).record(latency, error, Math.max(bytes, 0));
+                if (!error && operation != Operation.LIST) {
+                    clientBytes.addAndGet(client, Math.max(bytes, 0));
+                }
+            }
+        }
+        return stats;
+    }
+
+    private boolean upload(String clientId, String fileName, int size) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(
+                HttpRequest.newBuilder(uri("/files/upload/" + fileName))
+                        .header(CLIENT_HEADER, clientId)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(payload, 0, size))
+                        .header("Content-Type", "application/octet-stream")
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        Matcher matcher = VERSION_PATTERN.matcher(response.body());
+        if (response.statusCode() == 201 && matcher.find()) {
+            latestVersions.merge(fileName, Integer.valueOf(matcher.group(1)), Math::max);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean update(String clientId, String fileName, Integer version, int size) throws IOException, InterruptedException {
+        HttpResponse<Void> response = httpClient.send(
+                HttpRequest.newBuilder(uri("/files/update/" + fileName + "?version=" + version))
+                        .header(CLIENT_HEADER, clientId)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(payload, 0, size))
+                        .header("Content-Type", "application/octet-stream")
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() >= 400;
+    }
+
+    private long download(String clientId, String fileName) throws IOException, InterruptedException {
+        return readBody(HttpRequest.newBuilder(uri("/files/download/" + fileName)).header(CLIENT_HEADER, clientId).GET().build());
+    }
+
+    private long list() throws IOException, InterruptedException {
+        return readBody(HttpRequest.newBuilder(uri("/files/")).GET().build());
+    }
+
+    private boolean delete(String fileName) throws IOException, InterruptedException {
+        latestVersions.remove(fileName);
+        HttpResponse<Void> response = httpClient.send(
+                HttpRequest.newBuilder(uri("/files/?fileName=" + URLEncoder.encode(fileName, StandardCharsets.UTF_8)))
+                        .DELETE()
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() >= 400;
+    }
+
+    private long readBody(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            long bytes = body.transferTo(OutputStream.nullOutputStream());
+            return response.statusCode() >= 400 ? -1 : bytes;
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+}
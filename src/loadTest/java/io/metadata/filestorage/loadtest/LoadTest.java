@@ -0,0 +1,75 @@
+package io.metadata.filestorage.loadtest;
+
+import io.metadata.filestorage.FileStorageApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * End to end load test. Without "loadTest.baseUrl" the service is booted in this JVM on a random port,
+ * backed by an in-memory H2 database and a temporary data directory.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = new LoadTestConfig();
+
+        ConfigurableApplicationContext context = null;
+        Path databasePath = null;
+        String baseUrl = config.baseUrl;
+
+        if (config.isEmbedded()) {
+            databasePath = Files.createTempDirectory("file-storage-load-test");
+            context = startEmbedded(databasePath);
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        try {
+            LoadTestReport report = new LoadGenerator(config, baseUrl).run();
+            report.write(config.reportDirectory);
+            report.print();
+            System.out.println("Report written to " + config.reportDirectory.toAbsolutePath());
+        } finally {
+            if (context != null) {
+                context.close();
+                deleteDirectory(databasePath);
+            }
+        }
+    }
+
+    static ConfigurableApplicationContext startEmbedded(Path databasePath, String... extraArgs) {
+        return startEmbedded(0, "jdbc:h2:mem:load-test-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", databasePath, extraArgs);
+    }
+
+    static ConfigurableApplicationContext startEmbedded(int port, String databaseUrl, Path databasePath, String... extraArgs) {
+        String[] args = {
+                "--server.port=" + port,
+                "--spring.datasource.url=" + databaseUrl,
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=sa",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.hibernate.ddl-auto=none",
+                "--spring.devtools.restart.enabled=false",
+                "--spring.jmx.enabled=false",
+                "--spring.servlet.multipart.max-file-size=-1",
+                "--spring.servlet.multipart.max-request-size=-1",
+                "--logging.level.root=WARN",
+                "--file.transfer.client-header=" + LoadGenerator.CLIENT_HEADER,
+                "--file.database.path=" + databasePath.toAbsolutePath()
+        };
+        String[] allArgs = Stream.concat(Stream.of(args), Stream.of(extraArgs)).toArray(String[]::new);
+        return new SpringApplicationBuilder(FileStorageApplication.class).logStartupInfo(false).run(allArgs);
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.metadata.filestorage.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Load test settings, read from "loadTest.*" system properties.
+ */
+class LoadTestConfig {
+
+    final String baseUrl = System.getProperty("loadTest.baseUrl");
+
+    final int concurrency = Integer.getInteger("loadTest.concurrency", 16);
+
+    final int warmupSeconds = Integer.getInteger("loadTest.warmupSeconds", 5);
+
+    final int durationSeconds = Integer.getInteger("loadTest.durationSeconds", 30);
+
+    final int clients = Integer.getInteger("loadTest.clients", 4);
+
+    final int fileNames = Integer.getInteger("loadTest.fileNames", 200);
+
+    final String mix = System.getProperty("loadTest.mix", "upload=30,update=10,download=40,list=15,delete=5");
+
+    final String sizes = System.getProperty("loadTest.sizes", "1024=50,65536=35,1048576=14,16777216=1");
+
+    final Path reportDirectory = Paths.get(System.getProperty("loadTest.reportDir", "build/reports/load-test"));
+
+    boolean isEmbedded() {
+        return baseUrl == null || baseUrl.isEmpty();
+    }
+}
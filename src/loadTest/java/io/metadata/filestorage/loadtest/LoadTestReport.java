@@ -0,0 +1,123 @@
+package io.metadata.filestorage.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per operation throughput, latency percentiles and error rates of a load test run, written as JSON and HTML.
+ * The bandwidth of every client is summed up by Jain's fairness index, 1 when all clients got the same share.
+ */
+class LoadTestReport {
+
+    private final Map<String, Object> summary = new LinkedHashMap<>();
+
+    private final Map<String, Map<String, Object>> operations = new LinkedHashMap<>();
+
+    private final Map<String, Object> clients = new LinkedHashMap<>();
+
+    LoadTestReport(LoadTestConfig config, String baseUrl, int durationSeconds, Map<Operation, OperationStats> stats, long[] clientBytes) {
+        summary.put("target", baseUrl);
+        summary.put("concurrency", config.concurrency);
+        summary.put("durationSeconds", durationSeconds);
+        summary.put("mix", config.mix);
+        summary.put("sizes", config.sizes);
+
+        long totalRequests = 0;
+        long totalErrors = 0;
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            totalRequests += operationStats.getCount();
+            totalErrors += operationStats.getErrors();
+
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("requests", operationStats.getCount());
+            values.put("throughputPerSecond", round((double) operationStats.getCount() / durationSeconds));
+            values.put("errorRate", operationStats.getCount() == 0 ? 0 : round((double) operationStats.getErrors() / operationStats.getCount()));
+            values.put("megabytesPerSecond", round(operationStats.getBytes() / 1_048_576.0 / durationSeconds));
+            values.put("p50Millis", round(operationStats.percentileMillis(50)));
+            values.put("p99Millis", round(operationStats.percentileMillis(99)));
+            values.put("p999Millis", round(operationStats.percentileMillis(99.9)));
+            operations.put(entry.getKey().name().toLowerCase(), values);
+        }
+
+        summary.put("requests", totalRequests);
+        summary.put("throughputPerSecond", round((double) totalRequests / durationSeconds));
+        summary.put("errorRate", totalRequests == 0 ? 0 : round((double) totalErrors / totalRequests));
+
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (int i = 0; i < clientBytes.length; i++) {
+            double megabytesPerSecond = clientBytes[i] / 1_048_576.0 / durationSeconds;
+            sum += megabytesPerSecond;
+            sumOfSquares += megabytesPerSecond * megabytesPerSecond;
+            clients.put("load-test-client-" + i, round(megabytesPerSecond));
+        }
+        summary.put("clients", clientBytes.length);
+        summary.put("fairnessIndex", sumOfSquares == 0 ? 1 : round(sum * sum / (clientBytes.length * sumOfSquares)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("summary", summary);
+        json.put("operations", operations);
+        json.put("clientMegabytesPerSecond", clients);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(directory.resolve("load-test.json").toFile(), json);
+
+        Files.write(directory.resolve("load-test.html"), toHtml().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String toHtml() {
+        StringBuilder html = new StringBuilder()
+                .append("<!DOCTYPE html>\n<html>\n<head><meta charset=\"utf-8\"><title>File storage load test</title>\n")
+                .append("<style>body{font-family:sans-serif}table{border-collapse:collapse}")
+                .append("td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}</style>\n</head>\n<body>\n")
+                .append("<h1>File storage load test</h1>\n<table>\n");
+
+        summary.forEach((key, value) ->
+                html.append("<tr><th>").append(key).append("</th><td>").append(value).append("</td></tr>\n"));
+
+        html.append("</table>\n<h2>Operations</h2>\n<table>\n<tr><th>operation</th>");
+        operations.values().stream().findFirst().ifPresent(values ->
+                values.keySet().forEach(key -> html.append("<th>").append(key).append("</th>")));
+        html.append("</tr>\n");
+
+        operations.forEach((operation, values) -> {
+            html.append("<tr><th>").append(operation).append("</th>");
+            values.values().forEach(value -> html.append("<td>").append(value).append("</td>"));
+            html.append("</tr>\n");
+        });
+
+        html.append("</table>\n<h2>Clients</h2>\n<table>\n<tr><th>client</th><th>megabytesPerSecond</th></tr>\n");
+        clients.forEach((client, megabytesPerSecond) -> html.append("<tr><th>").append(client).append("</th><td>")
+                .append(megabytesPerSecond).append("</td></tr>\n"));
+
+        return html.append("</table>\n</body>\n</html>\n").toString();
+    }
+
+    void print() {
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n", "operation", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms");
+        operations.forEach((operation, values) -> System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n",
+                operation,
+                values.get("requests"),
+                values.get("throughputPerSecond"),
+                values.get("errorRate"),
+                values.get("p50Millis"),
+                values.get("p99Millis"),
+                values.get("p999Millis")));
+        System.out.printf("%nclient MB/s %s, fairness index %s%n", clients.values(), summary.get("fairnessIndex"));
+    }
+}
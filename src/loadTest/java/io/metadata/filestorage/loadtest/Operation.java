@@ -0,0 +1,9 @@
+package io.metadata.filestorage.loadtest;
+
+public enum Operation {
+    UPLOAD,
+    UPDATE,
+    DOWNLOAD,
+    LIST,
+    DELETE
+}
@@ -0,0 +1,70 @@
+package io.metadata.filestorage.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies, errors and transferred bytes of a single operation, recorded by one worker thread
+ * and merged once the run is over so the hot path never synchronizes.
+ */
+class OperationStats {
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private long errors;
+
+    private long bytes;
+
+    private boolean sorted;
+
+    void record(long latencyNanos, boolean error, long transferredBytes) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        sorted = false;
+        if (error) {
+            errors++;
+        }
+        bytes += transferredBytes;
+    }
+
+    void merge(OperationStats other) {
+        if (count + other.count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, count + other.count);
+        }
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        sorted = false;
+        errors += other.errors;
+        bytes += other.bytes;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getErrors() {
+        return errors;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Nearest-rank percentile in milliseconds, sorts the recorded latencies on first use.
+     */
+    double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(latencies, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return latencies[Math.max(0, Math.min(count, rank) - 1)] / 1_000_000.0;
+    }
+}
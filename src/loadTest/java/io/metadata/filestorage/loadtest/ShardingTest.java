@@ -0,0 +1,232 @@
+package io.metadata.filestorage.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots several nodes in this JVM, every one with its own port, data directory and in-memory H2 database, and
+ * shards the files between all of them but the last one. Then adds the last node to the cluster and downloads every
+ * file through all the nodes while the files move, and again once they moved.
+ * Reports how evenly the files are spread, how many moved and how many stayed available during the move.
+ */
+public class ShardingTest {
+
+    private static final int NODES = Integer.getInteger("loadTest.nodes", 3);
+
+    private static final int FILES = Integer.getInteger("loadTest.clusterFiles", 300);
+
+    private static final int FILE_SIZE = Integer.getInteger("loadTest.clusterFileSize", 65536);
+
+    private static final int CONCURRENCY = Integer.getInteger("loadTest.concurrency", 16);
+
+    private static final String TOKEN = "sharding-test";
+
+    private static final Path REPORT_DIRECTORY = Paths.get(System.getProperty("loadTest.reportDir", "build/reports/load-test"));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    public static void main(String[] args) throws Exception {
+        new ShardingTest().run();
+    }
+
+    private void run() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls.add("http://localhost:" + socket.getLocalPort());
+            }
+        }
+        List<String> initialNodes = urls.subList(0, NODES - 1);
+
+        List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        try {
+            for (int i = 0; i < NODES; i++) {
+                Path directory = Files.createTempDirectory("file-storage-shard-" + i);
+                directories.add(directory);
+                nodes.add(LoadTest.startEmbedded(URI.create(urls.get(i)).getPort(),
+                        "jdbc:h2:mem:sharding-test-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", directory,
+                        "--file.cluster.nodes=" + String.join(",", initialNodes),
+                        "--file.cluster.self=" + urls.get(i),
+                        "--file.cluster.token=" + TOKEN,
+                        "--file.reconciler.on-startup=false"));
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("nodes", NODES);
+            report.put("files", FILES);
+            report.put("fileSize", FILE_SIZE);
+
+            byte[] payload = new byte[FILE_SIZE];
+            new Random(42).nextBytes(payload);
+
+            long start = System.nanoTime();
+            long uploaded = count(i -> upload(urls.get(i % NODES), "sharding-test-" + i + ".bin", payload));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report.put("uploaded", uploaded);
+            report.put("uploadsPerSecond", round(uploaded / seconds));
+            report.put("filesPerNodeBefore", filesPerNode(urls));
+            report.put("listedThroughAnyNode", list(urls.get(0)));
+
+            // Join the last node, every node is told about it and moves the files it no longer owns
+            start = System.nanoTime();
+            for (String url : urls) {
+                updateNodes(url, urls);
+            }
+            long availableDuringMove = count(i -> download(urls.get(i % NODES), "sharding-test-" + i + ".bin") == FILE_SIZE);
+            while (urls.stream().anyMatch(this::isRebalancing)) {
+                Thread.sleep(100);
+            }
+            report.put("availableDuringMove", availableDuringMove);
+            report.put("moveSeconds", round((System.nanoTime() - start) / 1e9));
+            report.put("filesMoved", urls.stream().mapToLong(url -> status(url).get("filesMoved").asLong()).sum());
+            report.put("filesPerNodeAfter", filesPerNode(urls));
+
+            start = System.nanoTime();
+            long availableAfterMove = count(i -> download(urls.get(i % NODES), "sharding-test-" + i + ".bin") == FILE_SIZE);
+            seconds = (System.nanoTime() - start) / 1e9;
+            report.put("availableAfterMove", availableAfterMove);
+            report.put("downloadsPerSecondAfterMove", round(availableAfterMove / seconds));
+
+            Files.createDirectories(REPORT_DIRECTORY);
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(REPORT_DIRECTORY.resolve("sharding-test.json").toFile(), report);
+            report.forEach((key, value) -> System.out.printf("%-32s %s%n", key, value));
+        } finally {
+            for (ConfigurableApplicationContext node : nodes) {
+                node.close();
+            }
+            for (Path directory : directories) {
+                LoadTest.deleteDirectory(directory);
+            }
+        }
+    }
+
+    private interface FileTask {
+        boolean run(int file) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Runs the task for every file from the concurrent workers and counts the successful ones.
+     */
+    private long count(FileTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < FILES; i++) {
+                int file = i;
+                results.add(executor.submit(() -> task.run(file)));
+            }
+            long successes = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    successes++;
+                }
+            }
+            return successes;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private boolean upload(String url, String fileName, byte[] payload) throws IOException, InterruptedException {
+        HttpResponse<Void> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create(url + "/files/upload/" + fileName))
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                        .header("Content-Type", "application/octet-stream")
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() == 201;
+    }
+
+    private long download(String url, String fileName) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create(url + "/files/download/" + fileName)).GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            long bytes = body.transferTo(OutputStream.nullOutputStream());
+            return response.statusCode() == 200 ? bytes : -1;
+        }
+    }
+
+    private void updateNodes(String url, List<String> members) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create(url + "/files/cluster/nodes"))
+                        .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(members)))
+                        .header("Content-Type", "application/json")
+                        .header("X-Cluster-Token", TOKEN)
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Members of " + url + " not updated: " + response.statusCode());
+        }
+    }
+
+    private JsonNode status(String url) {
+        try {
+            return objectMapper.readTree(httpClient.send(HttpRequest.newBuilder(URI.create(url + "/files/cluster")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()).body());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isRebalancing(String url) {
+        return status(url).get("rebalancing").asBoolean();
+    }
+
+    /**
+     * Files stored on every node, asked with the last hop so the node answers for itself.
+     */
+    private List<Integer> filesPerNode(List<String> urls) throws IOException, InterruptedException {
+        List<Integer> counts = new ArrayList<>();
+        for (String url : urls) {
+            counts.add(objectMapper.readTree(httpClient.send(HttpRequest.newBuilder(URI.create(url + "/files/"))
+                    .header("X-Cluster-Hops", "2").GET().build(), HttpResponse.BodyHandlers.ofString()).body()).size());
+        }
+        return counts;
+    }
+
+    private int list(String url) throws IOException, InterruptedException {
+        return objectMapper.readTree(httpClient.send(HttpRequest.newBuilder(URI.create(url + "/files/")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).body()).size();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,171 @@
+package io.metadata.filestorage.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.metadata.filestorage.FileStorageApplication;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Starts the service in new JVMs until it is ready, with the default and the fast startup profiles, against an H2
+ * database on disk migrated by an untimed first start. Fails when the fast startup profile is not at least
+ * "startupTest.minSpeedup" faster than the default one in the same run, which holds on any machine. When a baseline
+ * saved with "startupTest.updateBaseline" on the same machine exists and "startupTest.compareBaseline" is not off,
+ * also fails when the median time of a profile is worse than in it by more than "startupTest.maxRegression".
+ */
+public class StartupBenchmark {
+
+    private static final int RUNS = Integer.getInteger("startupTest.runs", 3);
+
+    private static final double MIN_SPEEDUP = Double.parseDouble(System.getProperty("startupTest.minSpeedup", "0.2"));
+
+    private static final double MAX_REGRESSION = Double.parseDouble(System.getProperty("startupTest.maxRegression", "0.25"));
+
+    private static final boolean UPDATE_BASELINE = Boolean.getBoolean("startupTest.updateBaseline");
+
+    private static final boolean COMPARE_BASELINE = Boolean.parseBoolean(System.getProperty("startupTest.compareBaseline", "true"));
+
+    private static final Path REPORT_DIRECTORY = Paths.get(System.getProperty("loadTest.reportDir", "build/reports/load-test"));
+
+    private static final Path BASELINE = Paths.get(System.getProperty("startupTest.baseline", "startup-baseline.json"));
+
+    private static final List<String> PROFILES = Arrays.asList("default", "fast-startup");
+
+    // Logged by Spring Boot once the context is started
+    private static final Pattern STARTED = Pattern.compile("Started \\w+ in [0-9.]+ seconds \\(JVM running for ([0-9.]+)\\)");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static void main(String[] args) throws Exception {
+        new StartupBenchmark().run();
+    }
+
+    private void run() throws Exception {
+        Path directory = Files.createTempDirectory("file-storage-startup");
+        Map<String, Object> report = new LinkedHashMap<>();
+        try {
+            // Migrates the database, so no timed start pays for it
+            startUntilReady("default", directory);
+            for (String profile : PROFILES) {
+                List<Long> millis = new ArrayList<>();
+                for (int i = 0; i < RUNS; i++) {
+                    millis.add(startUntilReady(profile, directory));
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("runsMillis", millis);
+                result.put("medianMillis", median(millis));
+                report.put(profile, result);
+                System.out.printf("%-16s median %d ms %s%n", profile, median(millis), millis);
+            }
+        } finally {
+            LoadTest.deleteDirectory(directory);
+        }
+
+        Files.createDirectories(REPORT_DIRECTORY);
+        objectMapper.writeValue(REPORT_DIRECTORY.resolve("startup.json").toFile(), report);
+
+        long defaultMillis = medianOf(report, "default");
+        long fastMillis = medianOf(report, "fast-startup");
+        if (fastMillis > defaultMillis * (1 - MIN_SPEEDUP)) {
+            throw new IllegalStateException("The fast startup profile took " + fastMillis + " ms, the default one "
+                    + defaultMillis + " ms, instead of at least " + Math.round(MIN_SPEEDUP * 100) + "% less");
+        }
+
+        if (UPDATE_BASELINE) {
+            Files.createDirectories(BASELINE.toAbsolutePath().getParent());
+            objectMapper.writeValue(BASELINE.toFile(), report);
+            System.out.println("Baseline written to " + BASELINE.toAbsolutePath());
+        } else if (!COMPARE_BASELINE) {
+            System.out.println("Only the profiles were compared");
+        } else if (Files.exists(BASELINE)) {
+            compareWithBaseline(report);
+        } else {
+            System.out.println("No baseline at " + BASELINE.toAbsolutePath() + ", only the profiles were compared");
+        }
+    }
+
+    private void compareWithBaseline(Map<String, Object> report) throws IOException {
+        JsonNode baseline = objectMapper.readTree(BASELINE.toFile());
+        List<String> regressions = new ArrayList<>();
+        for (String profile : PROFILES) {
+            if (!baseline.has(profile)) {
+                continue;
+            }
+            long expected = baseline.get(profile).get("medianMillis").asLong();
+            long actual = medianOf(report, profile);
+            if (actual > expected * (1 + MAX_REGRESSION)) {
+                regressions.add(profile + " took " + actual + " ms instead of " + expected + " ms");
+            }
+        }
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("Startup time regressed: " + String.join(", ", regressions));
+        }
+    }
+
+    /**
+     * Milliseconds from the start of the JVM until the service is ready, the service stops right afterwards.
+     */
+    private long startUntilReady(String profile, Path directory) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                FileStorageApplication.class.getName(),
+                "--server.port=0",
+                "--spring.profiles.active=" + profile,
+                "--spring.datasource.url=jdbc:h2:file:" + directory.resolve("metadata").toAbsolutePath(),
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=sa",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.devtools.restart.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level." + FileStorageApplication.class.getName() + "=INFO",
+                "--file.database.path=" + directory.resolve("files").toAbsolutePath(),
+                "--file.startup.exit-on-ready=true"));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Long millis = null;
+        List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                output.add(line);
+                Matcher matcher = STARTED.matcher(line);
+                if (matcher.find()) {
+                    millis = Math.round(Double.parseDouble(matcher.group(1)) * 1000);
+                }
+            }
+        }
+        if (!process.waitFor(1, TimeUnit.MINUTES) || millis == null) {
+            process.destroyForcibly();
+            output.forEach(System.out::println);
+            throw new IllegalStateException("The service did not start with the " + profile + " profile");
+        }
+        return millis;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long medianOf(Map<String, Object> report, String profile) {
+        return (Long) ((Map<String, Object>) report.get(profile)).get("medianMillis");
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
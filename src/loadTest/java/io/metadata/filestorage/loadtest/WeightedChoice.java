@@ -0,0 +1,58 @@
+package io.metadata.filestorage.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Picks values at random according to weights given as "key=weight,key=weight".
+ */
+class WeightedChoice<T> {
+
+    private final Object[] values;
+
+    private final int[] cumulativeWeights;
+
+    private final int totalWeight;
+
+    WeightedChoice(String definition, Function<String, T> parser) {
+        Map<T, Integer> weights = new LinkedHashMap<>();
+        for (String entry : definition.split(",")) {
+            String[] keyAndWeight = entry.trim().split("=");
+            if (keyAndWeight.length != 2) {
+                throw new IllegalArgumentException("Invalid weighted entry '" + entry + "' in " + definition);
+            }
+            int weight = Integer.parseInt(keyAndWeight[1].trim());
+            if (weight > 0) {
+                weights.put(parser.apply(keyAndWeight[0].trim()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("No positive weights in " + definition);
+        }
+
+        values = new Object[weights.size()];
+        cumulativeWeights = new int[weights.size()];
+        int index = 0;
+        int total = 0;
+        for (Map.Entry<T, Integer> weight : weights.entrySet()) {
+            total += weight.getValue();
+            values[index] = weight.getKey();
+            cumulativeWeights[index] = total;
+            index++;
+        }
+        totalWeight = total;
+    }
+
+    @SuppressWarnings("unchecked")
+    T next(Random random) {
+        int point = random.nextInt(totalWeight);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (point < cumulativeWeights[i]) {
+                return (T) values[i];
+            }
+        }
+        return (T) values[values.length - 1];
+    }
+}
@@ -0,0 +1,67 @@
+package io.metadata.filestorage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Shortens the time until new instances serve requests. With file.startup.lazy the beans are created when first
+ * used instead of on startup, and the ones nothing asked for yet are created in the background once the application
+ * is ready, which also starts their scheduled tasks.
+ */
+@Configuration
+public class StartupConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupConfiguration.class);
+
+    @Bean
+    @ConditionalOnProperty("file.startup.lazy")
+    public static BeanFactoryPostProcessor lazyInitialization() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                beanFactory.getBeanDefinition(name).setLazyInit(true);
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty("file.startup.lazy")
+    public ApplicationListener<ApplicationReadyEvent> warmUp() {
+        return event -> {
+            ConfigurableListableBeanFactory beanFactory = event.getApplicationContext().getBeanFactory();
+            Thread thread = new Thread(() -> {
+                long start = System.nanoTime();
+                for (String name : beanFactory.getBeanDefinitionNames()) {
+                    BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                    if (definition.isSingleton() && !definition.isAbstract() && !beanFactory.containsSingleton(name)) {
+                        try {
+                            beanFactory.getBean(name);
+                        } catch (RuntimeException e) {
+                            LOGGER.warn("Bean {} could not be created in the background: {}", name, e.toString());
+                        }
+                    }
+                }
+                LOGGER.info("Remaining beans created in {} ms", (System.nanoTime() - start) / 1_000_000);
+            }, "startup-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+        };
+    }
+
+    /**
+     * Stops the application as soon as it is ready, for the runs that record the classes it loads or time its startup.
+     */
+    @Bean
+    @ConditionalOnProperty("file.startup.exit-on-ready")
+    public ApplicationListener<ApplicationReadyEvent> exitOnReady() {
+        return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
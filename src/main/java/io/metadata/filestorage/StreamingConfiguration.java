@@ -0,0 +1,76 @@
+package io.metadata.filestorage;
+
+import io.metadata.filestorage.exception.StreamingCapacityException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming responses, like tails, diffs and snapshot exports, run on a pool of their own with at most
+ * file.streaming.max-concurrent threads and no queue. When every thread is busy the request is answered with a 503
+ * right away, instead of waiting behind long tails until the async timeout.
+ */
+@Configuration
+public class StreamingConfiguration implements WebMvcConfigurer {
+
+    private final ThreadPoolTaskExecutor executor;
+
+    public StreamingConfiguration(@Value("${file.streaming.max-concurrent:64}") int maxConcurrent) {
+        this.executor = streamingExecutor(maxConcurrent);
+        this.executor.initialize();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    static ThreadPoolTaskExecutor streamingExecutor(int maxConcurrent) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor() {
+            @Override
+            public void execute(Runnable task) {
+                try {
+                    super.execute(task);
+                } catch (TaskRejectedException e) {
+                    throw new StreamingCapacityException(maxConcurrent);
+                }
+            }
+
+            @Override
+            public Future<?> submit(Runnable task) {
+                try {
+                    return super.submit(task);
+                } catch (TaskRejectedException e) {
+                    throw new StreamingCapacityException(maxConcurrent);
+                }
+            }
+
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                try {
+                    return super.submit(task);
+                } catch (TaskRejectedException e) {
+                    throw new StreamingCapacityException(maxConcurrent);
+                }
+            }
+        };
+        executor.setCorePoolSize(maxConcurrent);
+        executor.setMaxPoolSize(maxConcurrent);
+        executor.setQueueCapacity(0);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("streaming-");
+        return executor;
+    }
+}
@@ -1,5 +1,6 @@
 package io.metadata.filestorage;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import springfox.documentation.service.ApiInfo;
@@ -14,6 +15,7 @@ import java.util.HashSet;
 
 @Configuration
 @EnableSwagger2
+@ConditionalOnProperty(name = "file.swagger.enabled", matchIfMissing = true)
 public class SwaggerConfiguration {
 
     @Bean
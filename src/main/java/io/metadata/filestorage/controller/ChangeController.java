@@ -0,0 +1,49 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.model.dto.ChangesDTO;
+import io.metadata.filestorage.service.ChangeFeed;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+@RestController
+@RequestMapping("/files/changes")
+public class ChangeController {
+
+    private final ChangeFeed changeFeed;
+
+    private final long maxTimeout;
+
+    @Autowired
+    public ChangeController(ChangeFeed changeFeed, @Value("${file.changes.max-timeout:60000}") long maxTimeout) {
+        this.changeFeed = changeFeed;
+        this.maxTimeout = maxTimeout;
+    }
+
+    @GetMapping
+    @ApiOperation(httpMethod = "GET",
+            value = "Wait for the changes of the files after a token",
+            notes = "Answers as soon as there are changes after the token, or with no changes when the timeout passes. "
+                    + "Pass the returned next token on the following call. Without a token the current one is returned",
+            response = ChangesDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Changes after the token"),
+            @ApiResponse(code = 410, message = "The changes after the token are not kept anymore")
+    }
+    )
+    public DeferredResult<ChangesDTO> watchChanges(
+            @ApiParam(value = "Token returned by the previous call") @RequestParam(required = false) Long after,
+            @ApiParam(value = "Only changes to files whose name starts with it") @RequestParam(required = false) String prefix,
+            @ApiParam(value = "Milliseconds to wait for changes", defaultValue = "30000")
+            @RequestParam(defaultValue = "30000") long timeout) {
+        return changeFeed.watch(after, prefix, Math.max(0, Math.min(timeout, maxTimeout)));
+    }
+}
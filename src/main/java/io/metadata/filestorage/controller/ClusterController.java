@@ -0,0 +1,103 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.exception.InvalidPathException;
+import io.metadata.filestorage.exception.PersistingFileException;
+import io.metadata.filestorage.model.dto.ClusterStatusDTO;
+import io.metadata.filestorage.service.ClusterRebalancer;
+import io.metadata.filestorage.service.ClusterRouter;
+import io.metadata.filestorage.service.FileService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import springfox.documentation.annotations.ApiIgnore;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Membership of the cluster and the versions moved between its nodes. Only mapped when cluster nodes are configured,
+ * which requires a cluster token.
+ */
+@RestController
+@RequestMapping("/files/cluster")
+@ConditionalOnExpression("!'${file.cluster.nodes:}'.trim().isEmpty()")
+public class ClusterController {
+
+    private final ClusterRouter router;
+
+    private final ClusterRebalancer rebalancer;
+
+    private final FileService fileService;
+
+    @Autowired
+    public ClusterController(ClusterRouter router, ClusterRebalancer rebalancer, FileService fileService) {
+        this.router = router;
+        this.rebalancer = rebalancer;
+        this.fileService = fileService;
+    }
+
+    @GetMapping
+    @ApiOperation(httpMethod = "GET", value = "Members of the cluster and progress of moving files between them", response = ClusterStatusDTO.class)
+    public ClusterStatusDTO getStatus() {
+        return rebalancer.getStatus();
+    }
+
+    @PutMapping("/nodes")
+    @ApiOperation(httpMethod = "PUT",
+            value = "Replace the members of the cluster",
+            notes = "Has to be sent to every node. The files owned by other nodes afterwards are moved in the background",
+            response = ClusterStatusDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Members replaced, files are being moved"),
+            @ApiResponse(code = 403, message = "Wrong cluster token")
+    }
+    )
+    public ResponseEntity<ClusterStatusDTO> updateNodes(
+            @RequestBody List<String> nodes,
+            @RequestHeader(value = ClusterRouter.TOKEN_HEADER, required = false) String token) {
+        if (!router.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        router.updateNodes(nodes);
+        rebalancer.rebalance();
+        return ResponseEntity.ok(rebalancer.getStatus());
+    }
+
+    @ApiIgnore
+    @PutMapping("/versions/{version}/{fileName:.+}")
+    public ResponseEntity<Void> importVersion(
+            @PathVariable Integer version,
+            @PathVariable String fileName,
+            @RequestHeader(ClusterRebalancer.DATE_HEADER) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime lastModificationDate,
+            @RequestHeader(value = ClusterRebalancer.CHECKSUM_HEADER, required = false) String checksum,
+            @RequestHeader(value = ClusterRouter.TOKEN_HEADER, required = false) String token,
+            HttpServletRequest request) {
+        if (!router.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (fileName.contains("..")) {
+            throw new InvalidPathException();
+        }
+        try (InputStream inputStream = request.getInputStream()) {
+            fileService.importVersion(fileName, version, lastModificationDate, checksum, inputStream);
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
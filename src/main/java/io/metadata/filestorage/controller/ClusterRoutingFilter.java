@@ -0,0 +1,365 @@
+package io.metadata.filestorage.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import io.metadata.filestorage.service.ClusterRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriUtils;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Sends the requests for a file to the node of the cluster that owns it, streaming both bodies through, and
+ * gathers listings and prefix deletes from every node. Does nothing unless cluster nodes are configured.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterRoutingFilter.class);
+
+    // Name of the file in a multipart upload, so the upload is routed without reading its body first
+    public static final String FILE_NAME_HEADER = "X-File-Name";
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private static final List<String> FILE_PATHS = Arrays.asList(
+            "/files/download/", "/files/upload/", "/files/update/", "/files/append/", "/files/tail/",
+            "/files/versions/", "/files/diff/", "/files/parts/", "/files/by-checksum/");
+
+    // Headers the HTTP client sets itself or that only apply to a single connection
+    private static final Set<String> SKIPPED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade", "transfer-encoding", "keep-alive",
+            ClusterRouter.HOPS_HEADER.toLowerCase(), ClusterRouter.TOKEN_HEADER.toLowerCase()));
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ClusterRouter router;
+
+    private final ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    @Autowired
+    public ClusterRoutingFilter(ClusterRouter router, ObjectMapper objectMapper) {
+        this.router = router;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !router.isEnabled() || !URL_PATH_HELPER.getPathWithinApplication(request).startsWith("/files/");
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        int hops = hopsOf(request);
+
+        if (hops == 0 && path.equals("/files/") && "GET".equals(request.getMethod())) {
+            gatherListing(response);
+            return;
+        }
+        if (hops == 0 && path.equals("/files/prefix") && "DELETE".equals(request.getMethod())) {
+            gatherPrefixDelete(request, response);
+            return;
+        }
+
+        String fileName = fileNameOf(request, path);
+        if (fileName == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (path.equals("/files/copy")) {
+            String source = request.getParameter("fileName");
+            if (source != null && !router.ownerOf(source).equals(router.ownerOf(fileName))) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "Copies between files stored on different nodes are not supported");
+                return;
+            }
+        }
+
+        ClusterRouter.Route route;
+        if (router.isMoving()) {
+            // Served under the lock so the file cannot move away between the routing and the request
+            Lock lock = router.lockFor(fileName);
+            lock.lock();
+            try {
+                route = router.route(fileName, hops);
+                if (route == null) {
+                    serve(fileName, request, response, filterChain);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            route = router.route(fileName, hops);
+            if (route == null) {
+                serve(fileName, request, response, filterChain);
+                return;
+            }
+        }
+
+        if (isMultipart(request) && !StringUtils.hasText(request.getHeader(FILE_NAME_HEADER))) {
+            forwardMultipart(route, fileName, request, response);
+        } else {
+            forward(route, request, response);
+        }
+    }
+
+    /**
+     * Multipart uploads routed by their header are checked where they are stored, which parses the body anyway, so a
+     * wrong header cannot place a file on a node that does not own it.
+     */
+    private static void serve(String fileName, HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws IOException, ServletException {
+        if (isMultipart(request) && StringUtils.hasText(request.getHeader(FILE_NAME_HEADER))) {
+            Part part = request.getPart("file");
+            if (part == null || !fileName.equals(StringUtils.cleanPath(part.getSubmittedFileName()))) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), "The " + FILE_NAME_HEADER + " header does not match the name of the uploaded file");
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Times the request was forwarded already, only trusted from the other nodes, which send the cluster token.
+     */
+    private int hopsOf(HttpServletRequest request) {
+        String hopsHeader = request.getHeader(ClusterRouter.HOPS_HEADER);
+        if (!StringUtils.hasText(hopsHeader) || !router.isAuthorized(request.getHeader(ClusterRouter.TOKEN_HEADER))) {
+            return 0;
+        }
+        try {
+            return Math.min(Math.max(0, Integer.parseInt(hopsHeader.trim())), ClusterRouter.FINAL_HOP);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isMultipart(HttpServletRequest request) {
+        return request.getContentType() != null && request.getContentType().startsWith("multipart/");
+    }
+
+    /**
+     * Name of the file the request works on, or null when it is not about a single file.
+     */
+    private static String fileNameOf(HttpServletRequest request, String path) throws IOException, ServletException {
+        for (String filePath : FILE_PATHS) {
+            if (path.startsWith(filePath) && path.length() > filePath.length()) {
+                return path.substring(filePath.length());
+            }
+        }
+        if (path.equals("/files/copy")) {
+            String target = request.getParameter("targetFileName");
+            return StringUtils.hasText(target) ? target : request.getParameter("fileName");
+        }
+        if (path.equals("/files/") && "DELETE".equals(request.getMethod())) {
+            return request.getParameter("fileName");
+        }
+        if ((path.equals("/files/upload") || path.equals("/files/update")) && isMultipart(request)) {
+            String declared = request.getHeader(FILE_NAME_HEADER);
+            if (StringUtils.hasText(declared)) {
+                return StringUtils.cleanPath(declared);
+            }
+            // Without the header the whole body is read, and spooled to disk past the multipart threshold, to find it
+            Part part = request.getPart("file");
+            return part != null ? StringUtils.cleanPath(part.getSubmittedFileName()) : null;
+        }
+        return null;
+    }
+
+    private void forward(ClusterRouter.Route route, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String query = request.getQueryString();
+        URI uri = URI.create(route.getNode() + request.getRequestURI() + (query != null ? "?" + query : ""));
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .header(ClusterRouter.HOPS_HEADER, String.valueOf(route.getHops()))
+                .header(ClusterRouter.TOKEN_HEADER, router.getToken());
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase())) {
+                for (String value : Collections.list(request.getHeaders(name))) {
+                    builder.header(name, value);
+                }
+            }
+        }
+        boolean hasBody = request.getContentLengthLong() > 0 || request.getHeader("Transfer-Encoding") != null;
+        builder.method(request.getMethod(), hasBody
+                ? HttpRequest.BodyPublishers.ofInputStream(() -> inputStreamOf(request))
+                : HttpRequest.BodyPublishers.noBody());
+
+        send(builder.build(), route, response);
+    }
+
+    /**
+     * Multipart bodies without the file name header are parsed here to find it, so the file goes on to its owner as a
+     * binary upload.
+     */
+    private void forwardMultipart(ClusterRouter.Route route, String fileName, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        String version = request.getParameter("version");
+        URI uri = URI.create(route.getNode() + path + "/" + UriUtils.encodePathSegment(fileName, StandardCharsets.UTF_8)
+                + (version != null ? "?version=" + UriUtils.encodeQueryParam(version, StandardCharsets.UTF_8) : ""));
+
+        Part part = request.getPart("file");
+        HttpRequest forwarded = HttpRequest.newBuilder(uri)
+                .header(ClusterRouter.HOPS_HEADER, String.valueOf(route.getHops()))
+                .header(ClusterRouter.TOKEN_HEADER, router.getToken())
+                .header("Content-Type", MediaType.APPLICATION_OCTET_STREAM_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> inputStreamOf(part)))
+                .build();
+
+        send(forwarded, route, response);
+    }
+
+    private void send(HttpRequest forwarded, ClusterRouter.Route route, HttpServletResponse response) throws IOException {
+        HttpResponse<InputStream> answer;
+        try {
+            answer = httpClient.send(forwarded, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            LOGGER.warn("Request could not be forwarded to {}: {}", route.getNode(), e.toString());
+            response.sendError(HttpStatus.BAD_GATEWAY.value(), "The node storing the file is not available");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+
+        response.setStatus(answer.statusCode());
+        answer.headers().map().forEach((name, values) -> {
+            if (!SKIPPED_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+
+        // Flushed as it arrives, so followed tails keep streaming
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream body = answer.body()) {
+            OutputStream outputStream = response.getOutputStream();
+            for (int read; (read = body.read(buffer)) >= 0; ) {
+                outputStream.write(buffer, 0, read);
+                if (body.available() == 0) {
+                    outputStream.flush();
+                }
+            }
+        }
+    }
+
+    private void gatherListing(HttpServletResponse response) throws IOException {
+        ArrayNode files = objectMapper.createArrayNode();
+        for (String node : router.getNodes()) {
+            JsonNode nodeFiles = gather(node, HttpRequest.newBuilder(URI.create(node + "/files/")).GET(), response);
+            if (nodeFiles == null) {
+                return;
+            }
+            files.addAll((ArrayNode) nodeFiles);
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), files);
+    }
+
+    private void gatherPrefixDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String prefix = request.getParameter("prefix");
+        if (!StringUtils.hasText(prefix)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Empty prefix");
+            return;
+        }
+        long deleted = 0;
+        for (String node : router.getNodes()) {
+            JsonNode nodeDeleted = gather(node, HttpRequest.newBuilder(URI.create(node + "/files/prefix?prefix="
+                    + UriUtils.encodeQueryParam(prefix, StandardCharsets.UTF_8))).DELETE(), response);
+            if (nodeDeleted == null) {
+                return;
+            }
+            deleted += nodeDeleted.asLong();
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), deleted);
+    }
+
+    /**
+     * Answer of a single node to a request sent to all of them, null when it failed and the error was sent.
+     */
+    private JsonNode gather(String node, HttpRequest.Builder request, HttpServletResponse response) throws IOException {
+        try {
+            HttpResponse<InputStream> answer = httpClient.send(
+                    request.header(ClusterRouter.HOPS_HEADER, String.valueOf(ClusterRouter.FINAL_HOP))
+                            .header(ClusterRouter.TOKEN_HEADER, router.getToken())
+                            .build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = answer.body()) {
+                if (answer.statusCode() == 200) {
+                    return objectMapper.readTree(body);
+                }
+            }
+            response.sendError(answer.statusCode());
+        } catch (IOException e) {
+            LOGGER.warn("Node {} could not be reached: {}", node, e.toString());
+            response.sendError(HttpStatus.BAD_GATEWAY.value(), "A node of the cluster is not available");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        return null;
+    }
+
+    private static InputStream inputStreamOf(HttpServletRequest request) {
+        try {
+            return request.getInputStream();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static InputStream inputStreamOf(Part part) {
+        try {
+            return part.getInputStream();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
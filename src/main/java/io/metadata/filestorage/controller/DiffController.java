@@ -0,0 +1,59 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.service.DiffService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Locale;
+
+@RestController
+@RequestMapping("/files/diff")
+public class DiffController {
+
+    static final String MODE_HEADER = "X-Diff-Mode";
+
+    private final DiffService diffService;
+
+    @Autowired
+    public DiffController(DiffService diffService) {
+        this.diffService = diffService;
+    }
+
+    @GetMapping("/{fileName:.+}")
+    @ApiOperation(httpMethod = "GET",
+            value = "Changes between two versions of the file",
+            notes = "Text versions are compared by lines into a unified diff, binary ones by blocks into a list of "
+                    + "ranges of the first version to copy and new data in base64. The mode used is returned in the "
+                    + MODE_HEADER + " header")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Changes streamed, empty when the versions are the same"),
+            @ApiResponse(code = 404, message = "File or version not found on records"),
+            @ApiResponse(code = 413, message = "Too many lines to compare by lines")
+    }
+    )
+    public ResponseEntity<StreamingResponseBody> diffVersions(
+            @PathVariable String fileName,
+            @ApiParam(value = "Version to compare from") @RequestParam Integer from,
+            @ApiParam(value = "Version to compare to, the latest one by default") @RequestParam(required = false) Integer to,
+            @ApiParam(value = "AUTO, LINES or BLOCKS", defaultValue = "AUTO")
+            @RequestParam(defaultValue = "AUTO") DiffService.Mode mode) {
+
+        DiffService.Diff diff = diffService.diff(fileName, from, to, mode);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_PLAIN)
+                .header(MODE_HEADER, diff.getMode().name().toLowerCase(Locale.ROOT))
+                .body(diff::writeTo);
+    }
+}
@@ -0,0 +1,65 @@
+package io.metadata.filestorage.controller;
+
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds download links from a base URI that is resolved once per request, or configured statically,
+ * instead of running a full URI template expansion for every file.
+ */
+class DownloadLinkBuilder {
+
+    static final String DOWNLOAD_PATH = "/files/download/";
+
+    private static final String VERSION_QUERY = "?version=";
+
+    private final String configuredBaseUri;
+
+    DownloadLinkBuilder(String configuredBaseUrl) {
+        this.configuredBaseUri = StringUtils.hasText(configuredBaseUrl)
+                ? StringUtils.trimTrailingCharacter(configuredBaseUrl.trim(), '/') + DOWNLOAD_PATH
+                : null;
+    }
+
+    /**
+     * Base of every download link, taken from the current request when no base URL is configured.
+     */
+    String resolveBaseUri() {
+        if (configuredBaseUri != null) {
+            return configuredBaseUri;
+        }
+        return ServletUriComponentsBuilder.fromCurrentContextPath().path(DOWNLOAD_PATH).toUriString();
+    }
+
+    String build(String baseUri, String fileName, Integer version) {
+        return append(new StringBuilder(baseUri.length() + fileName.length() + 16), baseUri, fileName, version).toString();
+    }
+
+    StringBuilder append(StringBuilder link, String baseUri, String fileName, Integer version) {
+        link.append(baseUri);
+        if (needsEncoding(fileName)) {
+            link.append(UriUtils.encodePath(fileName, StandardCharsets.UTF_8));
+        } else {
+            link.append(fileName);
+        }
+        return link.append(VERSION_QUERY).append(version);
+    }
+
+    /**
+     * Most names only use characters that are legal on a path as they are, those are appended without encoding.
+     */
+    private static boolean needsEncoding(String fileName) {
+        for (int i = 0; i < fileName.length(); i++) {
+            char c = fileName.charAt(i);
+            boolean legal = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || c == '/';
+            if (!legal) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,14 +1,23 @@
 package io.metadata.filestorage.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.BufferRecyclers;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.metadata.filestorage.model.dto.FileDTO;
 import io.metadata.filestorage.model.dto.FileResponseDTO;
+import io.metadata.filestorage.model.dto.VersionDTO;
+import io.metadata.filestorage.model.dto.VersionHistoryDTO;
 import io.metadata.filestorage.service.FileService;
+import io.metadata.filestorage.service.VersionResource;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
@@ -17,12 +26,11 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.UncheckedIOException;
 
 @RestController
 @RequestMapping("/files")
@@ -31,13 +39,34 @@ public class FileController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileController.class);
 
+    public static final String VERSION_HEADER = "X-Version";
+
+    private static final SerializedString NAME_FIELD = new SerializedString("name");
+
+    private static final SerializedString LATEST_VERSION_FIELD = new SerializedString("latestVersion");
+
+    private static final SerializedString LAST_MODIFICATION_DATE_FIELD = new SerializedString("lastModificationDate");
+
+    private static final SerializedString DOWNLOAD_LINK_FIELD = new SerializedString("downloadLink");
+
     private final FileService fileService;
 
-    private final String DOWNLOAD_URI_TEMPLATE = "/files/download/{fileName}";
+    private final ObjectMapper objectMapper;
+
+    private final DownloadLinkBuilder downloadLinkBuilder;
+
+    private final int maxVersionPageSize;
 
     @Autowired
-    public FileController(FileService fileService) {
+    public FileController(
+            FileService fileService,
+            ObjectMapper objectMapper,
+            @Value("${file.download.base-url:}") String downloadBaseUrl,
+            @Value("${file.versions.max-page-size:1000}") int maxVersionPageSize) {
         this.fileService = fileService;
+        this.objectMapper = objectMapper;
+        this.downloadLinkBuilder = new DownloadLinkBuilder(downloadBaseUrl);
+        this.maxVersionPageSize = maxVersionPageSize;
     }
 
 
@@ -48,15 +77,48 @@ public class FileController {
             @ApiResponse(code = 200, message = "Successfully retrieved list")
     }
     )
-    public List<FileDTO> findAll() {
-        return fileService.findAll().stream().peek(fileDTO -> {
-            String downloadURI =
-                    ServletUriComponentsBuilder.fromCurrentContextPath().path(DOWNLOAD_URI_TEMPLATE)
-                            .queryParam("version", fileDTO.getLatestVersion())
-                            .buildAndExpand(fileDTO.getName())
-                            .toUri().toASCIIString();
-            fileDTO.setDownloadLink(downloadURI);
-        }).collect(Collectors.toList());
+    public void findAll(HttpServletResponse response) throws IOException {
+        // The base is JSON encoded once, names after URL encoding only have characters that need no JSON escaping
+        char[] quotedBaseUri = BufferRecyclers.quoteAsJsonText(downloadLinkBuilder.resolveBaseUri());
+        StringBuilder downloadLink = new StringBuilder(quotedBaseUri.length + 64);
+        // Grown when a link does not fit, kept in an array so the row callback can replace it
+        char[][] linkChars = {new char[downloadLink.capacity()]};
+
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+
+        // Rows are read from a cursor and written straight to the response, without building a list of the listing
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            fileService.forEachFile(file -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeFieldName(NAME_FIELD);
+                    generator.writeString(file.getName());
+                    generator.writeFieldName(LATEST_VERSION_FIELD);
+                    generator.writeNumber(file.getLatestVersion());
+                    generator.writeFieldName(LAST_MODIFICATION_DATE_FIELD);
+                    generator.writeObject(file.getLastModificationDate());
+
+                    downloadLink.setLength(0);
+                    downloadLink.append('"');
+                    downloadLinkBuilder.append(downloadLink.append(quotedBaseUri), "", file.getName(), file.getLatestVersion());
+                    downloadLink.append('"');
+                    if (linkChars[0].length < downloadLink.length()) {
+                        linkChars[0] = new char[downloadLink.length() * 2];
+                    }
+                    downloadLink.getChars(0, downloadLink.length(), linkChars[0], 0);
+                    generator.writeFieldName(DOWNLOAD_LINK_FIELD);
+                    generator.writeRawValue(linkChars[0], 0, downloadLink.length());
+
+                    generator.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
 
@@ -65,6 +127,8 @@ public class FileController {
     @ApiOperation(httpMethod = "GET", value = "Download file stored on the system", response = Resource.class)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "File successfully retrieved for download"),
+            @ApiResponse(code = 206, message = "Requested range of the file retrieved"),
+            @ApiResponse(code = 304, message = "File not modified since the entity tag given in If-None-Match"),
             @ApiResponse(code = 404, message = "File not found on records")
     }
     )
@@ -88,10 +152,47 @@ public class FileController {
             contentType = "application/octet-stream";
         }
 
-        return ResponseEntity.ok()
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
                 .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-                .body(resource);
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+
+        // Conditional and range requests are answered from these by the response entity handling
+        if (resource instanceof VersionResource) {
+            VersionResource versionResource = (VersionResource) resource;
+            response.header(VERSION_HEADER, String.valueOf(versionResource.getVersionNumber()));
+            try {
+                response.eTag(versionResource.getEntityTag());
+            } catch (IOException ex) {
+                LOGGER.info("Could not determine entity tag.");
+            }
+        }
+
+        return response.body(resource);
+    }
+
+    @GetMapping("/versions/{fileName:.+}")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "GET",
+            value = "View a page of the versions of a file, newest first",
+            notes = "Pass the returned next before version on the following call to get the next page",
+            response = VersionHistoryDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved versions"),
+            @ApiResponse(code = 404, message = "File not found")
+    }
+    )
+    public VersionHistoryDTO findVersions(
+            @PathVariable("fileName") String fileName,
+            @ApiParam(value = "Only versions older than this one") @RequestParam(required = false) Integer before,
+            @ApiParam(value = "Versions per page", defaultValue = "100") @RequestParam(defaultValue = "100") int size) {
+        VersionHistoryDTO history = fileService.findVersions(fileName, before, Math.max(1, Math.min(size, maxVersionPageSize)));
+
+        String baseUri = downloadLinkBuilder.resolveBaseUri();
+        for (VersionDTO version : history.getVersions()) {
+            version.setDownloadLink(downloadLinkBuilder.build(baseUri, fileName, version.getVersionNumber()));
+        }
+
+        return history;
     }
 
     @PostMapping("/upload")
@@ -172,6 +273,80 @@ public class FileController {
         return fileResponseDTO;
     }
 
+    @PostMapping("/append/{fileName}")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "POST",
+            value = "Append binary body content to the end of a version of the file",
+            notes = "The offset is the size of the version the content follows. Retrying an append with the same offset "
+                    + "does not write the content twice. The latest version is used when the version is not specified",
+            response = FileResponseDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Content successfully appended"),
+            @ApiResponse(code = 404, message = "File not found"),
+            @ApiResponse(code = 409, message = "The offset is past the end of the version")
+    }
+    )
+    public FileResponseDTO appendToFileVersion(
+            @PathVariable("fileName") String fileName,
+            @RequestBody ByteArrayResource data,
+            @RequestParam(required = false) Integer version,
+            @RequestParam long offset) {
+        FileResponseDTO fileResponseDTO = fileService.append(fileName, version, offset, data);
+
+        fileResponseDTO.setDownloadURI(getDownloadURI(fileResponseDTO));
+
+        return fileResponseDTO;
+    }
+
+    @PostMapping("/by-checksum/{fileName:.+}")
+    @ApiOperation(httpMethod = "POST",
+            value = "Upload file to the system by the checksum of its content, without sending the content",
+            notes = "When a stored version has the same SHA-256 checksum and size, the new version shares its content "
+                    + "on disk. Otherwise nothing is stored and the content has to be uploaded",
+            response = FileResponseDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "File successfully stored on the system"),
+            @ApiResponse(code = 400, message = "Invalid path, checksum or size"),
+            @ApiResponse(code = 404, message = "No stored version has the content, upload it")
+    }
+    )
+    public ResponseEntity<FileResponseDTO> uploadFileByChecksum(
+            @PathVariable("fileName") String fileName,
+            @ApiParam(value = "SHA-256 checksum of the content in hex") @RequestParam String checksum,
+            @ApiParam(value = "Size of the content in bytes") @RequestParam long size) {
+        FileResponseDTO fileResponseDTO = fileService.saveByChecksum(fileName, checksum, size);
+        if (fileResponseDTO == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        fileResponseDTO.setDownloadURI(getDownloadURI(fileResponseDTO));
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(fileResponseDTO);
+    }
+
+    @PostMapping("/copy")
+    @ResponseStatus(HttpStatus.CREATED)
+    @ApiOperation(httpMethod = "POST",
+            value = "Copy a version of the file to a new version of the target file",
+            notes = "The content is shared on disk, so copies take the same time whatever their size. The latest version "
+                    + "is copied when the version is not specified, and the target defaults to the same file",
+            response = FileResponseDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "File successfully copied"),
+            @ApiResponse(code = 404, message = "File not found")
+    }
+    )
+    public FileResponseDTO copyFileVersion(
+            @RequestParam String fileName,
+            @RequestParam(required = false) Integer version,
+            @RequestParam(required = false) String targetFileName) {
+        FileResponseDTO fileResponseDTO = fileService.copy(fileName, version, targetFileName);
+
+        fileResponseDTO.setDownloadURI(getDownloadURI(fileResponseDTO));
+
+        return fileResponseDTO;
+    }
+
     @DeleteMapping("/")
     @ResponseStatus(HttpStatus.OK)
     @ApiOperation(httpMethod = "DELETE",
@@ -196,11 +371,24 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
+    @DeleteMapping("/prefix")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "DELETE",
+            value = "Delete every file, with all its versions, whose name starts with the given prefix",
+            notes = "Returns the number of deleted files. Their content is removed from disk in the background",
+            response = Integer.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Files successfully deleted"),
+            @ApiResponse(code = 400, message = "Empty prefix")
+    }
+    )
+    public ResponseEntity<Integer> deleteFilesByPrefix(@RequestParam String prefix) {
+        return ResponseEntity.ok(fileService.deleteByPrefix(prefix));
+    }
+
     private String getDownloadURI(FileResponseDTO fileResponseDTO) {
-        return ServletUriComponentsBuilder.fromCurrentContextPath()
-                .path(DOWNLOAD_URI_TEMPLATE).queryParam("version", fileResponseDTO.getVersion())
-                .buildAndExpand(fileResponseDTO.getName())
-                .toUri().toASCIIString();
+        return downloadLinkBuilder.build(
+                downloadLinkBuilder.resolveBaseUri(), fileResponseDTO.getName(), fileResponseDTO.getVersion());
     }
 
 }
@@ -0,0 +1,98 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.exception.PersistingFileException;
+import io.metadata.filestorage.model.dto.FileResponseDTO;
+import io.metadata.filestorage.service.PartUploadService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/files/parts")
+public class PartController {
+
+    private final PartUploadService partUploadService;
+
+    private final DownloadLinkBuilder downloadLinkBuilder;
+
+    @Autowired
+    public PartController(PartUploadService partUploadService, @Value("${file.download.base-url:}") String downloadBaseUrl) {
+        this.partUploadService = partUploadService;
+        this.downloadLinkBuilder = new DownloadLinkBuilder(downloadBaseUrl);
+    }
+
+    @PutMapping("/{fileName:.+}")
+    @ApiOperation(httpMethod = "PUT",
+            value = "Upload a part of a file using binary body content",
+            notes = "Parts of the same upload can be sent at the same time, sending a part again replaces it")
+    @ApiResponses(value = {
+            @ApiResponse(code = 204, message = "Part successfully stored"),
+            @ApiResponse(code = 400, message = "Invalid upload id or part number, or the part or the upload is too large")
+    }
+    )
+    public ResponseEntity<Void> uploadPart(
+            @PathVariable("fileName") String fileName,
+            @ApiParam(value = "Id chosen by the client for the upload", example = "3f2c7a90-upload") @RequestParam String upload,
+            @ApiParam(value = "Number of the part, from 0") @RequestParam int part,
+            HttpServletRequest request) {
+        try (InputStream inputStream = request.getInputStream()) {
+            partUploadService.writePart(fileName, upload, part, request.getContentLengthLong(), inputStream);
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/{fileName:.+}")
+    @ResponseStatus(HttpStatus.CREATED)
+    @ApiOperation(httpMethod = "POST",
+            value = "Complete an upload, storing its parts in order as a new version of the file",
+            notes = "Completing an upload again returns the version it created",
+            response = FileResponseDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "File successfully stored on the system"),
+            @ApiResponse(code = 400, message = "Invalid upload id or a part was not received")
+    }
+    )
+    public FileResponseDTO completeUpload(
+            @PathVariable("fileName") String fileName,
+            @ApiParam(value = "Id chosen by the client for the upload") @RequestParam String upload,
+            @ApiParam(value = "Number of parts of the upload") @RequestParam int parts) {
+        FileResponseDTO fileResponseDTO = partUploadService.complete(fileName, upload, parts);
+
+        fileResponseDTO.setDownloadURI(downloadLinkBuilder.build(
+                downloadLinkBuilder.resolveBaseUri(), fileResponseDTO.getName(), fileResponseDTO.getVersion()));
+
+        return fileResponseDTO;
+    }
+
+    @DeleteMapping("/{fileName:.+}")
+    @ApiOperation(httpMethod = "DELETE", value = "Abort an upload, removing the parts received")
+    @ApiResponses(value = {
+            @ApiResponse(code = 204, message = "Upload successfully aborted")
+    }
+    )
+    public ResponseEntity<Void> abortUpload(
+            @PathVariable("fileName") String fileName,
+            @ApiParam(value = "Id chosen by the client for the upload") @RequestParam String upload) {
+        partUploadService.abort(upload);
+        return ResponseEntity.noContent().build();
+    }
+}
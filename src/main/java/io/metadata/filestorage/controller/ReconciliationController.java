@@ -0,0 +1,43 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.model.dto.ReconciliationReportDTO;
+import io.metadata.filestorage.service.ReconciliationService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/files/reconciliation")
+public class ReconciliationController {
+
+    private final ReconciliationService reconciliationService;
+
+    @Autowired
+    public ReconciliationController(ReconciliationService reconciliationService) {
+        this.reconciliationService = reconciliationService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "POST",
+            value = "Compare the files on disk with the version records, optionally removing what does not match",
+            response = ReconciliationReportDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully reconciled"),
+            @ApiResponse(code = 409, message = "A reconciliation is already running")
+    }
+    )
+    public ReconciliationReportDTO reconcile(
+            @ApiParam(value = "Delete orphaned files and the records of versions without a file", defaultValue = "false")
+            @RequestParam(value = "repair", defaultValue = "false") boolean repair) {
+        return reconciliationService.reconcile(repair);
+    }
+}
@@ -0,0 +1,101 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.exception.FileNotFoundException;
+import io.metadata.filestorage.exception.InvalidPathException;
+import io.metadata.filestorage.exception.PersistingFileException;
+import io.metadata.filestorage.service.FileSystemStorage;
+import io.metadata.filestorage.service.ReplicationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import springfox.documentation.annotations.ApiIgnore;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Version files exchanged between the nodes of a cluster, the metadata is in the shared database already. Only mapped
+ * when peers are configured, which requires a replication token.
+ */
+@ApiIgnore
+@RestController
+@ConditionalOnExpression("!'${file.replication.peers:}'.trim().isEmpty()")
+@RequestMapping("/files/replicas")
+public class ReplicaController {
+
+    private final ReplicationService replicationService;
+
+    private final FileSystemStorage storage;
+
+    @Autowired
+    public ReplicaController(ReplicationService replicationService, FileSystemStorage storage) {
+        this.replicationService = replicationService;
+        this.storage = storage;
+    }
+
+    @PutMapping("/{version}/{fileName:.+}")
+    public ResponseEntity<Void> storeReplica(
+            @PathVariable Integer version,
+            @PathVariable String fileName,
+            @RequestHeader(value = ReplicationService.TOKEN_HEADER, required = false) String token,
+            HttpServletRequest request) {
+        if (!replicationService.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try (InputStream inputStream = request.getInputStream()) {
+            storage.replace(resolve(fileName, version), inputStream);
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{version}/{fileName:.+}")
+    public ResponseEntity<Resource> readReplica(
+            @PathVariable Integer version,
+            @PathVariable String fileName,
+            @RequestHeader(value = ReplicationService.TOKEN_HEADER, required = false) String token) {
+        if (!replicationService.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Path path = resolve(fileName, version);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(fileName + " with version " + version);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(new FileSystemResource(path));
+    }
+
+    @DeleteMapping("/{version}/{fileName:.+}")
+    public ResponseEntity<Void> deleteReplica(
+            @PathVariable Integer version,
+            @PathVariable String fileName,
+            @RequestHeader(value = ReplicationService.TOKEN_HEADER, required = false) String token) {
+        if (!replicationService.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        resolve(fileName, version);
+        storage.delete(fileName, version);
+        return ResponseEntity.noContent().build();
+    }
+
+    private Path resolve(String fileName, Integer version) {
+        if (fileName.contains("..")) {
+            throw new InvalidPathException();
+        }
+        return storage.resolve(fileName, version);
+    }
+}
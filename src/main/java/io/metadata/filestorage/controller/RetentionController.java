@@ -0,0 +1,38 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.model.dto.RetentionReportDTO;
+import io.metadata.filestorage.service.RetentionService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/files/retention")
+public class RetentionController {
+
+    private final RetentionService retentionService;
+
+    @Autowired
+    public RetentionController(RetentionService retentionService) {
+        this.retentionService = retentionService;
+    }
+
+    @GetMapping("/report")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "GET",
+            value = "Report the versions the retention policies would remove, without removing them",
+            response = RetentionReportDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully computed the report")
+    }
+    )
+    public RetentionReportDTO report() {
+        return retentionService.report();
+    }
+}
@@ -0,0 +1,38 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.model.dto.ScrubStatusDTO;
+import io.metadata.filestorage.service.IntegrityScrubber;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/files/scrub")
+public class ScrubController {
+
+    private final IntegrityScrubber integrityScrubber;
+
+    @Autowired
+    public ScrubController(IntegrityScrubber integrityScrubber) {
+        this.integrityScrubber = integrityScrubber;
+    }
+
+    @GetMapping("/status")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "GET",
+            value = "Progress of the integrity scrubber and number of versions flagged as corrupted",
+            response = ScrubStatusDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved the status")
+    }
+    )
+    public ScrubStatusDTO status() {
+        return integrityScrubber.getStatus();
+    }
+}
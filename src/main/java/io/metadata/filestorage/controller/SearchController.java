@@ -0,0 +1,66 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.model.dto.FileDTO;
+import io.metadata.filestorage.model.dto.FileSearchDTO;
+import io.metadata.filestorage.service.FileNameIndex;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/files/search")
+public class SearchController {
+
+    private final FileNameIndex fileNameIndex;
+
+    private final DownloadLinkBuilder downloadLinkBuilder;
+
+    private final int maxPageSize;
+
+    @Autowired
+    public SearchController(
+            FileNameIndex fileNameIndex,
+            @Value("${file.download.base-url:}") String downloadBaseUrl,
+            @Value("${file.search.max-page-size:1000}") int maxPageSize) {
+        this.fileNameIndex = fileNameIndex;
+        this.downloadLinkBuilder = new DownloadLinkBuilder(downloadBaseUrl);
+        this.maxPageSize = maxPageSize;
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "GET",
+            value = "Search the files by name, ordered by name",
+            notes = "Globs match the whole name, '*' stands for any characters and '?' for a single one. "
+                    + "Pass the returned next after name on the following call to get the next page",
+            response = FileSearchDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved matching files")
+    }
+    )
+    public FileSearchDTO searchFiles(
+            @ApiParam(value = "Prefix, substring or glob the names have to match", example = "*prod*.yaml")
+            @RequestParam String pattern,
+            @ApiParam(value = "PREFIX, SUBSTRING or GLOB", defaultValue = "GLOB")
+            @RequestParam(defaultValue = "GLOB") FileNameIndex.Type type,
+            @ApiParam(value = "Only names after this one") @RequestParam(required = false) String after,
+            @ApiParam(value = "Files per page", defaultValue = "100") @RequestParam(defaultValue = "100") int size) {
+        FileSearchDTO result = fileNameIndex.search(type, pattern, after, Math.max(1, Math.min(size, maxPageSize)));
+
+        String baseUri = downloadLinkBuilder.resolveBaseUri();
+        for (FileDTO file : result.getFiles()) {
+            file.setDownloadLink(downloadLinkBuilder.build(baseUri, file.getName(), file.getLatestVersion()));
+        }
+
+        return result;
+    }
+}
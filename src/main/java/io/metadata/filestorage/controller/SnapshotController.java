@@ -0,0 +1,123 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.exception.PersistingFileException;
+import io.metadata.filestorage.model.dto.SnapshotDTO;
+import io.metadata.filestorage.model.dto.SnapshotImportReportDTO;
+import io.metadata.filestorage.service.SnapshotService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+@RestController
+@RequestMapping("/files/snapshots")
+public class SnapshotController {
+
+    private final SnapshotService snapshotService;
+
+    @Autowired
+    public SnapshotController(SnapshotService snapshotService) {
+        this.snapshotService = snapshotService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    @ApiOperation(httpMethod = "POST",
+            value = "Take a point-in-time snapshot of every version stored",
+            notes = "Version files are hard linked, so taking a snapshot does not copy their content",
+            response = SnapshotDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "Snapshot successfully taken")
+    }
+    )
+    public SnapshotDTO createSnapshot() {
+        return snapshotService.create();
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "GET", value = "List the snapshots, oldest first",
+            response = SnapshotDTO.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved the list of snapshots")
+    }
+    )
+    public List<SnapshotDTO> getSnapshots() {
+        return snapshotService.findAll();
+    }
+
+    @GetMapping("/{id}/export")
+    @ApiOperation(httpMethod = "GET",
+            value = "Export the snapshot as a zip archive",
+            notes = "With a base snapshot, only the versions added or changed since it are in the archive")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Archive streamed"),
+            @ApiResponse(code = 404, message = "Snapshot or base snapshot not found")
+    }
+    )
+    public ResponseEntity<StreamingResponseBody> exportSnapshot(
+            @ApiParam(value = "Id of the snapshot", example = "20190301-120000-000") @PathVariable String id,
+            @ApiParam(value = "Id of an earlier snapshot to export the changes since")
+            @RequestParam(required = false) String since) {
+        // Unknown ids are answered before the archive starts streaming
+        snapshotService.find(id);
+        if (since != null) {
+            snapshotService.find(since);
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, "application/zip")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"snapshot-" + id
+                        + (since != null ? "-since-" + since : "") + ".zip\"")
+                .body(outputStream -> snapshotService.export(id, since, outputStream));
+    }
+
+    @PostMapping("/import")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "POST",
+            value = "Import an exported snapshot archive sent as binary body content",
+            notes = "Versions already stored with the same content are skipped, stored versions the snapshot does not "
+                    + "have are kept. Import the base archive of an incremental one first",
+            response = SnapshotImportReportDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Archive imported"),
+            @ApiResponse(code = 400, message = "The body is not an exported snapshot")
+    }
+    )
+    public SnapshotImportReportDTO importSnapshot(HttpServletRequest request) {
+        try (InputStream inputStream = request.getInputStream()) {
+            return snapshotService.importArchive(inputStream);
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    @ApiOperation(httpMethod = "DELETE", value = "Delete the snapshot")
+    @ApiResponses(value = {
+            @ApiResponse(code = 204, message = "Snapshot successfully deleted"),
+            @ApiResponse(code = 404, message = "Snapshot not found")
+    }
+    )
+    public ResponseEntity<Void> deleteSnapshot(@PathVariable String id) {
+        snapshotService.delete(id);
+        return ResponseEntity.noContent().build();
+    }
+}
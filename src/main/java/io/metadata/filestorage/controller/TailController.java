@@ -0,0 +1,74 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.service.FileService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/files/tail")
+public class TailController {
+
+    static final String OFFSET_HEADER = "X-Content-Offset";
+
+    private final FileService fileService;
+
+    private final long idleTimeout;
+
+    private final long maxDuration;
+
+    @Autowired
+    public TailController(
+            FileService fileService,
+            @Value("${file.tail.idle-timeout:30000}") long idleTimeout,
+            @Value("${file.tail.max-duration:600000}") long maxDuration) {
+        this.fileService = fileService;
+        this.idleTimeout = idleTimeout;
+        this.maxDuration = maxDuration;
+    }
+
+    @GetMapping("/{fileName:.+}")
+    @ApiOperation(httpMethod = "GET",
+            value = "Read a version of the file from an offset, optionally following the content appended to it",
+            notes = "The response is streamed and ends when following stops after no content was appended for a while")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Content streamed"),
+            @ApiResponse(code = 404, message = "File not found on records")
+    }
+    )
+    public ResponseEntity<StreamingResponseBody> tailFile(
+            @PathVariable String fileName,
+            @RequestParam(required = false) Integer version,
+            @ApiParam(value = "Position to start reading from, negative values count from the end", defaultValue = "0")
+            @RequestParam(defaultValue = "0") long offset,
+            @ApiParam(value = "Keep streaming the content appended to the version", defaultValue = "false")
+            @RequestParam(defaultValue = "false") boolean follow) throws IOException {
+
+        Resource resource = fileService.getResourceFile(fileName, version);
+        Path path = resource.getFile().toPath();
+        long start = offset < 0 ? Math.max(0, Files.size(path) + offset) : offset;
+
+        StreamingResponseBody body = outputStream -> fileService.tail(path, start, follow, idleTimeout, maxDuration, outputStream);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(OFFSET_HEADER, String.valueOf(start))
+                .body(body);
+    }
+}
@@ -0,0 +1,376 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.service.TransferLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.Part;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Lets uploads and downloads in through the transfer limiter and paces the bytes they read and write.
+ * Runs before the transfer metrics, so turned away transfers are not counted as active. Responses streamed
+ * asynchronously, such as tails, diffs and snapshot exports, keep their slot until the stream completes.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class TransferLimitFilter extends OncePerRequestFilter {
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private final TransferLimiter limiter;
+
+    private final String clientHeader;
+
+    private final long retryAfterSeconds;
+
+    @Autowired
+    public TransferLimitFilter(
+            TransferLimiter limiter,
+            @Value("${file.transfer.client-header:}") String clientHeader,
+            @Value("${file.transfer.retry-after:5}") long retryAfterSeconds) {
+        this.limiter = limiter;
+        this.clientHeader = clientHeader;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !TransferMetricsFilter.isUpload(request) && !TransferMetricsFilter.isDownload(request) && !isStreaming(request);
+    }
+
+    private static boolean isStreaming(HttpServletRequest request) {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        return path.startsWith("/files/tail/") || path.startsWith("/files/diff/")
+                || (path.startsWith("/files/snapshots/") && path.endsWith("/export"));
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        String client = StringUtils.hasText(clientHeader) ? request.getHeader(clientHeader) : null;
+        return StringUtils.hasText(client) ? client : request.getRemoteAddr();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        TransferLimiter.Permit permit;
+        try {
+            permit = limiter.admit(clientOf(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a transfer slot");
+        }
+
+        if (permit == null) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many transfers, retry later");
+            return;
+        }
+
+        boolean async = false;
+        try {
+            if (TransferMetricsFilter.isUpload(request)) {
+                filterChain.doFilter(new ThrottledRequest(request, permit), response);
+            } else {
+                // The streamed body is written later on another thread, to the wrapped response handed on here
+                filterChain.doFilter(request, new ThrottledResponse(response, permit));
+            }
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new PermitRelease(permit));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                permit.close();
+            }
+        }
+    }
+
+    /**
+     * Frees the slot of an asynchronous response once it completed, failed or timed out.
+     */
+    private static class PermitRelease implements AsyncListener {
+
+        private final TransferLimiter.Permit permit;
+
+        PermitRelease(TransferLimiter.Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Still the same transfer
+        }
+    }
+
+    private static void throttle(TransferLimiter.Permit permit, long bytes) throws IOException {
+        try {
+            permit.throttle(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        }
+    }
+
+    private static class ThrottledInputStream extends FilterInputStream {
+
+        private final TransferLimiter.Permit permit;
+
+        ThrottledInputStream(InputStream in, TransferLimiter.Permit permit) {
+            super(in);
+            this.permit = permit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                throttle(permit, 1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                throttle(permit, read);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Part of a multipart body, which the container already spooled from its own stream, paced as it is read.
+     */
+    private static class ThrottledPart implements Part {
+
+        private final Part delegate;
+
+        private final TransferLimiter.Permit permit;
+
+        ThrottledPart(Part delegate, TransferLimiter.Permit permit) {
+            this.delegate = delegate;
+            this.permit = permit;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new ThrottledInputStream(delegate.getInputStream(), permit);
+        }
+
+        @Override
+        public String getContentType() {
+            return delegate.getContentType();
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public String getSubmittedFileName() {
+            return delegate.getSubmittedFileName();
+        }
+
+        @Override
+        public long getSize() {
+            return delegate.getSize();
+        }
+
+        @Override
+        public void write(String fileName) throws IOException {
+            throttle(permit, delegate.getSize());
+            delegate.write(fileName);
+        }
+
+        @Override
+        public void delete() throws IOException {
+            delegate.delete();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return delegate.getHeader(name);
+        }
+
+        @Override
+        public Collection<String> getHeaders(String name) {
+            return delegate.getHeaders(name);
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return delegate.getHeaderNames();
+        }
+    }
+
+    private static class ThrottledRequest extends HttpServletRequestWrapper {
+
+        private final TransferLimiter.Permit permit;
+
+        private ServletInputStream inputStream;
+
+        private List<Part> parts;
+
+        ThrottledRequest(HttpServletRequest request, TransferLimiter.Permit permit) {
+            super(request);
+            this.permit = permit;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                ServletInputStream delegate = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int read = delegate.read();
+                        if (read >= 0) {
+                            throttle(permit, 1);
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int read = delegate.read(buffer, offset, length);
+                        if (read > 0) {
+                            throttle(permit, read);
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        delegate.setReadListener(readListener);
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        @Override
+        public Collection<Part> getParts() throws IOException, ServletException {
+            if (parts == null) {
+                List<Part> throttled = new ArrayList<>();
+                for (Part part : super.getParts()) {
+                    throttled.add(new ThrottledPart(part, permit));
+                }
+                parts = throttled;
+            }
+            return parts;
+        }
+
+        @Override
+        public Part getPart(String name) throws IOException, ServletException {
+            for (Part part : getParts()) {
+                if (part.getName().equals(name)) {
+                    return part;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class ThrottledResponse extends HttpServletResponseWrapper {
+
+        private final TransferLimiter.Permit permit;
+
+        private ServletOutputStream outputStream;
+
+        ThrottledResponse(HttpServletResponse response, TransferLimiter.Permit permit) {
+            super(response);
+            this.permit = permit;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throttle(permit, 1);
+                        delegate.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] buffer, int offset, int length) throws IOException {
+                        throttle(permit, length);
+                        delegate.write(buffer, offset, length);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.service.FileStorageMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+
+/**
+ * Counts the bytes actually read from uploads and written to downloads, and the transfers in progress.
+ */
+@Component
+public class TransferMetricsFilter extends OncePerRequestFilter {
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private final FileStorageMetrics metrics;
+
+    @Autowired
+    public TransferMetricsFilter(FileStorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !isUpload(request) && !isDownload(request);
+    }
+
+    static boolean isUpload(HttpServletRequest request) {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        return path.startsWith("/files/upload") || path.startsWith("/files/update") || path.startsWith("/files/append")
+                || (path.startsWith("/files/parts/") && "PUT".equals(request.getMethod()));
+    }
+
+    static boolean isDownload(HttpServletRequest request) {
+        return URL_PATH_HELPER.getPathWithinApplication(request).startsWith("/files/download/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        if (isUpload(request)) {
+            CountingRequest countingRequest = new CountingRequest(request);
+            metrics.uploadStarted();
+            try {
+                filterChain.doFilter(countingRequest, response);
+            } finally {
+                // Multipart bodies are parsed by the container straight from its own stream
+                long bytes = countingRequest.bytes > 0 ? countingRequest.bytes : Math.max(request.getContentLengthLong(), 0);
+                metrics.uploadFinished(bytes);
+            }
+        } else {
+            CountingResponse countingResponse = new CountingResponse(response);
+            metrics.downloadStarted();
+            try {
+                filterChain.doFilter(request, countingResponse);
+            } finally {
+                metrics.downloadFinished(countingResponse.bytes);
+            }
+        }
+    }
+
+    private static class CountingRequest extends HttpServletRequestWrapper {
+
+        private long bytes;
+
+        private ServletInputStream inputStream;
+
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                ServletInputStream delegate = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int read = delegate.read();
+                        if (read >= 0) {
+                            bytes++;
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int read = delegate.read(buffer, offset, length);
+                        if (read > 0) {
+                            bytes += read;
+                        }
+                        return read;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        delegate.setReadListener(readListener);
+                    }
+                };
+            }
+            return inputStream;
+        }
+    }
+
+    private static class CountingResponse extends HttpServletResponseWrapper {
+
+        private long bytes;
+
+        private ServletOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        bytes++;
+                    }
+
+                    @Override
+                    public void write(byte[] buffer, int offset, int length) throws IOException {
+                        delegate.write(buffer, offset, length);
+                        bytes += length;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.model.dto.UsageDTO;
+import io.metadata.filestorage.service.StorageUsage;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/files/usage")
+public class UsageController {
+
+    private final StorageUsage storageUsage;
+
+    @Autowired
+    public UsageController(StorageUsage storageUsage) {
+        this.storageUsage = storageUsage;
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "GET",
+            value = "List the bytes and versions stored under every namespace and their quotas",
+            response = UsageDTO.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved the storage usage")
+    }
+    )
+    public List<UsageDTO> getUsage() {
+        return storageUsage.usage();
+    }
+
+    @GetMapping("/{name:.+}")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation(httpMethod = "GET",
+            value = "Get the bytes and versions stored under the namespace a name belongs to, and its quota",
+            notes = "The namespace is the configured one with the longest prefix of the name, "
+                    + "or the default namespace when none matches",
+            response = UsageDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved the storage usage")
+    }
+    )
+    public UsageDTO getUsage(
+            @ApiParam(value = "Namespace prefix or file name", example = "team-a-") @PathVariable String name) {
+        return storageUsage.usage(name);
+    }
+}
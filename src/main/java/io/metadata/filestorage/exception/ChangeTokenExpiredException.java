@@ -0,0 +1,12 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.GONE)
+public class ChangeTokenExpiredException extends RuntimeException {
+
+    public ChangeTokenExpiredException(long token) {
+        super("The changes after " + token + " are not kept anymore, list the files again and watch from a new token");
+    }
+}
@@ -0,0 +1,12 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ConcurrentDeleteException extends RuntimeException {
+
+    public ConcurrentDeleteException(String prefix) {
+        super("Files starting with " + prefix + " were deleted by another request meanwhile, retry");
+    }
+}
@@ -0,0 +1,12 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class DiffTooLargeException extends RuntimeException {
+
+    public DiffTooLargeException(String fileName, int maxLines) {
+        super("The versions of " + fileName + " have more than " + maxLines + " lines, compare them by blocks instead");
+    }
+}
@@ -0,0 +1,19 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class InvalidOffsetException extends RuntimeException {
+
+    private final long size;
+
+    public InvalidOffsetException(long offset, long size) {
+        super("Cannot append at offset " + offset + ", the version only has " + size + " bytes");
+        this.size = size;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
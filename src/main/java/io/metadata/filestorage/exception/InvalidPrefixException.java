@@ -0,0 +1,12 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidPrefixException extends RuntimeException {
+
+    public InvalidPrefixException() {
+        super("A non empty prefix is required to delete files by prefix");
+    }
+}
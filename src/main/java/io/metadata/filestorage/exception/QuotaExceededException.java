@@ -0,0 +1,13 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+public class QuotaExceededException extends RuntimeException {
+
+    public QuotaExceededException(String namespace, long usedBytes, long newBytes, long maxBytes) {
+        super("Storing " + newBytes + " more bytes in namespace '" + namespace + "' exceeds its quota, "
+                + usedBytes + " of " + maxBytes + " bytes are used");
+    }
+}
@@ -0,0 +1,12 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ReconciliationInProgressException extends RuntimeException {
+
+    public ReconciliationInProgressException() {
+        super("A reconciliation is already running");
+    }
+}
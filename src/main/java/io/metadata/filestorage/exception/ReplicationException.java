@@ -0,0 +1,11 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ReplicationException extends RuntimeException {
+    public ReplicationException(String fileName, Integer version, int copies, int quorum) {
+        super("Version " + version + " of " + fileName + " was stored on " + copies + " nodes, " + quorum + " are required");
+    }
+}
@@ -0,0 +1,11 @@
+package io.metadata.filestorage.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class StreamingCapacityException extends RuntimeException {
+    public StreamingCapacityException(int maxConcurrent) {
+        super("All " + maxConcurrent + " streaming responses are in use, retry later");
+    }
+}
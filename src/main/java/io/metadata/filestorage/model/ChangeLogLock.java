@@ -0,0 +1,32 @@
+package io.metadata.filestorage.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * The single row every node updates before writing its changes, its lock is held until the transaction ends.
+ */
+@Entity
+public class ChangeLogLock {
+
+    @Id
+    private Long id;
+
+    private LocalDateTime lockDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDateTime getLockDate() {
+        return lockDate;
+    }
+
+    public void setLockDate(LocalDateTime lockDate) {
+        this.lockDate = lockDate;
+    }
+}
@@ -0,0 +1,84 @@
+package io.metadata.filestorage.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Entity
+public class NamespaceUsage {
+
+    public NamespaceUsage() {
+    }
+
+    public NamespaceUsage(String namespace, Long bytes, Long versions, LocalDateTime lastModificationDate) {
+        this.namespace = namespace;
+        this.bytes = bytes;
+        this.versions = versions;
+        this.lastModificationDate = lastModificationDate;
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String namespace;
+
+    private Long bytes;
+
+    private Long versions;
+
+    private LocalDateTime lastModificationDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public void setNamespace(String namespace) {
+        this.namespace = namespace;
+    }
+
+    public Long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(Long bytes) {
+        this.bytes = bytes;
+    }
+
+    public Long getVersions() {
+        return versions;
+    }
+
+    public void setVersions(Long versions) {
+        this.versions = versions;
+    }
+
+    public LocalDateTime getLastModificationDate() {
+        return lastModificationDate;
+    }
+
+    public void setLastModificationDate(LocalDateTime lastModificationDate) {
+        this.lastModificationDate = lastModificationDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NamespaceUsage usage = (NamespaceUsage) o;
+        return Objects.equals(getId(), usage.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getId());
+    }
+}
@@ -0,0 +1,84 @@
+package io.metadata.filestorage.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Entity
+public class Tombstone {
+
+    public Tombstone() {
+    }
+
+    public Tombstone(String fileName, Integer fromVersion, Integer toVersion, LocalDateTime creationDate) {
+        this.fileName = fileName;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.creationDate = creationDate;
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String fileName;
+
+    private Integer fromVersion;
+
+    private Integer toVersion;
+
+    private LocalDateTime creationDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Integer getFromVersion() {
+        return fromVersion;
+    }
+
+    public void setFromVersion(Integer fromVersion) {
+        this.fromVersion = fromVersion;
+    }
+
+    public Integer getToVersion() {
+        return toVersion;
+    }
+
+    public void setToVersion(Integer toVersion) {
+        this.toVersion = toVersion;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(LocalDateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Tombstone tombstone = (Tombstone) o;
+        return Objects.equals(getId(), tombstone.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getId());
+    }
+}
@@ -27,6 +27,14 @@ public class Version {
     @ManyToOne
     private File file;
 
+    private String checksum;
+
+    private Long size;
+
+    private boolean corrupted;
+
+    private LocalDateTime verificationDate;
+
     public Long getId() {
         return id;
     }
@@ -59,6 +67,38 @@ public class Version {
         this.lastModificationDate = lastModificationDate;
     }
 
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    public void setCorrupted(boolean corrupted) {
+        this.corrupted = corrupted;
+    }
+
+    public LocalDateTime getVerificationDate() {
+        return verificationDate;
+    }
+
+    public void setVerificationDate(LocalDateTime verificationDate) {
+        this.verificationDate = verificationDate;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,77 @@
+package io.metadata.filestorage.model.dto;
+
+import io.metadata.filestorage.model.ChangeEvent;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.time.LocalDateTime;
+
+@ApiModel(description = "Object encapsulating a change of a file")
+public class ChangeEventDTO {
+
+    public ChangeEventDTO() {
+    }
+
+    public ChangeEventDTO(ChangeEvent event) {
+        this.token = event.getId();
+        this.name = event.getFileName();
+        this.version = event.getVersionNumber();
+        this.type = event.getType();
+        this.date = event.getCreationDate();
+    }
+
+    @ApiModelProperty(value = "Position of the change in the change log", example = "1024")
+    private Long token;
+
+    @ApiModelProperty(value = "Name of the file", example = "test.json")
+    private String name;
+
+    @ApiModelProperty(value = "Version number changed, empty when the whole file was deleted", example = "2")
+    private Integer version;
+
+    @ApiModelProperty(value = "Kind of change", example = "CREATED")
+    private ChangeEvent.Type type;
+
+    @ApiModelProperty(value = "Time of the change", example = "2019-02-02T00:00:00")
+    private LocalDateTime date;
+
+    public Long getToken() {
+        return token;
+    }
+
+    public void setToken(Long token) {
+        this.token = token;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public ChangeEvent.Type getType() {
+        return type;
+    }
+
+    public void setType(ChangeEvent.Type type) {
+        this.type = type;
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDateTime date) {
+        this.date = date;
+    }
+}
@@ -0,0 +1,40 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+@ApiModel(description = "Object encapsulating the changes after a token and the token to resume from")
+public class ChangesDTO {
+
+    public ChangesDTO() {
+    }
+
+    public ChangesDTO(List<ChangeEventDTO> changes, Long nextToken) {
+        this.changes = changes;
+        this.nextToken = nextToken;
+    }
+
+    @ApiModelProperty(value = "Changes in the order they happened")
+    private List<ChangeEventDTO> changes;
+
+    @ApiModelProperty(value = "Token to pass as \"after\" on the next call", example = "1024")
+    private Long nextToken;
+
+    public List<ChangeEventDTO> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<ChangeEventDTO> changes) {
+        this.changes = changes;
+    }
+
+    public Long getNextToken() {
+        return nextToken;
+    }
+
+    public void setNextToken(Long nextToken) {
+        this.nextToken = nextToken;
+    }
+}
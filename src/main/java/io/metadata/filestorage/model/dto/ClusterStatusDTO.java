@@ -0,0 +1,76 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+@ApiModel(description = "Members of the cluster and progress of moving the files to their owners")
+public class ClusterStatusDTO {
+
+    @ApiModelProperty(notes = "Url of this node")
+    private String self;
+
+    @ApiModelProperty(notes = "Urls of the nodes in the cluster")
+    private List<String> nodes;
+
+    @ApiModelProperty(notes = "Whether this node is moving files to their new owners")
+    private boolean rebalancing;
+
+    @ApiModelProperty(notes = "Files moved by this node since it started")
+    private long filesMoved;
+
+    @ApiModelProperty(notes = "Files this node could not move, they are retried on the next membership change")
+    private long filesFailed;
+
+    public ClusterStatusDTO() {
+    }
+
+    public ClusterStatusDTO(String self, List<String> nodes, boolean rebalancing, long filesMoved, long filesFailed) {
+        this.self = self;
+        this.nodes = nodes;
+        this.rebalancing = rebalancing;
+        this.filesMoved = filesMoved;
+        this.filesFailed = filesFailed;
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public void setSelf(String self) {
+        this.self = self;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<String> nodes) {
+        this.nodes = nodes;
+    }
+
+    public boolean isRebalancing() {
+        return rebalancing;
+    }
+
+    public void setRebalancing(boolean rebalancing) {
+        this.rebalancing = rebalancing;
+    }
+
+    public long getFilesMoved() {
+        return filesMoved;
+    }
+
+    public void setFilesMoved(long filesMoved) {
+        this.filesMoved = filesMoved;
+    }
+
+    public long getFilesFailed() {
+        return filesFailed;
+    }
+
+    public void setFilesFailed(long filesFailed) {
+        this.filesFailed = filesFailed;
+    }
+}
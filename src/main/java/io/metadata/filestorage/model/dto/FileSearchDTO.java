@@ -0,0 +1,40 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+@ApiModel(description = "Object encapsulating a page of the files matching a search and where the next page starts")
+public class FileSearchDTO {
+
+    public FileSearchDTO() {
+    }
+
+    public FileSearchDTO(List<FileDTO> files, String nextAfter) {
+        this.files = files;
+        this.nextAfter = nextAfter;
+    }
+
+    @ApiModelProperty(value = "Matching files ordered by name")
+    private List<FileDTO> files;
+
+    @ApiModelProperty(value = "Name to pass as \"after\" for the next page, missing on the last page", example = "prod/app.yaml")
+    private String nextAfter;
+
+    public List<FileDTO> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<FileDTO> files) {
+        this.files = files;
+    }
+
+    public String getNextAfter() {
+        return nextAfter;
+    }
+
+    public void setNextAfter(String nextAfter) {
+        this.nextAfter = nextAfter;
+    }
+}
@@ -0,0 +1,106 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ApiModel(description = "Object encapsulating the differences found between the files on disk and the version records")
+public class ReconciliationReportDTO {
+
+    public ReconciliationReportDTO() {
+    }
+
+    public ReconciliationReportDTO(boolean repaired) {
+        this.repaired = repaired;
+    }
+
+    @ApiModelProperty(value = "Whether orphaned files and missing versions were removed", example = "false")
+    private boolean repaired;
+
+    @ApiModelProperty(value = "Number of files found on disk", example = "25000")
+    private long scannedFiles;
+
+    @ApiModelProperty(value = "Number of version records", example = "25000")
+    private long scannedVersions;
+
+    @ApiModelProperty(value = "Number of files on disk without a version record", example = "2")
+    private long orphanedFiles;
+
+    @ApiModelProperty(value = "Number of version records whose file is missing on disk", example = "1")
+    private long missingVersions;
+
+    @ApiModelProperty(value = "Some of the orphaned files, relative to the database path", example = "[\"3test.json\"]")
+    private List<String> orphanedFileSamples = new ArrayList<>();
+
+    @ApiModelProperty(value = "Some of the missing versions, as version number followed by file name", example = "[\"2test.json\"]")
+    private List<String> missingVersionSamples = new ArrayList<>();
+
+    @ApiModelProperty(value = "Time taken in milliseconds", example = "1200")
+    private long durationMillis;
+
+    public boolean isRepaired() {
+        return repaired;
+    }
+
+    public void setRepaired(boolean repaired) {
+        this.repaired = repaired;
+    }
+
+    public long getScannedFiles() {
+        return scannedFiles;
+    }
+
+    public void setScannedFiles(long scannedFiles) {
+        this.scannedFiles = scannedFiles;
+    }
+
+    public long getScannedVersions() {
+        return scannedVersions;
+    }
+
+    public void setScannedVersions(long scannedVersions) {
+        this.scannedVersions = scannedVersions;
+    }
+
+    public long getOrphanedFiles() {
+        return orphanedFiles;
+    }
+
+    public void setOrphanedFiles(long orphanedFiles) {
+        this.orphanedFiles = orphanedFiles;
+    }
+
+    public long getMissingVersions() {
+        return missingVersions;
+    }
+
+    public void setMissingVersions(long missingVersions) {
+        this.missingVersions = missingVersions;
+    }
+
+    public List<String> getOrphanedFileSamples() {
+        return orphanedFileSamples;
+    }
+
+    public void setOrphanedFileSamples(List<String> orphanedFileSamples) {
+        this.orphanedFileSamples = orphanedFileSamples;
+    }
+
+    public List<String> getMissingVersionSamples() {
+        return missingVersionSamples;
+    }
+
+    public void setMissingVersionSamples(List<String> missingVersionSamples) {
+        this.missingVersionSamples = missingVersionSamples;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+}
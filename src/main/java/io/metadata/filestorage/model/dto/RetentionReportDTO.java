@@ -0,0 +1,68 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+@ApiModel(description = "Object encapsulating the outcome of applying the version retention policies")
+public class RetentionReportDTO {
+
+    public RetentionReportDTO() {
+    }
+
+    public RetentionReportDTO(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    @ApiModelProperty(value = "Whether versions were only reported and not deleted", example = "true")
+    private boolean dryRun;
+
+    @ApiModelProperty(value = "Number of files with a retention policy", example = "120")
+    private long files;
+
+    @ApiModelProperty(value = "Number of versions outside their retention policy", example = "3400")
+    private long versions;
+
+    @ApiModelProperty(value = "Bytes on disk taken by those versions", example = "1073741824")
+    private long bytes;
+
+    public void addFile() {
+        files++;
+    }
+
+    public void addVersion(long size) {
+        versions++;
+        bytes += size;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public void setFiles(long files) {
+        this.files = files;
+    }
+
+    public long getVersions() {
+        return versions;
+    }
+
+    public void setVersions(long versions) {
+        this.versions = versions;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+}
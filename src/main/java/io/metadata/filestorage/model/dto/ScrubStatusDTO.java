@@ -0,0 +1,109 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.time.LocalDateTime;
+
+@ApiModel(description = "Object encapsulating the progress of the integrity scrubber")
+public class ScrubStatusDTO {
+
+    @ApiModelProperty(value = "Whether a pass is running", example = "true")
+    private boolean running;
+
+    @ApiModelProperty(value = "Time the current or last pass started", example = "2019-02-02T00:00:00")
+    private LocalDateTime passStarted;
+
+    @ApiModelProperty(value = "Time the last pass completed", example = "2019-02-01T00:00:00")
+    private LocalDateTime passCompleted;
+
+    @ApiModelProperty(value = "Versions verified by the current or last pass", example = "1200")
+    private long versionsScrubbed;
+
+    @ApiModelProperty(value = "Versions to verify when the pass started", example = "25000")
+    private long versionsTotal;
+
+    @ApiModelProperty(value = "Bytes read by the current or last pass", example = "1073741824")
+    private long bytesScrubbed;
+
+    @ApiModelProperty(value = "Versions whose content did not match its checksum in the current or last pass", example = "0")
+    private long mismatches;
+
+    @ApiModelProperty(value = "Versions whose file was missing or unreadable in the current or last pass", example = "0")
+    private long unreadable;
+
+    @ApiModelProperty(value = "Versions flagged as corrupted", example = "0")
+    private long corruptedVersions;
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    public LocalDateTime getPassStarted() {
+        return passStarted;
+    }
+
+    public void setPassStarted(LocalDateTime passStarted) {
+        this.passStarted = passStarted;
+    }
+
+    public LocalDateTime getPassCompleted() {
+        return passCompleted;
+    }
+
+    public void setPassCompleted(LocalDateTime passCompleted) {
+        this.passCompleted = passCompleted;
+    }
+
+    public long getVersionsScrubbed() {
+        return versionsScrubbed;
+    }
+
+    public void setVersionsScrubbed(long versionsScrubbed) {
+        this.versionsScrubbed = versionsScrubbed;
+    }
+
+    public long getVersionsTotal() {
+        return versionsTotal;
+    }
+
+    public void setVersionsTotal(long versionsTotal) {
+        this.versionsTotal = versionsTotal;
+    }
+
+    public long getBytesScrubbed() {
+        return bytesScrubbed;
+    }
+
+    public void setBytesScrubbed(long bytesScrubbed) {
+        this.bytesScrubbed = bytesScrubbed;
+    }
+
+    public long getMismatches() {
+        return mismatches;
+    }
+
+    public void setMismatches(long mismatches) {
+        this.mismatches = mismatches;
+    }
+
+    public long getUnreadable() {
+        return unreadable;
+    }
+
+    public void setUnreadable(long unreadable) {
+        this.unreadable = unreadable;
+    }
+
+    public long getCorruptedVersions() {
+        return corruptedVersions;
+    }
+
+    public void setCorruptedVersions(long corruptedVersions) {
+        this.corruptedVersions = corruptedVersions;
+    }
+}
@@ -0,0 +1,75 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.time.LocalDateTime;
+
+@ApiModel(description = "Object encapsulating a point-in-time snapshot of the files")
+public class SnapshotDTO {
+
+    public SnapshotDTO() {
+    }
+
+    public SnapshotDTO(String id, LocalDateTime creationDate, long versions, long bytes) {
+        this.id = id;
+        this.creationDate = creationDate;
+        this.versions = versions;
+        this.bytes = bytes;
+    }
+
+    @ApiModelProperty(value = "Identifier of the snapshot", example = "20190315-120000-000")
+    private String id;
+
+    @ApiModelProperty(value = "Snapshot an export only has the changes since, null for a whole one", example = "20190314-120000-000")
+    private String base;
+
+    @ApiModelProperty(value = "Date the metadata was read", example = "2019-03-15T12:00:00")
+    private LocalDateTime creationDate;
+
+    @ApiModelProperty(value = "Number of versions in the snapshot", example = "3400")
+    private long versions;
+
+    @ApiModelProperty(value = "Bytes of those versions", example = "1073741824")
+    private long bytes;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getBase() {
+        return base;
+    }
+
+    public void setBase(String base) {
+        this.base = base;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(LocalDateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public long getVersions() {
+        return versions;
+    }
+
+    public void setVersions(long versions) {
+        this.versions = versions;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+}
@@ -0,0 +1,82 @@
+package io.metadata.filestorage.model.dto;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Metadata of a version in a snapshot manifest.
+ */
+public class SnapshotEntryDTO {
+
+    public SnapshotEntryDTO() {
+    }
+
+    public SnapshotEntryDTO(String fileName, Integer versionNumber, LocalDateTime lastModificationDate, String checksum, Long size) {
+        this.fileName = fileName;
+        this.versionNumber = versionNumber;
+        this.lastModificationDate = lastModificationDate;
+        this.checksum = checksum;
+        this.size = size;
+    }
+
+    private String fileName;
+
+    private Integer versionNumber;
+
+    private LocalDateTime lastModificationDate;
+
+    private String checksum;
+
+    private Long size;
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Integer getVersionNumber() {
+        return versionNumber;
+    }
+
+    public void setVersionNumber(Integer versionNumber) {
+        this.versionNumber = versionNumber;
+    }
+
+    public LocalDateTime getLastModificationDate() {
+        return lastModificationDate;
+    }
+
+    public void setLastModificationDate(LocalDateTime lastModificationDate) {
+        this.lastModificationDate = lastModificationDate;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    /**
+     * Whether both describe the same content of the same version.
+     */
+    public boolean sameContent(SnapshotEntryDTO other) {
+        return Objects.equals(fileName, other.fileName)
+                && Objects.equals(versionNumber, other.versionNumber)
+                && Objects.equals(checksum, other.checksum)
+                && Objects.equals(size, other.size)
+                && Objects.equals(lastModificationDate, other.lastModificationDate);
+    }
+}
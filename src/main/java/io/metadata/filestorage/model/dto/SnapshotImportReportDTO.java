@@ -0,0 +1,95 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ApiModel(description = "Object encapsulating the outcome of importing a snapshot")
+public class SnapshotImportReportDTO {
+
+    public SnapshotImportReportDTO() {
+    }
+
+    public SnapshotImportReportDTO(String id) {
+        this.id = id;
+    }
+
+    @ApiModelProperty(value = "Identifier of the imported snapshot", example = "20190315-120000-000")
+    private String id;
+
+    @ApiModelProperty(value = "Number of versions written from the archive", example = "120")
+    private long importedVersions;
+
+    @ApiModelProperty(value = "Bytes of those versions", example = "1073741824")
+    private long importedBytes;
+
+    @ApiModelProperty(value = "Number of versions already stored with the same content", example = "3280")
+    private long unchangedVersions;
+
+    @ApiModelProperty(value = "Number of versions neither in the archive nor stored, the archive of their snapshot has to be imported first", example = "0")
+    private long missingVersions;
+
+    @ApiModelProperty(value = "Some of the missing versions, as version number followed by file name")
+    private List<String> missingVersionSamples = new ArrayList<>();
+
+    @ApiModelProperty(value = "Time the import took", example = "5300")
+    private long durationMillis;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getImportedVersions() {
+        return importedVersions;
+    }
+
+    public void setImportedVersions(long importedVersions) {
+        this.importedVersions = importedVersions;
+    }
+
+    public long getImportedBytes() {
+        return importedBytes;
+    }
+
+    public void setImportedBytes(long importedBytes) {
+        this.importedBytes = importedBytes;
+    }
+
+    public long getUnchangedVersions() {
+        return unchangedVersions;
+    }
+
+    public void setUnchangedVersions(long unchangedVersions) {
+        this.unchangedVersions = unchangedVersions;
+    }
+
+    public long getMissingVersions() {
+        return missingVersions;
+    }
+
+    public void setMissingVersions(long missingVersions) {
+        this.missingVersions = missingVersions;
+    }
+
+    public List<String> getMissingVersionSamples() {
+        return missingVersionSamples;
+    }
+
+    public void setMissingVersionSamples(List<String> missingVersionSamples) {
+        this.missingVersionSamples = missingVersionSamples;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+}
@@ -0,0 +1,68 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+@ApiModel(description = "Object encapsulating the storage used by a namespace or a file")
+public class UsageDTO {
+
+    public UsageDTO() {
+    }
+
+    public UsageDTO(String name, Long bytes, Long versions) {
+        this.name = name;
+        this.bytes = bytes != null ? bytes : 0;
+        this.versions = versions != null ? versions : 0;
+    }
+
+    public UsageDTO(String name, long bytes, long versions, Long maxBytes) {
+        this.name = name;
+        this.bytes = bytes;
+        this.versions = versions;
+        this.maxBytes = maxBytes;
+    }
+
+    @ApiModelProperty(value = "Name prefix of the namespace, empty for the names outside every namespace", example = "team-a-")
+    private String name;
+
+    @ApiModelProperty(value = "Bytes of every version", example = "1073741824")
+    private long bytes;
+
+    @ApiModelProperty(value = "Number of versions", example = "3400")
+    private long versions;
+
+    @ApiModelProperty(value = "Quota of the namespace in bytes, null when it has none", example = "10737418240")
+    private Long maxBytes;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getVersions() {
+        return versions;
+    }
+
+    public void setVersions(long versions) {
+        this.versions = versions;
+    }
+
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(Long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+}
@@ -0,0 +1,87 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.time.LocalDateTime;
+
+@ApiModel(description = "Object encapsulating the info of a version of a file")
+public class VersionDTO {
+
+    public VersionDTO() {
+    }
+
+    public VersionDTO(Integer versionNumber, LocalDateTime lastModificationDate, Long size, String checksum, boolean corrupted) {
+        this.versionNumber = versionNumber;
+        this.lastModificationDate = lastModificationDate;
+        this.size = size;
+        this.checksum = checksum;
+        this.corrupted = corrupted;
+    }
+
+    @ApiModelProperty(value = "Version number", example = "2")
+    private Integer versionNumber;
+
+    @ApiModelProperty(value = "Time the version was written", example = "2019-02-02T00:00:00")
+    private LocalDateTime lastModificationDate;
+
+    @ApiModelProperty(value = "Size of the content in bytes", example = "18")
+    private Long size;
+
+    @ApiModelProperty(value = "SHA-256 checksum of the content")
+    private String checksum;
+
+    @ApiModelProperty(value = "Whether the content no longer matches its checksum")
+    private boolean corrupted;
+
+    @ApiModelProperty(value = "Download link", example = "http://localhost:8080/files/download/test.json?version=2")
+    private String downloadLink;
+
+    public Integer getVersionNumber() {
+        return versionNumber;
+    }
+
+    public void setVersionNumber(Integer versionNumber) {
+        this.versionNumber = versionNumber;
+    }
+
+    public LocalDateTime getLastModificationDate() {
+        return lastModificationDate;
+    }
+
+    public void setLastModificationDate(LocalDateTime lastModificationDate) {
+        this.lastModificationDate = lastModificationDate;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public boolean isCorrupted() {
+        return corrupted;
+    }
+
+    public void setCorrupted(boolean corrupted) {
+        this.corrupted = corrupted;
+    }
+
+    public String getDownloadLink() {
+        return downloadLink;
+    }
+
+    public void setDownloadLink(String downloadLink) {
+        this.downloadLink = downloadLink;
+    }
+}
@@ -0,0 +1,52 @@
+package io.metadata.filestorage.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.List;
+
+@ApiModel(description = "Object encapsulating a page of the versions of a file and where the next page starts")
+public class VersionHistoryDTO {
+
+    public VersionHistoryDTO() {
+    }
+
+    public VersionHistoryDTO(String name, List<VersionDTO> versions, Integer nextBefore) {
+        this.name = name;
+        this.versions = versions;
+        this.nextBefore = nextBefore;
+    }
+
+    @ApiModelProperty(value = "Name of the file", example = "test.json")
+    private String name;
+
+    @ApiModelProperty(value = "Versions from the newest to the oldest")
+    private List<VersionDTO> versions;
+
+    @ApiModelProperty(value = "Version to pass as \"before\" for the next page, missing on the last page", example = "1024")
+    private Integer nextBefore;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<VersionDTO> getVersions() {
+        return versions;
+    }
+
+    public void setVersions(List<VersionDTO> versions) {
+        this.versions = versions;
+    }
+
+    public Integer getNextBefore() {
+        return nextBefore;
+    }
+
+    public void setNextBefore(Integer nextBefore) {
+        this.nextBefore = nextBefore;
+    }
+}
@@ -0,0 +1,31 @@
+package io.metadata.filestorage.model.dto;
+
+/**
+ * Identity of a version, enough to locate its content on disk without loading the entities.
+ */
+public class VersionKeyDTO {
+
+    private final Long id;
+
+    private final String fileName;
+
+    private final Integer versionNumber;
+
+    public VersionKeyDTO(Long id, String fileName, Integer versionNumber) {
+        this.id = id;
+        this.fileName = fileName;
+        this.versionNumber = versionNumber;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Integer getVersionNumber() {
+        return versionNumber;
+    }
+}
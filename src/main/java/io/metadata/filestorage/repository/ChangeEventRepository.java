@@ -0,0 +1,40 @@
+package io.metadata.filestorage.repository;
+
+import io.metadata.filestorage.model.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+
+    @Query("select e from ChangeEvent e where e.id > :id and e.fileName like :namePattern escape '!' order by e.id")
+    List<ChangeEvent> findByIdGreaterThanAndFileNameLike(@Param("id") Long id, @Param("namePattern") String namePattern, Pageable pageable);
+
+    @Query("select max(e.id) from ChangeEvent e")
+    Long findLatestId();
+
+    @Query("select min(e.id) from ChangeEvent e")
+    Long findOldestId();
+
+    /**
+     * Takes the lock every node writes its changes under, it is held until the transaction ends so the ids of the
+     * changes follow the order they are committed in.
+     */
+    @Transactional
+    @Modifying
+    @Query("update ChangeLogLock l set l.lockDate = :lockDate")
+    int lock(@Param("lockDate") LocalDateTime lockDate);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ChangeEvent e where e.creationDate < :creationDate")
+    int removeByCreationDateBefore(@Param("creationDate") LocalDateTime creationDate);
+}
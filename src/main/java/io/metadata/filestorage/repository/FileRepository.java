@@ -2,11 +2,22 @@ package io.metadata.filestorage.repository;
 
 import io.metadata.filestorage.model.File;
 import io.metadata.filestorage.model.dto.FileDTO;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface FileRepository extends JpaRepository<File, Long> {
@@ -14,5 +25,40 @@ public interface FileRepository extends JpaRepository<File, Long> {
     @Query("select new io.metadata.filestorage.model.dto.FileDTO(f.name, max(v.versionNumber), max(v.lastModificationDate)) from File f inner join f.versions v group by f.id")
     List<FileDTO> findAllFiles();
 
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select new io.metadata.filestorage.model.dto.FileDTO(f.name, max(v.versionNumber), max(v.lastModificationDate)) from File f inner join f.versions v group by f.id")
+    Stream<FileDTO> streamAllFiles();
+
+    @Query("select new io.metadata.filestorage.model.dto.FileDTO(f.name, max(v.versionNumber), max(v.lastModificationDate)) from File f inner join f.versions v where f.name like :namePattern escape '!' group by f.id")
+    List<FileDTO> findAllFilesByNameLike(@Param("namePattern") String namePattern);
+
+    @Query("select new io.metadata.filestorage.model.dto.FileDTO(f.name, max(v.versionNumber), max(v.lastModificationDate)) from File f inner join f.versions v where f.name in :names group by f.id")
+    List<FileDTO> findAllFilesByNameIn(@Param("names") Collection<String> names);
+
+    @Query("select new io.metadata.filestorage.model.dto.FileDTO(f.name, max(v.versionNumber), max(v.lastModificationDate)) from File f inner join f.versions v where f.name like :namePattern escape '!' and f.name > :after group by f.id order by f.name")
+    List<FileDTO> findFilesByNameLikeAfter(@Param("namePattern") String namePattern, @Param("after") String after, Pageable pageable);
+
     File findByName(String name);
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select f.name from File f")
+    Stream<String> streamAllNames();
+
+    @Query("select f.name from File f where f.name > :name order by f.name")
+    List<String> findNamesAfter(@Param("name") String name, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("delete from File f where f.id =:id")
+    int removeById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from File f where f.name like :namePattern escape '!'")
+    int removeByNameLike(@Param("namePattern") String namePattern);
+
+    @Transactional
+    @Modifying
+    @Query("delete from File f where f.id not in (select v.file.id from Version v)")
+    int removeWithoutVersions();
 }
@@ -0,0 +1,30 @@
+package io.metadata.filestorage.repository;
+
+import io.metadata.filestorage.model.NamespaceUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface NamespaceUsageRepository extends JpaRepository<NamespaceUsage, Long> {
+
+    /**
+     * Adds the changes of this node to the totals of the namespace, so the changes of every node add up.
+     */
+    @Transactional
+    @Modifying
+    @Query("update NamespaceUsage u set u.bytes = u.bytes + :bytes, u.versions = u.versions + :versions, "
+            + "u.lastModificationDate =:lastModificationDate where u.namespace =:namespace")
+    int add(@Param("namespace") String namespace, @Param("bytes") long bytes, @Param("versions") long versions,
+            @Param("lastModificationDate") LocalDateTime lastModificationDate);
+
+    @Transactional
+    @Modifying
+    @Query("delete from NamespaceUsage u")
+    void removeAll();
+}
@@ -0,0 +1,31 @@
+package io.metadata.filestorage.repository;
+
+import io.metadata.filestorage.model.Tombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface TombstoneRepository extends JpaRepository<Tombstone, Long> {
+
+    List<Tombstone> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Query("select max(t.toVersion) from Tombstone t where t.fileName =:fileName")
+    Integer findLatestVersionNumber(@Param("fileName") String fileName);
+
+    @Transactional
+    @Modifying
+    @Query("update Tombstone t set t.fromVersion =:fromVersion where t.id =:id")
+    void updateFromVersion(@Param("id") Long id, @Param("fromVersion") Integer fromVersion);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Tombstone t where t.id =:id")
+    void removeById(@Param("id") Long id);
+}
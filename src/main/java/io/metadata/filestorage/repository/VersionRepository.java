@@ -1,10 +1,27 @@
 package io.metadata.filestorage.repository;
 
 import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.SnapshotEntryDTO;
+import io.metadata.filestorage.model.dto.UsageDTO;
+import io.metadata.filestorage.model.dto.VersionDTO;
+import io.metadata.filestorage.model.dto.VersionKeyDTO;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface VersionRepository extends JpaRepository<Version, Long> {
@@ -14,4 +31,107 @@ public interface VersionRepository extends JpaRepository<Version, Long> {
 
     @Query("select v from Version v where v.file.name =:fileName and v.versionNumber =:versionNumber")
     Version findByFileNameAndVersionNumber(@Param("fileName") String fileName, @Param("versionNumber") Integer versionNumber);
+
+    @Query("select v from Version v where v.file.name =:fileName order by v.versionNumber desc")
+    List<Version> findByFileNameOrderByVersionNumberDesc(@Param("fileName") String fileName);
+
+    /**
+     * Page of the versions older than the given one, newest first, reading only the rows of the page.
+     */
+    @Query("select new io.metadata.filestorage.model.dto.VersionDTO(v.versionNumber, v.lastModificationDate, v.size, v.checksum, v.corrupted) "
+            + "from Version v where v.file.name =:fileName and v.versionNumber <:before order by v.versionNumber desc")
+    List<VersionDTO> findHistory(@Param("fileName") String fileName, @Param("before") Integer before, Pageable pageable);
+
+    /**
+     * Page of the versions older than the given one, newest first.
+     */
+    @Query("select v from Version v where v.file.name =:fileName and v.versionNumber <:before order by v.versionNumber desc")
+    List<Version> findByFileNameBefore(@Param("fileName") String fileName, @Param("before") Integer before, Pageable pageable);
+
+    List<Version> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * Versions with the given content that are not known to be corrupted, newest first, found by the checksum index.
+     */
+    @Query("select v from Version v inner join fetch v.file where v.checksum =:checksum and v.size =:size "
+            + "and v.corrupted = false order by v.id desc")
+    List<Version> findByContent(@Param("checksum") String checksum, @Param("size") Long size, Pageable pageable);
+
+    @Query("select new io.metadata.filestorage.model.dto.UsageDTO(f.name, sum(v.size), count(v)) "
+            + "from Version v inner join v.file f where f.id =:fileId group by f.name")
+    UsageDTO findUsageByFileId(@Param("fileId") Long fileId);
+
+    @Query("select new io.metadata.filestorage.model.dto.UsageDTO(f.name, sum(v.size), count(v)) "
+            + "from Version v inner join v.file f where f.name like :namePattern escape '!' group by f.name")
+    List<UsageDTO> findUsageByFileNameLike(@Param("namePattern") String namePattern);
+
+    /**
+     * Streams the bytes and versions of every file through a database cursor, it must be consumed inside a transaction.
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select new io.metadata.filestorage.model.dto.UsageDTO(f.name, sum(v.size), count(v)) "
+            + "from Version v inner join v.file f group by f.name")
+    Stream<UsageDTO> streamUsage();
+
+    long countByCorruptedTrue();
+
+    /**
+     * Records the outcome of a verification, unless the content was replaced since it was read.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Version v set v.corrupted =:corrupted, v.verificationDate =:verificationDate where v.id =:id and v.checksum =:checksum")
+    int updateVerification(@Param("id") Long id, @Param("checksum") String checksum,
+                           @Param("corrupted") boolean corrupted, @Param("verificationDate") LocalDateTime verificationDate);
+
+    @Transactional
+    @Modifying
+    @Query("update Version v set v.checksum =:checksum, v.size =:size, v.verificationDate =:verificationDate where v.id =:id and v.checksum is null")
+    int updateMissingChecksum(@Param("id") Long id, @Param("checksum") String checksum,
+                              @Param("size") Long size, @Param("verificationDate") LocalDateTime verificationDate);
+
+    /**
+     * Streams every version through a database cursor, it must be consumed inside a transaction.
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select new io.metadata.filestorage.model.dto.VersionKeyDTO(v.id, f.name, v.versionNumber) from Version v inner join v.file f")
+    Stream<VersionKeyDTO> streamAllKeys();
+
+    /**
+     * Streams the metadata of every version as of the start of the query through a database cursor, it must be
+     * consumed inside a transaction.
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select new io.metadata.filestorage.model.dto.SnapshotEntryDTO(f.name, v.versionNumber, v.lastModificationDate, v.checksum, v.size) "
+            + "from Version v inner join v.file f")
+    Stream<SnapshotEntryDTO> streamSnapshotEntries();
+
+    @Query("select new io.metadata.filestorage.model.dto.SnapshotEntryDTO(f.name, v.versionNumber, v.lastModificationDate, v.checksum, v.size) "
+            + "from Version v inner join v.file f where v.lastModificationDate >=:since")
+    List<SnapshotEntryDTO> findSnapshotEntriesModifiedSince(@Param("since") LocalDateTime since);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Version v where v.id in :ids")
+    void removeByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Version v where v.id =:id")
+    void removeById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Version v where v.versionNumber =:versionNumber and v.file.id in (select f.id from File f where f.name =:fileName)")
+    int removeByFileNameAndVersionNumber(@Param("fileName") String fileName, @Param("versionNumber") Integer versionNumber);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Version v where v.file.id =:fileId")
+    void removeByFileId(@Param("fileId") Long fileId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Version v where v.file.id in (select f.id from File f where f.name like :namePattern escape '!')")
+    void removeByFileNameLike(@Param("namePattern") String namePattern);
 }
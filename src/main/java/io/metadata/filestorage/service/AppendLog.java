@@ -0,0 +1,86 @@
+package io.metadata.filestorage.service;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State shared by appends and tails: a lock per version stripe, the running checksum of recently appended versions
+ * so an append only hashes the new bytes, and a sequence that wakes up tails waiting for new data.
+ */
+final class AppendLog {
+
+    private static final int STRIPES = 64;
+
+    private static final int MAX_DIGESTS = 256;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    private final Map<Long, RunningDigest> digests = new LinkedHashMap<Long, RunningDigest>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, RunningDigest> eldest) {
+            return size() > MAX_DIGESTS;
+        }
+    };
+
+    private long sequence;
+
+    AppendLog() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    Object lockFor(String fileName, Integer version) {
+        return locks[((fileName.hashCode() * 31 + version) & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    /**
+     * Digest of the first {@code size} bytes of the version, or null when it is not known.
+     */
+    synchronized MessageDigest digestAt(Long versionId, long size) {
+        RunningDigest digest = digests.remove(versionId);
+        return digest != null && digest.size == size ? digest.digest : null;
+    }
+
+    synchronized void keepDigest(Long versionId, long size, MessageDigest digest) {
+        digests.put(versionId, new RunningDigest(size, digest));
+    }
+
+    synchronized void forgetDigest(Long versionId) {
+        digests.remove(versionId);
+    }
+
+    synchronized long sequence() {
+        return sequence;
+    }
+
+    synchronized void appended() {
+        sequence++;
+        notifyAll();
+    }
+
+    /**
+     * Waits until there was an append after the given sequence or the timeout passes.
+     */
+    synchronized void awaitAppend(long seenSequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long remaining;
+        while (sequence == seenSequence && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    private static final class RunningDigest {
+
+        private final long size;
+
+        private final MessageDigest digest;
+
+        private RunningDigest(long size, MessageDigest digest) {
+            this.size = size;
+            this.digest = digest;
+        }
+    }
+}
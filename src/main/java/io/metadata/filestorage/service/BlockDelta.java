@@ -0,0 +1,234 @@
+package io.metadata.filestorage.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Delta of two binary files in the way of rsync: the blocks of the first file are indexed by a rolling checksum and a
+ * 64-bit hash, and the second file is scanned byte by byte for them. The delta is a list of "copy offset length"
+ * ranges of the first file and "data length" records of new bytes in base64, which rebuild the second file in order.
+ * Only the block index and a window of the second file are kept in memory, the block size grows with the first file
+ * to bound the index.
+ */
+final class BlockDelta {
+
+    private static final int WINDOW = 256 * 1024;
+
+    // Multiple of 3, so records are encoded without padding but the last one
+    private static final int DATA_RECORD = 48 * 1024;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int blockSize;
+
+    private final int[] weakHashes;
+
+    private final long[] strongHashes;
+
+    private final int[] table;
+
+    private final OutputStream out;
+
+    private long copyOffset;
+
+    private long copyLength;
+
+    private BlockDelta(int blockSize, int blocks, OutputStream out) {
+        this.blockSize = blockSize;
+        this.weakHashes = new int[blocks];
+        this.strongHashes = new long[blocks];
+        this.table = new int[Math.max(16, Integer.highestOneBit(Math.max(1, blocks)) * 4)];
+        this.out = out;
+    }
+
+    static void write(Path from, Path to, String fileName, int minBlockSize, int maxBlocks, OutputStream out) throws IOException {
+        try (FileChannel fromChannel = FileChannel.open(from, StandardOpenOption.READ);
+             FileChannel toChannel = FileChannel.open(to, StandardOpenOption.READ)) {
+            long fromSize = fromChannel.size();
+            int blockSize = (int) Math.max(minBlockSize, (fromSize + maxBlocks - 1) / maxBlocks);
+            int blocks = (int) (fromSize / blockSize);
+
+            BlockDelta delta = new BlockDelta(blockSize, blocks, out);
+            delta.index(fromChannel, blocks);
+            out.write(("--- a/" + fileName + "\n+++ b/" + fileName + "\n").getBytes(StandardCharsets.UTF_8));
+            delta.scan(toChannel, blocks > 0);
+        }
+    }
+
+    private void index(FileChannel channel, int blocks) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+        byte[] array = buffer.array();
+        for (int block = 0; block < blocks; block++) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, (long) block * blockSize + buffer.position()) < 0) {
+                    throw new IOException("File changed while comparing it");
+                }
+            }
+            int weak = weakHash(array, 0);
+            weakHashes[block] = weak;
+            strongHashes[block] = strongHash(array, 0, blockSize);
+
+            int mask = table.length - 1;
+            int slot = mix(weak) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = block + 1;
+        }
+    }
+
+    private void scan(FileChannel channel, boolean indexed) throws IOException {
+        byte[] buffer = new byte[Math.max(WINDOW, blockSize * 4)];
+        int start = 0;
+        int position = 0;
+        int limit = 0;
+        boolean eof = false;
+        boolean rolling = false;
+        int a = 0;
+        int b = 0;
+
+        while (true) {
+            if (position + blockSize > limit) {
+                if (eof) {
+                    break;
+                }
+                // Keep the window and the pending new bytes, unless they take half of the buffer already
+                if (position - start >= buffer.length / 2) {
+                    writeData(buffer, start, position - start);
+                    start = position;
+                }
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                position -= start;
+                limit -= start;
+                start = 0;
+                ByteBuffer fill = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+                while (fill.hasRemaining()) {
+                    if (channel.read(fill) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                limit = fill.position();
+                continue;
+            }
+
+            if (!indexed) {
+                position = limit;
+                continue;
+            }
+
+            if (!rolling) {
+                int weak = weakHash(buffer, position);
+                a = weak & 0xffff;
+                b = weak >>> 16;
+                rolling = true;
+            }
+
+            int block = find(a | (b << 16), buffer, position);
+            if (block >= 0) {
+                if (start < position) {
+                    writeData(buffer, start, position - start);
+                }
+                addCopy((long) block * blockSize, blockSize);
+                position += blockSize;
+                start = position;
+                rolling = false;
+            } else {
+                if (position + blockSize < limit) {
+                    int removed = buffer[position] & 0xff;
+                    int added = buffer[position + blockSize] & 0xff;
+                    a = (a - removed + added) & 0xffff;
+                    b = (b - blockSize * removed + a) & 0xffff;
+                } else {
+                    rolling = false;
+                }
+                position++;
+            }
+        }
+
+        if (start < limit) {
+            writeData(buffer, start, limit - start);
+        }
+        flushCopy();
+    }
+
+    private int find(int weak, byte[] buffer, int position) {
+        int mask = table.length - 1;
+        long strong = 0;
+        boolean hashed = false;
+        for (int slot = mix(weak) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int block = table[slot] - 1;
+            if (weakHashes[block] == weak) {
+                if (!hashed) {
+                    strong = strongHash(buffer, position, blockSize);
+                    hashed = true;
+                }
+                if (strongHashes[block] == strong) {
+                    return block;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void addCopy(long offset, long length) throws IOException {
+        if (copyLength > 0 && copyOffset + copyLength == offset) {
+            copyLength += length;
+            return;
+        }
+        flushCopy();
+        copyOffset = offset;
+        copyLength = length;
+    }
+
+    private void flushCopy() throws IOException {
+        if (copyLength > 0) {
+            out.write(("copy " + copyOffset + " " + copyLength + "\n").getBytes(StandardCharsets.US_ASCII));
+            copyLength = 0;
+        }
+    }
+
+    private void writeData(byte[] buffer, int offset, int length) throws IOException {
+        flushCopy();
+        Base64.Encoder encoder = Base64.getEncoder();
+        for (int written = 0; written < length; written += DATA_RECORD) {
+            int recordLength = Math.min(DATA_RECORD, length - written);
+            out.write(("data " + recordLength + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(encoder.encode(Arrays.copyOfRange(buffer, offset + written, offset + written + recordLength)));
+            out.write('\n');
+        }
+    }
+
+    private int weakHash(byte[] array, int offset) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < blockSize; i++) {
+            int value = array[offset + i] & 0xff;
+            a += value;
+            b += (blockSize - i) * value;
+        }
+        return (a & 0xffff) | ((b & 0xffff) << 16);
+    }
+
+    private static long strongHash(byte[] array, int offset, int length) {
+        long hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (array[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        return hash * 0x9e3779b9 ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,252 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.exception.ChangeTokenExpiredException;
+import io.metadata.filestorage.model.ChangeEvent;
+import io.metadata.filestorage.model.dto.ChangeEventDTO;
+import io.metadata.filestorage.model.dto.ChangesDTO;
+import io.metadata.filestorage.repository.ChangeEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Change log of the files. Changes are written in the transaction of their operation, right before it commits, under
+ * a lock every instance sharing the database takes and holds until the commit. The ids of the changes so follow the
+ * order they are committed in: once an id is read, no change with a lower one can show up anymore, and the tokens
+ * handed out never skip a change. The most recent changes made by this instance are kept in memory, so watchers that
+ * keep up are answered, or woken up, without reading the change log. Other instances' changes are read from the
+ * database: whenever the ids of this instance's changes skip some, the changes in memory are dropped and the watchers
+ * read the gap from the change log.
+ */
+@Component
+public class ChangeFeed {
+
+    private final ChangeEventRepository changeEventRepository;
+
+    private final TransactionTemplate transaction;
+
+    private final int bufferSize;
+
+    private final int pageSize;
+
+    private final int retentionDays;
+
+    private final ArrayDeque<ChangeEvent> recent = new ArrayDeque<>();
+
+    private final List<Watch> watches = new ArrayList<>();
+
+    // Every change after this token and up to the head is in the recent changes
+    private long bufferStart;
+
+    private long head;
+
+    @Autowired
+    public ChangeFeed(
+            ChangeEventRepository changeEventRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.changes.buffer-size:10000}") int bufferSize,
+            @Value("${file.changes.page-size:1000}") int pageSize,
+            @Value("${file.changes.retention-days:7}") int retentionDays) {
+        this.changeEventRepository = changeEventRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.bufferSize = bufferSize;
+        this.pageSize = pageSize;
+        this.retentionDays = retentionDays;
+    }
+
+    @PostConstruct
+    public synchronized void init() {
+        Long latestId = changeEventRepository.findLatestId();
+        bufferStart = latestId == null ? 0 : latestId;
+        head = bufferStart;
+    }
+
+    /**
+     * Adds the change to the ones its transaction writes before committing, a rolled back operation leaves none.
+     * Changes made outside of a transaction are written in one of their own.
+     */
+    @EventListener
+    public void record(FileChangeEvent change) {
+        ChangeEvent event = new ChangeEvent(change.getFileName(), change.getVersionNumber(), change.getType(), LocalDateTime.now());
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            push(transaction.execute(status -> write(Collections.singletonList(event))));
+            return;
+        }
+
+        Batch batch = (Batch) TransactionSynchronizationManager.getResource(this);
+        if (batch == null) {
+            batch = new Batch();
+            TransactionSynchronizationManager.bindResource(this, batch);
+            TransactionSynchronizationManager.registerSynchronization(batch);
+        }
+        batch.events.add(event);
+    }
+
+    private List<ChangeEvent> write(List<ChangeEvent> events) {
+        changeEventRepository.lock(LocalDateTime.now());
+        return changeEventRepository.saveAll(events);
+    }
+
+    private synchronized void push(List<ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            if (event.getId() <= head) {
+                // Pushed after a later commit found the gap, the watchers read it from the change log
+                continue;
+            }
+            if (event.getId() != head + 1) {
+                // Another instance, or a commit of this one not pushed yet, wrote the changes in between: the
+                // watchers read them from the change log
+                recent.clear();
+                bufferStart = event.getId() - 1;
+                for (Watch watch : watches) {
+                    watch.result.setResult(new ChangesDTO(Collections.emptyList(), watch.after));
+                }
+                watches.clear();
+            }
+
+            recent.addLast(event);
+            head = event.getId();
+            while (recent.size() > bufferSize) {
+                bufferStart = recent.removeFirst().getId();
+            }
+
+            for (Iterator<Watch> iterator = watches.iterator(); iterator.hasNext(); ) {
+                Watch watch = iterator.next();
+                if (event.getId() > watch.after && event.getFileName().startsWith(watch.prefix)) {
+                    iterator.remove();
+                    watch.result.setResult(new ChangesDTO(Collections.singletonList(new ChangeEventDTO(event)), head));
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes after the token to files starting with the prefix. When there are none yet, the result is completed
+     * by the next matching change, or empty when the timeout passes. Without a token only the current one is returned.
+     */
+    public DeferredResult<ChangesDTO> watch(Long after, String prefix, long timeoutMillis) {
+        String namePrefix = prefix == null ? "" : prefix;
+        DeferredResult<ChangesDTO> result = new DeferredResult<>(timeoutMillis);
+
+        // The changes other instances made after this one's head are only in the change log
+        Long latestId = changeEventRepository.findLatestId();
+        long latest = latestId == null ? 0 : latestId;
+
+        synchronized (this) {
+            if (after == null) {
+                result.setResult(new ChangesDTO(Collections.emptyList(), Math.max(latest, head)));
+                return result;
+            }
+
+            if (after >= bufferStart && latest <= Math.max(after, head)) {
+                List<ChangeEventDTO> changes = new ArrayList<>();
+                for (ChangeEvent event : recent) {
+                    if (event.getId() > after && event.getFileName().startsWith(namePrefix)) {
+                        changes.add(new ChangeEventDTO(event));
+                    }
+                }
+
+                if (!changes.isEmpty()) {
+                    result.setResult(new ChangesDTO(changes, head));
+                    return result;
+                }
+
+                Watch watch = new Watch(after, namePrefix, result);
+                watches.add(watch);
+                result.onTimeout(() -> {
+                    synchronized (ChangeFeed.this) {
+                        watches.remove(watch);
+                        // Only the changes in memory were skipped, and none of them matched
+                        long nextToken = after >= bufferStart ? Math.max(after, head) : after;
+                        result.setResult(new ChangesDTO(Collections.emptyList(), nextToken));
+                    }
+                });
+                result.onCompletion(() -> {
+                    synchronized (ChangeFeed.this) {
+                        watches.remove(watch);
+                    }
+                });
+                return result;
+            }
+        }
+
+        // Behind the recent changes, or other instances made some, catch up from the change log
+        Long oldestId = changeEventRepository.findOldestId();
+        if (oldestId == null || after < oldestId - 1) {
+            throw new ChangeTokenExpiredException(after);
+        }
+
+        List<ChangeEvent> events = changeEventRepository.findByIdGreaterThanAndFileNameLike(
+                after, FileService.likePrefix(namePrefix), PageRequest.of(0, pageSize));
+        List<ChangeEventDTO> changes = new ArrayList<>(events.size());
+        for (ChangeEvent event : events) {
+            changes.add(new ChangeEventDTO(event));
+        }
+
+        long lastId = events.isEmpty() ? after : events.get(events.size() - 1).getId();
+        long nextToken = events.size() == pageSize ? lastId : Math.max(latest, lastId);
+        result.setResult(new ChangesDTO(changes, nextToken));
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${file.changes.prune-delay:3600000}")
+    public void prune() {
+        changeEventRepository.removeByCreationDateBefore(LocalDateTime.now().minusDays(retentionDays));
+    }
+
+    /**
+     * Changes of one transaction, written right before it commits and pushed to the watchers once committed.
+     */
+    private final class Batch extends TransactionSynchronizationAdapter {
+
+        private final List<ChangeEvent> events = new ArrayList<>();
+
+        private List<ChangeEvent> written = Collections.emptyList();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            written = write(events);
+        }
+
+        @Override
+        public void afterCommit() {
+            push(written);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ChangeFeed.this);
+        }
+    }
+
+    private static final class Watch {
+
+        private final long after;
+
+        private final String prefix;
+
+        private final DeferredResult<ChangesDTO> result;
+
+        private Watch(long after, String prefix, DeferredResult<ChangesDTO> result) {
+            this.after = after;
+            this.prefix = prefix;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.ClusterStatusDTO;
+import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.util.UriUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Moves the files this node no longer owns to their owner after the members of the cluster changed, one file at a
+ * time: every version is sent with its number and date, and the file is deleted here once its owner has them all.
+ */
+@Service
+public class ClusterRebalancer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterRebalancer.class);
+
+    public static final String DATE_HEADER = "X-Last-Modification-Date";
+
+    public static final String CHECKSUM_HEADER = "X-Checksum";
+
+    private final ClusterRouter router;
+
+    private final FileRepository fileRepository;
+
+    private final VersionRepository versionRepository;
+
+    private final FileService fileService;
+
+    private final FileSystemStorage storage;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final long retryDelayMillis;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicLong filesMoved = new AtomicLong();
+
+    private final AtomicLong filesFailed = new AtomicLong();
+
+    @Autowired
+    public ClusterRebalancer(
+            ClusterRouter router,
+            FileRepository fileRepository,
+            VersionRepository versionRepository,
+            FileService fileService,
+            FileSystemStorage storage,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.cluster.retry-delay:60000}") long retryDelayMillis) {
+        this.router = router;
+        this.fileRepository = fileRepository;
+        this.versionRepository = versionRepository;
+        this.fileService = fileService;
+        this.storage = storage;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Files left behind by a move that was interrupted by a restart are moved on startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebalanceOnStartup() {
+        if (router.isEnabled()) {
+            rebalance();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ClusterStatusDTO getStatus() {
+        return new ClusterStatusDTO(router.getSelf(), router.getNodes(), pending.get() || running.get(), filesMoved.get(), filesFailed.get());
+    }
+
+    /**
+     * Starts moving the files in the background, a change arriving meanwhile starts another pass afterwards. A pass
+     * that could not move every file is retried after the retry delay.
+     */
+    public void rebalance() {
+        if (pending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                running.set(true);
+                pending.set(false);
+                try {
+                    if (!moveAll() && !pending.get() && !executor.isShutdown()) {
+                        executor.schedule(this::rebalance, retryDelayMillis, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns whether every file owned by another node was moved, the previous owners are only dropped then.
+     */
+    boolean moveAll() {
+        List<String> names = readOnlyTransaction.execute(status -> {
+            try (Stream<String> stream = fileRepository.streamAllNames()) {
+                return stream.filter(name -> !router.getSelf().equals(router.ownerOf(name))).collect(Collectors.toList());
+            }
+        });
+
+        LOGGER.info("Moving {} files to their new owners", names.size());
+        int failed = 0;
+        for (String name : names) {
+            if (Thread.currentThread().isInterrupted() || pending.get()) {
+                // The members changed again, the next pass picks up the remaining files
+                return false;
+            }
+            Lock lock = router.moveLockFor(name);
+            lock.lock();
+            try {
+                String owner = router.ownerOf(name);
+                if (owner == null || owner.equals(router.getSelf())) {
+                    // Owned here again since the names were listed
+                    continue;
+                }
+                if (move(name, owner)) {
+                    filesMoved.incrementAndGet();
+                } else {
+                    filesFailed.incrementAndGet();
+                    failed++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (failed > 0) {
+            // Requests for the files left here still have to reach this node through the previous ring
+            LOGGER.warn("{} files could not be moved, retrying in {} ms", failed, retryDelayMillis);
+            return false;
+        }
+        router.moved();
+        return true;
+    }
+
+    private boolean move(String fileName, String owner) {
+        List<Version> versions = versionRepository.findByFileNameOrderByVersionNumberDesc(fileName);
+        try {
+            // Oldest first, so a partly moved file already has its versions in order on the owner
+            for (int i = versions.size() - 1; i >= 0; i--) {
+                Version version = versions.get(i);
+                HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(owner + "/files/cluster/versions/"
+                        + version.getVersionNumber() + "/" + UriUtils.encodePathSegment(fileName, StandardCharsets.UTF_8)))
+                        .header(DATE_HEADER, version.getLastModificationDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                        .PUT(HttpRequest.BodyPublishers.ofFile(storage.resolve(fileName, version.getVersionNumber())));
+                if (version.getChecksum() != null && !version.isCorrupted()) {
+                    request.header(CHECKSUM_HEADER, version.getChecksum());
+                }
+                request.header(ClusterRouter.TOKEN_HEADER, router.getToken());
+                HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() / 100 != 2) {
+                    LOGGER.warn("Version {} of {} could not be moved to {}: status {} {}", version.getVersionNumber(),
+                            fileName, owner, response.statusCode(), response.body());
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("File {} could not be moved to {}: {}", fileName, owner, e.toString());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        fileService.delete(fileName);
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Maps every file name to the node of the cluster that stores it, every node having its own disk and database.
+ * While files move after a membership change the previous ring is kept, a name that changed owner is served by
+ * its previous owner until the file is moved and by the new one afterwards.
+ */
+@Component
+public class ClusterRouter {
+
+    public static final String HOPS_HEADER = "X-Cluster-Hops";
+
+    public static final String TOKEN_HEADER = "X-Cluster-Token";
+
+    public static final int FINAL_HOP = 2;
+
+    private static final int STRIPES = 1024;
+
+    private final FileRepository fileRepository;
+
+    private final String self;
+
+    private final int virtualNodes;
+
+    private final long handoffPeriodMillis;
+
+    private final String token;
+
+    private final ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+
+    private volatile HashRing ring;
+
+    private volatile HashRing previousRing;
+
+    // Time the previous ring is dropped, once this node moved its files and the others had time to move theirs
+    private volatile long previousRingExpiry = Long.MAX_VALUE;
+
+    // The repository is resolved on first use, so the routing filter does not bring up the database on startup
+    @Autowired
+    public ClusterRouter(
+            @Lazy FileRepository fileRepository,
+            @Value("${file.cluster.nodes:}") List<String> nodes,
+            @Value("${file.cluster.self:}") String self,
+            @Value("${file.cluster.virtual-nodes:128}") int virtualNodes,
+            @Value("${file.cluster.handoff-period:300000}") long handoffPeriodMillis,
+            @Value("${file.cluster.token:}") String token) {
+        this.fileRepository = fileRepository;
+        this.self = self.trim();
+        this.virtualNodes = virtualNodes;
+        this.handoffPeriodMillis = handoffPeriodMillis;
+        this.token = token;
+        this.ring = new HashRing(clean(nodes), virtualNodes);
+        if (isEnabled() && !StringUtils.hasText(token)) {
+            // Anyone could change the members and have every file moved to their own host
+            throw new IllegalStateException("file.cluster.token must be set when file.cluster.nodes is");
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private static List<String> clean(List<String> nodes) {
+        return Collections.unmodifiableList(nodes.stream().filter(StringUtils::hasText).map(String::trim).distinct().collect(Collectors.toList()));
+    }
+
+    public boolean isEnabled() {
+        return !ring.getNodes().isEmpty();
+    }
+
+    /**
+     * Whether the request carries the cluster token, compared in constant time. Outside a cluster there is none.
+     */
+    public boolean isAuthorized(String requestToken) {
+        return StringUtils.hasText(token) && requestToken != null
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public List<String> getNodes() {
+        return ring.getNodes();
+    }
+
+    public String ownerOf(String fileName) {
+        return ring.ownerOf(fileName);
+    }
+
+    public boolean isMoving() {
+        return previousRing() != null;
+    }
+
+    /**
+     * Replaces the members of the cluster, the files owned by others have to be moved afterwards.
+     */
+    public synchronized void updateNodes(List<String> nodes) {
+        HashRing next = new HashRing(clean(nodes), virtualNodes);
+        if (previousRing() == null) {
+            previousRing = ring;
+        }
+        previousRingExpiry = Long.MAX_VALUE;
+        ring = next;
+    }
+
+    synchronized void moved() {
+        previousRingExpiry = System.currentTimeMillis() + handoffPeriodMillis;
+    }
+
+    private HashRing previousRing() {
+        HashRing previous = previousRing;
+        if (previous != null && System.currentTimeMillis() >= previousRingExpiry) {
+            previousRing = null;
+            return null;
+        }
+        return previous;
+    }
+
+    /**
+     * Lock to hold while a request for the name is routed and served, so the file does not move meanwhile.
+     */
+    public Lock lockFor(String fileName) {
+        return locks[(fileName.hashCode() & Integer.MAX_VALUE) % STRIPES].readLock();
+    }
+
+    Lock moveLockFor(String fileName) {
+        return locks[(fileName.hashCode() & Integer.MAX_VALUE) % STRIPES].writeLock();
+    }
+
+    /**
+     * Node a request for the name has to be forwarded to, or null when this node serves it. While the name changes
+     * owner the previous owner is asked first, it hands the request over to the new owner once the file moved.
+     * A request forwarded with {@link #FINAL_HOP} is always served where it arrives.
+     */
+    public Route route(String fileName, int hops) {
+        if (hops >= FINAL_HOP) {
+            return null;
+        }
+
+        String owner = ring.ownerOf(fileName);
+        HashRing previous = previousRing();
+        String previousOwner = previous != null ? previous.ownerOf(fileName) : owner;
+
+        if (previousOwner == null || previousOwner.equals(owner)) {
+            if (self.equals(owner)) {
+                return null;
+            }
+            // A node with an older view of the cluster sent it here, the owner has to serve it
+            return new Route(owner, hops == 0 ? 1 : FINAL_HOP);
+        }
+        if (self.equals(previousOwner)) {
+            return fileRepository.findByName(fileName) != null ? null : new Route(owner, FINAL_HOP);
+        }
+        if (self.equals(owner)) {
+            return fileRepository.findByName(fileName) != null ? null : new Route(previousOwner, 1);
+        }
+        return hops == 0 ? new Route(previousOwner, 1) : new Route(owner, FINAL_HOP);
+    }
+
+    public static final class Route {
+
+        private final String node;
+
+        private final int hops;
+
+        Route(String node, int hops) {
+            this.node = node;
+            this.hops = hops;
+        }
+
+        public String getNode() {
+            return node;
+        }
+
+        public int getHops() {
+            return hops;
+        }
+    }
+}
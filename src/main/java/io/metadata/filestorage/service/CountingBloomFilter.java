@@ -0,0 +1,99 @@
+package io.metadata.filestorage.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bloom filter with 4 bit counters instead of bits, so keys can be removed again. A counter that reaches 15 stays
+ * there, which only keeps a removed key looking present. Adds, removes and lookups can run from several threads.
+ */
+final class CountingBloomFilter {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int MAX_COUNT = 15;
+
+    private static final long MAX_COUNTERS = (long) Integer.MAX_VALUE * 16;
+
+    private final long[] words;
+
+    private final long mask;
+
+    private final int hashes;
+
+    CountingBloomFilter(long expectedSize, double falsePositiveRate) {
+        long optimal = (long) Math.ceil(-Math.max(1, expectedSize) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long counters = Long.highestOneBit(Math.max(64, optimal) * 2 - 1);
+        if (counters > MAX_COUNTERS) {
+            throw new IllegalArgumentException("Too many entries for a bloom filter: " + expectedSize);
+        }
+        this.words = new long[(int) (counters / 16)];
+        this.mask = counters - 1;
+        this.hashes = (int) Math.max(1, Math.round((double) counters / Math.max(1, expectedSize) * Math.log(2)));
+    }
+
+    void add(long fingerprint) {
+        for (int i = 0; i < hashes; i++) {
+            long counter = counterOf(fingerprint, i);
+            int word = (int) (counter >>> 4);
+            int shift = (int) (counter & 15) * 4;
+            long current;
+            do {
+                current = (long) WORDS.getVolatile(words, word);
+                if ((current >>> shift & 15) == MAX_COUNT) {
+                    break;
+                }
+            } while (!WORDS.compareAndSet(words, word, current, current + (1L << shift)));
+        }
+    }
+
+    /**
+     * Removes a fingerprint. One with a counter at zero was never added and is left alone, so removing a key twice
+     * does not take away other keys, removing a false positive still can.
+     */
+    void remove(long fingerprint) {
+        if (!mightContain(fingerprint)) {
+            return;
+        }
+        for (int i = 0; i < hashes; i++) {
+            long counter = counterOf(fingerprint, i);
+            int word = (int) (counter >>> 4);
+            int shift = (int) (counter & 15) * 4;
+            long current;
+            do {
+                current = (long) WORDS.getVolatile(words, word);
+                long count = current >>> shift & 15;
+                if (count == 0 || count == MAX_COUNT) {
+                    break;
+                }
+            } while (!WORDS.compareAndSet(words, word, current, current - (1L << shift)));
+        }
+    }
+
+    boolean mightContain(long fingerprint) {
+        for (int i = 0; i < hashes; i++) {
+            long counter = counterOf(fingerprint, i);
+            if (((long) WORDS.getVolatile(words, (int) (counter >>> 4)) >>> (int) (counter & 15) * 4 & 15) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * False positive rate expected with the given number of keys in the filter.
+     */
+    double falsePositiveRate(long size) {
+        return Math.pow(1 - Math.exp(-(double) hashes * size / (mask + 1)), hashes);
+    }
+
+    long memoryBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    private long counterOf(long fingerprint, int i) {
+        // Double hashing, the odd step visits distinct counters for every hash
+        long step = (fingerprint >>> 32) | 1;
+        return (fingerprint + i * step) & mask;
+    }
+}
@@ -0,0 +1,67 @@
+package io.metadata.filestorage.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Diffs of the pairs of versions compared most recently, up to a total size. Entries are keyed by the checksums of
+ * both versions, so a version changed by an append no longer matches its old diffs.
+ */
+final class DiffCache {
+
+    private final long maxBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    DiffCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, Entry entry) {
+        if (entry.content.length > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.content.length;
+        }
+        bytes += entry.content.length;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().content.length;
+            eldest.remove();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    static final class Entry {
+
+        private final DiffService.Mode mode;
+
+        private final byte[] content;
+
+        Entry(DiffService.Mode mode, byte[] content) {
+            this.mode = mode;
+            this.content = content;
+        }
+
+        DiffService.Mode getMode() {
+            return mode;
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.exception.DiffTooLargeException;
+import io.metadata.filestorage.exception.FileNotFoundException;
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Differences between two versions of a file, computed next to the files so only the delta is sent. Text versions
+ * are compared line by line into a unified diff, binary ones block by block into a delta. Small diffs of the pairs
+ * compared most recently are cached.
+ */
+@Service
+public class DiffService {
+
+    public enum Mode {
+        AUTO, LINES, BLOCKS
+    }
+
+    private static final int TEXT_SAMPLE = 8000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileService fileService;
+
+    private final VersionRepository versionRepository;
+
+    private final FileStorageMetrics metrics;
+
+    private final DiffCache cache;
+
+    private final int maxLines;
+
+    private final int maxEdits;
+
+    private final int blockSize;
+
+    private final int maxBlocks;
+
+    private final int maxCachedDiff;
+
+    @Autowired
+    public DiffService(
+            FileService fileService,
+            VersionRepository versionRepository,
+            FileStorageMetrics metrics,
+            @Value("${file.diff.max-lines:1000000}") int maxLines,
+            @Value("${file.diff.max-edits:10000}") int maxEdits,
+            @Value("${file.diff.block-size:4096}") int blockSize,
+            @Value("${file.diff.max-blocks:262144}") int maxBlocks,
+            @Value("${file.diff.cache-size:33554432}") long cacheSize,
+            @Value("${file.diff.cache-entry-size:1048576}") int maxCachedDiff) {
+        this.fileService = fileService;
+        this.versionRepository = versionRepository;
+        this.metrics = metrics;
+        this.cache = new DiffCache(cacheSize);
+        this.maxLines = maxLines;
+        this.maxEdits = maxEdits;
+        this.blockSize = blockSize;
+        this.maxBlocks = maxBlocks;
+        this.maxCachedDiff = maxCachedDiff;
+    }
+
+    /**
+     * Finds both versions and picks how to compare them, the diff itself is computed when written.
+     * The latest version is compared when no target version is given.
+     */
+    public Diff diff(String fileName, Integer from, Integer to, Mode mode) {
+        Path fromPath = pathOf(fileName, from);
+        if (to == null) {
+            to = versionRepository.findLatestVersionNumber(fileName);
+        }
+        Path toPath = pathOf(fileName, to);
+
+        String key = cacheKey(fileName, from, to, mode);
+        DiffCache.Entry cached = key != null ? cache.get(key) : null;
+        if (cached != null) {
+            metrics.diffCacheHit();
+            return new Diff(cached.getMode(), out -> out.write(cached.getContent()));
+        }
+        metrics.diffCacheMissed();
+
+        try {
+            if (mode != Mode.BLOCKS && (mode == Mode.LINES || (isText(fromPath) && isText(toPath)))) {
+                LineDiff.Lines fromLines = LineDiff.index(fromPath, maxLines);
+                LineDiff.Lines toLines = fromLines != null ? LineDiff.index(toPath, maxLines) : null;
+                if (fromLines != null && toLines != null) {
+                    return new Diff(Mode.LINES, cached(key, Mode.LINES,
+                            out -> LineDiff.write(fromLines, toLines, fileName, maxEdits, out)));
+                }
+                if (mode == Mode.LINES) {
+                    throw new DiffTooLargeException(fileName, maxLines);
+                }
+            }
+        } catch (IOException e) {
+            throw new FileNotFoundException(fileName, e);
+        }
+
+        return new Diff(Mode.BLOCKS, cached(key, Mode.BLOCKS,
+                out -> BlockDelta.write(fromPath, toPath, fileName, blockSize, maxBlocks, out)));
+    }
+
+    private Path pathOf(String fileName, Integer version) {
+        try {
+            return fileService.getResourceFile(fileName, version).getFile().toPath();
+        } catch (IOException e) {
+            throw new FileNotFoundException(fileName, e);
+        }
+    }
+
+    /**
+     * Key of the pair of versions as they are now, or null when the checksum of either is not known.
+     */
+    private String cacheKey(String fileName, Integer from, Integer to, Mode mode) {
+        Version fromVersion = versionRepository.findByFileNameAndVersionNumber(fileName, from);
+        Version toVersion = versionRepository.findByFileNameAndVersionNumber(fileName, to);
+        if (fromVersion == null || toVersion == null || fromVersion.getChecksum() == null || toVersion.getChecksum() == null) {
+            return null;
+        }
+        return fileName + '/' + fromVersion.getChecksum() + '/' + toVersion.getChecksum() + '/' + mode;
+    }
+
+    private static boolean isText(Path path) throws IOException {
+        byte[] sample = new byte[TEXT_SAMPLE];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            for (int read; length < sample.length && (read = in.read(sample, length, sample.length - length)) >= 0; ) {
+                length += read;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (sample[i] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps what the writer wrote when it is small enough, once it wrote all of it.
+     */
+    private DiffWriter cached(String key, Mode mode, DiffWriter writer) {
+        if (key == null) {
+            return writer;
+        }
+        return out -> {
+            CapturingOutputStream capturing = new CapturingOutputStream(out, maxCachedDiff);
+            writer.writeTo(capturing);
+            if (capturing.content != null) {
+                cache.put(key, new DiffCache.Entry(mode, capturing.content.toByteArray()));
+            }
+        };
+    }
+
+    int cachedDiffs() {
+        return cache.size();
+    }
+
+    @FunctionalInterface
+    private interface DiffWriter {
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public static final class Diff {
+
+        private final Mode mode;
+
+        private final DiffWriter writer;
+
+        private Diff(Mode mode, DiffWriter writer) {
+            this.mode = mode;
+            this.writer = writer;
+        }
+
+        /**
+         * How the versions are compared, lines or blocks.
+         */
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void writeTo(OutputStream outputStream) throws IOException {
+            BufferedOutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+            writer.writeTo(out);
+            out.flush();
+        }
+    }
+
+    private static final class CapturingOutputStream extends FilterOutputStream {
+
+        private final int maxBytes;
+
+        private ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        private CapturingOutputStream(OutputStream out, int maxBytes) {
+            super(out);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (content != null) {
+                if (content.size() + 1 > maxBytes) {
+                    content = null;
+                } else {
+                    content.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        private void capture(byte[] b, int off, int len) {
+            if (content != null) {
+                if (content.size() + len > maxBytes) {
+                    content = null;
+                } else {
+                    content.write(b, off, len);
+                }
+            }
+        }
+    }
+}
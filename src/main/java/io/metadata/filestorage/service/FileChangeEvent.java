@@ -0,0 +1,54 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.ChangeEvent;
+
+/**
+ * Published by the storage operations, recorded in the change log once their transaction commits.
+ */
+public class FileChangeEvent {
+
+    private final String fileName;
+
+    private final Integer versionNumber;
+
+    private final ChangeEvent.Type type;
+
+    private final long sizeDelta;
+
+    private final long versionDelta;
+
+    public FileChangeEvent(String fileName, Integer versionNumber, ChangeEvent.Type type) {
+        this(fileName, versionNumber, type, 0, 0);
+    }
+
+    /**
+     * Change also adding the given bytes and versions to the storage used, negative when they were removed.
+     */
+    public FileChangeEvent(String fileName, Integer versionNumber, ChangeEvent.Type type, long sizeDelta, long versionDelta) {
+        this.fileName = fileName;
+        this.versionNumber = versionNumber;
+        this.type = type;
+        this.sizeDelta = sizeDelta;
+        this.versionDelta = versionDelta;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Integer getVersionNumber() {
+        return versionNumber;
+    }
+
+    public ChangeEvent.Type getType() {
+        return type;
+    }
+
+    public long getSizeDelta() {
+        return sizeDelta;
+    }
+
+    public long getVersionDelta() {
+        return versionDelta;
+    }
+}
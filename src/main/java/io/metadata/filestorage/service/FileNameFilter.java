@@ -0,0 +1,164 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.ChangeEvent;
+import io.metadata.filestorage.repository.FileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Names of the existing files in a counting bloom filter, so lookups of names that were never stored are answered
+ * without going to the database. Until the filter is built every name may exist. Only the names created on this node
+ * are added, so it is off by default when peers share the database.
+ */
+@Component
+public class FileNameFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileNameFilter.class);
+
+    private final FileRepository fileRepository;
+
+    private final FileStorageMetrics metrics;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final boolean enabled;
+
+    private final double falsePositiveRate;
+
+    private final long minCapacity;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final AtomicLong size = new AtomicLong();
+
+    private volatile CountingBloomFilter filter;
+
+    // Filter being filled by a rebuild, new names go to both, guarded by this
+    private CountingBloomFilter building;
+
+    @Autowired
+    public FileNameFilter(
+            FileRepository fileRepository,
+            FileStorageMetrics metrics,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.name-filter.enabled:#{'${file.replication.peers:}'.isEmpty()}}") boolean enabled,
+            @Value("${file.name-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${file.name-filter.min-capacity:100000}") long minCapacity) {
+        this.fileRepository = fileRepository;
+        this.metrics = metrics;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minCapacity = minCapacity;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuilds the filter once it holds more names than it was sized for, or removed names pile up in it.
+     */
+    @Scheduled(initialDelayString = "${file.name-filter.check-delay:60000}", fixedDelayString = "${file.name-filter.check-delay:60000}")
+    public void checkFalsePositiveRate() {
+        CountingBloomFilter current = filter;
+        if (current != null && current.falsePositiveRate(size.get()) > falsePositiveRate * 2) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Fills a new filter with the names in the database while the current one keeps answering.
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            CountingBloomFilter next = new CountingBloomFilter(Math.max(minCapacity, fileRepository.count() * 2), falsePositiveRate);
+            synchronized (this) {
+                building = next;
+            }
+
+            long names = readOnlyTransaction.execute(status -> {
+                try (Stream<String> stream = fileRepository.streamAllNames()) {
+                    return stream.peek(name -> next.add(FingerprintSet.fingerprint(name))).count();
+                }
+            });
+
+            synchronized (this) {
+                // Names removed during the rebuild may still be in the new filter, which only costs a lookup
+                filter = next;
+                building = null;
+                size.set(names);
+            }
+            metrics.nameFilterBuilt(next.memoryBytes());
+            updateFalsePositiveRate();
+            LOGGER.info("File name filter built with {} names in {} ms, {} bytes", names, System.currentTimeMillis() - start, next.memoryBytes());
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * False means the file certainly does not exist.
+     */
+    public boolean mightExist(String fileName) {
+        CountingBloomFilter current = filter;
+        return current == null || current.mightContain(FingerprintSet.fingerprint(fileName));
+    }
+
+    /**
+     * Adds the name of a new file once it is saved, a rebuild running meanwhile may not read it so it gets it too.
+     */
+    public synchronized void add(String fileName) {
+        long fingerprint = FingerprintSet.fingerprint(fileName);
+        if (filter != null) {
+            filter.add(fingerprint);
+            size.incrementAndGet();
+        }
+        if (building != null) {
+            building.add(fingerprint);
+        }
+        updateFalsePositiveRate();
+    }
+
+    /**
+     * Removes the names of deleted files once the delete is committed, a rolled back delete must keep the name.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onChange(FileChangeEvent change) {
+        if (change.getType() != ChangeEvent.Type.DELETED || change.getVersionNumber() != null || filter == null) {
+            return;
+        }
+        // A rebuild may not have read the name, so it is only removed from the filter that surely has it
+        filter.remove(FingerprintSet.fingerprint(change.getFileName()));
+        size.decrementAndGet();
+        updateFalsePositiveRate();
+    }
+
+    private void updateFalsePositiveRate() {
+        CountingBloomFilter current = filter;
+        if (current != null) {
+            metrics.nameFilterFalsePositiveRate(current.falsePositiveRate(size.get()));
+        }
+    }
+}
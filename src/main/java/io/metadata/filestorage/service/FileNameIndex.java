@@ -0,0 +1,210 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.ChangeEvent;
+import io.metadata.filestorage.model.dto.FileDTO;
+import io.metadata.filestorage.model.dto.FileSearchDTO;
+import io.metadata.filestorage.repository.FileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Names of the existing files in a trigram index, so prefix, substring and glob searches do not scan the file table.
+ * Built on startup by streaming the names, then kept up to date with the files created and deleted on this node.
+ * Until it is built, or when it is off, searches run as LIKE queries instead. Only the names created on this node
+ * are added, so it is off by default when peers share the database.
+ */
+@Component
+public class FileNameIndex {
+
+    public enum Type {
+        PREFIX, SUBSTRING, GLOB
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileNameIndex.class);
+
+    private final FileRepository fileRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final boolean enabled;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // Guarded by the lock
+    private TrigramIndex index;
+
+    // Index being filled by a rebuild, changes go to both, guarded by the lock
+    private TrigramIndex building;
+
+    @Autowired
+    public FileNameIndex(
+            FileRepository fileRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.name-index.enabled:#{'${file.replication.peers:}'.isEmpty()}}") boolean enabled) {
+        this.fileRepository = fileRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Fills a new index with the names in the database while the current one keeps answering.
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            TrigramIndex next = new TrigramIndex();
+            lock.writeLock().lock();
+            try {
+                building = next;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            readOnlyTransaction.execute(status -> {
+                try (Stream<String> names = fileRepository.streamAllNames()) {
+                    names.forEach(name -> {
+                        lock.writeLock().lock();
+                        try {
+                            next.add(name);
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    });
+                }
+                return null;
+            });
+
+            lock.writeLock().lock();
+            try {
+                // Names removed during the rebuild may still be in the new index, searches check them against the database
+                index = next;
+                building = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            LOGGER.info("File name index built with {} names in {} ms", next.size(), System.currentTimeMillis() - start);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Adds the names of new files and removes the names of deleted ones once their transaction commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(FileChangeEvent change) {
+        boolean deleted = change.getType() == ChangeEvent.Type.DELETED;
+        if (change.getType() == ChangeEvent.Type.UPDATED || (deleted && change.getVersionNumber() != null)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (TrigramIndex target : new TrigramIndex[]{index, building}) {
+                if (target != null) {
+                    if (deleted) {
+                        target.remove(change.getFileName());
+                    } else {
+                        target.add(change.getFileName());
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Page of the files matching the pattern with a name after the given one, ordered by name.
+     */
+    public FileSearchDTO search(Type type, String pattern, String after, int size) {
+        List<String> names = null;
+        lock.readLock().lock();
+        try {
+            if (index != null) {
+                names = index.search(type, pattern, after, size + 1);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<FileDTO> files;
+        if (names == null) {
+            files = new ArrayList<>(fileRepository.findFilesByNameLikeAfter(
+                    likePattern(type, pattern), after != null ? after : "", PageRequest.of(0, size + 1)));
+        } else if (names.isEmpty()) {
+            files = new ArrayList<>();
+        } else {
+            // Names of files deleted by other means, like their last version, are dropped here
+            Map<String, FileDTO> found = fileRepository.findAllFilesByNameIn(names).stream()
+                    .collect(Collectors.toMap(FileDTO::getName, Function.identity()));
+            files = names.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+
+        if ((names != null ? names.size() : files.size()) > size) {
+            String nextAfter = names != null ? names.get(size - 1) : files.get(size - 1).getName();
+            files.removeIf(file -> file.getName().compareTo(nextAfter) > 0);
+            return new FileSearchDTO(files, nextAfter);
+        }
+        return new FileSearchDTO(files, null);
+    }
+
+    /**
+     * Pattern for a LIKE query matching the same names, escaped with '!'.
+     */
+    static String likePattern(Type type, String pattern) {
+        StringBuilder like = new StringBuilder(pattern.length() + 2);
+        if (type == Type.SUBSTRING) {
+            like.append('%');
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (type == Type.GLOB && c == '*') {
+                like.append('%');
+            } else if (type == Type.GLOB && c == '?') {
+                like.append('_');
+            } else {
+                if (c == '!' || c == '%' || c == '_') {
+                    like.append('!');
+                }
+                like.append(c);
+            }
+        }
+        if (type != Type.GLOB) {
+            like.append('%');
+        }
+        return like.toString();
+    }
+}
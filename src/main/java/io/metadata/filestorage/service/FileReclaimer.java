@@ -0,0 +1,90 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.Tombstone;
+import io.metadata.filestorage.repository.TombstoneRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Removes the files of deleted versions in the background. Deletes only leave a tombstone with the range
+ * of version numbers to remove, which is reclaimed here in batches at a throttled rate.
+ */
+@Component
+public class FileReclaimer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileReclaimer.class);
+
+    private final TombstoneRepository tombstoneRepository;
+
+    private final FileSystemStorage storage;
+
+    private final FileStorageMetrics metrics;
+
+    private final ReplicationService replicationService;
+
+    private final int batchSize;
+
+    private final TokenBucket throttle;
+
+    @Autowired
+    public FileReclaimer(
+            TombstoneRepository tombstoneRepository,
+            FileSystemStorage storage,
+            FileStorageMetrics metrics,
+            ReplicationService replicationService,
+            @Value("${file.reclaimer.batch-size:100}") int batchSize,
+            @Value("${file.reclaimer.files-per-second:500}") long filesPerSecond) {
+        this.tombstoneRepository = tombstoneRepository;
+        this.storage = storage;
+        this.metrics = metrics;
+        this.replicationService = replicationService;
+        this.batchSize = batchSize;
+        this.throttle = new TokenBucket(filesPerSecond, Math.max(1, filesPerSecond));
+    }
+
+    @Scheduled(fixedDelayString = "${file.reclaimer.delay:5000}")
+    public void reclaim() {
+        long lastId = 0;
+        List<Tombstone> tombstones;
+        do {
+            tombstones = tombstoneRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, batchSize));
+            for (Tombstone tombstone : tombstones) {
+                lastId = tombstone.getId();
+                try {
+                    reclaim(tombstone);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    // The tombstone is kept and retried on the next run
+                    LOGGER.warn("Could not reclaim the files of tombstone {} for {}", tombstone.getId(), tombstone.getFileName(), e);
+                }
+            }
+        } while (tombstones.size() == batchSize);
+    }
+
+    private void reclaim(Tombstone tombstone) throws InterruptedException {
+        int removed = 0;
+        for (int version = tombstone.getFromVersion(); version <= tombstone.getToVersion(); version++) {
+            throttle.acquire(1);
+            storage.delete(tombstone.getFileName(), version);
+            if (replicationService.isEnabled()) {
+                replicationService.deleteReplicas(tombstone.getFileName(), version);
+            }
+            metrics.fileReclaimed();
+
+            // Record progress of long ranges, so a restart does not begin from scratch
+            if (++removed % batchSize == 0 && version < tombstone.getToVersion()) {
+                tombstoneRepository.updateFromVersion(tombstone.getId(), version + 1);
+            }
+        }
+        tombstoneRepository.removeById(tombstone.getId());
+    }
+}
@@ -1,70 +1,158 @@
 package io.metadata.filestorage.service;
 
-import io.metadata.filestorage.exception.DeletingFileException;
+import io.metadata.filestorage.exception.ConcurrentDeleteException;
 import io.metadata.filestorage.exception.FileNotFoundException;
+import io.metadata.filestorage.exception.InvalidOffsetException;
 import io.metadata.filestorage.exception.InvalidPathException;
+import io.metadata.filestorage.exception.InvalidPrefixException;
+import io.metadata.filestorage.exception.InvalidUploadException;
 import io.metadata.filestorage.exception.PersistingFileException;
+import io.metadata.filestorage.exception.ReplicationException;
+import io.metadata.filestorage.model.ChangeEvent;
 import io.metadata.filestorage.model.File;
+import io.metadata.filestorage.model.Tombstone;
 import io.metadata.filestorage.model.Version;
 import io.metadata.filestorage.model.dto.FileDTO;
 import io.metadata.filestorage.model.dto.FileResponseDTO;
+import io.metadata.filestorage.model.dto.UsageDTO;
+import io.metadata.filestorage.model.dto.VersionDTO;
+import io.metadata.filestorage.model.dto.VersionHistoryDTO;
 import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.repository.TombstoneRepository;
 import io.metadata.filestorage.repository.VersionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class FileService {
 
+    private static final Pattern SHA_256_HEX = Pattern.compile("[0-9a-fA-F]{64}");
+
     private final FileRepository fileRepository;
 
     private final VersionRepository versionRepository;
 
-    @Value("${file.database.path}")
-    private String fileDatabasePath;
+    private final TombstoneRepository tombstoneRepository;
+
+    private final FileSystemStorage storage;
+
+    private final FileStorageMetrics metrics;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final FileNameFilter fileNameFilter;
+
+    private final ReplicationService replicationService;
+
+    private final IngestPipeline ingestPipeline;
+
+    private final StorageUsage storageUsage;
 
-    private Path databasePath;
+    private final TransactionTemplate transaction;
+
+    private final AppendLog appendLog = new AppendLog();
+
+    // Names on disk of the copies linked and not recorded yet, their files keep the modification time of the source
+    private final Set<String> linking = new HashSet<>();
 
     @Autowired
-    public FileService(FileRepository fileRepository, VersionRepository versionRepository) {
+    public FileService(
+            FileRepository fileRepository,
+            VersionRepository versionRepository,
+            TombstoneRepository tombstoneRepository,
+            FileSystemStorage storage,
+            FileStorageMetrics metrics,
+            ApplicationEventPublisher eventPublisher,
+            FileNameFilter fileNameFilter,
+            ReplicationService replicationService,
+            IngestPipeline ingestPipeline,
+            StorageUsage storageUsage,
+            PlatformTransactionManager transactionManager) {
         this.fileRepository = fileRepository;
         this.versionRepository = versionRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.storage = storage;
+        this.metrics = metrics;
+        this.eventPublisher = eventPublisher;
+        this.fileNameFilter = fileNameFilter;
+        this.replicationService = replicationService;
+        this.ingestPipeline = ingestPipeline;
+        this.storageUsage = storageUsage;
+        this.transaction = new TransactionTemplate(transactionManager);
     }
 
-    @PostConstruct
-    public void init() {
-        databasePath = Paths.get(fileDatabasePath).toAbsolutePath().normalize();
+    public List<FileDTO> findAll() {
+        return fileRepository.findAllFiles();
+    }
 
-        if (!Files.exists(databasePath)) {
-            try {
-                Files.createDirectories(databasePath);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Passes every file to the consumer as it is read from a database cursor, without holding the listing in memory.
+     */
+    @Transactional(readOnly = true)
+    public void forEachFile(Consumer<FileDTO> consumer) {
+        try (Stream<FileDTO> files = fileRepository.streamAllFiles()) {
+            files.forEach(consumer);
         }
     }
 
-    public List<FileDTO> findAll() {
-        return fileRepository.findAllFiles();
+    /**
+     * Page of the versions of the file older than the given one, newest first. Only the rows of the page are read,
+     * whatever the number of versions.
+     */
+    public VersionHistoryDTO findVersions(String fileName, Integer before, int size) {
+
+        List<VersionDTO> versions = versionRepository.findHistory(
+                fileName, before != null ? before : Integer.MAX_VALUE, PageRequest.of(0, size + 1));
+
+        if (versions.isEmpty() && fileRepository.findByName(fileName) == null) {
+            throw new FileNotFoundException(fileName);
+        }
+
+        Integer nextBefore = null;
+        if (versions.size() > size) {
+            versions = versions.subList(0, size);
+            nextBefore = versions.get(size - 1).getVersionNumber();
+        }
+
+        return new VersionHistoryDTO(fileName, versions, nextBefore);
     }
 
     public FileResponseDTO save(MultipartFile file) {
@@ -75,39 +163,76 @@ public class FileService {
 
         String fileName = StringUtils.cleanPath(file.getOriginalFilename());
 
+        storageUsage.checkQuota(fileName, file.getSize());
+
+        long start = System.nanoTime();
         Integer newVersionNumber = getNewVersionNumber(fileName);
+        metrics.record(FileStorageMetrics.Phase.SAVE_VERSION_LOOKUP, start);
 
-        File dbFile = createDatabaseFile(fileName, newVersionNumber);
+        start = System.nanoTime();
+        Version newVersion = new Version(null, newVersionNumber, LocalDateTime.now());
+        File dbFile = createDatabaseFile(fileName, newVersion);
+        metrics.record(FileStorageMetrics.Phase.SAVE_METADATA_LOOKUP, start);
 
+        start = System.nanoTime();
         try {
-            persistFileOnFileSystem(fileName, newVersionNumber, file.getInputStream());
+            StoredContent content = persistFileOnFileSystem(fileName, newVersionNumber, file.getInputStream());
+            newVersion.setChecksum(content.getChecksum());
+            newVersion.setSize(content.getSize());
         } catch (IOException e) {
             throw new PersistingFileException(e);
         }
+        metrics.record(FileStorageMetrics.Phase.SAVE_WRITE, start);
 
-        dbFile = fileRepository.save(dbFile);
+        replicateNewVersion(fileName, newVersionNumber);
+
+        start = System.nanoTime();
+        dbFile = saveNewVersion(dbFile, newVersion);
+        metrics.record(FileStorageMetrics.Phase.SAVE_METADATA_SAVE, start);
 
         return new FileResponseDTO(dbFile.getName(), newVersionNumber, file.getContentType(), file.getSize());
 
     }
 
     public FileResponseDTO save(String fileName, ByteArrayResource data) {
+        storageUsage.checkQuota(StringUtils.cleanPath(fileName), data.contentLength());
+        try {
+            return saveContent(fileName, data.getInputStream());
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+    }
+
+    /**
+     * Stores the stream as a new version of the file, reading it to the end without closing it. The quota is checked
+     * by the callers, which know the size beforehand.
+     */
+    public FileResponseDTO saveContent(String fileName, InputStream inputStream) {
 
         fileName = StringUtils.cleanPath(fileName);
 
+        long start = System.nanoTime();
         Integer newVersionNumber = getNewVersionNumber(fileName);
+        metrics.record(FileStorageMetrics.Phase.SAVE_VERSION_LOOKUP, start);
 
-        File dbFile = createDatabaseFile(fileName, newVersionNumber);
+        start = System.nanoTime();
+        Version newVersion = new Version(null, newVersionNumber, LocalDateTime.now());
+        File dbFile = createDatabaseFile(fileName, newVersion);
+        metrics.record(FileStorageMetrics.Phase.SAVE_METADATA_LOOKUP, start);
 
-        try {
-            persistFileOnFileSystem(fileName, newVersionNumber, data.getInputStream());
-        } catch (IOException e) {
-            throw new PersistingFileException(e);
-        }
+        start = System.nanoTime();
+        StoredContent content = persistFileOnFileSystem(fileName, newVersionNumber, inputStream);
+        newVersion.setChecksum(content.getChecksum());
+        newVersion.setSize(content.getSize());
+        metrics.record(FileStorageMetrics.Phase.SAVE_WRITE, start);
 
-        dbFile = fileRepository.save(dbFile);
+        replicateNewVersion(fileName, newVersionNumber);
 
-        return new FileResponseDTO(dbFile.getName(), newVersionNumber, null, data.contentLength());
+        start = System.nanoTime();
+        dbFile = saveNewVersion(dbFile, newVersion);
+        metrics.record(FileStorageMetrics.Phase.SAVE_METADATA_SAVE, start);
+
+        return new FileResponseDTO(dbFile.getName(), newVersionNumber, null, newVersion.getSize());
 
     }
 
@@ -119,18 +244,14 @@ public class FileService {
 
         String fileName = StringUtils.cleanPath(file.getOriginalFilename());
 
+        checkReplacementQuota(fileName, version, file.getSize());
+
         try {
-            persistFileOnFileSystem(fileName, version, file.getInputStream());
+            replaceVersion(fileName, version, file.getInputStream());
         } catch (IOException e) {
             throw new PersistingFileException(e);
         }
 
-        Version databaseVersion = versionRepository.findByFileNameAndVersionNumber(fileName, version);
-
-        databaseVersion.setLastModificationDate(LocalDateTime.now());
-
-        versionRepository.save(databaseVersion);
-
         return new FileResponseDTO(fileName, version, file.getContentType(), file.getSize());
 
     }
@@ -139,62 +260,528 @@ public class FileService {
 
         fileName = StringUtils.cleanPath(fileName);
 
+        checkReplacementQuota(fileName, version, data.contentLength());
+
         try {
-            persistFileOnFileSystem(fileName, version, data.getInputStream());
+            replaceVersion(fileName, version, data.getInputStream());
         } catch (IOException e) {
             throw new PersistingFileException(e);
         }
 
+        return new FileResponseDTO(fileName, version, null, data.contentLength());
+
+    }
+
+    /**
+     * Writes the new content of the version to a temporary file, then moves it into place and records it under the
+     * lock of the version, so appends and copies never see the file of one content with the record of the other. The
+     * upload itself runs outside the lock, a slow one does not hold back the other versions sharing it.
+     */
+    private void replaceVersion(String fileName, Integer version, InputStream inputStream) {
+
+        long start = System.nanoTime();
+        if (versionRepository.findByFileNameAndVersionNumber(fileName, version) == null) {
+            throw new FileNotFoundException(fileName + " with version " + version);
+        }
+        metrics.record(FileStorageMetrics.Phase.UPDATE_METADATA_LOOKUP, start);
+
+        Path target = storage.resolve(fileName, version);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(target.getParent(), ".replace", ".tmp");
+            start = System.nanoTime();
+            StoredContent content = ingestPipeline.writeTo(inputStream, temp);
+            metrics.record(FileStorageMetrics.Phase.UPDATE_WRITE, start);
+
+            synchronized (appendLog.lockFor(fileName, version)) {
+                start = System.nanoTime();
+                // Read again, the version may have been appended to or deleted during the upload
+                Version databaseVersion = versionRepository.findByFileNameAndVersionNumber(fileName, version);
+                if (databaseVersion == null) {
+                    throw new FileNotFoundException(fileName + " with version " + version);
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                long previousSize = sizeOf(databaseVersion);
+                databaseVersion.setLastModificationDate(LocalDateTime.now());
+                databaseVersion.setChecksum(content.getChecksum());
+                databaseVersion.setSize(content.getSize());
+                databaseVersion.setCorrupted(false);
+                saveVersion(fileName, databaseVersion, content.getSize() - previousSize);
+                // The running checksum of earlier appends belongs to the replaced content
+                appendLog.forgetDigest(databaseVersion.getId());
+                metrics.record(FileStorageMetrics.Phase.UPDATE_METADATA_SAVE, start);
+            }
+            // Wakes up tails following the replaced file
+            appendLog.appended();
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        } finally {
+            deleteQuietly(temp);
+        }
+
+        replicationService.replicate(fileName, version);
+
+    }
+
+    /**
+     * Writes the data at the given offset of the version. Offsets are the size the version had when the data
+     * was produced, so a retried append only writes the bytes that are not there yet.
+     */
+    public FileResponseDTO append(String fileName, Integer version, long offset, ByteArrayResource data) {
+
+        fileName = StringUtils.cleanPath(fileName);
+
+        long start = System.nanoTime();
+        if (version == null) {
+            version = versionRepository.findLatestVersionNumber(fileName);
+            if (version == null) {
+                throw new FileNotFoundException(fileName);
+            }
+        }
         Version databaseVersion = versionRepository.findByFileNameAndVersionNumber(fileName, version);
+        metrics.record(FileStorageMetrics.Phase.APPEND_METADATA_LOOKUP, start);
 
-        if(databaseVersion == null){
-            throw new FileNotFoundException(fileName + " with version "+version);
+        if (databaseVersion == null) {
+            throw new FileNotFoundException(fileName + " with version " + version);
         }
 
-        databaseVersion.setLastModificationDate(LocalDateTime.now());
+        byte[] bytes = data.getByteArray();
+        long size;
+        long previousSize;
 
-        versionRepository.save(databaseVersion);
+        synchronized (appendLog.lockFor(fileName, version)) {
+            start = System.nanoTime();
+            MessageDigest digest;
+            Path path = storage.resolve(fileName, version);
+            try {
+                storage.unshare(path);
+            } catch (NoSuchFileException e) {
+                throw new FileNotFoundException(fileName + " with version " + version, e);
+            } catch (IOException e) {
+                throw new PersistingFileException(e);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                size = channel.size();
+                if (offset < 0 || offset > size) {
+                    throw new InvalidOffsetException(offset, size);
+                }
+
+                int skip = (int) Math.min(bytes.length, size - offset);
+                if (skip == bytes.length) {
+                    // Everything was appended already, the retry may be for a previous replication failure
+                    replicationService.replicate(fileName, version);
+                    return new FileResponseDTO(fileName, version, null, size);
+                }
+                storageUsage.checkQuota(fileName, bytes.length - skip);
+                previousSize = sizeOf(databaseVersion);
+
+                digest = appendLog.digestAt(databaseVersion.getId(), size);
+                if (digest == null) {
+                    digest = digestOf(channel, size);
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, skip, bytes.length - skip);
+                for (long position = size; buffer.hasRemaining(); ) {
+                    position += channel.write(buffer, position);
+                }
+                digest.update(bytes, skip, bytes.length - skip);
+                size += bytes.length - skip;
+            } catch (NoSuchFileException e) {
+                throw new FileNotFoundException(fileName + " with version " + version, e);
+            } catch (IOException e) {
+                throw new PersistingFileException(e);
+            }
+            metrics.record(FileStorageMetrics.Phase.APPEND_WRITE, start);
+
+            start = System.nanoTime();
+            databaseVersion.setLastModificationDate(LocalDateTime.now());
+            databaseVersion.setChecksum(StoredContent.toHex(copyOf(digest).digest()));
+            databaseVersion.setSize(size);
+            saveVersion(fileName, databaseVersion, size - previousSize);
+            appendLog.keepDigest(databaseVersion.getId(), size, digest);
+            metrics.record(FileStorageMetrics.Phase.APPEND_METADATA_SAVE, start);
+        }
 
-        return new FileResponseDTO(fileName, version, null, data.contentLength());
+        appendLog.appended();
+        replicationService.replicate(fileName, version);
+
+        return new FileResponseDTO(fileName, version, null, size);
+
+    }
+
+    /**
+     * Adds a new version to the target file with the content of the source version, sharing it on disk instead of
+     * copying it. The target defaults to the source file, which starts a new version from an old one.
+     */
+    public FileResponseDTO copy(String fileName, Integer version, String targetFileName) {
+
+        fileName = StringUtils.cleanPath(fileName);
+        targetFileName = StringUtils.hasText(targetFileName) ? StringUtils.cleanPath(targetFileName) : fileName;
+
+        if (targetFileName.contains("..")) {
+            throw new InvalidPathException();
+        }
+
+        long start = System.nanoTime();
+        if (version == null) {
+            version = versionRepository.findLatestVersionNumber(fileName);
+            if (version == null) {
+                throw new FileNotFoundException(fileName);
+            }
+        }
+        Version sourceVersion = versionRepository.findByFileNameAndVersionNumber(fileName, version);
+        metrics.record(FileStorageMetrics.Phase.COPY_METADATA_LOOKUP, start);
+
+        if (sourceVersion == null) {
+            throw new FileNotFoundException(fileName + " with version " + version);
+        }
+
+        return shareVersion(fileName, version, sourceVersion, targetFileName, null);
 
     }
 
+    /**
+     * Adds a new version to the file sharing the content of a stored version with the same SHA-256 checksum and size,
+     * so the content is not sent again. Returns null when no stored version has it, the content is then uploaded.
+     */
+    public FileResponseDTO saveByChecksum(String fileName, String checksum, long size) {
+
+        fileName = StringUtils.cleanPath(fileName);
+        if (fileName.contains("..")) {
+            throw new InvalidPathException();
+        }
+        if (checksum == null || !SHA_256_HEX.matcher(checksum).matches() || size < 0) {
+            throw new InvalidUploadException("A SHA-256 checksum in hex and a size are required");
+        }
+
+        long start = System.nanoTime();
+        List<Version> candidates = versionRepository.findByContent(checksum.toLowerCase(Locale.ROOT), size, PageRequest.of(0, 3));
+        metrics.record(FileStorageMetrics.Phase.COPY_METADATA_LOOKUP, start);
+
+        for (Version candidate : candidates) {
+            try {
+                FileResponseDTO shared = shareVersion(candidate.getFile().getName(), candidate.getVersionNumber(), candidate, fileName, size);
+                if (shared != null) {
+                    return shared;
+                }
+            } catch (FileNotFoundException e) {
+                // Deleted since the lookup, the next candidate may still be there
+            }
+        }
+        return null;
+
+    }
+
+    private FileResponseDTO shareVersion(String fileName, Integer version, Version sourceVersion, String targetFileName, Long expectedSize) {
+
+        // Counted as any other version even though the content is shared on disk
+        storageUsage.checkQuota(targetFileName, sizeOf(sourceVersion));
+
+        long start = System.nanoTime();
+        Integer newVersionNumber = getNewVersionNumber(targetFileName);
+        Version newVersion = new Version(null, newVersionNumber, LocalDateTime.now());
+        File dbFile = createDatabaseFile(targetFileName, newVersion);
+        metrics.record(FileStorageMetrics.Phase.COPY_METADATA_LOOKUP, start);
+
+        String storedName = newVersionNumber + targetFileName;
+        synchronized (linking) {
+            linking.add(storedName);
+        }
+        try {
+            long size;
+            Path target = storage.resolve(targetFileName, newVersionNumber);
+
+            // Appends change the source in place, so it cannot be linked while one is running
+            synchronized (appendLog.lockFor(fileName, version)) {
+                start = System.nanoTime();
+                try {
+                    storage.share(storage.resolve(fileName, version), target);
+                    size = Files.size(target);
+                } catch (NoSuchFileException e) {
+                    throw new FileNotFoundException(fileName + " with version " + version, e);
+                } catch (IOException e) {
+                    throw new PersistingFileException(e);
+                }
+                // Appends only grow a version, so the same size means the content was not appended to since the lookup
+                if (expectedSize != null && size != expectedSize) {
+                    storage.delete(targetFileName, newVersionNumber);
+                    return null;
+                }
+                metrics.record(FileStorageMetrics.Phase.COPY_SHARE, start);
+            }
+
+            // A replacement of the same size may have been saved since the lookup. It moves a new file over the source,
+            // and later appends unshare it, so the linked content no longer changes and is hashed outside the lock.
+            if (expectedSize != null && !sourceVersion.getChecksum().equals(checksumOf(target))) {
+                storage.delete(targetFileName, newVersionNumber);
+                return null;
+            }
+            newVersion.setChecksum(sourceVersion.getChecksum());
+            newVersion.setSize(size);
+            newVersion.setCorrupted(sourceVersion.isCorrupted());
+
+            replicateNewVersion(targetFileName, newVersionNumber);
+
+            start = System.nanoTime();
+            dbFile = saveNewVersion(dbFile, newVersion);
+            metrics.record(FileStorageMetrics.Phase.COPY_METADATA_SAVE, start);
+
+            return new FileResponseDTO(dbFile.getName(), newVersionNumber, null, size);
+        } finally {
+            synchronized (linking) {
+                linking.remove(storedName);
+            }
+        }
+
+    }
+
+    /**
+     * Rejects a name sent by another node or read from an archive when its version file would not be stored under the
+     * database path.
+     */
+    public void checkImportedName(String fileName, Integer version) {
+        if (!storage.isWithinDatabasePath(fileName, version)) {
+            throw new InvalidUploadException("Invalid file name " + fileName + " with version " + version);
+        }
+    }
+
+    /**
+     * Deletes a file found on disk without a version record, unless a copy is linking it or its record was saved since
+     * the caller looked. The stored name starts with the version number, so every split of its leading digits is
+     * checked.
+     */
+    public boolean deleteUnrecorded(Path path, String storedName) throws IOException {
+        synchronized (linking) {
+            if (linking.contains(storedName)) {
+                return false;
+            }
+            for (int digits = 1; digits < storedName.length() && digits <= 9 && Character.isDigit(storedName.charAt(digits - 1)); digits++) {
+                Integer version = Integer.valueOf(storedName.substring(0, digits));
+                if (versionRepository.findByFileNameAndVersionNumber(storedName.substring(digits), version) != null) {
+                    return false;
+                }
+            }
+            return Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Stores a version moved from another node of the cluster with its original number and date. Importing the same
+     * version again replaces it, so an interrupted move can be retried.
+     */
+    public void importVersion(String fileName, Integer version, LocalDateTime lastModificationDate, String checksum, InputStream inputStream) {
+
+        checkImportedName(fileName, version);
+
+        StoredContent content = persistFileOnFileSystem(fileName, version, inputStream);
+        if (checksum != null && !checksum.equals(content.getChecksum())) {
+            removeFromFileSystem(fileName, version);
+            throw new PersistingFileException(new IOException("Version " + version + " of " + fileName + " does not match its checksum"));
+        }
+
+        Version databaseVersion = versionRepository.findByFileNameAndVersionNumber(fileName, version);
+        if (databaseVersion != null) {
+            long previousSize = sizeOf(databaseVersion);
+            databaseVersion.setLastModificationDate(lastModificationDate);
+            databaseVersion.setChecksum(content.getChecksum());
+            databaseVersion.setSize(content.getSize());
+            databaseVersion.setCorrupted(false);
+            saveVersion(fileName, databaseVersion, content.getSize() - previousSize);
+            return;
+        }
+
+        Version newVersion = new Version(null, version, lastModificationDate);
+        newVersion.setChecksum(content.getChecksum());
+        newVersion.setSize(content.getSize());
+        saveNewVersion(createDatabaseFile(fileName, newVersion), newVersion);
+    }
+
+    /**
+     * Copies the content of a version from the offset to the output, a negative offset counts from the end.
+     * When following, keeps waiting for appended data until nothing arrives for the idle timeout.
+     */
+    public void tail(Path path, long offset, boolean follow, long idleTimeoutMillis, long maxDurationMillis, OutputStream outputStream)
+            throws IOException {
+
+        long now = System.currentTimeMillis();
+        long deadline = now + maxDurationMillis;
+        long idleDeadline = now + idleTimeoutMillis;
+
+        // Read before opening, so a file moved over the path in between is reopened rather than missed
+        Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long position = offset < 0 ? Math.max(0, channel.size() + offset) : offset;
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+            while (true) {
+                long sequence = appendLog.sequence();
+                if (position < channel.size()) {
+                    buffer.clear();
+                    int read = channel.read(buffer, position);
+                    outputStream.write(buffer.array(), 0, read);
+                    position += read;
+                    if (position >= channel.size()) {
+                        outputStream.flush();
+                    }
+                    idleDeadline = System.currentTimeMillis() + idleTimeoutMillis;
+                    continue;
+                }
+
+                now = System.currentTimeMillis();
+                if (!follow || now >= deadline || now >= idleDeadline) {
+                    return;
+                }
+
+                // Replacements and appends to a shared version move a new file over the path, later data only goes there
+                Object currentKey;
+                try {
+                    currentKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+                } catch (NoSuchFileException e) {
+                    return;
+                }
+                if (!Objects.equals(fileKey, currentKey)) {
+                    channel.close();
+                    fileKey = currentKey;
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    continue;
+                }
+                appendLog.awaitAppend(sequence, Math.min(deadline, idleDeadline) - now);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Transactional
     public void delete(String fileName) {
 
+        long start = System.nanoTime();
         File file = fileRepository.findByName(fileName);
+        Integer latestVersionNumber = versionRepository.findLatestVersionNumber(fileName);
+        metrics.record(FileStorageMetrics.Phase.DELETE_METADATA_LOOKUP, start);
 
         if(file == null){
             throw new FileNotFoundException(fileName);
         }
 
-        for (Version version : file.getVersions()) {
-            removeFromFileSystem(fileName, version.getVersionNumber());
+        //Version files are removed in the background by the reclaimer
+
+        if (latestVersionNumber != null) {
+            start = System.nanoTime();
+            tombstoneRepository.save(new Tombstone(fileName, 1, latestVersionNumber, LocalDateTime.now()));
+            metrics.record(FileStorageMetrics.Phase.DELETE_TOMBSTONE, start);
+        }
+
+        UsageDTO usage = versionRepository.findUsageByFileId(file.getId());
+
+        start = System.nanoTime();
+        versionRepository.removeByFileId(file.getId());
+        int removed = fileRepository.removeById(file.getId());
+        metrics.record(FileStorageMetrics.Phase.DELETE_METADATA_DELETE, start);
+
+        // Deleted by a concurrent request, which publishes the change, the tombstone is rolled back
+        if (removed == 0) {
+            throw new FileNotFoundException(fileName);
         }
 
-        fileRepository.delete(file);
+        eventPublisher.publishEvent(usage == null
+                ? new FileChangeEvent(fileName, null, ChangeEvent.Type.DELETED)
+                : new FileChangeEvent(fileName, null, ChangeEvent.Type.DELETED, -usage.getBytes(), -usage.getVersions()));
 
     }
 
+    @Transactional
     public void delete(String fileName, Integer version) {
 
-        File file = fileRepository.findByName(fileName);
+        long start = System.nanoTime();
+        int removed = versionRepository.removeByFileNameAndVersionNumber(fileName, version);
+        metrics.record(FileStorageMetrics.Phase.DELETE_METADATA_DELETE, start);
 
-        if(file == null){
-            throw new FileNotFoundException(fileName);
+        if (removed == 0) {
+            if (fileRepository.findByName(fileName) == null) {
+                throw new FileNotFoundException(fileName);
+            }
+            throw new FileNotFoundException(fileName + " with version "+version);
         }
 
-        Optional<Version> versionToRemove = file.getVersions().stream().filter(version1 -> version1.getVersionNumber().equals(version)).findFirst();
+        // The size of the content is read from the disk, so only the row is touched
+        long size = sizeOnDisk(fileName, version);
 
-        if (versionToRemove.isPresent()) {
-            removeFromFileSystem(fileName, versionToRemove.get().getVersionNumber());
-            file.getVersions().remove(versionToRemove.get());
-            versionRepository.deleteById(versionToRemove.get().getId());
-        }else{
-            throw new FileNotFoundException(fileName + " with version "+version);
+        // A single file is cheap enough to remove as soon as the delete commits, so the version cannot be downloaded
+        // anymore, while a rolled back delete keeps it
+        afterCommit(() -> {
+            long removeStart = System.nanoTime();
+            removeFromFileSystem(fileName, version);
+            metrics.record(FileStorageMetrics.Phase.DELETE_REMOVE_FILES, removeStart);
+        });
+
+        eventPublisher.publishEvent(new FileChangeEvent(fileName, version, ChangeEvent.Type.DELETED, -size, -1));
+
+    }
+
+    @Transactional
+    public int deleteByPrefix(String prefix) {
+
+        if (!StringUtils.hasText(prefix)) {
+            throw new InvalidPrefixException();
+        }
+
+        String namePattern = likePrefix(prefix);
+
+        long start = System.nanoTime();
+        List<FileDTO> files = fileRepository.findAllFilesByNameLike(namePattern);
+        Map<String, UsageDTO> usage = versionRepository.findUsageByFileNameLike(namePattern).stream()
+                .collect(Collectors.toMap(UsageDTO::getName, Function.identity()));
+        metrics.record(FileStorageMetrics.Phase.DELETE_METADATA_LOOKUP, start);
+
+        start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        List<Tombstone> tombstones = new ArrayList<>(files.size());
+        for (FileDTO file : files) {
+            tombstones.add(new Tombstone(file.getName(), 1, file.getLatestVersion(), now));
         }
+        tombstoneRepository.saveAll(tombstones);
+        metrics.record(FileStorageMetrics.Phase.DELETE_TOMBSTONE, start);
+
+        start = System.nanoTime();
+        versionRepository.removeByFileNameLike(namePattern);
+        int deleted = fileRepository.removeByNameLike(namePattern);
+        metrics.record(FileStorageMetrics.Phase.DELETE_METADATA_DELETE, start);
 
-        fileRepository.save(file);
+        // Some were deleted by a concurrent request, which publishes their changes, so this one is rolled back
+        if (deleted != files.size()) {
+            throw new ConcurrentDeleteException(prefix);
+        }
 
+        for (FileDTO file : files) {
+            UsageDTO fileUsage = usage.get(file.getName());
+            eventPublisher.publishEvent(fileUsage == null
+                    ? new FileChangeEvent(file.getName(), null, ChangeEvent.Type.DELETED)
+                    : new FileChangeEvent(file.getName(), null, ChangeEvent.Type.DELETED, -fileUsage.getBytes(), -fileUsage.getVersions()));
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Pattern for a LIKE query matching the names that start with the prefix, escaped with '!'.
+     */
+    static String likePrefix(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    /**
+     * Hard links the file of the version to the target while no append or replacement is writing to it, so the
+     * target has the content of a completed write.
+     */
+    void linkVersion(String fileName, Integer version, Path target) throws IOException {
+        synchronized (appendLog.lockFor(fileName, version)) {
+            storage.share(storage.resolve(fileName, version), target);
+        }
     }
 
 
@@ -213,7 +800,27 @@ public class FileService {
         return fileName.contains("..");
     }
 
-    private Integer getNewVersionNumber(String fileName) {
+    /**
+     * Checks the quota for the bytes a new content adds to the version it replaces, read from the disk so the
+     * version is only looked up once the content is written.
+     */
+    private void checkReplacementQuota(String fileName, Integer version, long newSize) {
+        storageUsage.checkQuota(fileName, newSize - sizeOnDisk(fileName, version));
+    }
+
+    private long sizeOnDisk(String fileName, Integer version) {
+        try {
+            return Files.size(storage.resolve(fileName, version));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(Version version) {
+        return version.getSize() != null ? version.getSize() : 0;
+    }
+
+    Integer getNewVersionNumber(String fileName) {
 
         Integer latestVersionNumber = versionRepository.findLatestVersionNumber(fileName);
 
@@ -221,12 +828,20 @@ public class FileService {
             latestVersionNumber = 0;
         }
 
+        //Skip the numbers of deleted versions still waiting for the reclaimer, so it never removes a new file
+
+        Integer latestTombstoneVersionNumber = tombstoneRepository.findLatestVersionNumber(fileName);
+
+        if (latestTombstoneVersionNumber != null && latestTombstoneVersionNumber > latestVersionNumber) {
+            latestVersionNumber = latestTombstoneVersionNumber;
+        }
+
         //Increase version number
 
         return ++latestVersionNumber;
     }
 
-    private File createDatabaseFile(String fileName, Integer newVersionNumber) {
+    private File createDatabaseFile(String fileName, Version newVersion) {
         File dbFile = fileRepository.findByName(fileName);
 
         if (dbFile == null) {
@@ -236,70 +851,181 @@ public class FileService {
             dbFile = new File();
             dbFile.setName(fileName);
             List<Version> versions = new ArrayList<>();
-            versions.add(new Version(dbFile, newVersionNumber, LocalDateTime.now()));
+            versions.add(newVersion);
             dbFile.setVersions(versions);
 
-        } else {
+        }
 
-            //Add new version to existing file
+        newVersion.setFile(dbFile);
 
-            List<Version> versions = dbFile.getVersions();
+        return dbFile;
+    }
 
-            if (versions != null && !versions.isEmpty()) {
-                versions.add(new Version(dbFile, newVersionNumber, LocalDateTime.now()));
-                dbFile.setVersions(versions);
-            } else {
-                versions = new ArrayList<>();
-                versions.add(new Version(dbFile, newVersionNumber, LocalDateTime.now()));
-                dbFile.setVersions(versions);
+    /**
+     * Saves the new version and its change in one transaction, so the change log has the changes of the committed
+     * versions only. The name is added to the filter first, watchers may download it once the change is committed.
+     */
+    private File saveNewVersion(File dbFile, Version newVersion) {
+        boolean newFile = dbFile.getId() == null;
+        return transaction.execute(status -> {
+            File saved = saveDatabaseFile(dbFile, newVersion);
+            if (newFile) {
+                fileNameFilter.add(saved.getName());
             }
+            eventPublisher.publishEvent(new FileChangeEvent(saved.getName(), newVersion.getVersionNumber(),
+                    ChangeEvent.Type.CREATED, newVersion.getSize(), 1));
+            return saved;
+        });
+    }
+
+    private void saveVersion(String fileName, Version databaseVersion, long sizeDelta) {
+        transaction.execute(status -> {
+            versionRepository.save(databaseVersion);
+            eventPublisher.publishEvent(new FileChangeEvent(fileName, databaseVersion.getVersionNumber(), ChangeEvent.Type.UPDATED, sizeDelta, 0));
+            return null;
+        });
+    }
+
+    private File saveDatabaseFile(File dbFile, Version newVersion) {
 
+        if (dbFile.getId() == null) {
+            return fileRepository.save(dbFile);
         }
 
+        //Insert only the new version, the ones the file already has are never loaded
+
+        versionRepository.save(newVersion);
+
         return dbFile;
     }
 
-    private void persistFileOnFileSystem(String fileName, Integer latestVersionNumber, InputStream inputStream) {
-        Path destinationPath = this.databasePath.resolve(latestVersionNumber + fileName);
+    StoredContent persistFileOnFileSystem(String fileName, Integer latestVersionNumber, InputStream inputStream) {
+        Path destinationPath = storage.resolve(fileName, latestVersionNumber);
         try {
-            Files.copy(inputStream, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+            return ingestPipeline.write(inputStream, destinationPath);
         } catch (IOException e) {
             throw new PersistingFileException(e);
         }
     }
 
+    private static MessageDigest digestOf(FileChannel channel, long size) throws IOException {
+        MessageDigest digest = StoredContent.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (long position = 0; position < size; ) {
+            buffer.clear();
+            if (buffer.remaining() > size - position) {
+                buffer.limit((int) (size - position));
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+        return digest;
+    }
+
+    private static String checksumOf(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return StoredContent.toHex(digestOf(channel, channel.size()).digest());
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+    }
+
+    private static MessageDigest copyOf(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies a version that has no record yet to the peers, a version that does not reach the quorum is removed
+     * again so the write can simply be retried.
+     */
+    private void replicateNewVersion(String fileName, Integer version) {
+        try {
+            replicationService.replicate(fileName, version);
+        } catch (ReplicationException e) {
+            removeFromFileSystem(fileName, version);
+            replicationService.deleteReplicas(fileName, version);
+            throw e;
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     private void removeFromFileSystem(String fileName, Integer version) {
-        Path destinationPath = this.databasePath.resolve(version + fileName);
+        storage.delete(fileName, version);
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
         try {
-            Files.deleteIfExists(destinationPath);
+            Files.deleteIfExists(path);
         } catch (IOException e) {
-            throw new DeletingFileException(e);
+            // Left for the reconciliation to find
         }
     }
 
     public Resource getResourceFile(String fileName, Integer version) {
 
+        if (!fileNameFilter.mightExist(fileName)) {
+            metrics.nameFilterRejected();
+            throw new FileNotFoundException(fileName);
+        }
+
+        long start = System.nanoTime();
         File file = fileRepository.findByName(fileName);
+        metrics.record(FileStorageMetrics.Phase.DOWNLOAD_METADATA_LOOKUP, start);
 
         if (file == null){
+            metrics.nameFilterMissed();
             throw new FileNotFoundException(fileName);
         }
 
         if(version == null) {
+            start = System.nanoTime();
             version = versionRepository.findLatestVersionNumber(fileName);
+            metrics.record(FileStorageMetrics.Phase.DOWNLOAD_VERSION_LOOKUP, start);
 
             if (version == null){
                 throw new FileNotFoundException(fileName + " with latest version ");
             }
         }
 
-        return getResourceFile(version + fileName);
+        if (replicationService.isEnabled() && !Files.exists(storage.resolve(fileName, version))) {
+            replicationService.fetch(fileName, version);
+        }
+
+        start = System.nanoTime();
+        Resource resource = resolveResource(version + fileName, version);
+        metrics.record(FileStorageMetrics.Phase.DOWNLOAD_RESOLVE, start);
+
+        return resource;
     }
 
-    private Resource getResourceFile(String fileName) {
+    private Resource resolveResource(String fileName, int version) {
         try {
-            Path filePath = databasePath.resolve(fileName).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
+            Path filePath = storage.getDatabasePath().resolve(fileName).normalize();
+            Resource resource = new VersionResource(filePath, version);
             if (resource.exists()) {
                 return resource;
             } else {
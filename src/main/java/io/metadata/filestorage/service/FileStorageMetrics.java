@@ -0,0 +1,304 @@
+package io.metadata.filestorage.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timers for every phase of the storage operations plus transfer counters.
+ * All meters are registered up front so recording is a plain array lookup, without tag lookups or allocations.
+ */
+@Component
+public class FileStorageMetrics {
+
+    public enum Phase {
+        SAVE_VERSION_LOOKUP("save", "version_lookup"),
+        SAVE_METADATA_LOOKUP("save", "metadata_lookup"),
+        SAVE_WRITE("save", "write"),
+        SAVE_METADATA_SAVE("save", "metadata_save"),
+        UPDATE_WRITE("update", "write"),
+        UPDATE_METADATA_LOOKUP("update", "metadata_lookup"),
+        UPDATE_METADATA_SAVE("update", "metadata_save"),
+        APPEND_METADATA_LOOKUP("append", "metadata_lookup"),
+        APPEND_WRITE("append", "write"),
+        APPEND_METADATA_SAVE("append", "metadata_save"),
+        COPY_METADATA_LOOKUP("copy", "metadata_lookup"),
+        COPY_SHARE("copy", "share"),
+        COPY_METADATA_SAVE("copy", "metadata_save"),
+        DELETE_METADATA_LOOKUP("delete", "metadata_lookup"),
+        DELETE_TOMBSTONE("delete", "tombstone"),
+        DELETE_REMOVE_FILES("delete", "remove_files"),
+        DELETE_METADATA_DELETE("delete", "metadata_delete"),
+        DOWNLOAD_METADATA_LOOKUP("download", "metadata_lookup"),
+        DOWNLOAD_VERSION_LOOKUP("download", "version_lookup"),
+        DOWNLOAD_RESOLVE("download", "resolve");
+
+        private final String operation;
+
+        private final String phase;
+
+        Phase(String operation, String phase) {
+            this.operation = operation;
+            this.phase = phase;
+        }
+    }
+
+    private final Timer[] timers;
+
+    private final Counter bytesIn;
+
+    private final Counter bytesOut;
+
+    private final Counter reclaimedFiles;
+
+    private final Counter scrubbedBytes;
+
+    private final Counter scrubbedVersions;
+
+    private final Counter scrubMismatches;
+
+    private final Counter scrubMissingFiles;
+
+    private final Counter scrubUnreadableFiles;
+
+    private volatile double scrubProgress;
+
+    private final Counter nameFilterRejections;
+
+    private final Counter nameFilterMisses;
+
+    private volatile double nameFilterFalsePositiveRate;
+
+    private volatile long nameFilterMemory;
+
+    private final Timer replications;
+
+    private final Counter replicationFailures;
+
+    private final Counter replicaFetches;
+
+    private final Counter rejectedTransfers;
+
+    private final Timer queuedTransfers;
+
+    private final Timer throttledTransfers;
+
+    private final Counter diffCacheHits;
+
+    private final Counter diffCacheMisses;
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    @Autowired
+    public FileStorageMetrics(MeterRegistry meterRegistry) {
+        Phase[] phases = Phase.values();
+        timers = new Timer[phases.length];
+        for (Phase phase : phases) {
+            timers[phase.ordinal()] = Timer.builder("file.storage.operation")
+                    .description("Time spent on every phase of the storage operations")
+                    .tag("operation", phase.operation)
+                    .tag("phase", phase.phase)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        bytesIn = Counter.builder("file.storage.bytes")
+                .description("Bytes transferred by uploads and downloads")
+                .tag("direction", "in")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        bytesOut = Counter.builder("file.storage.bytes")
+                .description("Bytes transferred by uploads and downloads")
+                .tag("direction", "out")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        reclaimedFiles = Counter.builder("file.storage.reclaimed.files")
+                .description("Files of deleted versions removed in the background")
+                .register(meterRegistry);
+
+        scrubbedBytes = Counter.builder("file.storage.scrub.bytes")
+                .description("Bytes read back by the integrity scrubber")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        scrubbedVersions = Counter.builder("file.storage.scrub.versions")
+                .description("Versions verified by the integrity scrubber")
+                .register(meterRegistry);
+        scrubMismatches = scrubErrors(meterRegistry, "checksum_mismatch");
+        scrubMissingFiles = scrubErrors(meterRegistry, "missing");
+        scrubUnreadableFiles = scrubErrors(meterRegistry, "unreadable");
+        Gauge.builder("file.storage.scrub.progress", this, metrics -> metrics.scrubProgress)
+                .description("Fraction of the versions verified by the current scrub pass")
+                .register(meterRegistry);
+
+        nameFilterRejections = Counter.builder("file.storage.name_filter.lookups")
+                .description("Lookups of missing files answered by the name filter or the database")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+        nameFilterMisses = Counter.builder("file.storage.name_filter.lookups")
+                .description("Lookups of missing files answered by the name filter or the database")
+                .tag("result", "false_positive")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.name_filter.false_positive_rate", this, metrics -> metrics.nameFilterFalsePositiveRate)
+                .description("False positive rate expected from the names in the name filter")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.name_filter.memory", this, metrics -> metrics.nameFilterMemory)
+                .description("Memory taken by the name filter")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        replications = Timer.builder("file.storage.replication")
+                .description("Time taken to copy a version to a peer")
+                .register(meterRegistry);
+        replicationFailures = Counter.builder("file.storage.replication.failures")
+                .description("Versions that could not be copied to a peer")
+                .register(meterRegistry);
+        replicaFetches = Counter.builder("file.storage.replication.fetches")
+                .description("Versions missing on disk fetched back from a peer")
+                .register(meterRegistry);
+
+        rejectedTransfers = Counter.builder("file.storage.transfers.rejected")
+                .description("Uploads and downloads turned away because too many were running")
+                .register(meterRegistry);
+        queuedTransfers = Timer.builder("file.storage.transfers.wait")
+                .description("Time uploads and downloads waited for a free slot or for bandwidth")
+                .tag("reason", "queue")
+                .register(meterRegistry);
+        throttledTransfers = Timer.builder("file.storage.transfers.wait")
+                .description("Time uploads and downloads waited for a free slot or for bandwidth")
+                .tag("reason", "bandwidth")
+                .register(meterRegistry);
+
+        diffCacheHits = Counter.builder("file.storage.diff.cache")
+                .description("Diffs between versions answered from the cache or computed")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        diffCacheMisses = Counter.builder("file.storage.diff.cache")
+                .description("Diffs between versions answered from the cache or computed")
+                .tag("result", "miss")
+                .register(meterRegistry);
+
+        Gauge.builder("file.storage.transfers.active", activeUploads, AtomicInteger::get)
+                .description("Uploads and downloads in progress")
+                .tag("direction", "in")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.transfers.active", activeDownloads, AtomicInteger::get)
+                .description("Uploads and downloads in progress")
+                .tag("direction", "out")
+                .register(meterRegistry);
+    }
+
+    private static Counter scrubErrors(MeterRegistry meterRegistry, String type) {
+        return Counter.builder("file.storage.scrub.errors")
+                .description("Versions the integrity scrubber could not verify")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    public void record(Phase phase, long startNanos) {
+        timers[phase.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void uploadStarted() {
+        activeUploads.incrementAndGet();
+    }
+
+    public void uploadFinished(long bytes) {
+        activeUploads.decrementAndGet();
+        bytesIn.increment(bytes);
+    }
+
+    public void downloadStarted() {
+        activeDownloads.incrementAndGet();
+    }
+
+    public void downloadFinished(long bytes) {
+        activeDownloads.decrementAndGet();
+        bytesOut.increment(bytes);
+    }
+
+    public void versionReplicated(long nanos) {
+        replications.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void replicationFailed() {
+        replicationFailures.increment();
+    }
+
+    public void replicaFetched() {
+        replicaFetches.increment();
+    }
+
+    public void transferRejected() {
+        rejectedTransfers.increment();
+    }
+
+    public void transferQueued(long nanos) {
+        queuedTransfers.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void transferThrottled(long nanos) {
+        throttledTransfers.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void fileReclaimed() {
+        reclaimedFiles.increment();
+    }
+
+    public void versionScrubbed(long bytes) {
+        scrubbedVersions.increment();
+        scrubbedBytes.increment(bytes);
+    }
+
+    public void scrubMismatch() {
+        scrubMismatches.increment();
+    }
+
+    public void scrubMissingFile() {
+        scrubMissingFiles.increment();
+    }
+
+    public void scrubUnreadableFile() {
+        scrubUnreadableFiles.increment();
+    }
+
+    public void scrubProgress(double progress) {
+        scrubProgress = progress;
+    }
+
+    public void nameFilterRejected() {
+        nameFilterRejections.increment();
+    }
+
+    public void nameFilterMissed() {
+        nameFilterMisses.increment();
+    }
+
+    public void nameFilterBuilt(long memoryBytes) {
+        nameFilterMemory = memoryBytes;
+    }
+
+    public void nameFilterFalsePositiveRate(double falsePositiveRate) {
+        nameFilterFalsePositiveRate = falsePositiveRate;
+    }
+
+    public void diffCacheHit() {
+        diffCacheHits.increment();
+    }
+
+    public void diffCacheMissed() {
+        diffCacheMisses.increment();
+    }
+
+    public int getActiveTransfers() {
+        return activeUploads.get() + activeDownloads.get();
+    }
+}
@@ -0,0 +1,137 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.exception.DeletingFileException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Location of the version files on disk, every version is stored as "versionNumber + fileName" under the database path.
+ */
+@Component
+public class FileSystemStorage {
+
+    @Value("${file.database.path}")
+    private String fileDatabasePath;
+
+    private Path databasePath;
+
+    private boolean linkCountSupported;
+
+    @PostConstruct
+    public void init() {
+        databasePath = Paths.get(fileDatabasePath).toAbsolutePath().normalize();
+        linkCountSupported = databasePath.getFileSystem().supportedFileAttributeViews().contains("unix");
+
+        if (!Files.exists(databasePath)) {
+            try {
+                Files.createDirectories(databasePath);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public Path getDatabasePath() {
+        return databasePath;
+    }
+
+    public Path resolve(String fileName, Integer version) {
+        return databasePath.resolve(version + fileName);
+    }
+
+    /**
+     * Whether the version file of the name stays under the database path. Names that do not come from an upload to
+     * this node are checked with it, "../" or an absolute name would otherwise reach any other directory.
+     */
+    public boolean isWithinDatabasePath(String fileName, Integer version) {
+        if (!StringUtils.hasText(fileName) || version == null
+                || fileName.contains("..") || fileName.startsWith("/") || fileName.startsWith("\\")) {
+            return false;
+        }
+        try {
+            return resolve(fileName, version).normalize().startsWith(databasePath);
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Makes the target share the content of the source through a hard link, so copies take no time or space
+     * whatever their size. Falls back to a copy done by the kernel when links are not available.
+     */
+    public void share(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        if (linkCountSupported) {
+            try {
+                Files.createLink(target, source);
+                return;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // Links not allowed on this file system or across the given paths, copy instead
+            }
+        }
+        copy(source, target);
+    }
+
+    /**
+     * Gives the file its own copy of the content when it shares it with other versions, so it can be changed in place.
+     * Writers that replace the whole file already get a new one.
+     */
+    public void unshare(Path path) throws IOException {
+        if (!linkCountSupported || (int) Files.getAttribute(path, "unix:nlink") <= 1) {
+            return;
+        }
+
+        Path copy = Files.createTempFile(databasePath, ".unshare", ".tmp");
+        try {
+            copy(path, copy);
+            Files.move(copy, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    /**
+     * Writes the content to a temporary file first, so readers of the target never see it half written.
+     */
+    public long replace(Path target, InputStream inputStream) throws IOException {
+        Path temp = Files.createTempFile(databasePath, ".replace", ".tmp");
+        try {
+            long size = Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long position = 0; position < size; ) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    public void delete(String fileName, Integer version) {
+        try {
+            Files.deleteIfExists(resolve(fileName, version));
+        } catch (IOException e) {
+            throw new DeletingFileException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.metadata.filestorage.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Open addressing set of 64 bit fingerprints kept in a direct buffer, so tens of millions of keys take
+ * 8 bytes each outside the heap. Every entry carries a "seen" flag that can be set from several threads.
+ */
+final class FingerprintSet {
+
+    private static final VarHandle SLOTS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long SEEN = Long.MIN_VALUE;
+
+    private static final long MAX_SLOTS = Integer.MAX_VALUE / Long.BYTES;
+
+    private final ByteBuffer slots;
+
+    private final long mask;
+
+    FingerprintSet(long expectedSize) {
+        long capacity = Long.highestOneBit(Math.max(16, expectedSize + expectedSize / 3) * 2 - 1);
+        if (capacity > MAX_SLOTS) {
+            throw new IllegalArgumentException("Too many entries for a fingerprint set: " + expectedSize);
+        }
+        this.slots = ByteBuffer.allocateDirect((int) capacity * Long.BYTES + Long.BYTES - 1).alignedSlice(Long.BYTES);
+        this.mask = capacity - 1;
+    }
+
+    static long fingerprint(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = mix(hash) & ~SEEN;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Adds the fingerprint, only one thread may add at a time.
+     */
+    boolean add(long fingerprint) {
+        for (long i = mix(fingerprint) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long slot = (long) SLOTS.getVolatile(slots, (int) (i * Long.BYTES));
+            if (slot == 0) {
+                SLOTS.setVolatile(slots, (int) (i * Long.BYTES), fingerprint);
+                return true;
+            }
+            if ((slot & ~SEEN) == fingerprint) {
+                return false;
+            }
+        }
+        throw new IllegalStateException("Fingerprint set is full");
+    }
+
+    /**
+     * Flags the fingerprint as seen, returns false when it is not in the set.
+     */
+    boolean markSeen(long fingerprint) {
+        long index = indexOf(fingerprint);
+        if (index < 0) {
+            return false;
+        }
+        SLOTS.getAndBitwiseOr(slots, (int) (index * Long.BYTES), SEEN);
+        return true;
+    }
+
+    boolean isSeen(long fingerprint) {
+        long index = indexOf(fingerprint);
+        return index >= 0 && ((long) SLOTS.getVolatile(slots, (int) (index * Long.BYTES)) & SEEN) != 0;
+    }
+
+    private long indexOf(long fingerprint) {
+        for (long i = mix(fingerprint) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long slot = (long) SLOTS.getVolatile(slots, (int) (i * Long.BYTES));
+            if (slot == 0) {
+                return -1;
+            }
+            if ((slot & ~SEEN) == fingerprint) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,57 @@
+package io.metadata.filestorage.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hash ring of the cluster nodes. Every node is placed on the ring many times, so the names spread evenly
+ * and adding or removing a node only moves the names of its neighbours.
+ */
+final class HashRing {
+
+    private final List<String> nodes;
+
+    private final long[] points;
+
+    private final String[] owners;
+
+    HashRing(List<String> nodes, int virtualNodes) {
+        this.nodes = nodes;
+
+        long[] hashes = new long[nodes.size() * virtualNodes];
+        String[] hashOwners = new String[hashes.length];
+        int[] order = new int[hashes.length];
+        for (int node = 0, i = 0; node < nodes.size(); node++) {
+            for (int virtualNode = 0; virtualNode < virtualNodes; virtualNode++, i++) {
+                hashes[i] = FingerprintSet.fingerprint(nodes.get(node) + "#" + virtualNode);
+                hashOwners[i] = nodes.get(node);
+                order[i] = i;
+            }
+        }
+
+        // Sort the points keeping their owners, ties go to the first node so every ring built from the same nodes agrees
+        Integer[] sorted = Arrays.stream(order).boxed().toArray(Integer[]::new);
+        Arrays.sort(sorted, (a, b) -> hashes[a] != hashes[b] ? Long.compare(hashes[a], hashes[b]) : hashOwners[a].compareTo(hashOwners[b]));
+        this.points = new long[hashes.length];
+        this.owners = new String[hashes.length];
+        for (int i = 0; i < sorted.length; i++) {
+            points[i] = hashes[sorted[i]];
+            owners[i] = hashOwners[sorted[i]];
+        }
+    }
+
+    List<String> getNodes() {
+        return nodes;
+    }
+
+    String ownerOf(String fileName) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, FingerprintSet.fingerprint(fileName));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+}
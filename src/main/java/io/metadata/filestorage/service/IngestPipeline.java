@@ -0,0 +1,367 @@
+package io.metadata.filestorage.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes uploaded content to disk in stages: the request thread reads it into pooled direct buffers, one thread
+ * hashes them and another writes them through a file channel, with a few buffers in flight per upload at most.
+ * Content fitting in one buffer, or arriving while every stage thread is busy, is hashed and written by the
+ * request thread with the same buffers. No buffer is allocated per chunk, and the pool bounds the memory used by
+ * all the uploads together. When slow uploads hold every pooled buffer the others read into heap buffers instead of
+ * waiting for them.
+ */
+@Component
+public class IngestPipeline {
+
+    private static final Chunk END = new Chunk(ByteBuffer.allocate(0), false);
+
+    private final int bufferSize;
+
+    private final int depth;
+
+    private final BlockingQueue<Chunk> pool;
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public IngestPipeline(
+            @Value("${file.ingest.buffer-size:131072}") int bufferSize,
+            @Value("${file.ingest.buffers:64}") int buffers,
+            @Value("${file.ingest.depth:4}") int depth,
+            @Value("${file.ingest.threads:32}") int threads) {
+        this.bufferSize = bufferSize;
+        this.depth = depth;
+        this.pool = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            pool.add(new Chunk(ByteBuffer.allocateDirect(bufferSize), true));
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, threads, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "ingest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    int availableBuffers() {
+        return pool.size();
+    }
+
+    /**
+     * Writes the content to a temporary file moved over the destination once complete, so versions sharing the old
+     * content through a link keep it and readers see either the old or the new content. A failure leaves the
+     * destination as it was.
+     */
+    public StoredContent write(InputStream inputStream, Path destination) throws IOException {
+        Path temp = Files.createTempFile(destination.toAbsolutePath().getParent(), ".ingest", ".tmp");
+        try {
+            StoredContent content = writeTo(inputStream, temp);
+            Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return content;
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Writes the content over the file, for callers that move it into place themselves.
+     */
+    public StoredContent writeTo(InputStream inputStream, Path file) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ReadableByteChannel in = Channels.newChannel(inputStream);
+            MessageDigest digest = StoredContent.newDigest();
+            long size = write(in, digest, out);
+            return new StoredContent(StoredContent.toHex(digest.digest()), size);
+        }
+    }
+
+    private long write(ReadableByteChannel in, MessageDigest digest, FileChannel out) throws IOException {
+        Chunk chunk = acquire();
+        try {
+            boolean more = fill(chunk, in);
+            if (more) {
+                Ingest ingest = start(digest, out);
+                if (ingest != null) {
+                    Chunk first = chunk;
+                    chunk = null;
+                    return ingest.run(first, in);
+                }
+            }
+
+            long size = 0;
+            while (true) {
+                hash(chunk, digest);
+                write(chunk, out);
+                size += chunk.length;
+                if (!more) {
+                    return size;
+                }
+                more = fill(chunk, in);
+            }
+        } finally {
+            if (chunk != null) {
+                recycle(chunk);
+            }
+        }
+    }
+
+    /**
+     * A pooled buffer, or a heap one when the pool is empty, so an upload never waits for the others to read theirs.
+     */
+    private Chunk acquire() {
+        Chunk chunk = pool.poll();
+        return chunk != null ? chunk : new Chunk(ByteBuffer.allocate(bufferSize), false);
+    }
+
+    private void recycle(Chunk chunk) {
+        if (chunk.pooled) {
+            pool.add(chunk);
+        }
+    }
+
+    /**
+     * Starts the hashing and writing stages of an upload, or returns null when there are no threads left for them.
+     */
+    private Ingest start(MessageDigest digest, FileChannel out) throws IOException {
+        Ingest ingest = new Ingest(digest, out);
+        try {
+            ingest.hashing = executor.submit(ingest::hashAll);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        try {
+            ingest.writing = executor.submit(ingest::writeAll);
+        } catch (RejectedExecutionException e) {
+            ingest.hashQueue.add(END);
+            await(ingest.hashing);
+            return null;
+        }
+        return ingest;
+    }
+
+    /**
+     * Reads until the buffer of the chunk is full, returns false once the content is over.
+     */
+    private static boolean fill(Chunk chunk, ReadableByteChannel in) throws IOException {
+        ByteBuffer buffer = chunk.buffer;
+        buffer.clear();
+        boolean more = true;
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                more = false;
+                break;
+            }
+        }
+        chunk.length = buffer.position();
+        return more;
+    }
+
+    private static void hash(Chunk chunk, MessageDigest digest) {
+        ByteBuffer view = chunk.hashView;
+        view.clear();
+        view.limit(chunk.length);
+        digest.update(view);
+    }
+
+    private static void write(Chunk chunk, FileChannel out) throws IOException {
+        ByteBuffer view = chunk.writeView;
+        view.clear();
+        view.limit(chunk.length);
+        while (view.hasRemaining()) {
+            out.write(view);
+        }
+    }
+
+    private static void await(Future<?> stage) throws IOException {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException("Ingest stage failed", e.getCause());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Left for the reconciliation to find
+        }
+    }
+
+    /**
+     * A pooled buffer with a view for each stage, so the stages never move the position of each other.
+     */
+    private static final class Chunk {
+
+        private final ByteBuffer buffer;
+
+        private final ByteBuffer hashView;
+
+        private final ByteBuffer writeView;
+
+        private final boolean pooled;
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private int length;
+
+        private Chunk(ByteBuffer buffer, boolean pooled) {
+            this.buffer = buffer;
+            this.pooled = pooled;
+            this.hashView = buffer.duplicate();
+            this.writeView = buffer.duplicate();
+        }
+    }
+
+    /**
+     * The stages of one upload. A chunk goes back to the pool once both stages are done with it, and the credits
+     * keep the queues from ever holding more chunks than they have room for.
+     */
+    private final class Ingest {
+
+        private final BlockingQueue<Chunk> hashQueue = new ArrayBlockingQueue<>(depth + 1);
+
+        private final BlockingQueue<Chunk> writeQueue = new ArrayBlockingQueue<>(depth + 1);
+
+        // The first chunk is already read when the stages start
+        private final Semaphore credits = new Semaphore(depth - 1);
+
+        private final MessageDigest digest;
+
+        private final FileChannel out;
+
+        private volatile IOException failure;
+
+        private volatile boolean stopped;
+
+        private Future<?> hashing;
+
+        private Future<?> writing;
+
+        private Ingest(MessageDigest digest, FileChannel out) {
+            this.digest = digest;
+            this.out = out;
+        }
+
+        private long run(Chunk first, ReadableByteChannel in) throws IOException {
+            long size = 0;
+            Chunk chunk = first;
+            boolean more = true;
+            try {
+                while (true) {
+                    size += chunk.length;
+                    chunk.pending.set(2);
+                    hashQueue.add(chunk);
+                    writeQueue.add(chunk);
+                    chunk = null;
+                    if (!more || failure != null) {
+                        break;
+                    }
+
+                    acquireCredit();
+                    chunk = acquire();
+                    more = fill(chunk, in);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (chunk != null) {
+                    release(chunk);
+                }
+                stopped = true;
+                throw e;
+            } finally {
+                hashQueue.add(END);
+                writeQueue.add(END);
+                await(hashing);
+                await(writing);
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            return size;
+        }
+
+        private void acquireCredit() throws IOException {
+            try {
+                while (!credits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (hashing.isDone() || writing.isDone()) {
+                        throw new IOException("Ingest stage stopped");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        private Void hashAll() throws InterruptedException {
+            for (Chunk chunk = hashQueue.take(); chunk != END; chunk = hashQueue.take()) {
+                if (!stopped) {
+                    hash(chunk, digest);
+                }
+                done(chunk);
+            }
+            return null;
+        }
+
+        private Void writeAll() throws InterruptedException {
+            for (Chunk chunk = writeQueue.take(); chunk != END; chunk = writeQueue.take()) {
+                if (!stopped && failure == null) {
+                    try {
+                        write(chunk, out);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                done(chunk);
+            }
+            return null;
+        }
+
+        private void done(Chunk chunk) {
+            if (chunk.pending.decrementAndGet() == 0) {
+                release(chunk);
+            }
+        }
+
+        private void release(Chunk chunk) {
+            recycle(chunk);
+            credits.release();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.ScrubStatusDTO;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads every version back in the background and compares it with the checksum recorded when it was written,
+ * flagging the versions that do not match. Reads are limited to a bandwidth budget and pause while uploads or
+ * downloads are in progress, up to a maximum wait per version so steady traffic cannot stall a pass. Passes run on a
+ * thread of their own, so they never hold the scheduler thread the other background tasks share. Versions written
+ * before checksums were recorded get theirs on the first pass.
+ */
+@Component
+public class IntegrityScrubber {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IntegrityScrubber.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final VersionRepository versionRepository;
+
+    private final FileSystemStorage storage;
+
+    private final FileStorageMetrics metrics;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final long yieldMillis;
+
+    private final long maxYieldMillis;
+
+    private final TokenBucket throttle;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+    private final ScrubStatusDTO status = new ScrubStatusDTO();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "integrity-scrubber");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean passRunning = new AtomicBoolean();
+
+    @Autowired
+    public IntegrityScrubber(
+            VersionRepository versionRepository,
+            FileSystemStorage storage,
+            FileStorageMetrics metrics,
+            @Value("${file.scrubber.enabled:true}") boolean enabled,
+            @Value("${file.scrubber.batch-size:100}") int batchSize,
+            @Value("${file.scrubber.mb-per-second:10}") long mbPerSecond,
+            @Value("${file.scrubber.yield-millis:100}") long yieldMillis,
+            @Value("${file.scrubber.max-yield-millis:10000}") long maxYieldMillis) {
+        this.versionRepository = versionRepository;
+        this.storage = storage;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.yieldMillis = yieldMillis;
+        this.maxYieldMillis = maxYieldMillis;
+        long bytesPerSecond = mbPerSecond * 1024 * 1024;
+        this.throttle = new TokenBucket(bytesPerSecond, Math.max(CHUNK_SIZE, bytesPerSecond));
+    }
+
+    /**
+     * Starts a pass on the scrubber thread, unless the previous one is still running.
+     */
+    @Scheduled(initialDelayString = "${file.scrubber.delay:86400000}", fixedDelayString = "${file.scrubber.delay:86400000}")
+    public void scrub() {
+        if (!enabled || !passRunning.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    ScrubStatusDTO result = scrubAll();
+                    LOGGER.info("Scrubbed {} versions taking {} bytes, {} did not match their checksum and {} could not be read",
+                            result.getVersionsScrubbed(), result.getBytesScrubbed(), result.getMismatches(), result.getUnreadable());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Scrub pass failed", e);
+                } finally {
+                    passRunning.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            passRunning.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public synchronized ScrubStatusDTO getStatus() {
+        ScrubStatusDTO copy = new ScrubStatusDTO();
+        copy.setRunning(status.isRunning());
+        copy.setPassStarted(status.getPassStarted());
+        copy.setPassCompleted(status.getPassCompleted());
+        copy.setVersionsScrubbed(status.getVersionsScrubbed());
+        copy.setVersionsTotal(status.getVersionsTotal());
+        copy.setBytesScrubbed(status.getBytesScrubbed());
+        copy.setMismatches(status.getMismatches());
+        copy.setUnreadable(status.getUnreadable());
+        copy.setCorruptedVersions(versionRepository.countByCorruptedTrue());
+        return copy;
+    }
+
+    ScrubStatusDTO scrubAll() throws InterruptedException {
+        long total = versionRepository.count();
+        synchronized (this) {
+            status.setRunning(true);
+            status.setPassStarted(LocalDateTime.now());
+            status.setVersionsTotal(total);
+            status.setVersionsScrubbed(0);
+            status.setBytesScrubbed(0);
+            status.setMismatches(0);
+            status.setUnreadable(0);
+        }
+        metrics.scrubProgress(0);
+
+        try {
+            long lastId = 0;
+            List<Version> versions;
+            do {
+                versions = versionRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, batchSize));
+                for (Version version : versions) {
+                    lastId = version.getId();
+                    scrub(version);
+                }
+                synchronized (this) {
+                    metrics.scrubProgress(total == 0 ? 1 : Math.min(1, status.getVersionsScrubbed() / (double) total));
+                }
+            } while (versions.size() == batchSize);
+
+            synchronized (this) {
+                status.setPassCompleted(LocalDateTime.now());
+            }
+            metrics.scrubProgress(1);
+        } finally {
+            synchronized (this) {
+                status.setRunning(false);
+            }
+        }
+
+        return getStatus();
+    }
+
+    private void scrub(Version version) throws InterruptedException {
+        String fileName = version.getFile().getName();
+        MessageDigest digest = StoredContent.newDigest();
+        long size = 0;
+        long yieldDeadline = System.currentTimeMillis() + maxYieldMillis;
+
+        try (FileChannel channel = FileChannel.open(storage.resolve(fileName, version.getVersionNumber()), StandardOpenOption.READ)) {
+            int read;
+            do {
+                yieldToTransfers(yieldDeadline);
+                buffer.clear();
+                read = channel.read(buffer);
+                if (read > 0) {
+                    throttle.acquire(read);
+                    buffer.flip();
+                    digest.update(buffer);
+                    size += read;
+                }
+            } while (read >= 0);
+        } catch (NoSuchFileException e) {
+            unreadable(version, "is missing", e);
+            return;
+        } catch (IOException e) {
+            unreadable(version, "could not be read", e);
+            return;
+        }
+
+        String checksum = StoredContent.toHex(digest.digest());
+        LocalDateTime now = LocalDateTime.now();
+        if (version.getChecksum() == null) {
+            versionRepository.updateMissingChecksum(version.getId(), checksum, size, now);
+        } else {
+            boolean corrupted = !version.getChecksum().equals(checksum);
+            // No rows are updated when the version was rewritten meanwhile, its new checksum is then trusted
+            if (versionRepository.updateVerification(version.getId(), version.getChecksum(), corrupted, now) > 0 && corrupted) {
+                LOGGER.error("Version {} of {} does not match its checksum", version.getVersionNumber(), fileName);
+                metrics.scrubMismatch();
+                synchronized (this) {
+                    status.setMismatches(status.getMismatches() + 1);
+                }
+            }
+        }
+
+        metrics.versionScrubbed(size);
+        synchronized (this) {
+            status.setVersionsScrubbed(status.getVersionsScrubbed() + 1);
+            status.setBytesScrubbed(status.getBytesScrubbed() + size);
+        }
+    }
+
+    private void unreadable(Version version, String reason, IOException e) {
+        // Versions deleted after the batch was loaded are expected to be gone
+        if (!versionRepository.existsById(version.getId())) {
+            return;
+        }
+
+        LOGGER.warn("Version {} of {} {}", version.getVersionNumber(), version.getFile().getName(), reason, e);
+        if (e instanceof NoSuchFileException) {
+            metrics.scrubMissingFile();
+        } else {
+            metrics.scrubUnreadableFile();
+        }
+        if (version.getChecksum() != null) {
+            versionRepository.updateVerification(version.getId(), version.getChecksum(), true, LocalDateTime.now());
+        }
+        synchronized (this) {
+            status.setUnreadable(status.getUnreadable() + 1);
+        }
+    }
+
+    /**
+     * Waits for the transfers to end, until the deadline of the version, after which it is read at the bandwidth limit.
+     */
+    private void yieldToTransfers(long deadline) throws InterruptedException {
+        while (metrics.getActiveTransfers() > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(Math.min(yieldMillis, remaining));
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package io.metadata.filestorage.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Unified diff of two text files. Lines are compared by a 64-bit hash with the linear space variant of Myers'
+ * algorithm, so only the hash and end offset of every line are kept in memory, and the lines printed are read back
+ * from disk. Parts that need more than a number of edits are reported as replaced as a whole instead.
+ */
+final class LineDiff {
+
+    private static final int CONTEXT = 3;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final byte[] NO_NEWLINE = "\n\\ No newline at end of file\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Lines a;
+
+    private final Lines b;
+
+    private final int maxEdits;
+
+    // Start and end of every change in both files, four ints per change
+    private int[] changes = new int[64];
+
+    private int changeCount;
+
+    private LineDiff(Lines a, Lines b, int maxEdits) {
+        this.a = a;
+        this.b = b;
+        this.maxEdits = maxEdits;
+    }
+
+    /**
+     * Hashes and end offsets of the lines of the file, or null when it has more lines than allowed.
+     */
+    static Lines index(Path path, int maxLines) throws IOException {
+        long[] hashes = new long[1024];
+        long[] ends = new long[1024];
+        int count = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            byte[] array = buffer.array();
+            long hash = FNV_OFFSET;
+            long position = 0;
+            boolean open = false;
+            int read;
+            while ((read = channel.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    hash = (hash ^ (array[i] & 0xff)) * FNV_PRIME;
+                    position++;
+                    open = true;
+                    if (array[i] == '\n') {
+                        if (count == maxLines) {
+                            return null;
+                        }
+                        if (count == hashes.length) {
+                            hashes = Arrays.copyOf(hashes, count * 2);
+                            ends = Arrays.copyOf(ends, count * 2);
+                        }
+                        hashes[count] = hash;
+                        ends[count++] = position;
+                        hash = FNV_OFFSET;
+                        open = false;
+                    }
+                }
+                buffer.clear();
+            }
+
+            if (open) {
+                if (count == maxLines) {
+                    return null;
+                }
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count + 1);
+                    ends = Arrays.copyOf(ends, count + 1);
+                }
+                hashes[count] = hash;
+                ends[count++] = position;
+            }
+            return new Lines(path, hashes, ends, count, open);
+        }
+    }
+
+    /**
+     * Writes the hunks that turn the first file into the second one, nothing when they have the same lines.
+     */
+    static void write(Lines a, Lines b, String fileName, int maxEdits, OutputStream out) throws IOException {
+        LineDiff diff = new LineDiff(a, b, maxEdits);
+        diff.compare(0, a.count, 0, b.count);
+        if (diff.changeCount > 0) {
+            diff.writeHunks(fileName, out);
+        }
+    }
+
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a.hashes[aLo] == b.hashes[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a.hashes[aHi - 1] == b.hashes[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                addChange(aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+
+        long split = middleSnake(aLo, aHi, bLo, bHi);
+        if (split < 0) {
+            addChange(aLo, aHi, bLo, bHi);
+            return;
+        }
+        int x = (int) (split >>> 32);
+        int y = (int) split;
+        compare(aLo, x, bLo, y);
+        compare(x, aHi, y, bHi);
+    }
+
+    /**
+     * Point where a shortest edit path crosses the middle of the edit graph, as x and y packed in a long, or -1 when
+     * the parts share nothing or need more edits than allowed.
+     */
+    private long middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = Math.min((n + m + 1) / 2, maxEdits);
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] forward = new int[length];
+        int[] reverse = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(reverse, -1);
+        forward[offset + 1] = 0;
+        reverse[offset + 1] = 0;
+
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int kForwardStart = 0;
+        int kForwardEnd = 0;
+        int kReverseStart = 0;
+        int kReverseEnd = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            for (int k = -d + kForwardStart; k <= d - kForwardEnd; k += 2) {
+                int kOffset = offset + k;
+                int x = k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1])
+                        ? forward[kOffset + 1]
+                        : forward[kOffset - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.hashes[aLo + x] == b.hashes[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[kOffset] = x;
+                if (x > n) {
+                    kForwardEnd += 2;
+                } else if (y > m) {
+                    kForwardStart += 2;
+                } else if (front) {
+                    int reverseOffset = offset + delta - k;
+                    if (reverseOffset >= 0 && reverseOffset < length && reverse[reverseOffset] != -1
+                            && x >= n - reverse[reverseOffset]) {
+                        return ((long) (aLo + x) << 32) | (bLo + y);
+                    }
+                }
+            }
+
+            for (int k = -d + kReverseStart; k <= d - kReverseEnd; k += 2) {
+                int kOffset = offset + k;
+                int x = k == -d || (k != d && reverse[kOffset - 1] < reverse[kOffset + 1])
+                        ? reverse[kOffset + 1]
+                        : reverse[kOffset - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.hashes[aHi - x - 1] == b.hashes[bHi - y - 1]) {
+                    x++;
+                    y++;
+                }
+                reverse[kOffset] = x;
+                if (x > n) {
+                    kReverseEnd += 2;
+                } else if (y > m) {
+                    kReverseStart += 2;
+                } else if (!front) {
+                    int forwardOffset = offset + delta - k;
+                    if (forwardOffset >= 0 && forwardOffset < length && forward[forwardOffset] != -1) {
+                        int forwardX = forward[forwardOffset];
+                        int forwardY = offset + forwardX - forwardOffset;
+                        if (forwardX >= n - x) {
+                            return ((long) (aLo + forwardX) << 32) | (bLo + forwardY);
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void addChange(int aStart, int aEnd, int bStart, int bEnd) {
+        int last = (changeCount - 1) * 4;
+        if (changeCount > 0 && changes[last + 1] == aStart && changes[last + 3] == bStart) {
+            changes[last + 1] = aEnd;
+            changes[last + 3] = bEnd;
+            return;
+        }
+        if ((changeCount + 1) * 4 > changes.length) {
+            changes = Arrays.copyOf(changes, changes.length * 2);
+        }
+        int next = changeCount * 4;
+        changes[next] = aStart;
+        changes[next + 1] = aEnd;
+        changes[next + 2] = bStart;
+        changes[next + 3] = bEnd;
+        changeCount++;
+    }
+
+    private void writeHunks(String fileName, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel aChannel = FileChannel.open(a.path, StandardOpenOption.READ);
+             FileChannel bChannel = FileChannel.open(b.path, StandardOpenOption.READ)) {
+            writeText(out, "--- a/" + fileName + "\n+++ b/" + fileName + "\n");
+
+            int first = 0;
+            while (first < changeCount) {
+                // Changes closer than twice the context share a hunk
+                int last = first;
+                while (last + 1 < changeCount && changes[(last + 1) * 4] - changes[last * 4 + 1] <= 2 * CONTEXT) {
+                    last++;
+                }
+                int aFrom = Math.max(0, changes[first * 4] - CONTEXT);
+                int aTo = Math.min(a.count, changes[last * 4 + 1] + CONTEXT);
+                int bFrom = changes[first * 4 + 2] - (changes[first * 4] - aFrom);
+                int bTo = changes[last * 4 + 3] + (aTo - changes[last * 4 + 1]);
+                writeText(out, "@@ -" + range(aFrom, aTo) + " +" + range(bFrom, bTo) + " @@\n");
+
+                int aPosition = aFrom;
+                for (int change = first; change <= last; change++) {
+                    int i = change * 4;
+                    writeLines(a, aChannel, aPosition, changes[i], ' ', buffer, out);
+                    writeLines(a, aChannel, changes[i], changes[i + 1], '-', buffer, out);
+                    writeLines(b, bChannel, changes[i + 2], changes[i + 3], '+', buffer, out);
+                    aPosition = changes[i + 1];
+                }
+                writeLines(a, aChannel, aPosition, aTo, ' ', buffer, out);
+                first = last + 1;
+            }
+        }
+    }
+
+    private static String range(int from, int to) {
+        int length = to - from;
+        if (length == 1) {
+            return String.valueOf(from + 1);
+        }
+        return (length == 0 ? from : from + 1) + "," + length;
+    }
+
+    private static void writeLines(Lines lines, FileChannel channel, int from, int to, char prefix, ByteBuffer buffer, OutputStream out) throws IOException {
+        for (int line = from; line < to; line++) {
+            out.write(prefix);
+            long position = line == 0 ? 0 : lines.ends[line - 1];
+            long end = lines.ends[line];
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File changed while comparing it: " + lines.path);
+                }
+                out.write(buffer.array(), 0, read);
+                position += read;
+            }
+            if (line == lines.count - 1 && lines.missingNewline) {
+                out.write(NO_NEWLINE);
+            }
+        }
+    }
+
+    private static void writeText(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static final class Lines {
+
+        private final Path path;
+
+        private final long[] hashes;
+
+        private final long[] ends;
+
+        private final int count;
+
+        private final boolean missingNewline;
+
+        private Lines(Path path, long[] hashes, long[] ends, int count, boolean missingNewline) {
+            this.path = path;
+            this.hashes = hashes;
+            this.ends = ends;
+            this.count = count;
+            this.missingNewline = missingNewline;
+        }
+
+        int getCount() {
+            return count;
+        }
+    }
+}
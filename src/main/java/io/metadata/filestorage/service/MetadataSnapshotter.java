@@ -0,0 +1,98 @@
+package io.metadata.filestorage.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Takes consistent snapshots of the embedded metadata database while it is in use, keeping the latest ones.
+ * A snapshot is restored by unzipping it into the metadata directory while the service is stopped.
+ */
+@Component
+public class MetadataSnapshotter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataSnapshotter.class);
+
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'metadata-'yyyyMMdd-HHmmss-nnnnnnnnn'.zip'");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final int keep;
+
+    @Autowired
+    public MetadataSnapshotter(
+            JdbcTemplate jdbcTemplate,
+            @Value("${file.metadata.snapshots.enabled:false}") boolean enabled,
+            @Value("${file.metadata.snapshots.path:}") String directory,
+            @Value("${file.metadata.snapshots.keep:3}") int keep) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.keep = Math.max(1, keep);
+    }
+
+    @Scheduled(initialDelayString = "${file.metadata.snapshots.period:3600000}", fixedDelayString = "${file.metadata.snapshots.period:3600000}")
+    public void snapshotPeriodically() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Path snapshot = snapshot();
+            LOGGER.info("Metadata snapshot written to {}", snapshot);
+        } catch (IOException | DataAccessException e) {
+            LOGGER.error("Metadata snapshot failed", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot and removes the ones past the number to keep.
+     */
+    public synchronized Path snapshot() throws IOException {
+        Files.createDirectories(directory);
+        Path snapshot;
+        do {
+            snapshot = directory.resolve(LocalDateTime.now().format(NAME_FORMAT));
+        } while (Files.exists(snapshot));
+        jdbcTemplate.execute("BACKUP TO '" + snapshot.toString().replace("'", "''") + "'");
+
+        List<Path> snapshots = list();
+        for (Path old : snapshots.subList(0, Math.max(0, snapshots.size() - keep))) {
+            Files.deleteIfExists(old);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Snapshots in the directory, oldest first.
+     */
+    public List<Path> list() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().matches("metadata-.*\\.zip"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
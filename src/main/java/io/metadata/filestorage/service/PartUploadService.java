@@ -0,0 +1,287 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.exception.DeletingFileException;
+import io.metadata.filestorage.exception.InvalidUploadException;
+import io.metadata.filestorage.exception.PersistingFileException;
+import io.metadata.filestorage.model.dto.FileResponseDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Uploads sent as numbered parts, so a large file goes over several connections at once. Parts are kept in a
+ * directory of their own per upload until it is completed, which stores them in order as a new version. Writing a
+ * part again replaces it and completing an upload again answers the version it created, so both can be retried.
+ * Uploads left unfinished are removed once they have not changed for a while.
+ */
+@Service
+public class PartUploadService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartUploadService.class);
+
+    private static final Pattern UPLOAD_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private static final String COMPLETED = "completed";
+
+    private static final int STRIPES = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileService fileService;
+
+    private final StorageUsage storageUsage;
+
+    private final Path directory;
+
+    private final int maxParts;
+
+    private final long maxPartSize;
+
+    private final long maxUploadSize;
+
+    private final long maxAgeMillis;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    @Autowired
+    public PartUploadService(
+            FileService fileService,
+            StorageUsage storageUsage,
+            @Value("${file.parts.path:${file.database.path}-parts}") String path,
+            @Value("${file.parts.max-parts:10000}") int maxParts,
+            @Value("${file.parts.max-part-size:1073741824}") long maxPartSize,
+            @Value("${file.parts.max-upload-size:1099511627776}") long maxUploadSize,
+            @Value("${file.parts.max-age:86400000}") long maxAgeMillis) throws IOException {
+        this.fileService = fileService;
+        this.storageUsage = storageUsage;
+        this.directory = Files.createDirectories(Paths.get(path).toAbsolutePath().normalize());
+        this.maxParts = maxParts;
+        this.maxPartSize = maxPartSize;
+        this.maxUploadSize = maxUploadSize;
+        this.maxAgeMillis = maxAgeMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Stores the part, replacing the one with the same number if it was sent before. The quota of the file is checked
+     * against the parts received so far and the announced length of this one, which is a negative number when unknown.
+     */
+    public long writePart(String fileName, String uploadId, int part, long contentLength, InputStream inputStream) {
+        Path upload = uploadDirectory(uploadId);
+        if (part < 0 || part >= maxParts) {
+            throw new InvalidUploadException("Parts are numbered from 0 to " + (maxParts - 1));
+        }
+        if (contentLength > maxPartSize) {
+            throw new InvalidUploadException("A part has at most " + maxPartSize + " bytes");
+        }
+        try {
+            Files.createDirectories(upload);
+            Path target = upload.resolve(part + ".part");
+            long received = receivedSize(upload, target);
+            long limit = Math.min(maxPartSize, maxUploadSize - received);
+            if (contentLength > limit) {
+                throw new InvalidUploadException("An upload has at most " + maxUploadSize + " bytes");
+            }
+            storageUsage.checkQuota(StringUtils.cleanPath(fileName), received + Math.max(contentLength, 0));
+
+            Path temp = Files.createTempFile(upload, ".part", ".tmp");
+            try {
+                // Bodies without a length, or longer than announced, are cut off at the limit
+                long size = copy(inputStream, temp, limit);
+                if (size > limit) {
+                    throw new InvalidUploadException(limit < maxPartSize
+                            ? "An upload has at most " + maxUploadSize + " bytes"
+                            : "A part has at most " + maxPartSize + " bytes");
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return size;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+    }
+
+    /**
+     * Bytes of the parts received and being written for the upload, except the part that is replaced.
+     */
+    private static long receivedSize(Path upload, Path replaced) throws IOException {
+        long size = 0;
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(upload)) {
+            for (Path path : paths) {
+                if (path.equals(replaced) || path.getFileName().toString().equals(COMPLETED)) {
+                    continue;
+                }
+                try {
+                    size += Files.size(path);
+                } catch (NoSuchFileException e) {
+                    // A part written at the same time was moved or dropped meanwhile
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copies at most one byte past the limit, so a caller can tell the content was too long.
+     */
+    private static long copy(InputStream inputStream, Path target, long limit) throws IOException {
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (OutputStream outputStream = Files.newOutputStream(target)) {
+            for (int read; size <= limit && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, limit - size + 1))) >= 0; ) {
+                outputStream.write(buffer, 0, read);
+                size += read;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Stores parts 0 to parts - 1 in order as a new version of the file.
+     */
+    public FileResponseDTO complete(String fileName, String uploadId, int parts) {
+        Path upload = uploadDirectory(uploadId);
+        if (parts < 1 || parts > maxParts) {
+            throw new InvalidUploadException("An upload has from 1 to " + maxParts + " parts");
+        }
+
+        synchronized (lockFor(uploadId)) {
+            try {
+                Path completed = upload.resolve(COMPLETED);
+                if (Files.exists(completed)) {
+                    String[] fields = new String(Files.readAllBytes(completed), StandardCharsets.UTF_8).split(" ", 3);
+                    return new FileResponseDTO(fields[2], Integer.valueOf(fields[0]), null, Long.valueOf(fields[1]));
+                }
+
+                List<Path> paths = new ArrayList<>(parts);
+                long size = 0;
+                for (int part = 0; part < parts; part++) {
+                    Path path = upload.resolve(part + ".part");
+                    if (!Files.isRegularFile(path)) {
+                        throw new InvalidUploadException("Part " + part + " of upload " + uploadId + " was not received");
+                    }
+                    paths.add(path);
+                    size += Files.size(path);
+                }
+                storageUsage.checkQuota(StringUtils.cleanPath(fileName), size);
+
+                FileResponseDTO response;
+                try (InputStream inputStream = new SequenceInputStream(open(paths.iterator()))) {
+                    response = fileService.saveContent(fileName, inputStream);
+                } catch (UncheckedIOException e) {
+                    throw new PersistingFileException(e.getCause());
+                }
+
+                Files.write(completed, (response.getVersion() + " " + response.getSize() + " " + response.getName())
+                        .getBytes(StandardCharsets.UTF_8));
+                for (Path path : paths) {
+                    Files.deleteIfExists(path);
+                }
+                return response;
+            } catch (IOException e) {
+                throw new PersistingFileException(e);
+            }
+        }
+    }
+
+    public void abort(String uploadId) {
+        Path upload = uploadDirectory(uploadId);
+        synchronized (lockFor(uploadId)) {
+            try {
+                delete(upload);
+            } catch (IOException e) {
+                throw new DeletingFileException(e);
+            }
+        }
+    }
+
+    /**
+     * Removes the uploads that did not change for longer than the maximum age, completed or not.
+     */
+    @Scheduled(initialDelayString = "${file.parts.cleanup-delay:3600000}", fixedDelayString = "${file.parts.cleanup-delay:3600000}")
+    public void removeExpired() {
+        long expiry = System.currentTimeMillis() - maxAgeMillis;
+        try (DirectoryStream<Path> uploads = Files.newDirectoryStream(directory)) {
+            for (Path upload : uploads) {
+                synchronized (lockFor(upload.getFileName().toString())) {
+                    if (Files.getLastModifiedTime(upload).toMillis() < expiry) {
+                        delete(upload);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not remove the expired uploads", e);
+        }
+    }
+
+    private Path uploadDirectory(String uploadId) {
+        if (uploadId == null || !UPLOAD_ID.matcher(uploadId).matches()) {
+            throw new InvalidUploadException("Upload ids are 1 to 64 letters, digits, '-' or '_'");
+        }
+        return directory.resolve(uploadId);
+    }
+
+    private Object lockFor(String uploadId) {
+        return locks[(uploadId.hashCode() & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    /**
+     * Opens the parts one at a time as they are read.
+     */
+    private static Enumeration<InputStream> open(Iterator<Path> paths) {
+        return new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return paths.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(paths.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static void delete(Path upload) throws IOException {
+        if (!Files.exists(upload)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(upload)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
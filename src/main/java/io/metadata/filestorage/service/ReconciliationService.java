@@ -0,0 +1,328 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.exception.ReconciliationInProgressException;
+import io.metadata.filestorage.model.Tombstone;
+import io.metadata.filestorage.model.dto.ReconciliationReportDTO;
+import io.metadata.filestorage.model.dto.VersionKeyDTO;
+import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.repository.TombstoneRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Finds the files on disk without a version record and the version records without a file.
+ * <p>
+ * The expected paths of every version, and of the versions still waiting for the reclaimer, are streamed from the
+ * database into an off heap {@link FingerprintSet}. The database path is then walked in parallel marking every file
+ * found, and the versions are streamed a second time to report the ones never marked.
+ */
+@Service
+public class ReconciliationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReconciliationService.class);
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final int SAMPLE_SIZE = 100;
+
+    private final FileRepository fileRepository;
+
+    private final VersionRepository versionRepository;
+
+    private final TombstoneRepository tombstoneRepository;
+
+    private final FileSystemStorage storage;
+
+    private final StorageUsage storageUsage;
+
+    private final FileService fileService;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final boolean onStartup;
+
+    private final boolean repairOnStartup;
+
+    private final int parallelism;
+
+    private final long gracePeriod;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    public ReconciliationService(
+            FileRepository fileRepository,
+            VersionRepository versionRepository,
+            TombstoneRepository tombstoneRepository,
+            FileSystemStorage storage,
+            StorageUsage storageUsage,
+            FileService fileService,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.reconciler.on-startup:true}") boolean onStartup,
+            @Value("${file.reconciler.repair-on-startup:false}") boolean repairOnStartup,
+            @Value("${file.reconciler.parallelism:0}") int parallelism,
+            @Value("${file.reconciler.grace-period:60000}") long gracePeriod) {
+        this.fileRepository = fileRepository;
+        this.versionRepository = versionRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.storage = storage;
+        this.storageUsage = storageUsage;
+        this.fileService = fileService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.onStartup = onStartup;
+        this.repairOnStartup = repairOnStartup;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.gracePeriod = gracePeriod;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        if (!onStartup) {
+            return;
+        }
+
+        ReconciliationReportDTO report = reconcile(repairOnStartup);
+        if (report.getOrphanedFiles() > 0 || report.getMissingVersions() > 0) {
+            LOGGER.warn("Reconciliation found {} orphaned files and {} versions without a file (repaired: {}), for example {} and {}",
+                    report.getOrphanedFiles(), report.getMissingVersions(), report.isRepaired(),
+                    report.getOrphanedFileSamples(), report.getMissingVersionSamples());
+        } else {
+            LOGGER.info("Reconciliation checked {} files and {} versions in {} ms",
+                    report.getScannedFiles(), report.getScannedVersions(), report.getDurationMillis());
+        }
+    }
+
+    public ReconciliationReportDTO reconcile(boolean repair) {
+        if (!running.compareAndSet(false, true)) {
+            throw new ReconciliationInProgressException();
+        }
+        try {
+            return run(repair);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private ReconciliationReportDTO run(boolean repair) {
+        long start = System.currentTimeMillis();
+        // Recent files may belong to uploads whose records are not committed yet
+        FileTime modifiedBefore = FileTime.fromMillis(start - gracePeriod);
+        ReconciliationReportDTO report = new ReconciliationReportDTO(repair);
+
+        List<Tombstone> tombstones = tombstoneRepository.findAll();
+        long expected = versionRepository.count();
+        for (Tombstone tombstone : tombstones) {
+            expected += tombstone.getToVersion() - tombstone.getFromVersion() + 1;
+        }
+
+        FingerprintSet expectedFiles = new FingerprintSet(expected);
+        for (Tombstone tombstone : tombstones) {
+            for (int version = tombstone.getFromVersion(); version <= tombstone.getToVersion(); version++) {
+                expectedFiles.add(FingerprintSet.fingerprint(version + tombstone.getFileName()));
+            }
+        }
+        long[] lastVersionId = {0};
+        streamVersions(versions -> versions.forEach(version -> {
+            expectedFiles.add(FingerprintSet.fingerprint(key(version)));
+            lastVersionId[0] = Math.max(lastVersionId[0], version.getId());
+        }));
+
+        DiskScan scan = new DiskScan(expectedFiles, modifiedBefore, repair);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(storage.getDatabasePath(), scan));
+        } finally {
+            pool.shutdown();
+        }
+        report.setScannedFiles(scan.files.sum());
+        report.setOrphanedFiles(scan.orphans.sum());
+        report.setOrphanedFileSamples(scan.samples);
+
+        List<Long> missing = new ArrayList<>();
+        LongAdder scannedVersions = new LongAdder();
+        streamVersions(versions -> versions.forEach(version -> {
+            // Versions added after the first pass may have been written after their part of the walk
+            if (version.getId() > lastVersionId[0]) {
+                return;
+            }
+            scannedVersions.increment();
+            if (!expectedFiles.isSeen(FingerprintSet.fingerprint(key(version)))) {
+                missing.add(version.getId());
+                if (report.getMissingVersionSamples().size() < SAMPLE_SIZE) {
+                    report.getMissingVersionSamples().add(key(version));
+                }
+            }
+        }));
+        report.setScannedVersions(scannedVersions.sum());
+        report.setMissingVersions(missing.size());
+
+        if (repair && !missing.isEmpty()) {
+            for (int i = 0; i < missing.size(); i += CHUNK_SIZE) {
+                versionRepository.removeByIdIn(missing.subList(i, Math.min(missing.size(), i + CHUNK_SIZE)));
+            }
+            fileRepository.removeWithoutVersions();
+            // The removed versions were never deleted through the storage operations, so count the usage again
+            storageUsage.rebuild();
+        }
+
+        report.setDurationMillis(System.currentTimeMillis() - start);
+        return report;
+    }
+
+    private void streamVersions(Consumer<Stream<VersionKeyDTO>> consumer) {
+        readOnlyTransaction.execute(status -> {
+            try (Stream<VersionKeyDTO> versions = versionRepository.streamAllKeys()) {
+                consumer.accept(versions);
+            }
+            return null;
+        });
+    }
+
+    private static String key(VersionKeyDTO version) {
+        return version.getVersionNumber() + version.getFileName();
+    }
+
+    private final class DiskScan {
+
+        private final FingerprintSet expectedFiles;
+
+        private final FileTime modifiedBefore;
+
+        private final boolean repair;
+
+        private final LongAdder files = new LongAdder();
+
+        private final LongAdder orphans = new LongAdder();
+
+        private final List<String> samples = Collections.synchronizedList(new ArrayList<>());
+
+        private DiskScan(FingerprintSet expectedFiles, FileTime modifiedBefore, boolean repair) {
+            this.expectedFiles = expectedFiles;
+            this.modifiedBefore = modifiedBefore;
+            this.repair = repair;
+        }
+
+        private void check(Path path) {
+            String relative = storage.getDatabasePath().relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+            files.increment();
+            if (expectedFiles.markSeen(FingerprintSet.fingerprint(relative))) {
+                return;
+            }
+
+            try {
+                if (Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS).compareTo(modifiedBefore) >= 0) {
+                    return;
+                }
+                // A copy links the old file of its source, so its modification time says nothing about the record
+                if (repair && !fileService.deleteUnrecorded(path, relative)) {
+                    return;
+                }
+                orphans.increment();
+                if (samples.size() < SAMPLE_SIZE) {
+                    samples.add(relative);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not check the orphaned file {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * Lists a directory in chunks of entries checked in parallel, so a single flat directory is still spread
+     * across the pool, subdirectories found by a chunk are walked by their own task.
+     */
+    private static final class DirectoryTask extends RecursiveAction {
+
+        private final Path directory;
+
+        private final DiskScan scan;
+
+        private DirectoryTask(Path directory, DiskScan scan) {
+            this.directory = directory;
+            this.scan = scan;
+        }
+
+        @Override
+        protected void compute() {
+            List<ChunkTask> tasks = new ArrayList<>();
+            List<Path> chunk = new ArrayList<>(CHUNK_SIZE);
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    chunk.add(entry);
+                    if (chunk.size() == CHUNK_SIZE) {
+                        tasks.add(fork(new ChunkTask(chunk, scan)));
+                        chunk = new ArrayList<>(CHUNK_SIZE);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            new ChunkTask(chunk, scan).invoke();
+            for (ChunkTask task : tasks) {
+                task.join();
+            }
+        }
+
+        private static ChunkTask fork(ChunkTask task) {
+            task.fork();
+            return task;
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+
+        private final List<Path> paths;
+
+        private final DiskScan scan;
+
+        private ChunkTask(List<Path> paths, DiskScan scan) {
+            this.paths = paths;
+            this.scan = scan;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            for (Path path : paths) {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    DirectoryTask task = new DirectoryTask(path, scan);
+                    task.fork();
+                    subdirectories.add(task);
+                } else {
+                    scan.check(path);
+                }
+            }
+            for (DirectoryTask task : subdirectories) {
+                task.join();
+            }
+        }
+    }
+}
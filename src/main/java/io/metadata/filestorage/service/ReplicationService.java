@@ -0,0 +1,202 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.exception.ReplicationException;
+import io.metadata.filestorage.model.ChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Copies the version files to the peer nodes, which share the metadata database but keep the files on their own disk.
+ * A write waits until the file is on {@code write-quorum} nodes, this one included, the remaining peers get it in the
+ * background. Reads of versions missing on disk fetch them back from a peer.
+ */
+@Service
+public class ReplicationService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationService.class);
+
+    public static final String TOKEN_HEADER = "X-Replication-Token";
+
+    private final FileSystemStorage storage;
+
+    private final FileStorageMetrics metrics;
+
+    private final List<String> peers;
+
+    private final int writeQuorum;
+
+    private final long timeoutMillis;
+
+    private final String token;
+
+    private final HttpClient httpClient;
+
+    @Autowired
+    public ReplicationService(
+            FileSystemStorage storage,
+            FileStorageMetrics metrics,
+            @Value("${file.replication.peers:}") List<String> peers,
+            @Value("${file.replication.write-quorum:1}") int writeQuorum,
+            @Value("${file.replication.timeout:30000}") long timeoutMillis,
+            @Value("${file.replication.token:}") String token) {
+        this.storage = storage;
+        this.metrics = metrics;
+        this.peers = peers.stream().filter(StringUtils::hasText).map(String::trim).collect(Collectors.toList());
+        if (!this.peers.isEmpty() && !StringUtils.hasText(token)) {
+            // Anyone could overwrite or delete the stored files through the replicas endpoint
+            throw new IllegalStateException("file.replication.token must be set when file.replication.peers is");
+        }
+        this.writeQuorum = Math.min(Math.max(1, writeQuorum), this.peers.size() + 1);
+        this.timeoutMillis = timeoutMillis;
+        this.token = token;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return !peers.isEmpty();
+    }
+
+    /**
+     * Whether the request carries the replication token, compared in constant time. Without peers there is none.
+     */
+    public boolean isAuthorized(String requestToken) {
+        return StringUtils.hasText(token) && requestToken != null
+                && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), requestToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends the stored version to every peer, returns once the quorum has it.
+     */
+    public void replicate(String fileName, Integer version) {
+        if (peers.isEmpty()) {
+            return;
+        }
+
+        Path path = storage.resolve(fileName, version);
+        int acksNeeded = writeQuorum - 1;
+        AtomicInteger acks = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch decided = new CountDownLatch(acksNeeded > 0 ? 1 : 0);
+
+        for (String peer : peers) {
+            HttpRequest request;
+            try {
+                request = request(peer, fileName, version)
+                        .PUT(HttpRequest.BodyPublishers.ofFile(path))
+                        .build();
+            } catch (FileNotFoundException e) {
+                throw new ReplicationException(fileName, version, 0, writeQuorum);
+            }
+            long start = System.nanoTime();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error == null && response.statusCode() / 100 == 2) {
+                    metrics.versionReplicated(System.nanoTime() - start);
+                    if (acks.incrementAndGet() >= acksNeeded) {
+                        decided.countDown();
+                    }
+                } else {
+                    metrics.replicationFailed();
+                    LOGGER.warn("Version {} of {} could not be replicated to {}: {}", version, fileName, peer,
+                            error != null ? error.toString() : "status " + response.statusCode());
+                    // Stop waiting as soon as the quorum cannot be reached anymore
+                    if (peers.size() - failures.incrementAndGet() < acksNeeded) {
+                        decided.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            decided.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int copies = 1 + acks.get();
+        if (copies < writeQuorum) {
+            throw new ReplicationException(fileName, version, copies, writeQuorum);
+        }
+    }
+
+    /**
+     * Copies the version from the first peer that has it, returns false when none does.
+     */
+    public boolean fetch(String fileName, Integer version) {
+        for (String peer : peers) {
+            try {
+                HttpResponse<InputStream> response = httpClient.send(
+                        request(peer, fileName, version).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() == 200) {
+                        storage.replace(storage.resolve(fileName, version), body);
+                        metrics.replicaFetched();
+                        LOGGER.info("Version {} of {} was missing and has been fetched from {}", version, fileName, peer);
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Version {} of {} could not be fetched from {}: {}", version, fileName, peer, e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the version from the peers in the background, the ones that miss it are cleaned up by their reconciliation.
+     */
+    public CompletableFuture<Void> deleteReplicas(String fileName, Integer version) {
+        return CompletableFuture.allOf(peers.stream()
+                .map(peer -> httpClient.sendAsync(request(peer, fileName, version).DELETE().build(), HttpResponse.BodyHandlers.discarding())
+                        .exceptionally(error -> {
+                            LOGGER.warn("Version {} of {} could not be deleted from {}: {}", version, fileName, peer, error.toString());
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Removes the replicas of single deleted versions once the delete is committed.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(FileChangeEvent change) {
+        if (!peers.isEmpty() && change.getType() == ChangeEvent.Type.DELETED && change.getVersionNumber() != null) {
+            deleteReplicas(change.getFileName(), change.getVersionNumber());
+        }
+    }
+
+    private HttpRequest.Builder request(String peer, String fileName, Integer version) {
+        return HttpRequest.newBuilder(URI.create(peer + "/files/replicas/" + version + "/"
+                + UriUtils.encodePathSegment(fileName, StandardCharsets.UTF_8)))
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header(TOKEN_HEADER, token);
+    }
+}
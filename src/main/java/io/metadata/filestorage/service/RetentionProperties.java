@@ -0,0 +1,144 @@
+package io.metadata.filestorage.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Version retention policies, the first policy whose pattern matches a file name applies to it.
+ */
+@Component
+@ConfigurationProperties("file.retention")
+public class RetentionProperties {
+
+    private boolean enabled = true;
+
+    private int batchSize = 500;
+
+    private long versionsPerSecond = 200;
+
+    private List<Policy> policies = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getVersionsPerSecond() {
+        return versionsPerSecond;
+    }
+
+    public void setVersionsPerSecond(long versionsPerSecond) {
+        this.versionsPerSecond = versionsPerSecond;
+    }
+
+    public List<Policy> getPolicies() {
+        return policies;
+    }
+
+    public void setPolicies(List<Policy> policies) {
+        this.policies = policies;
+    }
+
+    public Policy findPolicy(String fileName) {
+        for (Policy policy : policies) {
+            if (policy.matches(fileName)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A version is kept when any of the rules keeps it, the latest version of a file is always kept.
+     */
+    public static class Policy {
+
+        private String pattern;
+
+        private Pattern regex;
+
+        private Integer keepLast;
+
+        private Integer keepDays;
+
+        private Integer keepDailyAfterDays;
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * Glob on the file name, "*" matches any characters and "?" a single one.
+         */
+        public void setPattern(String pattern) {
+            this.pattern = pattern;
+            StringBuilder regex = new StringBuilder();
+            for (String literal : pattern.split("((?<=[*?])|(?=[*?]))")) {
+                if (literal.equals("*")) {
+                    regex.append(".*");
+                } else if (literal.equals("?")) {
+                    regex.append('.');
+                } else if (!literal.isEmpty()) {
+                    regex.append(Pattern.quote(literal));
+                }
+            }
+            this.regex = Pattern.compile(regex.toString());
+        }
+
+        public boolean matches(String fileName) {
+            return regex != null && regex.matcher(fileName).matches();
+        }
+
+        public Integer getKeepLast() {
+            return keepLast;
+        }
+
+        /**
+         * Keep the given number of most recent versions.
+         */
+        public void setKeepLast(Integer keepLast) {
+            this.keepLast = keepLast;
+        }
+
+        public Integer getKeepDays() {
+            return keepDays;
+        }
+
+        /**
+         * Keep every version modified within the given number of days.
+         */
+        public void setKeepDays(Integer keepDays) {
+            this.keepDays = keepDays;
+        }
+
+        public Integer getKeepDailyAfterDays() {
+            return keepDailyAfterDays;
+        }
+
+        /**
+         * Keep every version modified within the given number of days and only the latest version of each day before.
+         */
+        public void setKeepDailyAfterDays(Integer keepDailyAfterDays) {
+            this.keepDailyAfterDays = keepDailyAfterDays;
+        }
+
+        public boolean hasRules() {
+            return keepLast != null || keepDays != null || keepDailyAfterDays != null;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.ChangeEvent;
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.RetentionReportDTO;
+import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prunes the versions that fall outside their retention policy, walking the files and their versions in batches
+ * and removing versions at a throttled rate. Passes run on a thread of their own, so a long pass does not hold the
+ * scheduler thread the other background tasks share.
+ */
+@Service
+public class RetentionService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetentionService.class);
+
+    private final FileRepository fileRepository;
+
+    private final VersionRepository versionRepository;
+
+    private final FileSystemStorage storage;
+
+    private final RetentionProperties properties;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final TransactionTemplate transaction;
+
+    private final TokenBucket throttle;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean passRunning = new AtomicBoolean();
+
+    @Autowired
+    public RetentionService(
+            FileRepository fileRepository,
+            VersionRepository versionRepository,
+            FileSystemStorage storage,
+            RetentionProperties properties,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager) {
+        this.fileRepository = fileRepository;
+        this.versionRepository = versionRepository;
+        this.storage = storage;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.throttle = new TokenBucket(properties.getVersionsPerSecond(), Math.max(1, properties.getVersionsPerSecond()));
+    }
+
+    /**
+     * Starts a pass on the retention thread, unless the previous one is still running.
+     */
+    @Scheduled(initialDelayString = "${file.retention.delay:3600000}", fixedDelayString = "${file.retention.delay:3600000}")
+    public void enforce() {
+        if (!properties.isEnabled() || properties.getPolicies().isEmpty() || !passRunning.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    RetentionReportDTO report = apply(false);
+                    LOGGER.info("Retention removed {} versions taking {} bytes from {} files", report.getVersions(), report.getBytes(), report.getFiles());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Retention pass failed", e);
+                } finally {
+                    passRunning.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            passRunning.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public RetentionReportDTO report() {
+        try {
+            return apply(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    RetentionReportDTO apply(boolean dryRun) throws InterruptedException {
+        RetentionReportDTO report = new RetentionReportDTO(dryRun);
+        LocalDateTime now = LocalDateTime.now();
+
+        String lastFileName = "";
+        List<String> fileNames;
+        do {
+            fileNames = fileRepository.findNamesAfter(lastFileName, PageRequest.of(0, properties.getBatchSize()));
+
+            for (String fileName : fileNames) {
+                lastFileName = fileName;
+
+                RetentionProperties.Policy policy = properties.findPolicy(fileName);
+                if (policy == null || !policy.hasRules()) {
+                    continue;
+                }
+                report.addFile();
+
+                // Pages follow the version numbers, so removing the prunable versions of a page does not shift the next
+                Selection selection = new Selection(policy, now);
+                Integer before = Integer.MAX_VALUE;
+                List<Version> versions;
+                do {
+                    versions = versionRepository.findByFileNameBefore(fileName, before, PageRequest.of(0, properties.getBatchSize()));
+
+                    List<Version> prunable = new ArrayList<>();
+                    for (Version version : versions) {
+                        before = version.getVersionNumber();
+                        if (selection.isPrunable(version)) {
+                            prunable.add(version);
+                            report.addVersion(sizeOf(fileName, version.getVersionNumber()));
+                        }
+                    }
+
+                    if (!dryRun && !prunable.isEmpty()) {
+                        prune(fileName, prunable);
+                    }
+                } while (versions.size() == properties.getBatchSize());
+            }
+        } while (fileNames.size() == properties.getBatchSize());
+
+        return report;
+    }
+
+    /**
+     * Versions not kept by any rule of the policy, expects the versions from the most recent to the oldest.
+     */
+    static List<Version> selectPrunable(List<Version> versions, RetentionProperties.Policy policy, LocalDateTime now) {
+        List<Version> prunable = new ArrayList<>();
+        Selection selection = new Selection(policy, now);
+
+        for (Version version : versions) {
+            if (selection.isPrunable(version)) {
+                prunable.add(version);
+            }
+        }
+
+        return prunable;
+    }
+
+    /**
+     * Removes the records of a batch together with their change events, the files only once that committed.
+     */
+    private void prune(String fileName, List<Version> versions) throws InterruptedException {
+        throttle.acquire(versions.size());
+
+        transaction.execute(status -> {
+            List<Long> ids = new ArrayList<>(versions.size());
+            for (Version version : versions) {
+                ids.add(version.getId());
+            }
+            versionRepository.removeByIdIn(ids);
+
+            for (Version version : versions) {
+                long size = version.getSize() != null ? version.getSize() : 0;
+                eventPublisher.publishEvent(new FileChangeEvent(fileName, version.getVersionNumber(), ChangeEvent.Type.DELETED, -size, -1));
+            }
+            return null;
+        });
+
+        for (Version version : versions) {
+            storage.delete(fileName, version.getVersionNumber());
+        }
+    }
+
+    /**
+     * Decides for the versions of a file, from the most recent to the oldest, whether a rule of the policy keeps them.
+     */
+    private static final class Selection {
+
+        private final RetentionProperties.Policy policy;
+
+        private final LocalDateTime now;
+
+        private final Set<LocalDate> keptDays = new HashSet<>();
+
+        private int index;
+
+        private Selection(RetentionProperties.Policy policy, LocalDateTime now) {
+            this.policy = policy;
+            this.now = now;
+        }
+
+        private boolean isPrunable(Version version) {
+            int i = index++;
+            LocalDateTime modified = version.getLastModificationDate();
+
+            boolean keep = i == 0 || modified == null
+                    || (policy.getKeepLast() != null && i < policy.getKeepLast())
+                    || (policy.getKeepDays() != null && modified.isAfter(now.minusDays(policy.getKeepDays())))
+                    || (policy.getKeepDailyAfterDays() != null
+                        && (modified.isAfter(now.minusDays(policy.getKeepDailyAfterDays())) || !keptDays.contains(modified.toLocalDate())));
+
+            // Every kept version marks its day, whichever rule kept it, so older versions of that day are not kept too
+            if (keep && modified != null) {
+                keptDays.add(modified.toLocalDate());
+            }
+            return !keep;
+        }
+    }
+
+    private long sizeOf(String fileName, Integer version) {
+        try {
+            return Files.size(storage.resolve(fileName, version));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
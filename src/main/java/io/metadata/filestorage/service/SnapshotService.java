@@ -0,0 +1,435 @@
+package io.metadata.filestorage.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.metadata.filestorage.exception.DeletingFileException;
+import io.metadata.filestorage.exception.InvalidUploadException;
+import io.metadata.filestorage.exception.PersistingFileException;
+import io.metadata.filestorage.exception.SnapshotNotFoundException;
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.SnapshotDTO;
+import io.metadata.filestorage.model.dto.SnapshotEntryDTO;
+import io.metadata.filestorage.model.dto.SnapshotImportReportDTO;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Point-in-time snapshots of the files. The metadata of every version is read by a single query, which the database
+ * answers as of its start, and the version files are hard linked into the snapshot while no write is in progress on
+ * them, so writes made afterwards, which create new files or copy linked ones first, do not change it. Versions whose
+ * content changed between the query and the link are read again once linked, so every file of a snapshot matches its
+ * manifest entry.
+ * Snapshots are exported as zip archives, whole or with only the versions that changed since an earlier snapshot,
+ * and imported in parallel, one file name per task.
+ */
+@Service
+public class SnapshotService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotService.class);
+
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private static final Pattern ID = Pattern.compile("\\d{8}-\\d{6}-\\d{3}");
+
+    private static final String INFO = "snapshot.json";
+
+    private static final String MANIFEST = "manifest.jsonl";
+
+    private static final String FILES = "files/";
+
+    // Versions written just before the query may only be visible to it once their transaction commits
+    private static final long MODIFIED_MARGIN_SECONDS = 60;
+
+    private final FileService fileService;
+
+    private final VersionRepository versionRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final Path directory;
+
+    private final int importParallelism;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Autowired
+    public SnapshotService(
+            FileService fileService,
+            VersionRepository versionRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.snapshots.path:${file.database.path}-snapshots}") String directory,
+            @Value("${file.snapshots.import-parallelism:0}") int importParallelism) {
+        this.fileService = fileService;
+        this.versionRepository = versionRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.importParallelism = importParallelism > 0 ? importParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Takes a snapshot of every version stored, it is listed once it is complete.
+     */
+    public synchronized SnapshotDTO create() {
+        long start = System.currentTimeMillis();
+        LocalDateTime creationDate = LocalDateTime.now();
+        while (Files.exists(directory.resolve(creationDate.format(ID_FORMAT)))) {
+            creationDate = creationDate.plusNanos(1_000_000);
+        }
+        String id = creationDate.format(ID_FORMAT);
+        Path snapshot = directory.resolve(id);
+        Path files = snapshot.resolve(FILES);
+        Path manifest = snapshot.resolve(MANIFEST);
+        Path linked = snapshot.resolve(MANIFEST + ".tmp");
+
+        long[] totals = new long[2];
+        try {
+            Files.createDirectories(files);
+            ObjectWriter writer = objectMapper.writerFor(SnapshotEntryDTO.class);
+            try (BufferedWriter out = Files.newBufferedWriter(linked)) {
+                readOnlyTransaction.execute(status -> {
+                    try (Stream<SnapshotEntryDTO> entries = versionRepository.streamSnapshotEntries()) {
+                        entries.forEach(entry -> {
+                            try {
+                                fileService.linkVersion(entry.getFileName(), entry.getVersionNumber(), fileOf(files, entry));
+                                out.write(writer.writeValueAsString(entry));
+                                out.newLine();
+                            } catch (NoSuchFileException e) {
+                                // Deleted after the query
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                    }
+                    return null;
+                });
+            }
+
+            Map<String, SnapshotEntryDTO> modified = new HashMap<>();
+            for (SnapshotEntryDTO entry : versionRepository.findSnapshotEntriesModifiedSince(creationDate.minusSeconds(MODIFIED_MARGIN_SECONDS))) {
+                modified.put(key(entry), entry);
+            }
+
+            try (BufferedReader in = Files.newBufferedReader(linked);
+                 BufferedWriter out = Files.newBufferedWriter(manifest.resolveSibling(MANIFEST + ".part"))) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    SnapshotEntryDTO entry = objectMapper.readValue(line, SnapshotEntryDTO.class);
+                    // Every name is checked before any version is written, so a crafted archive writes nothing
+                    fileService.checkImportedName(entry.getFileName(), entry.getVersionNumber());
+                    if (modified.containsKey(key(entry))) {
+                        entry = describeLinked(files, modified.get(key(entry)));
+                        line = writer.writeValueAsString(entry);
+                    }
+                    totals[0]++;
+                    totals[1] += entry.getSize() != null ? entry.getSize() : 0;
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+            Files.delete(linked);
+
+            SnapshotDTO info = new SnapshotDTO(id, creationDate, totals[0], totals[1]);
+            objectMapper.writeValue(snapshot.resolve(INFO).toFile(), info);
+            Files.move(manifest.resolveSibling(MANIFEST + ".part"), manifest, StandardCopyOption.ATOMIC_MOVE);
+
+            LOGGER.info("Snapshot {} of {} versions taken in {} ms", id, totals[0], System.currentTimeMillis() - start);
+            return info;
+        } catch (IOException e) {
+            deleteDirectory(snapshot);
+            throw new PersistingFileException(e);
+        } catch (UncheckedIOException e) {
+            deleteDirectory(snapshot);
+            throw new PersistingFileException(e.getCause());
+        } catch (RuntimeException e) {
+            deleteDirectory(snapshot);
+            throw e;
+        }
+    }
+
+    /**
+     * Complete snapshots, oldest first.
+     */
+    public List<SnapshotDTO> findAll() {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        List<SnapshotDTO> snapshots = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : paths.sorted().collect(Collectors.toList())) {
+                if (ID.matcher(path.getFileName().toString()).matches() && Files.exists(path.resolve(MANIFEST))) {
+                    snapshots.add(objectMapper.readValue(path.resolve(INFO).toFile(), SnapshotDTO.class));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return snapshots;
+    }
+
+    public SnapshotDTO find(String id) {
+        try {
+            return objectMapper.readValue(snapshotDirectory(id).resolve(INFO).toFile(), SnapshotDTO.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void delete(String id) {
+        deleteDirectory(snapshotDirectory(id));
+    }
+
+    /**
+     * Writes the snapshot as a zip archive: its description, its manifest, then the files of the versions that are
+     * not in the base snapshot with the same content, or of every version without a base.
+     */
+    public void export(String id, String baseId, OutputStream outputStream) throws IOException {
+        Path snapshot = snapshotDirectory(id);
+        Map<String, SnapshotEntryDTO> base = new HashMap<>();
+        if (baseId != null) {
+            for (SnapshotEntryDTO entry : readManifest(snapshotDirectory(baseId).resolve(MANIFEST))) {
+                base.put(key(entry), entry);
+            }
+        }
+
+        SnapshotDTO info = find(id);
+        info.setBase(baseId);
+
+        ZipOutputStream zip = new ZipOutputStream(outputStream);
+        zip.putNextEntry(new ZipEntry(INFO));
+        zip.write(objectMapper.writeValueAsBytes(info));
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        Files.copy(snapshot.resolve(MANIFEST), zip);
+        zip.closeEntry();
+
+        Path files = snapshot.resolve(FILES);
+        for (SnapshotEntryDTO entry : readManifest(snapshot.resolve(MANIFEST))) {
+            SnapshotEntryDTO previous = base.get(key(entry));
+            if (previous != null && previous.sameContent(entry)) {
+                continue;
+            }
+            zip.putNextEntry(new ZipEntry(FILES + entry.getVersionNumber() + entry.getFileName()));
+            Files.copy(fileOf(files, entry), zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /**
+     * Stores the versions of an exported snapshot that are not stored with the same content yet. Versions that are
+     * neither in the archive nor stored are reported as missing, an incremental archive needs the one of its base
+     * imported first. Stored versions the snapshot does not have are kept.
+     */
+    public SnapshotImportReportDTO importArchive(Path archive) {
+        long start = System.currentTimeMillis();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipEntry infoEntry = zip.getEntry(INFO);
+            ZipEntry manifestEntry = zip.getEntry(MANIFEST);
+            if (infoEntry == null || manifestEntry == null) {
+                throw new InvalidUploadException("The archive is not an exported snapshot");
+            }
+            SnapshotDTO info;
+            try (InputStream in = zip.getInputStream(infoEntry)) {
+                info = objectMapper.readValue(in, SnapshotDTO.class);
+            }
+
+            Map<String, List<SnapshotEntryDTO>> byFile = new LinkedHashMap<>();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(zip.getInputStream(manifestEntry), StandardCharsets.UTF_8))) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    SnapshotEntryDTO entry = objectMapper.readValue(line, SnapshotEntryDTO.class);
+                    // Every name is checked before any version is written, so a crafted archive writes nothing
+                    fileService.checkImportedName(entry.getFileName(), entry.getVersionNumber());
+                    byFile.computeIfAbsent(entry.getFileName(), name -> new ArrayList<>()).add(entry);
+                }
+            }
+
+            SnapshotImportReportDTO report = new SnapshotImportReportDTO(info.getId());
+            LongAdder imported = new LongAdder();
+            LongAdder importedBytes = new LongAdder();
+            LongAdder unchanged = new LongAdder();
+            LongAdder missing = new LongAdder();
+            List<String> missingSamples = Collections.synchronizedList(new ArrayList<>());
+
+            // Versions of the same file are imported by the same task, so its record is only created once
+            ExecutorService pool = Executors.newFixedThreadPool(importParallelism);
+            try {
+                List<Future<?>> tasks = new ArrayList<>(byFile.size());
+                for (List<SnapshotEntryDTO> versions : byFile.values()) {
+                    tasks.add(pool.submit(() -> {
+                        for (SnapshotEntryDTO entry : versions) {
+                            Version stored = versionRepository.findByFileNameAndVersionNumber(entry.getFileName(), entry.getVersionNumber());
+                            if (stored != null && entry.getChecksum() != null && entry.getChecksum().equals(stored.getChecksum())) {
+                                unchanged.increment();
+                                continue;
+                            }
+                            ZipEntry file = zip.getEntry(FILES + entry.getVersionNumber() + entry.getFileName());
+                            if (file == null) {
+                                missing.increment();
+                                if (missingSamples.size() < 10) {
+                                    missingSamples.add(entry.getVersionNumber() + entry.getFileName());
+                                }
+                                continue;
+                            }
+                            try (InputStream in = zip.getInputStream(file)) {
+                                fileService.importVersion(entry.getFileName(), entry.getVersionNumber(),
+                                        entry.getLastModificationDate(), entry.getChecksum(), in);
+                            }
+                            imported.increment();
+                            importedBytes.add(entry.getSize() != null ? entry.getSize() : 0);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PersistingFileException(new IOException("Interrupted while importing snapshot " + info.getId(), e));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new PersistingFileException(e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+            } finally {
+                pool.shutdownNow();
+            }
+
+            report.setImportedVersions(imported.sum());
+            report.setImportedBytes(importedBytes.sum());
+            report.setUnchangedVersions(unchanged.sum());
+            report.setMissingVersions(missing.sum());
+            report.setMissingVersionSamples(missingSamples);
+            report.setDurationMillis(System.currentTimeMillis() - start);
+            LOGGER.info("Snapshot {} imported: {} versions written, {} unchanged, {} missing in {} ms",
+                    info.getId(), imported.sum(), unchanged.sum(), missing.sum(), report.getDurationMillis());
+            return report;
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        }
+    }
+
+    /**
+     * Stores the archive sent in a temporary file next to the snapshots first, so its entries can be read in parallel.
+     */
+    public SnapshotImportReportDTO importArchive(InputStream inputStream) {
+        Path archive = null;
+        try {
+            Files.createDirectories(directory);
+            archive = Files.createTempFile(directory, ".import", ".zip");
+            Files.copy(inputStream, archive, StandardCopyOption.REPLACE_EXISTING);
+            return importArchive(archive);
+        } catch (IOException e) {
+            throw new PersistingFileException(e);
+        } finally {
+            if (archive != null) {
+                try {
+                    Files.deleteIfExists(archive);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not delete {}", archive, e);
+                }
+            }
+        }
+    }
+
+    private Path snapshotDirectory(String id) {
+        if (id == null || !ID.matcher(id).matches() || !Files.exists(directory.resolve(id).resolve(MANIFEST))) {
+            throw new SnapshotNotFoundException(id);
+        }
+        return directory.resolve(id);
+    }
+
+    private List<SnapshotEntryDTO> readManifest(Path manifest) throws IOException {
+        List<SnapshotEntryDTO> entries = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(manifest)) {
+            for (String line; (line = in.readLine()) != null; ) {
+                entries.add(objectMapper.readValue(line, SnapshotEntryDTO.class));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Entry of a version changed while the snapshot was taken, with the size and checksum of the content linked.
+     */
+    private static SnapshotEntryDTO describeLinked(Path files, SnapshotEntryDTO entry) throws IOException {
+        try (InputStream in = Files.newInputStream(fileOf(files, entry))) {
+            MessageDigest digest = StoredContent.newDigest();
+            byte[] buffer = new byte[64 * 1024];
+            long size = 0;
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+            return new SnapshotEntryDTO(entry.getFileName(), entry.getVersionNumber(), entry.getLastModificationDate(),
+                    StoredContent.toHex(digest.digest()), size);
+        }
+    }
+
+    private static Path fileOf(Path files, SnapshotEntryDTO entry) {
+        return files.resolve(entry.getVersionNumber() + entry.getFileName());
+    }
+
+    private static String key(SnapshotEntryDTO entry) {
+        return entry.getVersionNumber() + entry.getFileName();
+    }
+
+    private static void deleteDirectory(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path child : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(child);
+            }
+        } catch (IOException e) {
+            throw new DeletingFileException(e);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.exception.QuotaExceededException;
+import io.metadata.filestorage.model.NamespaceUsage;
+import io.metadata.filestorage.model.dto.UsageDTO;
+import io.metadata.filestorage.repository.NamespaceUsageRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bytes and versions stored under every namespace, counted as the storage operations commit instead of summing the
+ * versions. Changes are added to striped counters, so concurrent uploads do not contend on a single value, and are
+ * periodically added to the totals in the database, which the changes of every node sharing it add up to.
+ * Totals are counted from the versions on the first start and whenever the configured namespaces change.
+ */
+@Component
+public class StorageUsage {
+
+    static final String DEFAULT_NAMESPACE = "";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageUsage.class);
+
+    private final NamespaceUsageRepository usageRepository;
+
+    private final VersionRepository versionRepository;
+
+    private final UsageProperties properties;
+
+    private final TransactionTemplate transaction;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    // Longest prefix first, the default namespace last, replaced as a whole by a rebuild
+    private volatile Counter[] counters;
+
+    @Autowired
+    public StorageUsage(
+            NamespaceUsageRepository usageRepository,
+            VersionRepository versionRepository,
+            UsageProperties properties,
+            PlatformTransactionManager transactionManager) {
+        this.usageRepository = usageRepository;
+        this.versionRepository = versionRepository;
+        this.properties = properties;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.counters = countersOf(properties);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void loadOnStartup() {
+        List<NamespaceUsage> rows = usageRepository.findAll();
+        Set<String> stored = rows.stream().map(NamespaceUsage::getNamespace).collect(Collectors.toSet());
+        Set<String> configured = Arrays.stream(counters).map(counter -> counter.namespace).collect(Collectors.toSet());
+        if (stored.equals(configured)) {
+            refresh(rows);
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Counts the totals again from the versions in the database with the configured namespaces. Versions stored
+     * while it runs may be counted twice until the next rebuild.
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Counter[] next = countersOf(properties);
+        // Changes from now on are added to the new counters
+        counters = next;
+
+        long[] bytes = new long[next.length];
+        long[] versions = new long[next.length];
+        readOnlyTransaction.execute(status -> {
+            try (Stream<UsageDTO> files = versionRepository.streamUsage()) {
+                files.forEach(file -> {
+                    int index = indexOf(next, file.getName());
+                    bytes[index] += file.getBytes();
+                    versions[index] += file.getVersions();
+                });
+            }
+            return null;
+        });
+
+        LocalDateTime now = LocalDateTime.now();
+        transaction.execute(status -> {
+            usageRepository.removeAll();
+            List<NamespaceUsage> rows = new ArrayList<>(next.length);
+            for (int i = 0; i < next.length; i++) {
+                rows.add(new NamespaceUsage(next[i].namespace, bytes[i], versions[i], now));
+            }
+            usageRepository.saveAll(rows);
+            return null;
+        });
+
+        for (int i = 0; i < next.length; i++) {
+            next[i].storedBytes = bytes[i];
+            next[i].storedVersions = versions[i];
+        }
+        LOGGER.info("Storage usage of {} namespaces counted in {} ms", next.length, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Adds the bytes and versions of a change once its transaction commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(FileChangeEvent change) {
+        if (change.getSizeDelta() == 0 && change.getVersionDelta() == 0) {
+            return;
+        }
+        Counter[] current = counters;
+        Counter counter = current[indexOf(current, change.getFileName())];
+        counter.pendingBytes.add(change.getSizeDelta());
+        counter.pendingVersions.add(change.getVersionDelta());
+    }
+
+    /**
+     * Rejects storing the given bytes under the name when they do not fit in the quota of its namespace. Uploads
+     * running at the same time are not counted until they are stored, so together they can exceed the quota.
+     */
+    public void checkQuota(String fileName, long bytes) {
+        Counter[] current = counters;
+        Counter counter = current[indexOf(current, fileName)];
+        if (counter.maxBytes == null || bytes <= 0) {
+            return;
+        }
+        long used = counter.bytes();
+        if (used + bytes > counter.maxBytes) {
+            throw new QuotaExceededException(counter.namespace, used, bytes, counter.maxBytes);
+        }
+    }
+
+    /**
+     * Usage of the namespace the name belongs to, the one with the longest prefix of it.
+     */
+    public UsageDTO usage(String name) {
+        Counter[] current = counters;
+        return current[indexOf(current, name)].toDTO();
+    }
+
+    public List<UsageDTO> usage() {
+        return Arrays.stream(counters).map(Counter::toDTO).collect(Collectors.toList());
+    }
+
+    /**
+     * Adds the changes counted on this node to the totals in the database and reads the totals back, with the
+     * changes of the other nodes.
+     */
+    @Scheduled(initialDelayString = "${file.usage.flush-delay:5000}", fixedDelayString = "${file.usage.flush-delay:5000}")
+    @PreDestroy
+    public synchronized void flush() {
+        LocalDateTime now = LocalDateTime.now();
+        for (Counter counter : counters) {
+            long bytes = counter.pendingBytes.sum();
+            long versions = counter.pendingVersions.sum();
+            if (bytes == 0 && versions == 0) {
+                continue;
+            }
+            // Counted twice for a moment rather than not at all, so quotas are never checked against less
+            counter.flushingBytes = bytes;
+            counter.flushingVersions = versions;
+            counter.pendingBytes.add(-bytes);
+            counter.pendingVersions.add(-versions);
+            try {
+                add(counter.namespace, bytes, versions, now);
+            } catch (RuntimeException e) {
+                counter.pendingBytes.add(bytes);
+                counter.pendingVersions.add(versions);
+                counter.flushingBytes = 0;
+                counter.flushingVersions = 0;
+                LOGGER.warn("Could not store the storage usage of namespace '{}'", counter.namespace, e);
+            }
+        }
+        refresh(usageRepository.findAll());
+    }
+
+    private void add(String namespace, long bytes, long versions, LocalDateTime now) {
+        if (usageRepository.add(namespace, bytes, versions, now) > 0) {
+            return;
+        }
+        try {
+            usageRepository.save(new NamespaceUsage(namespace, bytes, versions, now));
+        } catch (DataIntegrityViolationException e) {
+            // Inserted by another node in the meantime
+            usageRepository.add(namespace, bytes, versions, now);
+        }
+    }
+
+    private void refresh(List<NamespaceUsage> rows) {
+        Counter[] current = counters;
+        for (NamespaceUsage row : rows) {
+            for (Counter counter : current) {
+                if (counter.namespace.equals(row.getNamespace())) {
+                    counter.storedBytes = row.getBytes();
+                    counter.storedVersions = row.getVersions();
+                    counter.flushingBytes = 0;
+                    counter.flushingVersions = 0;
+                }
+            }
+        }
+    }
+
+    private static Counter[] countersOf(UsageProperties properties) {
+        List<Counter> counters = new ArrayList<>();
+        for (UsageProperties.Namespace namespace : properties.getNamespaces()) {
+            if (namespace.getPrefix() != null && !namespace.getPrefix().isEmpty()) {
+                counters.add(new Counter(namespace.getPrefix(), namespace.getMaxBytes()));
+            }
+        }
+        counters.sort(Comparator.comparingInt((Counter counter) -> counter.namespace.length()).reversed());
+        counters.add(new Counter(DEFAULT_NAMESPACE, properties.getMaxBytes()));
+        return counters.toArray(new Counter[0]);
+    }
+
+    private static int indexOf(Counter[] counters, String name) {
+        for (int i = 0; i < counters.length - 1; i++) {
+            if (name.startsWith(counters[i].namespace)) {
+                return i;
+            }
+        }
+        return counters.length - 1;
+    }
+
+    private static final class Counter {
+
+        private final String namespace;
+
+        private final Long maxBytes;
+
+        private final LongAdder pendingBytes = new LongAdder();
+
+        private final LongAdder pendingVersions = new LongAdder();
+
+        private volatile long flushingBytes;
+
+        private volatile long flushingVersions;
+
+        private volatile long storedBytes;
+
+        private volatile long storedVersions;
+
+        private Counter(String namespace, Long maxBytes) {
+            this.namespace = namespace;
+            this.maxBytes = maxBytes;
+        }
+
+        private long bytes() {
+            return storedBytes + flushingBytes + pendingBytes.sum();
+        }
+
+        private UsageDTO toDTO() {
+            return new UsageDTO(namespace, bytes(), storedVersions + flushingVersions + pendingVersions.sum(), maxBytes);
+        }
+    }
+}
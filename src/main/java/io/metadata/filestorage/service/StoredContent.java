@@ -0,0 +1,46 @@
+package io.metadata.filestorage.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Size and SHA-256 checksum of the content written for a version.
+ */
+final class StoredContent {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String checksum;
+
+    private final long size;
+
+    StoredContent(String checksum, long size) {
+        this.checksum = checksum;
+        this.size = size;
+    }
+
+    String getChecksum() {
+        return checksum;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,51 @@
+package io.metadata.filestorage.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Permits are granted up front and callers wait until the debt is refilled,
+ * so requests larger than the capacity are still served at the configured rate.
+ * A rate of zero or less disables the limit.
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+
+    private final double capacity;
+
+    private double permits;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(long permitsPerSecond, long capacity) {
+        this.permitsPerNano = permitsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.permits = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public boolean isUnlimited() {
+        return permitsPerNano <= 0;
+    }
+
+    public void acquire(long requested) throws InterruptedException {
+        long waitNanos = reserve(requested);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes the permits and returns how long the caller has to wait before using them.
+     */
+    public synchronized long reserve(long requested) {
+        if (isUnlimited()) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        permits = Math.min(capacity, permits + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+        permits -= requested;
+        return permits >= 0 ? 0 : (long) (-permits / permitsPerNano);
+    }
+}
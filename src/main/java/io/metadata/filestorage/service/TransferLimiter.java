@@ -0,0 +1,138 @@
+package io.metadata.filestorage.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control and bandwidth shaping of uploads and downloads. At most a number of transfers run at a time,
+ * the rest wait in line for a while, and the bytes of every transfer go through the bucket of its client and
+ * the global one. Limits of zero or less are disabled.
+ */
+@Component
+public class TransferLimiter {
+
+    private static final long CHUNK_SIZE = 64 * 1024;
+
+    private final FileStorageMetrics metrics;
+
+    private final Semaphore slots;
+
+    private final int maxPerClient;
+
+    private final long queueTimeoutMillis;
+
+    private final long clientBytesPerSecond;
+
+    private final long clientIdleMillis;
+
+    private final TokenBucket globalBucket;
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TransferLimiter(
+            FileStorageMetrics metrics,
+            @Value("${file.transfer.max-concurrent:64}") int maxConcurrent,
+            @Value("${file.transfer.max-per-client:0}") int maxPerClient,
+            @Value("${file.transfer.queue-timeout:10000}") long queueTimeoutMillis,
+            @Value("${file.transfer.mb-per-second:0}") long mbPerSecond,
+            @Value("${file.transfer.client-mb-per-second:0}") long clientMbPerSecond,
+            @Value("${file.transfer.client-idle-timeout:60000}") long clientIdleMillis) {
+        this.metrics = metrics;
+        this.slots = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+        this.maxPerClient = maxPerClient;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.clientBytesPerSecond = clientMbPerSecond * 1024 * 1024;
+        this.clientIdleMillis = clientIdleMillis;
+        long bytesPerSecond = mbPerSecond * 1024 * 1024;
+        this.globalBucket = new TokenBucket(bytesPerSecond, Math.max(CHUNK_SIZE, bytesPerSecond / 10));
+    }
+
+    /**
+     * Waits for a free slot for a transfer of the client, returns null when none was freed in time or the client
+     * already runs too many transfers.
+     */
+    public Permit admit(String clientId) throws InterruptedException {
+        Client client = clients.computeIfAbsent(clientId, id -> new Client());
+        client.lastUsedMillis = System.currentTimeMillis();
+
+        if (client.active.incrementAndGet() > maxPerClient && maxPerClient > 0) {
+            client.active.decrementAndGet();
+            metrics.transferRejected();
+            return null;
+        }
+
+        long start = System.nanoTime();
+        if (slots != null && !slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            client.active.decrementAndGet();
+            metrics.transferRejected();
+            return null;
+        }
+        metrics.transferQueued(System.nanoTime() - start);
+        return new Permit(client);
+    }
+
+    /**
+     * Forgets the buckets of the clients without transfers for a while.
+     */
+    @Scheduled(fixedDelayString = "${file.transfer.client-idle-timeout:60000}")
+    public void evictIdleClients() {
+        long idleSince = System.currentTimeMillis() - clientIdleMillis;
+        clients.values().removeIf(client -> client.active.get() == 0 && client.lastUsedMillis < idleSince);
+    }
+
+    int clientCount() {
+        return clients.size();
+    }
+
+    private final class Client {
+
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final TokenBucket bucket = new TokenBucket(clientBytesPerSecond, Math.max(CHUNK_SIZE, clientBytesPerSecond / 10));
+
+        private volatile long lastUsedMillis;
+    }
+
+    public final class Permit implements AutoCloseable {
+
+        private final Client client;
+
+        private boolean closed;
+
+        private Permit(Client client) {
+            this.client = client;
+        }
+
+        /**
+         * Waits until the client and the server may transfer the bytes.
+         */
+        public void throttle(long bytes) throws InterruptedException {
+            long waitNanos = Math.max(client.bucket.reserve(bytes), globalBucket.reserve(bytes));
+            if (waitNanos > 0) {
+                metrics.transferThrottled(waitNanos);
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                client.lastUsedMillis = System.currentTimeMillis();
+                client.active.decrementAndGet();
+                if (slots != null) {
+                    slots.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package io.metadata.filestorage.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Trigram index of file names for prefix, substring and glob searches. Names are padded with a mark at both ends so
+ * prefixes and suffixes have trigrams of their own. Ids only grow, so the ids holding a trigram stay sorted by
+ * appending them, and the candidates sharing every trigram of a search are checked against the name itself.
+ * Removed names leave their ids behind until they outnumber the live ones. Not thread safe.
+ */
+final class TrigramIndex {
+
+    private static final char MARK = '\0';
+
+    private static final int REMOVED = -1;
+
+    private String[] names = new String[1024];
+
+    private int nextId;
+
+    private int live;
+
+    // Id + 1 of the name in every slot, open addressing on the hash of the name
+    private int[] slots = new int[2048];
+
+    private int usedSlots;
+
+    private Map<Long, Postings> postings = new HashMap<>();
+
+    int size() {
+        return live;
+    }
+
+    boolean add(String name) {
+        if (find(name) >= 0) {
+            return false;
+        }
+        if ((usedSlots + 1) * 2 > slots.length) {
+            rehash(live + 1 > slots.length / 4 ? slots.length * 2 : slots.length);
+        }
+        if (nextId == names.length) {
+            names = Arrays.copyOf(names, nextId * 2);
+        }
+
+        int id = nextId++;
+        names[id] = name;
+        live++;
+        int mask = slots.length - 1;
+        int slot = mix(name.hashCode()) & mask;
+        while (slots[slot] > 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (slots[slot] == 0) {
+            usedSlots++;
+        }
+        slots[slot] = id + 1;
+
+        String padded = MARK + name + MARK;
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            postings.computeIfAbsent(trigram(padded, i), key -> new Postings()).add(id);
+        }
+        return true;
+    }
+
+    boolean remove(String name) {
+        int slot = slotOf(name);
+        if (slot < 0) {
+            return false;
+        }
+        names[slots[slot] - 1] = null;
+        slots[slot] = REMOVED;
+        live--;
+
+        if (nextId - live > Math.max(live, 1024)) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Names matching the pattern after the given one (all of them when null), in order, at most the limit.
+     */
+    List<String> search(FileNameIndex.Type type, String pattern, String after, int limit) {
+        PriorityQueue<String> top = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+
+        long[] trigrams = trigramsOf(type, pattern);
+        if (trigrams.length == 0) {
+            for (int id = 0; id < nextId; id++) {
+                consider(id, type, pattern, after, limit, top);
+            }
+        } else {
+            Postings[] lists = new Postings[trigrams.length];
+            for (int i = 0; i < trigrams.length; i++) {
+                lists[i] = postings.get(trigrams[i]);
+                if (lists[i] == null) {
+                    return Collections.emptyList();
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+            int[] cursors = new int[lists.length];
+            Postings smallest = lists[0];
+            candidates:
+            for (int i = 0; i < smallest.size; i++) {
+                int id = smallest.ids[i];
+                for (int list = 1; list < lists.length; list++) {
+                    cursors[list] = lists[list].seek(id, cursors[list]);
+                    if (cursors[list] == lists[list].size) {
+                        break candidates;
+                    }
+                    if (lists[list].ids[cursors[list]] != id) {
+                        continue candidates;
+                    }
+                }
+                consider(id, type, pattern, after, limit, top);
+            }
+        }
+
+        List<String> page = new ArrayList<>(top);
+        Collections.sort(page);
+        return page;
+    }
+
+    private void consider(int id, FileNameIndex.Type type, String pattern, String after, int limit, PriorityQueue<String> top) {
+        String name = names[id];
+        if (name == null || (after != null && name.compareTo(after) <= 0)) {
+            return;
+        }
+        if (top.size() == limit && name.compareTo(top.peek()) >= 0) {
+            return;
+        }
+        if (!matches(type, pattern, name)) {
+            return;
+        }
+        top.add(name);
+        if (top.size() > limit) {
+            top.poll();
+        }
+    }
+
+    static boolean matches(FileNameIndex.Type type, String pattern, String name) {
+        switch (type) {
+            case PREFIX:
+                return name.startsWith(pattern);
+            case SUBSTRING:
+                return name.contains(pattern);
+            default:
+                return globMatches(pattern, name);
+        }
+    }
+
+    /**
+     * Glob match of the whole name, '*' stands for any characters and '?' for a single one.
+     */
+    static boolean globMatches(String pattern, String name) {
+        int p = 0;
+        int n = 0;
+        int star = -1;
+        int starMatch = 0;
+        while (n < name.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == name.charAt(n))) {
+                p++;
+                n++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                starMatch = n;
+            } else if (star >= 0) {
+                p = star + 1;
+                n = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * Trigrams every matching name has, from the runs of literal characters of the pattern.
+     */
+    private static long[] trigramsOf(FileNameIndex.Type type, String pattern) {
+        String padded;
+        switch (type) {
+            case PREFIX:
+                padded = MARK + pattern;
+                break;
+            case SUBSTRING:
+                padded = pattern;
+                break;
+            default:
+                padded = MARK + pattern + MARK;
+        }
+
+        Set<Long> trigrams = new LinkedHashSet<>();
+        int runStart = 0;
+        for (int i = 0; i <= padded.length(); i++) {
+            if (i == padded.length() || (type == FileNameIndex.Type.GLOB && (padded.charAt(i) == '*' || padded.charAt(i) == '?'))) {
+                for (int start = runStart; start + 3 <= i; start++) {
+                    trigrams.add(trigram(padded, start));
+                }
+                runStart = i + 1;
+            }
+        }
+        return trigrams.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    private int find(String name) {
+        int slot = slotOf(name);
+        return slot < 0 ? -1 : slots[slot] - 1;
+    }
+
+    private int slotOf(String name) {
+        int mask = slots.length - 1;
+        for (int slot = mix(name.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (slots[slot] > 0 && names[slots[slot] - 1].equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        usedSlots = 0;
+        int mask = capacity - 1;
+        for (int id = 0; id < nextId; id++) {
+            if (names[id] != null) {
+                int slot = mix(names[id].hashCode()) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id + 1;
+                usedSlots++;
+            }
+        }
+    }
+
+    /**
+     * Gives the live names new ids in the same order, dropping the ids of the removed ones.
+     */
+    private void compact() {
+        String[] liveNames = new String[live];
+        int count = 0;
+        for (int id = 0; id < nextId; id++) {
+            if (names[id] != null) {
+                liveNames[count++] = names[id];
+            }
+        }
+
+        names = new String[Math.max(1024, live * 2)];
+        nextId = 0;
+        live = 0;
+        slots = new int[Math.max(2048, Integer.highestOneBit(Math.max(1, count)) * 4)];
+        usedSlots = 0;
+        postings = new HashMap<>();
+        for (String name : liveNames) {
+            add(name);
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash * 0x9e3779b9 ^ (hash >>> 16);
+    }
+
+    private static final class Postings {
+
+        private int[] ids = new int[4];
+
+        private int size;
+
+        private void add(int id) {
+            // A name repeating a trigram adds its id once
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * Position of the first id not below the given one, searched from the cursor on.
+         */
+        private int seek(int id, int from) {
+            int step = 1;
+            int low = from;
+            int high = from;
+            while (high < size && ids[high] < id) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, size);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ids[middle] < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.metadata.filestorage.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Namespaces the storage used is counted for, a file belongs to the namespace with the longest prefix of its name
+ * and to the default namespace when none matches.
+ */
+@Component
+@ConfigurationProperties("file.usage")
+public class UsageProperties {
+
+    private Long maxBytes;
+
+    private List<Namespace> namespaces = new ArrayList<>();
+
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Quota of the default namespace.
+     */
+    public void setMaxBytes(Long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public List<Namespace> getNamespaces() {
+        return namespaces;
+    }
+
+    public void setNamespaces(List<Namespace> namespaces) {
+        this.namespaces = namespaces;
+    }
+
+    public static class Namespace {
+
+        private String prefix;
+
+        private Long maxBytes;
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * Bytes the versions of the namespace may take, no limit when not set.
+         */
+        public void setMaxBytes(Long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.metadata.filestorage.service;
+
+import org.springframework.core.io.UrlResource;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Path;
+
+/**
+ * Content of a version on disk, with the version number it was resolved to.
+ */
+public class VersionResource extends UrlResource {
+
+    private final Integer versionNumber;
+
+    VersionResource(Path path, Integer versionNumber) throws MalformedURLException {
+        super(path.toUri());
+        this.versionNumber = versionNumber;
+    }
+
+    public Integer getVersionNumber() {
+        return versionNumber;
+    }
+
+    /**
+     * Strong validator of the content: the version number, the time it was last written and its size. Versions are
+     * replaced as a whole when updated and appends grow them, so either changes whenever the content does.
+     */
+    public String getEntityTag() throws IOException {
+        return "\"" + versionNumber + "-" + Long.toHexString(lastModified()) + "-" + Long.toHexString(contentLength()) + "\"";
+    }
+}
@@ -0,0 +1,39 @@
+package io.metadata.filestorage;
+
+import io.metadata.filestorage.exception.StreamingCapacityException;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StreamingConfigurationTest {
+
+    @Test
+    public void testStreamsOverTheLimitAreRejected() throws Exception {
+
+        ThreadPoolTaskExecutor executor = StreamingConfiguration.streamingExecutor(2);
+        executor.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<?> first = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+            executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+            try {
+                executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+                fail();
+            } catch (StreamingCapacityException e) {
+                assertTrue(e.getMessage().contains("2"));
+            }
+
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+
+    }
+}
@@ -0,0 +1,90 @@
+package io.metadata.filestorage.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.service.ClusterRouter;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockPart;
+
+import javax.servlet.http.Part;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class ClusterRoutingFilterTest {
+
+    private static final String SELF = "http://a";
+
+    private static final String UNREACHABLE = "http://127.0.0.1:1";
+
+    private final ClusterRouter router = new ClusterRouter(mock(FileRepository.class), Arrays.asList(SELF, UNREACHABLE), SELF, 128, 0, "secret");
+
+    private final ClusterRoutingFilter filter = new ClusterRoutingFilter(router, new ObjectMapper());
+
+    private String nameOwnedBy(String node) {
+        return IntStream.range(0, 10000).mapToObj(i -> "file-" + i + ".txt")
+                .filter(name -> router.ownerOf(name).equals(node))
+                .findFirst().orElseThrow(IllegalStateException::new);
+    }
+
+    private static MockHttpServletRequest multipartUpload(String declaredName, String submittedName) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/files/upload");
+        request.setContentType("multipart/form-data; boundary=boundary");
+        request.addHeader(ClusterRoutingFilter.FILE_NAME_HEADER, declaredName);
+        request.addPart(new MockPart("file", submittedName, "This is a test".getBytes()));
+        return request;
+    }
+
+    @Test
+    public void testMultipartUploadRoutedByItsHeaderWithoutReadingTheBody() throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/files/upload") {
+            @Override
+            public Part getPart(String name) {
+                throw new AssertionError("The body was read to route the upload");
+            }
+        };
+        request.setContentType("multipart/form-data; boundary=boundary");
+        request.addHeader(ClusterRoutingFilter.FILE_NAME_HEADER, nameOwnedBy(UNREACHABLE));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(502, response.getStatus());
+        assertNull(chain.getRequest());
+
+    }
+
+    @Test
+    public void testMultipartUploadServedWhenItsHeaderMatches() throws Exception {
+
+        String name = nameOwnedBy(SELF);
+        MockHttpServletRequest request = multipartUpload(name, name);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertSame(request, chain.getRequest());
+
+    }
+
+    @Test
+    public void testMultipartUploadRejectedWhenItsHeaderDoesNotMatch() throws Exception {
+
+        MockHttpServletRequest request = multipartUpload(nameOwnedBy(SELF), nameOwnedBy(UNREACHABLE));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(400, response.getStatus());
+        assertNull(chain.getRequest());
+
+    }
+}
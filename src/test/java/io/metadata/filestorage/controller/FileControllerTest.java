@@ -4,10 +4,16 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.metadata.filestorage.exception.DeletingFileException;
 import io.metadata.filestorage.exception.FileNotFoundException;
+import io.metadata.filestorage.exception.InvalidOffsetException;
 import io.metadata.filestorage.exception.PersistingFileException;
 import io.metadata.filestorage.model.dto.FileDTO;
 import io.metadata.filestorage.model.dto.FileResponseDTO;
+import io.metadata.filestorage.model.dto.VersionDTO;
+import io.metadata.filestorage.model.dto.VersionHistoryDTO;
+import io.metadata.filestorage.service.ClusterRouter;
 import io.metadata.filestorage.service.FileService;
+import io.metadata.filestorage.service.FileStorageMetrics;
+import io.metadata.filestorage.service.TransferLimiter;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,6 +21,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
@@ -30,12 +37,14 @@ import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(value = FileController.class, secure = false)
+@Import(TransferLimiter.class)
 public class FileControllerTest {
 
     @Autowired
@@ -47,6 +56,12 @@ public class FileControllerTest {
     @MockBean
     private FileService fileService;
 
+    @MockBean
+    private FileStorageMetrics fileStorageMetrics;
+
+    @MockBean
+    private ClusterRouter clusterRouter;
+
     @Value("${file.database.path}")
     private String fileDatabasePath;
 
@@ -65,8 +80,13 @@ public class FileControllerTest {
     @Test
     public void testFindAllFiles() throws Exception {
 
-        when(
-                fileService.findAll()).thenReturn(Collections.singletonList(fileDTO1));
+        FileDTO quoted = new FileDTO("a \"quoted\" name.json", 1, dateTime);
+        doAnswer(invocation -> {
+            Consumer<FileDTO> consumer = invocation.getArgument(0);
+            consumer.accept(fileDTO1);
+            consumer.accept(quoted);
+            return null;
+        }).when(fileService).forEachFile(any());
 
         RequestBuilder requestBuilder = MockMvcRequestBuilders.get(
                 "/files/").accept(
@@ -78,11 +98,35 @@ public class FileControllerTest {
         });
         FileDTO resultObject = resultList.get(0);
 
-        assertNotNull(resultObject.getDownloadLink());
+        assertEquals("http://localhost/files/download/test.json?version=3", resultObject.getDownloadLink());
 
         assertEquals(fileDTO1.getName(), resultObject.getName());
         assertEquals(fileDTO1.getLastModificationDate(), resultObject.getLastModificationDate());
         assertEquals(fileDTO1.getLatestVersion(), resultObject.getLatestVersion());
+
+        assertEquals(quoted.getName(), resultList.get(1).getName());
+        assertEquals("http://localhost/files/download/a%20%22quoted%22%20name.json?version=1", resultList.get(1).getDownloadLink());
+    }
+
+    @Test
+    public void testFindVersions() throws Exception {
+
+        VersionDTO version = new VersionDTO(3, dateTime, 18L, "abc", false);
+        when(fileService.findVersions("test.json", 4, 1000)).thenReturn(
+                new VersionHistoryDTO("test.json", Collections.singletonList(version), 3));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get(
+                "/files/versions/test.json?before=4&size=5000").accept(
+                MediaType.APPLICATION_JSON);
+
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+
+        VersionHistoryDTO history = jsonObjectMapper.readValue(result.getResponse().getContentAsString(), VersionHistoryDTO.class);
+
+        assertEquals(3, (int) history.getNextBefore());
+        assertEquals(1, history.getVersions().size());
+        assertEquals("http://localhost/files/download/test.json?version=3", history.getVersions().get(0).getDownloadLink());
+        assertEquals(dateTime, history.getVersions().get(0).getLastModificationDate());
     }
 
     @Test
@@ -102,6 +146,7 @@ public class FileControllerTest {
         String resultString = result.getResponse().getContentAsString();
 
         assertEquals(content, resultString);
+        verify(fileStorageMetrics).downloadFinished(content.length());
     }
 
     @Test
@@ -275,6 +320,72 @@ public class FileControllerTest {
 
     }
 
+    @Test
+    public void testAppendToFileVersion() throws Exception {
+
+        String content = "line 2\n";
+
+        fileResponseDTO.setSize(14L);
+        fileResponseDTO.setVersion(1);
+        fileResponseDTO.setName("test.log");
+
+        when(
+                fileService.append(eq("test.log"), isNull(), eq(7L), any())).thenReturn(fileResponseDTO);
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(
+                "/files/append/test.log").content(content.getBytes()).param("offset", "7").accept(
+                MediaType.APPLICATION_JSON);
+
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+
+        FileResponseDTO resultObject = jsonObjectMapper.readValue(result.getResponse().getContentAsString(), FileResponseDTO.class);
+
+        assertEquals(200, result.getResponse().getStatus());
+        assertEquals(14L, (long) resultObject.getSize());
+        assertTrue(resultObject.getDownloadURI().endsWith("/files/download/test.log?version=1"));
+
+    }
+
+    @Test
+    public void testAppendToFileVersionAtInvalidOffset() throws Exception {
+
+        when(
+                fileService.append(anyString(), any(), anyLong(), any())).thenThrow(new InvalidOffsetException(20, 14));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post(
+                "/files/append/test.log").content("line 3\n".getBytes()).param("offset", "20").accept(
+                MediaType.APPLICATION_JSON);
+
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+
+        assertEquals(409, result.getResponse().getStatus());
+
+    }
+
+    @Test
+    public void testCopyFileVersion() throws Exception {
+
+        fileResponseDTO.setSize(14L);
+        fileResponseDTO.setVersion(1);
+        fileResponseDTO.setName("copy.json");
+
+        when(
+                fileService.copy(eq("test.json"), eq(2), eq("copy.json"))).thenReturn(fileResponseDTO);
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/files/copy")
+                .param("fileName", "test.json").param("version", "2").param("targetFileName", "copy.json")
+                .accept(MediaType.APPLICATION_JSON);
+
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+
+        FileResponseDTO resultObject = jsonObjectMapper.readValue(result.getResponse().getContentAsString(), FileResponseDTO.class);
+
+        assertEquals(201, result.getResponse().getStatus());
+        assertEquals("copy.json", resultObject.getName());
+        assertTrue(resultObject.getDownloadURI().endsWith("/files/download/copy.json?version=1"));
+
+    }
+
     @Test
     public void testDeleteFile() throws Exception {
 
@@ -338,5 +449,20 @@ public class FileControllerTest {
         assertEquals(DeletingFileException.class, Objects.requireNonNull(result.getResolvedException()).getClass());
     }
 
+    @Test
+    public void testDeleteFilesByPrefix() throws Exception {
+
+        when(fileService.deleteByPrefix("logs-")).thenReturn(2);
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.delete(
+                "/files/prefix")
+                .param("prefix", "logs-").accept(
+                        MediaType.APPLICATION_JSON);
+
+        MvcResult result = mockMvc.perform(requestBuilder).andReturn();
+
+        assertEquals(200, result.getResponse().getStatus());
+        assertEquals("2", result.getResponse().getContentAsString());
+    }
 
 }
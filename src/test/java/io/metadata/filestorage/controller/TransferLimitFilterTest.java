@@ -0,0 +1,129 @@
+package io.metadata.filestorage.controller;
+
+import io.metadata.filestorage.service.FileStorageMetrics;
+import io.metadata.filestorage.service.TransferLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockPart;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TransferLimitFilterTest {
+
+    private final TransferLimiter limiter = new TransferLimiter(new FileStorageMetrics(new SimpleMeterRegistry()), 1, 0, 10, 0, 0, 60000);
+
+    private final TransferLimitFilter filter = new TransferLimitFilter(limiter, "X-Client-Id", 7);
+
+    private final HttpServlet download = new HttpServlet() {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            response.getOutputStream().write("This is a test".getBytes());
+        }
+    };
+
+    @Test
+    public void testDownloadIsAdmitted() throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/download/test.json");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(download));
+
+        assertEquals(200, response.getStatus());
+        assertEquals("This is a test", response.getContentAsString());
+
+    }
+
+    @Test
+    public void testDownloadIsTurnedAwayWhenBusy() throws Exception {
+
+        TransferLimiter.Permit running = limiter.admit("other-client");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/download/test.json");
+        request.addHeader("X-Client-Id", "client");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(download));
+
+        assertEquals(503, response.getStatus());
+        assertEquals("7", response.getHeader("Retry-After"));
+        assertEquals("", response.getContentAsString());
+
+        running.close();
+
+    }
+
+    @Test
+    public void testOtherRequestsAreNotLimited() throws Exception {
+
+        TransferLimiter.Permit running = limiter.admit("other-client");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(download));
+
+        assertEquals(200, response.getStatus());
+
+        running.close();
+
+    }
+
+    @Test(timeout = 5000)
+    public void testMultipartUploadIsPacedAsItIsRead() throws Exception {
+
+        // 1 MB per second, a body charged up front would wait about 16 seconds
+        TransferLimitFilter pacedFilter = new TransferLimitFilter(
+                new TransferLimiter(new FileStorageMetrics(new SimpleMeterRegistry()), 1, 0, 10, 0, 1, 60000), "X-Client-Id", 7);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/files/upload");
+        request.setContentType("multipart/form-data; boundary=test");
+        request.setContent(new byte[16 * 1024 * 1024]);
+        request.addPart(new MockPart("file", "test.json", "This is a test".getBytes()));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        pacedFilter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+                response.getOutputStream().write(request.getPart("file").getInputStream().readAllBytes());
+            }
+        }));
+
+        assertEquals(200, response.getStatus());
+        assertEquals("This is a test", response.getContentAsString());
+
+    }
+
+    @Test
+    public void testStreamedResponseKeepsItsSlotUntilItCompletes() throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/files/tail/test.log");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                request.startAsync();
+            }
+        }));
+
+        assertNull(limiter.admit("other-client"));
+
+        request.getAsyncContext().complete();
+
+        TransferLimiter.Permit next = limiter.admit("other-client");
+        assertNotNull(next);
+        next.close();
+
+    }
+}
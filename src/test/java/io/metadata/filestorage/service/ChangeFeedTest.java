@@ -0,0 +1,231 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.ChangeTokenExpiredException;
+import io.metadata.filestorage.model.ChangeEvent;
+import io.metadata.filestorage.model.dto.ChangesDTO;
+import io.metadata.filestorage.repository.ChangeEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {"file.changes.buffer-size=3", "file.changes.page-size=2"})
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        ChangeFeed.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class ChangeFeedTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private long currentToken() {
+        return ((ChangesDTO) changeFeed.watch(null, null, 0).getResult()).getNextToken();
+    }
+
+    @Test
+    public void testWatchReturnsRecordedChanges() {
+
+        long token = currentToken();
+
+        fileService.save("changes-a.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.updateVersion("changes-a.json", new ByteArrayResource("This is another test".getBytes()), 1);
+        fileService.delete("changes-a.json");
+
+        ChangesDTO changes = (ChangesDTO) changeFeed.watch(token, "changes-a", 0).getResult();
+
+        assertEquals(3, changes.getChanges().size());
+        assertEquals(ChangeEvent.Type.CREATED, changes.getChanges().get(0).getType());
+        assertEquals(1, (int) changes.getChanges().get(0).getVersion());
+        assertEquals(ChangeEvent.Type.UPDATED, changes.getChanges().get(1).getType());
+        assertEquals(ChangeEvent.Type.DELETED, changes.getChanges().get(2).getType());
+        assertNull(changes.getChanges().get(2).getVersion());
+        assertEquals(changes.getChanges().get(2).getToken(), changes.getNextToken());
+
+    }
+
+    @Test
+    public void testWatchWaitsForMatchingChange() {
+
+        long token = currentToken();
+
+        DeferredResult<ChangesDTO> result = changeFeed.watch(token, "changes-b", 30000);
+        assertFalse(result.hasResult());
+
+        fileService.save("changes-other.json", new ByteArrayResource("This is a test".getBytes()));
+        assertFalse(result.hasResult());
+
+        fileService.save("changes-b.json", new ByteArrayResource("This is a test".getBytes()));
+        assertTrue(result.hasResult());
+
+        ChangesDTO changes = (ChangesDTO) result.getResult();
+        assertEquals(1, changes.getChanges().size());
+        assertEquals("changes-b.json", changes.getChanges().get(0).getName());
+
+    }
+
+    @Test
+    public void testWatchCatchesUpFromTheChangeLog() {
+
+        long token = currentToken();
+
+        for (int i = 0; i < 5; i++) {
+            fileService.save("changes-c" + i + ".json", new ByteArrayResource("This is a test".getBytes()));
+        }
+
+        // Only the last three changes are kept in memory, the older ones are read two at a time
+        ChangesDTO first = (ChangesDTO) changeFeed.watch(token, "changes-c", 0).getResult();
+        ChangesDTO second = (ChangesDTO) changeFeed.watch(first.getNextToken(), "changes-c", 0).getResult();
+
+        assertEquals(2, first.getChanges().size());
+        assertEquals("changes-c0.json", first.getChanges().get(0).getName());
+        assertEquals(3, second.getChanges().size());
+        assertEquals("changes-c2.json", second.getChanges().get(0).getName());
+        assertEquals("changes-c4.json", second.getChanges().get(2).getName());
+
+    }
+
+    @Test
+    public void testRolledBackOperationRecordsNoChange() {
+
+        fileService.save("changes-f.json", new ByteArrayResource("This is a test".getBytes()));
+        long token = currentToken();
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            fileService.delete("changes-f.json");
+            status.setRollbackOnly();
+            return null;
+        });
+
+        DeferredResult<ChangesDTO> result = changeFeed.watch(token, "changes-f", 30000);
+        assertFalse(result.hasResult());
+        assertEquals(token, currentToken());
+
+        fileService.delete("changes-f.json");
+        assertTrue(result.hasResult());
+        assertEquals(ChangeEvent.Type.DELETED, ((ChangesDTO) result.getResult()).getChanges().get(0).getType());
+
+    }
+
+    @Test
+    public void testConcurrentChangesAreNeverSkipped() throws Exception {
+
+        long token = currentToken();
+        int writers = 4;
+        int filesPerWriter = 25;
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            int first = writer * filesPerWriter;
+            tasks.add(pool.submit(() -> {
+                for (int i = first; i < first + filesPerWriter; i++) {
+                    fileService.save("changes-g" + i + ".json", new ByteArrayResource("This is a test".getBytes()));
+                }
+                return null;
+            }));
+        }
+
+        // Follows the tokens while the changes are committed, any change committed behind a token would be lost
+        Set<String> names = new HashSet<>();
+        boolean writing = true;
+        while (writing) {
+            writing = tasks.stream().anyMatch(task -> !task.isDone());
+            ChangesDTO changes = (ChangesDTO) changeFeed.watch(token, "changes-g", 0).getResult();
+            if (changes != null) {
+                changes.getChanges().forEach(change -> assertTrue(names.add(change.getName())));
+                token = changes.getNextToken();
+            }
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+
+        for (ChangesDTO changes; (changes = (ChangesDTO) changeFeed.watch(token, "changes-g", 0).getResult()) != null
+                && !changes.getChanges().isEmpty(); token = changes.getNextToken()) {
+            changes.getChanges().forEach(change -> assertTrue(names.add(change.getName())));
+        }
+        assertEquals(writers * filesPerWriter, names.size());
+
+    }
+
+    @Test(expected = ChangeTokenExpiredException.class)
+    public void testWatchWithExpiredToken() {
+
+        for (int i = 0; i < 4; i++) {
+            fileService.save("changes-d" + i + ".json", new ByteArrayResource("This is a test".getBytes()));
+        }
+        changeFeed.prune();
+
+        changeFeed.watch(-1L, null, 0);
+
+    }
+
+    @Test
+    public void testWatchReadsOtherInstancesChangesFromTheChangeLog() {
+
+        long token = currentToken();
+
+        // Written by another instance sharing the database
+        changeEventRepository.save(new ChangeEvent("changes-e0.json", 1, ChangeEvent.Type.CREATED, LocalDateTime.now()));
+        fileService.save("changes-e1.json", new ByteArrayResource("This is a test".getBytes()));
+
+        ChangesDTO changes = (ChangesDTO) changeFeed.watch(token, "changes-e", 0).getResult();
+
+        assertEquals(2, changes.getChanges().size());
+        assertEquals("changes-e0.json", changes.getChanges().get(0).getName());
+        assertEquals("changes-e1.json", changes.getChanges().get(1).getName());
+
+        changeEventRepository.save(new ChangeEvent("changes-e2.json", 1, ChangeEvent.Type.CREATED, LocalDateTime.now()));
+
+        changes = (ChangesDTO) changeFeed.watch(changes.getNextToken(), "changes-e", 30000).getResult();
+
+        assertEquals(1, changes.getChanges().size());
+        assertEquals("changes-e2.json", changes.getChanges().get(0).getName());
+
+    }
+
+}
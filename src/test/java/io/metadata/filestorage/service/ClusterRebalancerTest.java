@@ -0,0 +1,68 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ClusterRebalancerTest {
+
+    private static final String UNREACHABLE = "http://127.0.0.1:1";
+
+    private static final List<String> NODES = Arrays.asList("http://a", "http://b");
+
+    private static final List<String> GROWN = Arrays.asList("http://a", "http://b", UNREACHABLE);
+
+    private final FileRepository fileRepository = mock(FileRepository.class);
+
+    private final VersionRepository versionRepository = mock(VersionRepository.class);
+
+    private final FileSystemStorage storage = mock(FileSystemStorage.class);
+
+    private final ClusterRouter router = new ClusterRouter(fileRepository, NODES, "http://a", 128, 0, "secret");
+
+    private final ClusterRebalancer rebalancer = new ClusterRebalancer(router, fileRepository, versionRepository,
+            mock(FileService.class), storage, mock(PlatformTransactionManager.class), 60000);
+
+    @Test
+    public void testPreviousRingKeptUntilEveryFileMoved() throws Exception {
+
+        String name = IntStream.range(0, 10000).mapToObj(i -> "file-" + i + ".txt")
+                .filter(candidate -> router.ownerOf(candidate).equals("http://a"))
+                .filter(candidate -> new HashRing(GROWN, 128).ownerOf(candidate).equals(UNREACHABLE))
+                .findFirst().orElseThrow(IllegalStateException::new);
+        Path content = Files.createTempFile("rebalance", ".txt");
+        when(storage.resolve(name, 1)).thenReturn(content);
+        when(versionRepository.findByFileNameOrderByVersionNumberDesc(name))
+                .thenReturn(Collections.singletonList(new Version(null, 1, LocalDateTime.now())));
+        router.updateNodes(GROWN);
+
+        try {
+            when(fileRepository.streamAllNames()).thenReturn(Stream.of(name));
+            assertFalse(rebalancer.moveAll());
+            assertTrue(router.isMoving());
+            assertEquals(1, rebalancer.getStatus().getFilesFailed());
+
+            // Moved or deleted meanwhile
+            when(fileRepository.streamAllNames()).thenReturn(Stream.empty());
+            assertTrue(rebalancer.moveAll());
+            assertFalse(router.isMoving());
+        } finally {
+            Files.delete(content);
+        }
+
+    }
+}
@@ -0,0 +1,126 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.model.File;
+import io.metadata.filestorage.repository.FileRepository;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ClusterRouterTest {
+
+    private static final List<String> NODES = Arrays.asList("http://a", "http://b");
+
+    private static final List<String> GROWN = Arrays.asList("http://a", "http://b", "http://c");
+
+    private final FileRepository fileRepository = mock(FileRepository.class);
+
+    private ClusterRouter router(String self) {
+        return new ClusterRouter(fileRepository, NODES, self, 128, 0, "secret");
+    }
+
+    /**
+     * A name stored on a and moving to c once the third node joins.
+     */
+    private static String movingName(ClusterRouter router) {
+        return IntStream.range(0, 10000).mapToObj(i -> "file-" + i + ".txt")
+                .filter(name -> router.ownerOf(name).equals("http://a"))
+                .filter(name -> new HashRing(GROWN, 128).ownerOf(name).equals("http://c"))
+                .findFirst().orElseThrow(IllegalStateException::new);
+    }
+
+    @Test
+    public void testOwnerServesItsFiles() {
+
+        ClusterRouter router = router("http://a");
+        String name = movingName(router);
+
+        assertTrue(router.isEnabled());
+        assertNull(router.route(name, 0));
+
+        ClusterRouter.Route route = router("http://b").route(name, 0);
+        assertEquals("http://a", route.getNode());
+        assertEquals(1, route.getHops());
+
+        // Served wherever it arrives with the last hop
+        assertNull(router("http://b").route(name, ClusterRouter.FINAL_HOP));
+
+    }
+
+    @Test
+    public void testPreviousOwnerServesUntilTheFileMoved() {
+
+        ClusterRouter previousOwner = router("http://a");
+        ClusterRouter newOwner = router("http://c");
+        ClusterRouter other = router("http://b");
+        String name = movingName(previousOwner);
+        for (ClusterRouter router : Arrays.asList(previousOwner, newOwner, other)) {
+            router.updateNodes(GROWN);
+            assertTrue(router.isMoving());
+        }
+
+        // Still on the previous owner
+        when(fileRepository.findByName(name)).thenReturn(new File());
+        assertEquals("http://a", other.route(name, 0).getNode());
+        assertNull(previousOwner.route(name, 1));
+
+        // Moved to its new owner
+        when(fileRepository.findByName(name)).thenReturn(null);
+        ClusterRouter.Route handOver = previousOwner.route(name, 1);
+        assertEquals("http://c", handOver.getNode());
+        assertEquals(ClusterRouter.FINAL_HOP, handOver.getHops());
+
+        // The new owner asks the previous one for the files it has not received yet
+        assertEquals("http://a", newOwner.route(name, 0).getNode());
+        when(fileRepository.findByName(name)).thenReturn(new File());
+        assertNull(newOwner.route(name, 0));
+
+    }
+
+    @Test
+    public void testPreviousRingDroppedAfterTheHandoff() {
+
+        ClusterRouter router = router("http://b");
+        String name = movingName(router);
+        router.updateNodes(GROWN);
+        router.moved();
+
+        assertFalse(router.isMoving());
+        assertEquals("http://c", router.route(name, 0).getNode());
+        verifyZeroInteractions(fileRepository);
+
+    }
+
+    @Test
+    public void testDisabledWithoutNodes() {
+
+        ClusterRouter router = new ClusterRouter(fileRepository, Arrays.asList(""), "", 128, 0, "");
+
+        assertFalse(router.isEnabled());
+        assertFalse(router.isAuthorized(null));
+        assertFalse(router.isAuthorized(""));
+
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNodesRequireAToken() {
+
+        new ClusterRouter(fileRepository, NODES, "http://a", 128, 0, "");
+
+    }
+
+    @Test
+    public void testIsAuthorized() {
+
+        ClusterRouter router = router("http://a");
+
+        assertTrue(router.isAuthorized("secret"));
+        assertFalse(router.isAuthorized("secreT"));
+        assertFalse(router.isAuthorized(null));
+
+    }
+}
@@ -0,0 +1,210 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.DiffTooLargeException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "file.diff.max-lines=100")
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class,
+        DiffService.class})
+public class DiffServiceTest {
+
+    @Autowired
+    private DiffService diffService;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileSystemStorage storage;
+
+    @Autowired
+    private SimpleMeterRegistry meterRegistry;
+
+    @Test
+    public void testTextVersionsAreComparedByLines() throws IOException {
+
+        save("diff-lines.txt", "a\nb\nc\nd\ne\nf\ng\nh\ni\nj\n".getBytes(StandardCharsets.UTF_8));
+        save("diff-lines.txt", "a\nb\nc\nd\nE\nf\ng\nh\ni\nj\nk".getBytes(StandardCharsets.UTF_8));
+
+        DiffService.Diff diff = diffService.diff("diff-lines.txt", 1, 2, DiffService.Mode.AUTO);
+
+        assertEquals(DiffService.Mode.LINES, diff.getMode());
+        assertEquals("--- a/diff-lines.txt\n" +
+                "+++ b/diff-lines.txt\n" +
+                "@@ -2,9 +2,10 @@\n" +
+                " b\n" +
+                " c\n" +
+                " d\n" +
+                "-e\n" +
+                "+E\n" +
+                " f\n" +
+                " g\n" +
+                " h\n" +
+                " i\n" +
+                " j\n" +
+                "+k\n" +
+                "\\ No newline at end of file\n", new String(write(diff), StandardCharsets.UTF_8));
+
+        assertEquals(0, write(diffService.diff("diff-lines.txt", 2, 2, DiffService.Mode.LINES)).length);
+
+    }
+
+    @Test
+    public void testDiffsOfTheSamePairAreCached() throws IOException {
+
+        save("diff-cached.txt", "first\nsecond\n".getBytes(StandardCharsets.UTF_8));
+        save("diff-cached.txt", "first\nthird\n".getBytes(StandardCharsets.UTF_8));
+        double hits = meterRegistry.get("file.storage.diff.cache").tag("result", "hit").counter().count();
+
+        byte[] computed = write(diffService.diff("diff-cached.txt", 1, null, DiffService.Mode.AUTO));
+        byte[] cached = write(diffService.diff("diff-cached.txt", 1, 2, DiffService.Mode.AUTO));
+
+        assertArrayEquals(computed, cached);
+        assertEquals(hits + 1, meterRegistry.get("file.storage.diff.cache").tag("result", "hit").counter().count(), 0);
+
+    }
+
+    @Test
+    public void testBinaryVersionsAreComparedByBlocks() throws IOException {
+
+        byte[] original = new byte[64 * 1024];
+        new Random(42).nextBytes(original);
+        original[0] = 0;
+        byte[] changed = new byte[original.length + 100];
+        System.arraycopy(original, 0, changed, 0, 10000);
+        System.arraycopy(original, 10000, changed, 10100, original.length - 10000);
+        changed[40000] ^= 1;
+
+        save("diff-blocks.bin", original);
+        save("diff-blocks.bin", changed);
+
+        DiffService.Diff diff = diffService.diff("diff-blocks.bin", 1, 2, DiffService.Mode.AUTO);
+        byte[] delta = write(diff);
+
+        assertEquals(DiffService.Mode.BLOCKS, diff.getMode());
+        assertTrue(delta.length < changed.length / 4);
+        assertArrayEquals(changed, apply(storage.resolve("diff-blocks.bin", 1), delta));
+
+    }
+
+    @Test
+    public void testTextWithTooManyLinesIsComparedByBlocks() throws IOException {
+
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line < 200; line++) {
+            content.append("line ").append(line).append('\n');
+        }
+        save("diff-long.txt", content.toString().getBytes(StandardCharsets.UTF_8));
+        save("diff-long.txt", content.append("line 200\n").toString().getBytes(StandardCharsets.UTF_8));
+
+        DiffService.Diff diff = diffService.diff("diff-long.txt", 1, 2, DiffService.Mode.AUTO);
+        assertEquals(DiffService.Mode.BLOCKS, diff.getMode());
+        assertArrayEquals(Files.readAllBytes(storage.resolve("diff-long.txt", 2)),
+                apply(storage.resolve("diff-long.txt", 1), write(diff)));
+
+        try {
+            diffService.diff("diff-long.txt", 1, 2, DiffService.Mode.LINES);
+            fail();
+        } catch (DiffTooLargeException e) {
+            // Too many lines to keep their hashes
+        }
+
+    }
+
+    @Test
+    public void testEditsOverTheLimitReplaceTheWholePart() throws IOException {
+
+        Path from = Files.createTempFile("diff", ".txt");
+        Path to = Files.createTempFile("diff", ".txt");
+        try {
+            Files.write(from, "same\na\nb\nc\nsame\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(to, "same\nx\nb\ny\nsame\n".getBytes(StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            LineDiff.write(LineDiff.index(from, 100), LineDiff.index(to, 100), "limit.txt", 1, out);
+
+            assertEquals("--- a/limit.txt\n" +
+                    "+++ b/limit.txt\n" +
+                    "@@ -1,5 +1,5 @@\n" +
+                    " same\n" +
+                    "-a\n" +
+                    "-b\n" +
+                    "-c\n" +
+                    "+x\n" +
+                    "+b\n" +
+                    "+y\n" +
+                    " same\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(from);
+            Files.deleteIfExists(to);
+        }
+
+    }
+
+    private void save(String fileName, byte[] content) {
+        fileService.save(fileName, new ByteArrayResource(content));
+    }
+
+    private static byte[] write(DiffService.Diff diff) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        diff.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuilds the second version from the first one and the delta.
+     */
+    private static byte[] apply(Path from, byte[] delta) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        String[] lines = new String(delta, StandardCharsets.US_ASCII).split("\n");
+        try (RandomAccessFile file = new RandomAccessFile(from.toFile(), "r")) {
+            for (int i = 2; i < lines.length; i++) {
+                String[] fields = lines[i].split(" ");
+                if (fields[0].equals("copy")) {
+                    byte[] range = new byte[Integer.parseInt(fields[2])];
+                    file.seek(Long.parseLong(fields[1]));
+                    file.readFully(range);
+                    result.write(range);
+                } else {
+                    result.write(Base64.getDecoder().decode(lines[++i]));
+                }
+            }
+        }
+        return result.toByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.FileNotFoundException;
+import io.metadata.filestorage.model.File;
+import io.metadata.filestorage.repository.FileRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {"file.name-filter.min-capacity=1000", "file.name-filter.false-positive-rate=0.0001"})
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class FileNameFilterTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileNameFilter fileNameFilter;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testSavedFileMightExist() {
+
+        assertFalse(fileNameFilter.mightExist("filter-saved.json"));
+
+        fileService.save("filter-saved.json", new ByteArrayResource("This is a test".getBytes()));
+
+        assertTrue(fileNameFilter.mightExist("filter-saved.json"));
+        assertNotNull(fileService.getResourceFile("filter-saved.json", null));
+
+    }
+
+    @Test
+    public void testDeletedFileDoesNotExist() {
+
+        fileService.save("filter-deleted.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.delete("filter-deleted.json");
+
+        assertFalse(fileNameFilter.mightExist("filter-deleted.json"));
+
+    }
+
+    @Test
+    public void testMissingFileIsRejectedWithoutLookup() {
+
+        double rejected = meterRegistry.get("file.storage.name_filter.lookups").tag("result", "rejected").counter().count();
+
+        try {
+            fileService.getResourceFile("filter-missing.json", null);
+            fail();
+        } catch (FileNotFoundException e) {
+            assertEquals(rejected + 1,
+                    meterRegistry.get("file.storage.name_filter.lookups").tag("result", "rejected").counter().count(), 0);
+        }
+
+    }
+
+    @Test
+    public void testRebuildReadsTheDatabase() {
+
+        File file = new File();
+        file.setName("filter-rebuilt.json");
+        fileRepository.save(file);
+
+        assertFalse(fileNameFilter.mightExist("filter-rebuilt.json"));
+
+        fileNameFilter.rebuild();
+
+        assertTrue(fileNameFilter.mightExist("filter-rebuilt.json"));
+        assertTrue(meterRegistry.get("file.storage.name_filter.memory").gauge().value() > 0);
+
+    }
+
+    @Test
+    public void testRemovingAnUnknownNameKeepsTheOthers() {
+
+        // Small enough for every key to share counters with the others
+        CountingBloomFilter filter = new CountingBloomFilter(1, 0.5);
+        filter.add(FingerprintSet.fingerprint("filter-kept.json"));
+
+        int i = 0;
+        while (filter.mightContain(FingerprintSet.fingerprint("filter-unknown" + i + ".json"))) {
+            i++;
+        }
+        filter.remove(FingerprintSet.fingerprint("filter-unknown" + i + ".json"));
+        filter.remove(FingerprintSet.fingerprint("filter-unknown" + i + ".json"));
+
+        assertTrue(filter.mightContain(FingerprintSet.fingerprint("filter-kept.json")));
+
+    }
+
+}
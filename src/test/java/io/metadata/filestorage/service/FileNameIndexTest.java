@@ -0,0 +1,117 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.model.dto.FileDTO;
+import io.metadata.filestorage.model.dto.FileSearchDTO;
+import io.metadata.filestorage.repository.FileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class,
+        FileNameIndex.class})
+public class FileNameIndexTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileNameIndex fileNameIndex;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testSavedAndDeletedFilesAreSearched() {
+
+        save("search-prod-app.yaml");
+        save("search-prod-app.yaml");
+        save("search-prod-db.yaml");
+        save("search-dev-app.yaml");
+
+        FileSearchDTO result = fileNameIndex.search(FileNameIndex.Type.GLOB, "search-*prod*.yaml", null, 10);
+        assertEquals(Arrays.asList("search-prod-app.yaml", "search-prod-db.yaml"), namesOf(result.getFiles()));
+        assertEquals(2, result.getFiles().get(0).getLatestVersion().intValue());
+        assertNull(result.getNextAfter());
+
+        fileService.delete("search-prod-db.yaml");
+
+        assertEquals(Arrays.asList("search-prod-app.yaml"), namesOf(fileNameIndex.search(FileNameIndex.Type.SUBSTRING, "prod-", null, 10).getFiles()));
+
+    }
+
+    @Test
+    public void testIndexIsRebuiltFromTheDatabase() {
+
+        save("rebuilt-a.json");
+        save("rebuilt-b.json");
+        save("rebuilt-c.json");
+
+        fileNameIndex.rebuild();
+
+        FileSearchDTO first = fileNameIndex.search(FileNameIndex.Type.PREFIX, "rebuilt-", null, 2);
+        assertEquals(Arrays.asList("rebuilt-a.json", "rebuilt-b.json"), namesOf(first.getFiles()));
+        assertEquals("rebuilt-b.json", first.getNextAfter());
+
+        FileSearchDTO second = fileNameIndex.search(FileNameIndex.Type.PREFIX, "rebuilt-", first.getNextAfter(), 2);
+        assertEquals(Arrays.asList("rebuilt-c.json"), namesOf(second.getFiles()));
+        assertNull(second.getNextAfter());
+
+    }
+
+    @Test
+    public void testSearchesRunOnTheDatabaseWithoutTheIndex() {
+
+        save("like-100%_done.txt");
+        save("like-1000_done.txt");
+        save("like-other.txt");
+
+        FileNameIndex disabled = new FileNameIndex(fileRepository, transactionManager, false);
+
+        assertEquals(Arrays.asList("like-100%_done.txt"), namesOf(disabled.search(FileNameIndex.Type.SUBSTRING, "%_", null, 10).getFiles()));
+        assertEquals(Arrays.asList("like-100%_done.txt", "like-1000_done.txt"), namesOf(disabled.search(FileNameIndex.Type.GLOB, "like-100?_*", null, 10).getFiles()));
+
+        FileSearchDTO first = disabled.search(FileNameIndex.Type.PREFIX, "like-", null, 2);
+        assertEquals(2, first.getFiles().size());
+        assertEquals(1, disabled.search(FileNameIndex.Type.PREFIX, "like-", first.getNextAfter(), 2).getFiles().size());
+
+    }
+
+    private void save(String fileName) {
+        fileService.save(fileName, new ByteArrayResource("This is a test".getBytes()));
+    }
+
+    private static List<String> namesOf(List<FileDTO> files) {
+        return files.stream().map(FileDTO::getName).collect(Collectors.toList());
+    }
+}
@@ -1,9 +1,16 @@
 package io.metadata.filestorage.service;
 
 import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.FileNotFoundException;
+import io.metadata.filestorage.exception.InvalidOffsetException;
 import io.metadata.filestorage.exception.InvalidPathException;
+import io.metadata.filestorage.exception.InvalidPrefixException;
+import io.metadata.filestorage.exception.InvalidUploadException;
 import io.metadata.filestorage.model.dto.FileDTO;
 import io.metadata.filestorage.model.dto.FileResponseDTO;
+import io.metadata.filestorage.repository.VersionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,20 +20,68 @@ import org.springframework.core.io.Resource;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
-
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(SpringRunner.class)
 @DataJpaTest
-@ContextConfiguration(classes = {FileStorageApplication.class, FileService.class})
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileReclaimer.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
 public class FileServiceTest {
 
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private FileReclaimer fileReclaimer;
+
+    @Autowired
+    private FileSystemStorage storage;
+
+    @Autowired
+    private VersionRepository versionRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private static final MockMultipartFile JSON_MULTIPART_FILE = new MockMultipartFile(
            "file",
            "test1.json",
@@ -48,6 +103,11 @@ public class FileServiceTest {
 
         assertEquals(3, fileDTOS.size());
 
+        List<FileDTO> streamed = new ArrayList<>();
+        fileService.forEachFile(streamed::add);
+
+        assertEquals(fileDTOS.size(), streamed.size());
+
     }
 
     @Test
@@ -187,6 +247,77 @@ public class FileServiceTest {
 
     }
 
+    @Test
+    public void testDeleteReclaimsFilesInBackground() {
+
+        fileService.save(JSON_MULTIPART_FILE);
+
+        fileService.save(JSON_MULTIPART_FILE);
+
+        fileService.delete("test1.json");
+
+        assertTrue(Files.exists(storage.resolve("test1.json", 1)));
+        assertTrue(Files.exists(storage.resolve("test1.json", 2)));
+
+        fileReclaimer.reclaim();
+
+        assertFalse(Files.exists(storage.resolve("test1.json", 1)));
+        assertFalse(Files.exists(storage.resolve("test1.json", 2)));
+
+    }
+
+    @Test
+    public void testSaveAfterDeleteSkipsVersionsWaitingForReclaim() {
+
+        fileService.save(JSON_MULTIPART_FILE);
+
+        fileService.save(JSON_MULTIPART_FILE);
+
+        fileService.delete("test1.json");
+
+        FileResponseDTO fileResponseDTO = fileService.save(JSON_MULTIPART_FILE);
+
+        assertEquals(3, (int) fileResponseDTO.getVersion());
+
+        fileReclaimer.reclaim();
+
+        assertTrue(Files.exists(storage.resolve("test1.json", 3)));
+
+        fileService.delete("test1.json");
+        fileReclaimer.reclaim();
+
+        fileResponseDTO = fileService.save(JSON_MULTIPART_FILE);
+
+        assertEquals(1, (int) fileResponseDTO.getVersion());
+
+    }
+
+    @Test
+    public void testDeleteByPrefix() {
+
+        fileService.save("logs-app1.log", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("logs-app2.log", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("logs_old.log", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("logsXold.log", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+
+        assertEquals(2, fileService.deleteByPrefix("logs-"));
+
+        //Wildcards in the prefix are taken literally
+
+        assertEquals(1, fileService.deleteByPrefix("logs_"));
+
+        List<FileDTO> fileDTOS = fileService.findAll();
+
+        assertEquals(2, fileDTOS.size());
+
+    }
+
+    @Test(expected = InvalidPrefixException.class)
+    public void testDeleteByEmptyPrefix() {
+        fileService.deleteByPrefix(" ");
+    }
+
     @Test
     public void testDeleteVersion() {
 
@@ -205,6 +336,19 @@ public class FileServiceTest {
 
     }
 
+    @Test
+    public void testRolledBackVersionDeleteKeepsTheFile() {
+
+        fileService.save(JSON_MULTIPART_FILE);
+        fileService.save(JSON_MULTIPART_FILE);
+
+        fileService.delete("test1.json", 2);
+        TestTransaction.end();
+
+        assertTrue(Files.exists(storage.resolve("test1.json", 2)));
+
+    }
+
     @Test
     public void testGetResourceFile() {
 
@@ -217,4 +361,303 @@ public class FileServiceTest {
 
     }
 
+    @Test
+    public void testSaveRecordsPhaseTimers() {
+
+        String[] phases = {"version_lookup", "metadata_lookup", "write", "metadata_save"};
+        long[] countsBefore = new long[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            countsBefore[i] = meterRegistry.get("file.storage.operation").tag("operation", "save").tag("phase", phases[i]).timer().count();
+        }
+
+        fileService.save(JSON_MULTIPART_FILE);
+
+        for (int i = 0; i < phases.length; i++) {
+            assertEquals(countsBefore[i] + 1, meterRegistry.get("file.storage.operation").tag("operation", "save").tag("phase", phases[i]).timer().count());
+        }
+
+    }
+
+
+    @Test
+    public void testAppend() throws Exception {
+
+        fileService.save("append.log", new ByteArrayResource("line 1\n".getBytes()));
+
+        FileResponseDTO response = fileService.append("append.log", null, 7, new ByteArrayResource("line 2\n".getBytes()));
+
+        assertEquals(1, (int) response.getVersion());
+        assertEquals(14, (long) response.getSize());
+
+        // A retried append is not written twice, and an overlapping one only writes what is missing
+        fileService.append("append.log", 1, 7, new ByteArrayResource("line 2\n".getBytes()));
+        response = fileService.append("append.log", 1, 7, new ByteArrayResource("line 2\nline 3\n".getBytes()));
+
+        assertEquals(21, (long) response.getSize());
+        assertEquals("line 1\nline 2\nline 3\n", new String(Files.readAllBytes(storage.resolve("append.log", 1))));
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        assertEquals(StoredContent.toHex(digest.digest("line 1\nline 2\nline 3\n".getBytes())),
+                versionRepository.findByFileNameAndVersionNumber("append.log", 1).getChecksum());
+
+    }
+
+    @Test
+    public void testAppendAfterReplacingWithTheSameSize() throws Exception {
+
+        fileService.save("append-replaced.log", new ByteArrayResource("line 1\n".getBytes()));
+        fileService.append("append-replaced.log", 1, 7, new ByteArrayResource("line 2\n".getBytes()));
+        fileService.updateVersion("append-replaced.log", new ByteArrayResource("LINE 1\nLINE 2\n".getBytes()), 1);
+        fileService.append("append-replaced.log", 1, 14, new ByteArrayResource("line 3\n".getBytes()));
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        assertEquals(StoredContent.toHex(digest.digest("LINE 1\nLINE 2\nline 3\n".getBytes())),
+                versionRepository.findByFileNameAndVersionNumber("append-replaced.log", 1).getChecksum());
+
+    }
+
+    @Test
+    public void testUpdateOfAnUnknownVersionWritesNothing() throws IOException {
+
+        try {
+            fileService.updateVersion("update-unknown.txt", new ByteArrayResource("content".getBytes()), 1);
+            fail("The version does not exist");
+        } catch (FileNotFoundException e) {
+            assertFalse(Files.exists(storage.resolve("update-unknown.txt", 1)));
+        }
+        try (Stream<Path> files = Files.list(storage.getDatabasePath())) {
+            assertTrue(files.noneMatch(path -> path.getFileName().toString().endsWith(".tmp")));
+        }
+
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testSlowUpdateDoesNotHoldTheVersionLock() throws Exception {
+
+        fileService.save("update-slow.log", new ByteArrayResource("line 1\n".getBytes()));
+        CountDownLatch uploading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MockMultipartFile slowFile = new MockMultipartFile("file", "update-slow.log", "text/plain", new byte[0]) {
+            @Override
+            public InputStream getInputStream() {
+                return new SequenceInputStream(new ByteArrayInputStream("LINE 1\n".getBytes()), new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        uploading.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        return -1;
+                    }
+                });
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<FileResponseDTO> update = executor.submit(() -> fileService.updateVersion(slowFile, 1));
+            assertTrue(uploading.await(10, TimeUnit.SECONDS));
+
+            // Appending to the version being replaced is not held back by its upload
+            CompletableFuture<FileResponseDTO> append = CompletableFuture.supplyAsync(
+                    () -> fileService.append("update-slow.log", 1, 7, new ByteArrayResource("line 2\n".getBytes())));
+            assertEquals(14, (long) append.get(10, TimeUnit.SECONDS).getSize());
+
+            release.countDown();
+            update.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals("LINE 1\n", new String(Files.readAllBytes(storage.resolve("update-slow.log", 1))));
+        assertEquals(7, (long) versionRepository.findByFileNameAndVersionNumber("update-slow.log", 1).getSize());
+        fileService.delete("update-slow.log");
+
+    }
+
+    @Test(expected = InvalidOffsetException.class)
+    public void testAppendPastTheEnd() {
+
+        fileService.save("append-gap.log", new ByteArrayResource("line 1\n".getBytes()));
+
+        fileService.append("append-gap.log", 1, 8, new ByteArrayResource("line 2\n".getBytes()));
+
+    }
+
+    @Test
+    public void testTail() throws Exception {
+
+        fileService.save("tail.log", new ByteArrayResource("line 1\nline 2\n".getBytes()));
+        Path path = storage.resolve("tail.log", 1);
+
+        ByteArrayOutputStream fromOffset = new ByteArrayOutputStream();
+        fileService.tail(path, 7, false, 0, 0, fromOffset);
+        assertEquals("line 2\n", fromOffset.toString());
+
+        ByteArrayOutputStream fromEnd = new ByteArrayOutputStream();
+        fileService.tail(path, -2, false, 0, 0, fromEnd);
+        assertEquals("2\n", fromEnd.toString());
+
+    }
+
+    @Test
+    public void testTailFollowsAppends() throws Exception {
+
+        fileService.save("follow.log", new ByteArrayResource("line 1\n".getBytes()));
+        Path path = storage.resolve("follow.log", 1);
+
+        ByteArrayOutputStream followed = new ByteArrayOutputStream();
+        Thread follower = new Thread(() -> {
+            try {
+                fileService.tail(path, 0, true, 500, 10000, followed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        follower.start();
+
+        Thread.sleep(100);
+        fileService.append("follow.log", 1, 7, new ByteArrayResource("line 2\n".getBytes()));
+        follower.join(5000);
+
+        assertFalse(follower.isAlive());
+        assertEquals("line 1\nline 2\n", followed.toString());
+
+    }
+
+    @Test
+    public void testTailFollowsAppendsToASharedVersion() throws Exception {
+
+        fileService.save("follow-shared.log", new ByteArrayResource("line 1\n".getBytes()));
+        fileService.copy("follow-shared.log", 1, "follow-copy.log");
+        Path path = storage.resolve("follow-shared.log", 1);
+
+        ByteArrayOutputStream followed = new ByteArrayOutputStream();
+        Thread follower = new Thread(() -> {
+            try {
+                fileService.tail(path, 0, true, 500, 10000, followed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        follower.start();
+
+        Thread.sleep(100);
+        // Unshares the version first, the data goes to a new file moved over the followed one
+        fileService.append("follow-shared.log", 1, 7, new ByteArrayResource("line 2\n".getBytes()));
+        follower.join(5000);
+
+        assertFalse(follower.isAlive());
+        assertEquals("line 1\nline 2\n", followed.toString());
+        assertEquals("line 1\n", new String(Files.readAllBytes(storage.resolve("follow-copy.log", 1))));
+
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+
+        fileService.save("copy-source.json", new ByteArrayResource("This is a test".getBytes()));
+
+        FileResponseDTO response = fileService.copy("copy-source.json", null, "copy-target.json");
+
+        assertEquals("copy-target.json", response.getName());
+        assertEquals(1, (int) response.getVersion());
+        assertEquals(14, (long) response.getSize());
+        assertEquals("This is a test", new String(Files.readAllBytes(storage.resolve("copy-target.json", 1))));
+        assertEquals(versionRepository.findByFileNameAndVersionNumber("copy-source.json", 1).getChecksum(),
+                versionRepository.findByFileNameAndVersionNumber("copy-target.json", 1).getChecksum());
+
+    }
+
+    @Test
+    public void testCopyAsNewVersion() {
+
+        fileService.save("clone.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("clone.json", new ByteArrayResource("This is another test".getBytes()));
+
+        FileResponseDTO response = fileService.copy("clone.json", 1, null);
+
+        assertEquals(3, (int) response.getVersion());
+        assertEquals(14, (long) response.getSize());
+
+    }
+
+    @Test
+    public void testAppendAfterCopyLeavesTheCopyUntouched() throws Exception {
+
+        fileService.save("shared.log", new ByteArrayResource("line 1\n".getBytes()));
+        fileService.copy("shared.log", 1, "shared-copy.log");
+
+        fileService.append("shared.log", 1, 7, new ByteArrayResource("line 2\n".getBytes()));
+
+        assertEquals("line 1\nline 2\n", new String(Files.readAllBytes(storage.resolve("shared.log", 1))));
+        assertEquals("line 1\n", new String(Files.readAllBytes(storage.resolve("shared-copy.log", 1))));
+
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testCopyMissingVersion() {
+
+        fileService.save("copy-missing.json", new ByteArrayResource("This is a test".getBytes()));
+
+        fileService.copy("copy-missing.json", 2, "copy-missing-target.json");
+
+    }
+
+    @Test
+    public void testSaveByChecksumSharesStoredContent() throws Exception {
+
+        byte[] content = "artifact 1.0".getBytes();
+        String checksum = StoredContent.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+        fileService.save("checksum-build-1.jar", new ByteArrayResource(content));
+
+        FileResponseDTO response = fileService.saveByChecksum("checksum-build-2.jar", checksum.toUpperCase(), content.length);
+
+        assertEquals("checksum-build-2.jar", response.getName());
+        assertEquals(1, (int) response.getVersion());
+        assertEquals(content.length, (long) response.getSize());
+        assertEquals("artifact 1.0", new String(Files.readAllBytes(storage.resolve("checksum-build-2.jar", 1))));
+        assertEquals(checksum, versionRepository.findByFileNameAndVersionNumber("checksum-build-2.jar", 1).getChecksum());
+
+    }
+
+    @Test
+    public void testSaveByChecksumOfUnknownContent() throws Exception {
+
+        byte[] content = "artifact 2.0".getBytes();
+        String checksum = StoredContent.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+        fileService.save("checksum-other.jar", new ByteArrayResource(content));
+
+        assertNull(fileService.saveByChecksum("checksum-missing.jar", checksum, content.length + 1));
+        assertNull(fileService.saveByChecksum("checksum-missing.jar", "0000000000000000000000000000000000000000000000000000000000000000", content.length));
+        assertNull(versionRepository.findLatestVersionNumber("checksum-missing.jar"));
+
+    }
+
+    @Test
+    public void testSaveByChecksumOfReplacedContent() throws Exception {
+
+        byte[] content = "artifact 3.0".getBytes();
+        String checksum = StoredContent.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+        fileService.save("checksum-replaced.jar", new ByteArrayResource(content));
+        // Same size as the recorded content, as left by a replacement saved after the lookup
+        Files.write(storage.resolve("checksum-replaced.jar", 1), "artifact 3.1".getBytes());
+
+        assertNull(fileService.saveByChecksum("checksum-copy.jar", checksum, content.length));
+        assertNull(versionRepository.findLatestVersionNumber("checksum-copy.jar"));
+        assertFalse(Files.exists(storage.resolve("checksum-copy.jar", 1)));
+
+    }
+
+    @Test(expected = InvalidUploadException.class)
+    public void testSaveByInvalidChecksum() {
+
+        fileService.saveByChecksum("checksum-invalid.jar", "not a checksum", 1);
+
+    }
+
 }
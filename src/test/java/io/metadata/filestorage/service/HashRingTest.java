@@ -0,0 +1,61 @@
+package io.metadata.filestorage.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HashRingTest {
+
+    private static final int FILES = 20000;
+
+    @Test
+    public void testNamesAreSpreadEvenly() {
+
+        HashRing ring = new HashRing(Arrays.asList("http://a", "http://b", "http://c", "http://d"), 128);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < FILES; i++) {
+            counts.merge(ring.ownerOf("file-" + i + ".txt"), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("Unbalanced ring: " + counts, Math.abs(count - FILES / 4) < FILES / 4 * 0.2);
+        }
+
+    }
+
+    @Test
+    public void testAddingANodeOnlyMovesItsShare() {
+
+        HashRing before = new HashRing(Arrays.asList("http://a", "http://b", "http://c"), 128);
+        HashRing after = new HashRing(Arrays.asList("http://a", "http://b", "http://c", "http://d"), 128);
+
+        int moved = 0;
+        for (int i = 0; i < FILES; i++) {
+            String name = "file-" + i + ".txt";
+            String owner = after.ownerOf(name);
+            if (!owner.equals(before.ownerOf(name))) {
+                // Names only move to the new node, never between the nodes that were already there
+                assertEquals("http://d", owner);
+                moved++;
+            }
+        }
+
+        assertTrue("Moved " + moved, moved > FILES / 4 * 0.8 && moved < FILES / 4 * 1.2);
+
+    }
+
+    @Test
+    public void testEmptyRing() {
+
+        HashRing ring = new HashRing(Arrays.asList(), 128);
+
+        assertNull(ring.ownerOf("test.json"));
+
+    }
+}
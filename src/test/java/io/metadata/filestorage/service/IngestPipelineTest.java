@@ -0,0 +1,197 @@
+package io.metadata.filestorage.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class IngestPipelineTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ingest");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Test
+    public void testContentIsHashedAndWrittenInStages() throws IOException {
+
+        IngestPipeline pipeline = new IngestPipeline(4096, 8, 2, 4);
+        byte[] content = randomContent(1024 * 1024 + 17);
+        Path destination = directory.resolve("1file.bin");
+
+        StoredContent stored = pipeline.write(new ByteArrayInputStream(content), destination);
+
+        assertEquals(content.length, stored.getSize());
+        assertEquals(checksumOf(content), stored.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(destination));
+        assertEquals(8, pipeline.availableBuffers());
+        pipeline.shutdown();
+
+    }
+
+    @Test
+    public void testContentIsWrittenByTheRequestThreadWithoutStageThreads() throws IOException {
+
+        // A single thread takes the hashing stage, the writing stage is rejected and the copy goes on serially
+        IngestPipeline pipeline = new IngestPipeline(4096, 2, 2, 1);
+        byte[] content = randomContent(100 * 1024);
+        Path destination = directory.resolve("1file.bin");
+
+        StoredContent stored = pipeline.write(new ByteArrayInputStream(content), destination);
+        assertEquals(checksumOf(content), stored.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(destination));
+
+        StoredContent empty = pipeline.write(new ByteArrayInputStream(new byte[0]), destination);
+        assertEquals(0, empty.getSize());
+        assertEquals(checksumOf(new byte[0]), empty.getChecksum());
+        assertEquals(0, Files.size(destination));
+        assertEquals(2, pipeline.availableBuffers());
+        pipeline.shutdown();
+
+    }
+
+    @Test
+    public void testFailedReadDeletesTheFile() {
+
+        IngestPipeline pipeline = new IngestPipeline(4096, 4, 2, 4);
+        Path destination = directory.resolve("1file.bin");
+        InputStream failing = new ByteArrayInputStream(randomContent(64 * 1024)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (available() < 32 * 1024) {
+                    throw new IllegalStateException("Connection reset");
+                }
+                return super.read(b, off, len);
+            }
+        };
+
+        try {
+            pipeline.write(failing, destination);
+            fail();
+        } catch (IllegalStateException | IOException e) {
+            // The upload is gone
+        }
+
+        assertFalse(Files.exists(destination));
+        assertEquals(0, directory.toFile().list().length);
+        assertEquals(4, pipeline.availableBuffers());
+        pipeline.shutdown();
+
+    }
+
+    @Test
+    public void testFailedReplaceKeepsTheCurrentContent() throws IOException {
+
+        IngestPipeline pipeline = new IngestPipeline(4096, 4, 2, 4);
+        Path destination = directory.resolve("1file.bin");
+        byte[] original = randomContent(10 * 1024);
+        pipeline.write(new ByteArrayInputStream(original), destination);
+
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("Connection reset");
+            }
+        };
+        try {
+            pipeline.write(failing, destination);
+            fail();
+        } catch (IllegalStateException | IOException e) {
+            // The replacement is gone
+        }
+
+        assertArrayEquals(original, Files.readAllBytes(destination));
+        assertEquals(1, directory.toFile().list().length);
+        pipeline.shutdown();
+
+    }
+
+    @Test(timeout = 10000)
+    public void testUploadDoesNotWaitForBuffersHeldBySlowUploads() throws Exception {
+
+        IngestPipeline pipeline = new IngestPipeline(4096, 1, 2, 4);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slow = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        };
+        Thread slowUpload = new Thread(() -> {
+            try {
+                pipeline.write(slow, directory.resolve("1slow.bin"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        slowUpload.start();
+        reading.await();
+        assertEquals(0, pipeline.availableBuffers());
+
+        byte[] content = randomContent(100 * 1024);
+        StoredContent stored = pipeline.write(new ByteArrayInputStream(content), directory.resolve("1file.bin"));
+
+        assertEquals(checksumOf(content), stored.getChecksum());
+        assertArrayEquals(content, Files.readAllBytes(directory.resolve("1file.bin")));
+        release.countDown();
+        slowUpload.join();
+        assertEquals(1, pipeline.availableBuffers());
+        pipeline.shutdown();
+
+    }
+
+    @Test
+    public void testReplacingKeepsTheContentOfLinkedVersions() throws IOException {
+
+        IngestPipeline pipeline = new IngestPipeline(4096, 4, 2, 4);
+        Path destination = directory.resolve("2file.bin");
+        Path linked = directory.resolve("1file.bin");
+        byte[] original = randomContent(10 * 1024);
+        byte[] replacement = randomContent(20 * 1024);
+
+        pipeline.write(new ByteArrayInputStream(original), destination);
+        Files.createLink(linked, destination);
+        pipeline.write(new ByteArrayInputStream(replacement), destination);
+
+        assertArrayEquals(original, Files.readAllBytes(linked));
+        assertArrayEquals(replacement, Files.readAllBytes(destination));
+        pipeline.shutdown();
+
+    }
+
+    private static byte[] randomContent(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static String checksumOf(byte[] content) {
+        return StoredContent.toHex(StoredContent.newDigest().digest(content));
+    }
+}
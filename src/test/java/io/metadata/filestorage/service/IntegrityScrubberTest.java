@@ -0,0 +1,160 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.ScrubStatusDTO;
+import io.metadata.filestorage.repository.VersionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@TestPropertySource(properties = {
+        "file.scrubber.mb-per-second=0",
+        "file.scrubber.yield-millis=10",
+        "file.scrubber.max-yield-millis=200"})
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        IntegrityScrubber.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class IntegrityScrubberTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private IntegrityScrubber integrityScrubber;
+
+    @Autowired
+    private VersionRepository versionRepository;
+
+    @Autowired
+    private FileSystemStorage storage;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private FileStorageMetrics metrics;
+
+    private Version findVersion(String fileName, Integer version) {
+        entityManager.flush();
+        entityManager.clear();
+        return versionRepository.findByFileNameAndVersionNumber(fileName, version);
+    }
+
+    @Test
+    public void testSaveRecordsChecksum() {
+
+        fileService.save("scrub-save.json", new ByteArrayResource("This is a test".getBytes()));
+
+        Version version = findVersion("scrub-save.json", 1);
+
+        assertEquals("c7be1ed902fb8dd4d48997c6452f5d7e509fbcdbe2808b16bcf4edce4c07d14e", version.getChecksum());
+        assertEquals(14, (long) version.getSize());
+        assertFalse(version.isCorrupted());
+
+    }
+
+    @Test
+    public void testUpdateRecordsChecksum() {
+
+        fileService.save("scrub-update.json", new ByteArrayResource("This is a test".getBytes()));
+        String checksum = findVersion("scrub-update.json", 1).getChecksum();
+
+        fileService.updateVersion("scrub-update.json", new ByteArrayResource("This is another test".getBytes()), 1);
+
+        Version version = findVersion("scrub-update.json", 1);
+        assertNotEquals(checksum, version.getChecksum());
+        assertEquals(20, (long) version.getSize());
+
+    }
+
+    @Test
+    public void testScrubFlagsCorruptedVersion() throws Exception {
+
+        fileService.save("scrub-ok.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("scrub-corrupt.json", new ByteArrayResource("This is a test".getBytes()));
+        Files.write(storage.resolve("scrub-corrupt.json", 1), "This is a tesT".getBytes());
+
+        ScrubStatusDTO status = integrityScrubber.scrubAll();
+
+        assertFalse(status.isRunning());
+        assertNotNull(status.getPassCompleted());
+        assertEquals(1, status.getMismatches());
+        assertEquals(1, status.getCorruptedVersions());
+        assertTrue(findVersion("scrub-corrupt.json", 1).isCorrupted());
+        assertFalse(findVersion("scrub-ok.json", 1).isCorrupted());
+        assertNotNull(findVersion("scrub-ok.json", 1).getVerificationDate());
+
+    }
+
+    @Test(timeout = 10000)
+    public void testScrubDoesNotWaitForeverForTransfers() throws Exception {
+
+        fileService.save("scrub-busy.json", new ByteArrayResource("This is a test".getBytes()));
+
+        metrics.uploadStarted();
+        try {
+            ScrubStatusDTO status = integrityScrubber.scrubAll();
+
+            assertNotNull(status.getPassCompleted());
+            assertNotNull(findVersion("scrub-busy.json", 1).getVerificationDate());
+        } finally {
+            metrics.uploadFinished(0);
+        }
+
+    }
+
+    @Test
+    public void testScrubFlagsMissingFile() throws Exception {
+
+        fileService.save("scrub-missing.json", new ByteArrayResource("This is a test".getBytes()));
+        Files.delete(storage.resolve("scrub-missing.json", 1));
+
+        ScrubStatusDTO status = integrityScrubber.scrubAll();
+
+        assertEquals(1, status.getUnreadable());
+        assertTrue(findVersion("scrub-missing.json", 1).isCorrupted());
+
+    }
+
+    @Test
+    public void testScrubRecordsMissingChecksum() throws Exception {
+
+        fileService.save("scrub-legacy.json", new ByteArrayResource("This is a test".getBytes()));
+        Version legacy = findVersion("scrub-legacy.json", 1);
+        legacy.setChecksum(null);
+        legacy.setSize(null);
+        versionRepository.save(legacy);
+
+        integrityScrubber.scrubAll();
+
+        Version version = findVersion("scrub-legacy.json", 1);
+        assertEquals("c7be1ed902fb8dd4d48997c6452f5d7e509fbcdbe2808b16bcf4edce4c07d14e", version.getChecksum());
+        assertEquals(14, (long) version.getSize());
+        assertFalse(version.isCorrupted());
+
+    }
+
+}
@@ -0,0 +1,84 @@
+package io.metadata.filestorage.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class MetadataSnapshotterTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("metadata-snapshot-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private JdbcTemplate open(Path databaseDirectory) {
+        return new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:file:" + databaseDirectory.resolve("metadata") + ";WRITE_DELAY=0", "sa", ""));
+    }
+
+    @Test
+    public void testCommittedRowsSurviveACrash() {
+
+        JdbcTemplate database = open(directory);
+        database.execute("create table file (id bigint primary key, name varchar(255))");
+        database.update("insert into file values (1, 'test.json')");
+
+        // Closes the store without writing anything else, the next open replays the log
+        database.execute("shutdown immediately");
+
+        assertEquals("test.json", open(directory).queryForObject("select name from file where id = 1", String.class));
+
+    }
+
+    @Test
+    public void testSnapshotsAreRestorableAndRotated() throws IOException {
+
+        JdbcTemplate database = open(directory.resolve("live"));
+        database.execute("create table file (id bigint primary key, name varchar(255))");
+        database.update("insert into file values (1, 'test.json')");
+
+        MetadataSnapshotter snapshotter = new MetadataSnapshotter(database, true, directory.resolve("snapshots").toString(), 2);
+        Path first = snapshotter.snapshot();
+        database.update("insert into file values (2, 'test2.json')");
+        Path second = snapshotter.snapshot();
+        Path third = snapshotter.snapshot();
+        database.execute("shutdown");
+
+        List<Path> snapshots = snapshotter.list();
+        assertEquals(2, snapshots.size());
+        assertFalse(Files.exists(first));
+        assertTrue(snapshots.contains(third));
+
+        Path restored = Files.createDirectories(directory.resolve("restored"));
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(second))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                Files.copy(zip, restored.resolve(entry.getName()));
+            }
+        }
+
+        assertEquals(2, (int) open(restored).queryForObject("select count(*) from file", Integer.class));
+
+    }
+}
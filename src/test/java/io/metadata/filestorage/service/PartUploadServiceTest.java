@@ -0,0 +1,183 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.InvalidUploadException;
+import io.metadata.filestorage.exception.QuotaExceededException;
+import io.metadata.filestorage.model.dto.FileResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@TestPropertySource(properties = {
+        "file.parts.max-part-size=32",
+        "file.parts.max-upload-size=48"})
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class,
+        PartUploadService.class})
+public class PartUploadServiceTest {
+
+    @Autowired
+    private PartUploadService partUploadService;
+
+    @Autowired
+    private FileSystemStorage storage;
+
+    @Autowired
+    private UsageProperties usageProperties;
+
+    @Autowired
+    private StorageUsage storageUsage;
+
+    @Test
+    public void testPartsAreStoredInOrder() throws IOException {
+
+        String uploadId = UUID.randomUUID().toString();
+        writePart(uploadId, 2, "third");
+        writePart(uploadId, 0, "first ");
+        writePart(uploadId, 1, "wrong ");
+        writePart(uploadId, 1, "second ");
+
+        FileResponseDTO response = partUploadService.complete("parts.txt", uploadId, 3);
+
+        assertEquals("parts.txt", response.getName());
+        assertEquals(1, (int) response.getVersion());
+        assertEquals(18, (long) response.getSize());
+        assertEquals("first second third", new String(Files.readAllBytes(storage.resolve("parts.txt", 1)), StandardCharsets.UTF_8));
+
+    }
+
+    @Test
+    public void testCompletingAgainAnswersTheSameVersion() {
+
+        String uploadId = UUID.randomUUID().toString();
+        writePart(uploadId, 0, "content");
+
+        FileResponseDTO first = partUploadService.complete("repeated parts.txt", uploadId, 1);
+        FileResponseDTO second = partUploadService.complete("repeated parts.txt", uploadId, 1);
+
+        assertEquals("repeated parts.txt", second.getName());
+        assertEquals(first.getVersion(), second.getVersion());
+        assertEquals(first.getSize(), second.getSize());
+        assertFalse(Files.exists(storage.resolve("repeated parts.txt", first.getVersion() + 1)));
+
+    }
+
+    @Test
+    public void testMissingPartsAndInvalidIdsAreRejected() {
+
+        String uploadId = UUID.randomUUID().toString();
+        writePart(uploadId, 0, "first");
+        writePart(uploadId, 2, "third");
+
+        try {
+            partUploadService.complete("missing.txt", uploadId, 3);
+            fail();
+        } catch (InvalidUploadException e) {
+            assertEquals("Part 1 of upload " + uploadId + " was not received", e.getMessage());
+        }
+
+        try {
+            writePart("../escape", 0, "content");
+            fail();
+        } catch (InvalidUploadException e) {
+            // Ids are a single path segment
+        }
+
+    }
+
+    @Test
+    public void testPartsAndUploadsOverTheirMaximumAreRejected() {
+
+        String uploadId = UUID.randomUUID().toString();
+
+        try {
+            writePart("parts.txt", uploadId, 0, 33, new byte[33]);
+            fail();
+        } catch (InvalidUploadException e) {
+            assertEquals("A part has at most 32 bytes", e.getMessage());
+        }
+
+        // Without a length the body is cut off at the limit
+        try {
+            writePart("parts.txt", uploadId, 0, -1, new byte[33]);
+            fail();
+        } catch (InvalidUploadException e) {
+            assertEquals("A part has at most 32 bytes", e.getMessage());
+        }
+
+        writePart("parts.txt", uploadId, 0, 30, new byte[30]);
+        try {
+            writePart("parts.txt", uploadId, 1, -1, new byte[30]);
+            fail();
+        } catch (InvalidUploadException e) {
+            assertEquals("An upload has at most 48 bytes", e.getMessage());
+        }
+
+        // Sending a part again replaces it, so it is not counted twice
+        writePart("parts.txt", uploadId, 0, 30, new byte[30]);
+        writePart("parts.txt", uploadId, 1, 18, new byte[18]);
+        assertEquals(48, (long) partUploadService.complete("parts.txt", uploadId, 2).getSize());
+
+    }
+
+    @Test
+    public void testPartsOverTheQuotaAreRejected() {
+
+        UsageProperties.Namespace namespace = new UsageProperties.Namespace();
+        namespace.setPrefix("quota-");
+        namespace.setMaxBytes(40L);
+        usageProperties.setNamespaces(Collections.singletonList(namespace));
+        storageUsage.rebuild();
+
+        try {
+            String uploadId = UUID.randomUUID().toString();
+            writePart("quota-parts.txt", uploadId, 0, 30, new byte[30]);
+
+            try {
+                writePart("quota-parts.txt", uploadId, 1, 15, new byte[15]);
+                fail();
+            } catch (QuotaExceededException e) {
+                assertEquals("Storing 45 more bytes in namespace 'quota-' exceeds its quota, 0 of 40 bytes are used", e.getMessage());
+            }
+        } finally {
+            usageProperties.setNamespaces(new ArrayList<>());
+            storageUsage.rebuild();
+        }
+
+    }
+
+    private void writePart(String uploadId, int part, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        writePart("parts.txt", uploadId, part, bytes.length, bytes);
+    }
+
+    private void writePart(String fileName, String uploadId, int part, long contentLength, byte[] content) {
+        partUploadService.writePart(fileName, uploadId, part, contentLength, new ByteArrayInputStream(content));
+    }
+}
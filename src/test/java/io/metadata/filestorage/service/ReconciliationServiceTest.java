@@ -0,0 +1,218 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.model.dto.ReconciliationReportDTO;
+import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doAnswer;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@TestPropertySource(properties = {
+        "file.database.path=database/reconciliation",
+        "file.reconciler.grace-period=0"})
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        ReconciliationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class ReconciliationServiceTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private VersionRepository versionRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @SpyBean
+    private ReplicationService replicationService;
+
+    @Autowired
+    private FileSystemStorage storage;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Before
+    public void setUp() throws IOException {
+        try (Stream<Path> files = Files.list(storage.getDatabasePath())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void writeOrphan(String fileName) throws IOException {
+        Path orphan = Files.write(storage.resolve(fileName, 1), "This is a test".getBytes());
+        Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+    }
+
+    @Test
+    public void testFingerprintSet() {
+
+        FingerprintSet set = new FingerprintSet(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(set.add(FingerprintSet.fingerprint(i + "test.json")));
+        }
+        assertFalse(set.add(FingerprintSet.fingerprint("7test.json")));
+
+        assertTrue(set.markSeen(FingerprintSet.fingerprint("7test.json")));
+        assertFalse(set.markSeen(FingerprintSet.fingerprint("100000test.json")));
+
+        assertTrue(set.isSeen(FingerprintSet.fingerprint("7test.json")));
+        assertFalse(set.isSeen(FingerprintSet.fingerprint("8test.json")));
+
+    }
+
+    @Test
+    public void testReconcileConsistentStorage() {
+
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+
+        ReconciliationReportDTO report = reconciliationService.reconcile(false);
+
+        assertEquals(2, report.getScannedFiles());
+        assertEquals(2, report.getScannedVersions());
+        assertEquals(0, report.getOrphanedFiles());
+        assertEquals(0, report.getMissingVersions());
+
+    }
+
+    @Test
+    public void testReconcileReportsWithoutRepairing() throws IOException {
+
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+        Files.delete(storage.resolve("test.json", 1));
+        writeOrphan("orphan.json");
+
+        ReconciliationReportDTO report = reconciliationService.reconcile(false);
+
+        assertFalse(report.isRepaired());
+        assertEquals(1, report.getOrphanedFiles());
+        assertEquals("1orphan.json", report.getOrphanedFileSamples().get(0));
+        assertEquals(1, report.getMissingVersions());
+        assertEquals("1test.json", report.getMissingVersionSamples().get(0));
+        assertTrue(Files.exists(storage.resolve("orphan.json", 1)));
+        assertEquals(2, versionRepository.count());
+
+    }
+
+    @Test
+    public void testReconcileRepairs() throws IOException {
+
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.save("gone.json", new ByteArrayResource("This is a test".getBytes()));
+        Files.delete(storage.resolve("test.json", 1));
+        Files.delete(storage.resolve("gone.json", 1));
+        writeOrphan("orphan.json");
+
+        ReconciliationReportDTO report = reconciliationService.reconcile(true);
+        entityManager.clear();
+
+        assertTrue(report.isRepaired());
+        assertEquals(1, report.getOrphanedFiles());
+        assertEquals(2, report.getMissingVersions());
+        assertFalse(Files.exists(storage.resolve("orphan.json", 1)));
+        assertEquals(1, versionRepository.count());
+        assertEquals(1, fileService.findAll().size());
+        assertEquals(2, (int) fileService.findAll().get(0).getLatestVersion());
+
+    }
+
+    @Test
+    public void testReconcileKeepsFilesWaitingForReclaim() {
+
+        fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+        fileService.delete("test.json");
+
+        ReconciliationReportDTO report = reconciliationService.reconcile(true);
+
+        assertEquals(0, report.getOrphanedFiles());
+        assertTrue(Files.exists(storage.resolve("test.json", 1)));
+
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testRepairKeepsACopyLinkedBeforeItsRecord() throws Exception {
+
+        CountDownLatch linked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            linked.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(replicationService).replicate("copy.json", 1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            fileService.save("source.json", new ByteArrayResource("This is a test".getBytes()));
+            Files.setLastModifiedTime(storage.resolve("source.json", 1), FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+
+            Future<?> copy = executor.submit(() -> fileService.copy("source.json", 1, "copy.json"));
+            linked.await();
+
+            // The link has the old modification time of the source and no record yet
+            ReconciliationReportDTO report = reconciliationService.reconcile(true);
+
+            assertEquals(0, report.getOrphanedFiles());
+            assertTrue(Files.exists(storage.resolve("copy.json", 1)));
+
+            release.countDown();
+            copy.get();
+
+            assertNotNull(versionRepository.findByFileNameAndVersionNumber("copy.json", 1));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            versionRepository.deleteAll();
+            fileRepository.deleteAll();
+        }
+
+    }
+
+}
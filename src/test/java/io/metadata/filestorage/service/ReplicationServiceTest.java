@@ -0,0 +1,153 @@
+package io.metadata.filestorage.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.metadata.filestorage.exception.ReplicationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ReplicationServiceTest {
+
+    private final FileSystemStorage storage = new FileSystemStorage();
+
+    private final FileStorageMetrics metrics = new FileStorageMetrics(new SimpleMeterRegistry());
+
+    private final List<HttpServer> peers = new ArrayList<>();
+
+    private final Map<String, byte[]> received = new ConcurrentHashMap<>();
+
+    private Path databasePath;
+
+    @Before
+    public void setUp() throws IOException {
+        databasePath = Files.createTempDirectory("replication");
+        ReflectionTestUtils.setField(storage, "fileDatabasePath", databasePath.toString());
+        storage.init();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        peers.forEach(peer -> peer.stop(0));
+        try (Stream<Path> paths = Files.list(databasePath)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(databasePath);
+    }
+
+    /**
+     * Peer that keeps the replicas in memory, or fails every request.
+     */
+    private String startPeer(boolean failing) throws IOException {
+        HttpServer peer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        peer.createContext("/files/replicas/", exchange -> {
+            String key = peer.getAddress().getPort() + exchange.getRequestURI().getPath();
+            if (failing) {
+                exchange.sendResponseHeaders(500, -1);
+            } else if (!"secret".equals(exchange.getRequestHeaders().getFirst(ReplicationService.TOKEN_HEADER))) {
+                exchange.sendResponseHeaders(403, -1);
+            } else if ("PUT".equals(exchange.getRequestMethod())) {
+                received.put(key, exchange.getRequestBody().readAllBytes());
+                exchange.sendResponseHeaders(204, -1);
+            } else if (received.containsKey(key)) {
+                byte[] content = received.get(key);
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(content);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        peer.start();
+        peers.add(peer);
+        return "http://localhost:" + peer.getAddress().getPort();
+    }
+
+    private ReplicationService replicationService(int writeQuorum, String... peerUrls) {
+        return new ReplicationService(storage, metrics, Arrays.asList(peerUrls), writeQuorum, 5000, "secret");
+    }
+
+    @Test
+    public void testReplicateToQuorum() throws IOException {
+
+        String peer = startPeer(false);
+        Files.write(storage.resolve("replicated.json", 1), "This is a test".getBytes());
+
+        replicationService(2, peer, startPeer(true)).replicate("replicated.json", 1);
+
+        String key = peer.substring(peer.lastIndexOf(':') + 1) + "/files/replicas/1/replicated.json";
+        assertArrayEquals("This is a test".getBytes(), received.get(key));
+
+    }
+
+    @Test(expected = ReplicationException.class)
+    public void testReplicateWithoutQuorum() throws IOException {
+
+        Files.write(storage.resolve("unreplicated.json", 1), "This is a test".getBytes());
+
+        replicationService(3, startPeer(false), startPeer(true)).replicate("unreplicated.json", 1);
+
+    }
+
+    @Test
+    public void testReplicateInTheBackground() throws IOException {
+
+        Files.write(storage.resolve("background.json", 1), "This is a test".getBytes());
+
+        replicationService(1, startPeer(true)).replicate("background.json", 1);
+
+    }
+
+    @Test
+    public void testFetchMissingVersion() throws IOException {
+
+        String failingPeer = startPeer(true);
+        String peer = startPeer(false);
+        ReplicationService replicationService = replicationService(2, failingPeer, peer);
+        Files.write(storage.resolve("fetched.json", 2), "This is a test".getBytes());
+        replicationService.replicate("fetched.json", 2);
+        Files.delete(storage.resolve("fetched.json", 2));
+
+        assertTrue(replicationService.fetch("fetched.json", 2));
+        assertArrayEquals("This is a test".getBytes(), Files.readAllBytes(storage.resolve("fetched.json", 2)));
+        assertFalse(replicationService.fetch("fetched.json", 3));
+
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPeersRequireAToken() {
+
+        new ReplicationService(storage, metrics, Arrays.asList("http://localhost:1"), 1, 5000, "");
+
+    }
+
+    @Test
+    public void testIsAuthorized() {
+
+        assertTrue(replicationService(1, "http://localhost:1").isAuthorized("secret"));
+        assertFalse(replicationService(1, "http://localhost:1").isAuthorized("secreT"));
+        assertFalse(replicationService(1, "http://localhost:1").isAuthorized(null));
+        assertFalse(new ReplicationService(storage, metrics, Arrays.asList(""), 1, 5000, "").isAuthorized(""));
+
+    }
+
+}
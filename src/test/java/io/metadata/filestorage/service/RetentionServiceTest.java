@@ -0,0 +1,217 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.FileDTO;
+import io.metadata.filestorage.model.dto.RetentionReportDTO;
+import io.metadata.filestorage.repository.VersionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@EnableConfigurationProperties
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        RetentionService.class,
+        RetentionProperties.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class RetentionServiceTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private RetentionService retentionService;
+
+    @Autowired
+    private RetentionProperties retentionProperties;
+
+    @Autowired
+    private VersionRepository versionRepository;
+
+    @Autowired
+    private FileSystemStorage storage;
+
+    private final LocalDateTime now = LocalDateTime.of(2019, 3, 15, 12, 0);
+
+    @Before
+    public void setUp() {
+        retentionProperties.setPolicies(new ArrayList<>());
+        retentionProperties.setBatchSize(500);
+    }
+
+    private static RetentionProperties.Policy policy(String pattern, Integer keepLast, Integer keepDays, Integer keepDailyAfterDays) {
+        RetentionProperties.Policy policy = new RetentionProperties.Policy();
+        policy.setPattern(pattern);
+        policy.setKeepLast(keepLast);
+        policy.setKeepDays(keepDays);
+        policy.setKeepDailyAfterDays(keepDailyAfterDays);
+        return policy;
+    }
+
+    private static List<Version> versions(LocalDateTime... dates) {
+        List<Version> versions = new ArrayList<>();
+        for (int i = 0; i < dates.length; i++) {
+            versions.add(new Version(null, dates.length - i, dates[i]));
+        }
+        return versions;
+    }
+
+    @Test
+    public void testPatternMatching() {
+
+        RetentionProperties.Policy policy = policy("logs-*.log", 1, null, null);
+
+        assertTrue(policy.matches("logs-app.log"));
+        assertTrue(policy.matches("logs-.log"));
+        assertFalse(policy.matches("logs-app.json"));
+        assertFalse(policy.matches("app-logs-app.log"));
+
+    }
+
+    @Test
+    public void testKeepLast() {
+
+        List<Version> versions = versions(now, now.minusDays(1), now.minusDays(2), now.minusDays(3));
+
+        List<Version> prunable = RetentionService.selectPrunable(versions, policy("*", 2, null, null), now);
+
+        assertEquals(2, prunable.size());
+        assertEquals(2, (int) prunable.get(0).getVersionNumber());
+        assertEquals(1, (int) prunable.get(1).getVersionNumber());
+
+    }
+
+    @Test
+    public void testKeepDays() {
+
+        List<Version> versions = versions(now.minusDays(1), now.minusDays(5), now.minusDays(10), now.minusDays(20));
+
+        List<Version> prunable = RetentionService.selectPrunable(versions, policy("*", null, 7, null), now);
+
+        assertEquals(2, prunable.size());
+
+    }
+
+    @Test
+    public void testKeepDailyAfterDays() {
+
+        List<Version> versions = versions(
+                now.minusHours(1),
+                now.minusHours(2),
+                now.minusDays(10),
+                now.minusDays(10).minusHours(1),
+                now.minusDays(11));
+
+        List<Version> prunable = RetentionService.selectPrunable(versions, policy("*", null, null, 7), now);
+
+        assertEquals(1, prunable.size());
+        assertEquals(now.minusDays(10).minusHours(1), prunable.get(0).getLastModificationDate());
+
+    }
+
+    @Test
+    public void testKeepDailyCountsVersionsKeptByOtherRules() {
+
+        LocalDateTime day = now.minusDays(10).withHour(12);
+        List<Version> versions = versions(now, day, day.minusHours(1), day.minusHours(2));
+
+        List<Version> prunable = RetentionService.selectPrunable(versions, policy("*", 2, null, 7), now);
+
+        assertEquals(2, prunable.size());
+        assertEquals(day.minusHours(1), prunable.get(0).getLastModificationDate());
+        assertEquals(day.minusHours(2), prunable.get(1).getLastModificationDate());
+
+    }
+
+    @Test
+    public void testLatestVersionIsAlwaysKept() {
+
+        List<Version> versions = versions(now.minusDays(30), now.minusDays(31));
+
+        List<Version> prunable = RetentionService.selectPrunable(versions, policy("*", null, 7, null), now);
+
+        assertEquals(1, prunable.size());
+        assertEquals(1, (int) prunable.get(0).getVersionNumber());
+
+    }
+
+    @Test
+    public void testReportAndEnforce() throws Exception {
+
+        for (int i = 0; i < 4; i++) {
+            fileService.save("logs-app.log", new ByteArrayResource("This is a test".getBytes()));
+            fileService.save("test.json", new ByteArrayResource("This is a test".getBytes()));
+        }
+
+        retentionProperties.setPolicies(Collections.singletonList(policy("logs-*", 1, null, null)));
+
+        RetentionReportDTO report = retentionService.report();
+
+        assertTrue(report.isDryRun());
+        assertEquals(1, report.getFiles());
+        assertEquals(3, report.getVersions());
+        assertEquals(3 * "This is a test".length(), report.getBytes());
+        assertEquals(4, versionRepository.findByFileNameOrderByVersionNumberDesc("logs-app.log").size());
+
+        retentionService.apply(false);
+
+        List<Version> remaining = versionRepository.findByFileNameOrderByVersionNumberDesc("logs-app.log");
+        assertEquals(1, remaining.size());
+        assertEquals(4, (int) remaining.get(0).getVersionNumber());
+        assertFalse(Files.exists(storage.resolve("logs-app.log", 1)));
+        assertTrue(Files.exists(storage.resolve("logs-app.log", 4)));
+
+        for (FileDTO file : fileService.findAll()) {
+            assertEquals(4, (int) file.getLatestVersion());
+        }
+
+    }
+
+    @Test
+    public void testEnforceWalksTheVersionsInBatches() throws Exception {
+
+        for (int i = 0; i < 7; i++) {
+            fileService.save("logs-batched.log", new ByteArrayResource("This is a test".getBytes()));
+        }
+
+        retentionProperties.setPolicies(Collections.singletonList(policy("logs-*", 3, null, null)));
+        retentionProperties.setBatchSize(2);
+
+        RetentionReportDTO report = retentionService.apply(false);
+
+        assertEquals(4, report.getVersions());
+        List<Version> remaining = versionRepository.findByFileNameOrderByVersionNumberDesc("logs-batched.log");
+        assertEquals(3, remaining.size());
+        assertEquals(5, (int) remaining.get(2).getVersionNumber());
+        assertFalse(Files.exists(storage.resolve("logs-batched.log", 4)));
+        assertTrue(Files.exists(storage.resolve("logs-batched.log", 5)));
+
+    }
+
+}
@@ -0,0 +1,194 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.InvalidUploadException;
+import io.metadata.filestorage.model.dto.SnapshotDTO;
+import io.metadata.filestorage.model.dto.SnapshotImportReportDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "file.snapshots.import-parallelism=4")
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        SnapshotService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class SnapshotServiceTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private FileSystemStorage storage;
+
+    @After
+    public void tearDown() {
+        for (SnapshotDTO snapshot : snapshotService.findAll()) {
+            snapshotService.delete(snapshot.getId());
+        }
+    }
+
+    @Test
+    public void testSnapshotKeepsTheContentItWasTakenWith() throws IOException {
+
+        fileService.save("snapshot-keep.txt", content("first"));
+        SnapshotDTO snapshot = snapshotService.create();
+        fileService.updateVersion("snapshot-keep.txt", content("second"), 1);
+
+        assertTrue(snapshotService.findAll().stream().anyMatch(listed -> listed.getId().equals(snapshot.getId())));
+        assertTrue(snapshot.getVersions() >= 1);
+
+        Map<String, String> archive = export(snapshot.getId(), null);
+        assertEquals("first", archive.get("files/1snapshot-keep.txt"));
+        assertTrue(archive.get("manifest.jsonl").contains("\"fileName\":\"snapshot-keep.txt\""));
+        assertEquals("second", read("snapshot-keep.txt", 1));
+
+    }
+
+    @Test
+    public void testIncrementalArchivesRestoreOnTopOfTheirBase() throws IOException {
+
+        fileService.save("snapshot-inc-a.txt", content("a1"));
+        fileService.save("snapshot-inc-b.txt", content("b1"));
+        SnapshotDTO base = snapshotService.create();
+
+        fileService.updateVersion("snapshot-inc-a.txt", content("a2"), 1);
+        fileService.save("snapshot-inc-c.txt", content("c1"));
+        SnapshotDTO latest = snapshotService.create();
+
+        byte[] full = exportBytes(base.getId(), null);
+        byte[] incremental = exportBytes(latest.getId(), base.getId());
+        Map<String, String> changes = entries(incremental);
+        assertEquals("a2", changes.get("files/1snapshot-inc-a.txt"));
+        assertEquals("c1", changes.get("files/1snapshot-inc-c.txt"));
+        assertFalse(changes.containsKey("files/1snapshot-inc-b.txt"));
+
+        fileService.delete("snapshot-inc-a.txt");
+        fileService.delete("snapshot-inc-b.txt");
+        fileService.delete("snapshot-inc-c.txt");
+
+        // Without its base, the versions left out of the incremental archive are missing
+        SnapshotImportReportDTO partial = snapshotService.importArchive(new ByteArrayInputStream(incremental));
+        assertTrue(partial.getMissingVersionSamples().contains("1snapshot-inc-b.txt"));
+        assertEquals("a2", read("snapshot-inc-a.txt", 1));
+        fileService.delete("snapshot-inc-a.txt");
+        fileService.delete("snapshot-inc-c.txt");
+
+        SnapshotImportReportDTO first = snapshotService.importArchive(new ByteArrayInputStream(full));
+        assertEquals(base.getId(), first.getId());
+        assertTrue(first.getImportedVersions() >= 2);
+        assertEquals("a1", read("snapshot-inc-a.txt", 1));
+        assertEquals("b1", read("snapshot-inc-b.txt", 1));
+
+        SnapshotImportReportDTO second = snapshotService.importArchive(new ByteArrayInputStream(incremental));
+        assertEquals(0, second.getMissingVersions());
+        assertEquals("a2", read("snapshot-inc-a.txt", 1));
+        assertEquals("b1", read("snapshot-inc-b.txt", 1));
+        assertEquals("c1", read("snapshot-inc-c.txt", 1));
+
+        SnapshotImportReportDTO again = snapshotService.importArchive(new ByteArrayInputStream(incremental));
+        assertEquals(0, again.getImportedVersions());
+        assertEquals(second.getImportedVersions() + second.getUnchangedVersions(), again.getUnchangedVersions());
+
+    }
+
+    @Test
+    public void testArchiveWithAPathOutsideTheStorageIsRejected() throws IOException {
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            zip.putNextEntry(new ZipEntry("snapshot.json"));
+            zip.write("{\"id\":\"20260101-000000-000\"}".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("manifest.jsonl"));
+            zip.write(("{\"fileName\":\"snapshot-crafted.txt\",\"versionNumber\":1}\n"
+                    + "{\"fileName\":\"/../../snapshot-escaped.txt\",\"versionNumber\":1}\n").getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("files/1snapshot-crafted.txt"));
+            zip.write("crafted".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("files/1/../../snapshot-escaped.txt"));
+            zip.write("escaped".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            snapshotService.importArchive(new ByteArrayInputStream(archive.toByteArray()));
+            fail("The archive should be rejected");
+        } catch (InvalidUploadException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, InvalidUploadException.class.getAnnotation(ResponseStatus.class).value());
+        }
+
+        Path databasePath = storage.getDatabasePath();
+        assertFalse(Files.exists(databasePath.resolve("1snapshot-crafted.txt")));
+        assertFalse(Files.exists(databasePath.getParent().resolve("snapshot-escaped.txt")));
+        assertFalse(Files.exists(databasePath.getParent().getParent().resolve("snapshot-escaped.txt")));
+
+    }
+
+    private static ByteArrayResource content(String text) {
+        return new ByteArrayResource(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String fileName, Integer version) throws IOException {
+        try (InputStream in = fileService.getResourceFile(fileName, version).getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private byte[] exportBytes(String id, String since) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshotService.export(id, since, out);
+        return out.toByteArray();
+    }
+
+    private Map<String, String> export(String id, String since) throws IOException {
+        return entries(exportBytes(id, since));
+    }
+
+    private static Map<String, String> entries(byte[] archive) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,183 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.QuotaExceededException;
+import io.metadata.filestorage.model.NamespaceUsage;
+import io.metadata.filestorage.model.dto.UsageDTO;
+import io.metadata.filestorage.repository.NamespaceUsageRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "file.usage.flush-delay=3600000")
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class StorageUsageTest {
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private StorageUsage storageUsage;
+
+    @Autowired
+    private UsageProperties usageProperties;
+
+    @Autowired
+    private NamespaceUsageRepository usageRepository;
+
+    @Autowired
+    private VersionRepository versionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        usageProperties.setNamespaces(Arrays.asList(
+                namespace("team-a-", 100L),
+                namespace("team-a-archive-", null),
+                namespace("team-b-", null)));
+        storageUsage.rebuild();
+    }
+
+    @Test
+    public void testUsageFollowsTheStorageOperations() {
+
+        UsageDTO before = storageUsage.usage("team-a-");
+        long archived = storageUsage.usage("team-a-archive-").getBytes();
+
+        save("team-a-report.txt", 10);
+        save("team-a-report.txt", 20);
+        assertUsage(before, 30, 2, storageUsage.usage("team-a-report.txt"));
+
+        fileService.updateVersion("team-a-report.txt", content(5), 1);
+        fileService.append("team-a-report.txt", 2, 20, content(4));
+        assertUsage(before, 29, 2, storageUsage.usage("team-a-"));
+
+        // Copies are counted under the namespace of the target, the longest prefix of its name
+        fileService.copy("team-a-report.txt", 2, "team-a-archive-report.txt");
+        assertUsage(before, 29, 2, storageUsage.usage("team-a-"));
+        assertEquals(archived + 24, storageUsage.usage("team-a-archive-").getBytes());
+
+        fileService.delete("team-a-report.txt", 1);
+        assertUsage(before, 24, 1, storageUsage.usage("team-a-"));
+
+        fileService.delete("team-a-report.txt");
+        assertUsage(before, 0, 0, storageUsage.usage("team-a-"));
+
+        save("team-b-1.txt", 7);
+        save("team-b-2.txt", 8);
+        fileService.deleteByPrefix("team-b-");
+        assertEquals(0, storageUsage.usage("team-b-").getBytes());
+        assertEquals(0, storageUsage.usage("team-b-").getVersions());
+
+    }
+
+    @Test
+    public void testUploadsOverTheQuotaAreRejected() {
+
+        int size = 60 - (int) storageUsage.usage("team-a-").getBytes();
+        save("team-a-quota.txt", size);
+
+        try {
+            save("team-a-quota.txt", 50);
+            fail();
+        } catch (QuotaExceededException e) {
+            assertEquals("Storing 50 more bytes in namespace 'team-a-' exceeds its quota, 60 of 100 bytes are used", e.getMessage());
+        }
+        assertEquals(1, (int) versionRepository.findLatestVersionNumber("team-a-quota.txt"));
+
+        // Replacing a version only needs room for the bytes it adds
+        fileService.updateVersion("team-a-quota.txt", content(size + 40), 1);
+        assertEquals(100, storageUsage.usage("team-a-").getBytes());
+
+        // Other namespaces have no quota
+        save("team-a-archive-quota.txt", 500);
+
+        fileService.delete("team-a-quota.txt");
+        fileService.delete("team-a-archive-quota.txt");
+
+    }
+
+    @Test
+    public void testTotalsAreStoredAndCountedAgain() {
+
+        save("team-b-stored.txt", 12);
+        save("team-b-stored.txt", 13);
+        UsageDTO counted = storageUsage.usage("team-b-");
+
+        storageUsage.flush();
+
+        Map<String, NamespaceUsage> rows = usageRepository.findAll().stream()
+                .collect(Collectors.toMap(NamespaceUsage::getNamespace, Function.identity()));
+        assertEquals(4, rows.size());
+        assertEquals(counted.getBytes(), (long) rows.get("team-b-").getBytes());
+        assertEquals(counted.getVersions(), (long) rows.get("team-b-").getVersions());
+
+        StorageUsage restarted = new StorageUsage(usageRepository, versionRepository, usageProperties, transactionManager);
+        restarted.loadOnStartup();
+        assertEquals(counted.getBytes(), restarted.usage("team-b-").getBytes());
+
+        storageUsage.rebuild();
+        assertEquals(counted.getBytes(), storageUsage.usage("team-b-").getBytes());
+        assertEquals(counted.getVersions(), storageUsage.usage("team-b-").getVersions());
+
+        fileService.delete("team-b-stored.txt");
+
+    }
+
+    private void save(String fileName, int size) {
+        fileService.save(fileName, content(size));
+    }
+
+    private static ByteArrayResource content(int size) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) 'x');
+        return new ByteArrayResource(bytes);
+    }
+
+    private static void assertUsage(UsageDTO before, long bytes, long versions, UsageDTO usage) {
+        assertEquals("team-a-", usage.getName());
+        assertEquals(before.getBytes() + bytes, usage.getBytes());
+        assertEquals(before.getVersions() + versions, usage.getVersions());
+        assertEquals(100L, (long) usage.getMaxBytes());
+    }
+
+    private static UsageProperties.Namespace namespace(String prefix, Long maxBytes) {
+        UsageProperties.Namespace namespace = new UsageProperties.Namespace();
+        namespace.setPrefix(prefix);
+        namespace.setMaxBytes(maxBytes);
+        return namespace;
+    }
+}
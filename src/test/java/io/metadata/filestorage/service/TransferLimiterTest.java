@@ -0,0 +1,95 @@
+package io.metadata.filestorage.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TransferLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final FileStorageMetrics metrics = new FileStorageMetrics(meterRegistry);
+
+    @Test
+    public void testTransfersWaitForAFreeSlot() throws InterruptedException {
+
+        TransferLimiter limiter = new TransferLimiter(metrics, 1, 0, 50, 0, 0, 60000);
+
+        TransferLimiter.Permit first = limiter.admit("client-a");
+        assertNotNull(first);
+        assertNull(limiter.admit("client-b"));
+        assertEquals(1, meterRegistry.get("file.storage.transfers.rejected").counter().count(), 0);
+
+        first.close();
+        first.close();
+
+        TransferLimiter.Permit second = limiter.admit("client-b");
+        assertNotNull(second);
+        assertNull(limiter.admit("client-a"));
+        second.close();
+
+    }
+
+    @Test
+    public void testTransfersPerClient() throws InterruptedException {
+
+        TransferLimiter limiter = new TransferLimiter(metrics, 0, 1, 50, 0, 0, 60000);
+
+        TransferLimiter.Permit first = limiter.admit("client-a");
+        assertNotNull(first);
+        assertNull(limiter.admit("client-a"));
+
+        TransferLimiter.Permit other = limiter.admit("client-b");
+        assertNotNull(other);
+
+        first.close();
+        other.close();
+        assertNotNull(limiter.admit("client-a"));
+
+    }
+
+    @Test
+    public void testClientBandwidth() throws InterruptedException {
+
+        TransferLimiter limiter = new TransferLimiter(metrics, 0, 0, 50, 0, 1, 60000);
+
+        TransferLimiter.Permit permit = limiter.admit("client-a");
+        long start = System.nanoTime();
+        // A tenth of a second goes out as a burst, the remaining 154 KB take about 150 ms at 1 MB per second
+        for (int i = 0; i < 4; i++) {
+            permit.throttle(64 * 1024);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        permit.close();
+
+        assertTrue(elapsedMillis >= 100);
+        assertTrue(meterRegistry.get("file.storage.transfers.wait").tag("reason", "bandwidth").timer().count() > 0);
+
+        // Another client has its own bucket
+        TransferLimiter.Permit other = limiter.admit("client-b");
+        start = System.nanoTime();
+        other.throttle(64 * 1024);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 50);
+        other.close();
+
+    }
+
+    @Test
+    public void testIdleClientsAreEvicted() throws InterruptedException {
+
+        TransferLimiter limiter = new TransferLimiter(metrics, 0, 0, 50, 0, 1, 0);
+
+        TransferLimiter.Permit busy = limiter.admit("client-a");
+        limiter.admit("client-b").close();
+        Thread.sleep(5);
+
+        limiter.evictIdleClients();
+
+        assertEquals(1, limiter.clientCount());
+        busy.close();
+
+    }
+}
@@ -0,0 +1,94 @@
+package io.metadata.filestorage.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TrigramIndexTest {
+
+    @Test
+    public void testSearchesMatchEveryName() {
+
+        Random random = new Random(7);
+        String[] parts = {"prod", "dev", "app", "db", "config", ".yaml", ".json", "-", "/", "a", "b"};
+        TreeSet<String> names = new TreeSet<>();
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int part = random.nextInt(5) + 1; part > 0; part--) {
+                name.append(parts[random.nextInt(parts.length)]);
+            }
+            names.add(name.toString());
+            index.add(name.toString());
+        }
+
+        List<String> globs = Arrays.asList("*prod*.yaml", "app*", "*.json", "prod?dev*", "*", "?", "a*b*a", "*config-db*");
+        for (String glob : globs) {
+            assertEquals(glob, matching(names, FileNameIndex.Type.GLOB, glob), index.search(FileNameIndex.Type.GLOB, glob, null, names.size()));
+        }
+        for (String prefix : Arrays.asList("prod", "a", "db/con", "zzz")) {
+            assertEquals(prefix, matching(names, FileNameIndex.Type.PREFIX, prefix), index.search(FileNameIndex.Type.PREFIX, prefix, null, names.size()));
+        }
+        for (String substring : Arrays.asList("dev", "g.y", "/", "-app-")) {
+            assertEquals(substring, matching(names, FileNameIndex.Type.SUBSTRING, substring), index.search(FileNameIndex.Type.SUBSTRING, substring, null, names.size()));
+        }
+
+    }
+
+    @Test
+    public void testPagesFollowTheLastName() {
+
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < 250; i++) {
+            index.add(String.format("prod/service-%03d.yaml", i));
+            index.add(String.format("dev/service-%03d.yaml", i));
+        }
+
+        List<String> all = new ArrayList<>();
+        String after = null;
+        List<String> page;
+        while (!(page = index.search(FileNameIndex.Type.GLOB, "prod/*.yaml", after, 100)).isEmpty()) {
+            all.addAll(page);
+            after = page.get(page.size() - 1);
+        }
+
+        assertEquals(250, all.size());
+        assertEquals("prod/service-000.yaml", all.get(0));
+        assertEquals("prod/service-249.yaml", all.get(249));
+
+    }
+
+    @Test
+    public void testRemovedNamesAreNotFound() {
+
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(index.add("file-" + i + ".json"));
+        }
+        assertFalse(index.add("file-1.json"));
+
+        // Removing most names compacts the index
+        for (int i = 0; i < 4990; i++) {
+            assertTrue(index.remove("file-" + i + ".json"));
+        }
+        assertFalse(index.remove("file-1.json"));
+
+        assertEquals(10, index.size());
+        assertEquals(Arrays.asList("file-4990.json", "file-4991.json"), index.search(FileNameIndex.Type.PREFIX, "file-499", null, 2));
+        assertTrue(index.search(FileNameIndex.Type.SUBSTRING, "-1.json", null, 10).isEmpty());
+        assertTrue(index.add("file-1.json"));
+        assertEquals(Arrays.asList("file-1.json"), index.search(FileNameIndex.Type.SUBSTRING, "-1.json", null, 10));
+
+    }
+
+    private static List<String> matching(TreeSet<String> names, FileNameIndex.Type type, String pattern) {
+        return names.stream().filter(name -> TrigramIndex.matches(type, pattern, name)).collect(Collectors.toList());
+    }
+}
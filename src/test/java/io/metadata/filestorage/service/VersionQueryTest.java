@@ -0,0 +1,160 @@
+package io.metadata.filestorage.service;
+
+import io.metadata.filestorage.FileStorageApplication;
+import io.metadata.filestorage.exception.FileNotFoundException;
+import io.metadata.filestorage.model.File;
+import io.metadata.filestorage.model.Version;
+import io.metadata.filestorage.model.dto.VersionHistoryDTO;
+import io.metadata.filestorage.repository.FileRepository;
+import io.metadata.filestorage.repository.VersionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Adding, deleting and listing versions of a file with many versions has to read and write only the rows involved,
+ * checked with the statements Hibernate sends and the entities it loads.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ContextConfiguration(classes = {
+        FileStorageApplication.class,
+        FileService.class,
+        StorageUsage.class,
+        UsageProperties.class,
+        FileNameFilter.class,
+        ReplicationService.class,
+        FileSystemStorage.class,
+        IngestPipeline.class,
+        FileStorageMetrics.class,
+        SimpleMeterRegistry.class})
+public class VersionQueryTest {
+
+    private static final int VERSIONS = 5000;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private VersionRepository versionRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Saves the file with its first version through the service and adds the rest straight to the database.
+     */
+    private void createFileWithVersions(String fileName, int versions) {
+        fileService.save(fileName, new ByteArrayResource("This is a test".getBytes()));
+        File file = fileRepository.findByName(fileName);
+        List<Version> older = new ArrayList<>();
+        for (int number = 2; number <= versions; number++) {
+            Version version = new Version(file, number, LocalDateTime.now());
+            version.setSize(14L);
+            older.add(version);
+        }
+        versionRepository.saveAll(older);
+        statistics.clear();
+    }
+
+    @Test
+    public void testSavingAVersionDoesNotLoadTheOthers() {
+
+        createFileWithVersions("queries-save.json", VERSIONS);
+
+        long start = System.nanoTime();
+        assertEquals(VERSIONS + 1, (int) fileService.save("queries-save.json", new ByteArrayResource("New".getBytes())).getVersion());
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Latest version, latest tombstone, the file and the insert of the version
+        assertEquals(4, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+        assertEquals(1, statistics.getEntityLoadCount());
+        assertTrue("Saving took " + millis + "ms", millis < 500);
+
+        fileService.delete("queries-save.json");
+    }
+
+    @Test
+    public void testDeletingAVersionTouchesOnlyItsRow() {
+
+        createFileWithVersions("queries-delete.json", VERSIONS);
+
+        fileService.delete("queries-delete.json", 1);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(VERSIONS, (int) versionRepository.findLatestVersionNumber("queries-delete.json"));
+        assertNull(versionRepository.findByFileNameAndVersionNumber("queries-delete.json", 1));
+
+        try {
+            fileService.delete("queries-delete.json", 1);
+            fail();
+        } catch (FileNotFoundException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+
+        fileService.delete("queries-delete.json");
+    }
+
+    @Test
+    public void testVersionHistoryPages() {
+
+        createFileWithVersions("queries-history.json", 250);
+
+        VersionHistoryDTO first = fileService.findVersions("queries-history.json", null, 100);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(100, first.getVersions().size());
+        assertEquals(250, (int) first.getVersions().get(0).getVersionNumber());
+        assertEquals(151, (int) first.getNextBefore());
+
+        VersionHistoryDTO second = fileService.findVersions("queries-history.json", first.getNextBefore(), 100);
+        assertEquals(150, (int) second.getVersions().get(0).getVersionNumber());
+        assertEquals(51, (int) second.getNextBefore());
+
+        VersionHistoryDTO last = fileService.findVersions("queries-history.json", second.getNextBefore(), 100);
+        assertEquals(50, last.getVersions().size());
+        assertEquals(1, (int) last.getVersions().get(49).getVersionNumber());
+        assertNull(last.getNextBefore());
+
+        fileService.delete("queries-history.json");
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testVersionHistoryOfUnknownFile() {
+
+        fileService.findVersions("queries-unknown.json", null, 100);
+    }
+}